@@ -0,0 +1,297 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// פורמט בינארי לתמונת המצב של האזרחים והמתקנים (גרסה 3).
+// Layout, big-endian:
+//   header    int magic "TMSB", short version, int citizen count, int facility count
+//   citizen   8-byte fixed part: int birth epoch day, byte economic percentile, byte support level + 1,
+//             byte public impact, byte flags (bit 0 parliament, bit 1 detained, bits 2-3 origin A/B/C,
+//             bit 4 ID with leading zeros); then the varint ID number, the varint count of leading zeros (bit 4 only),
+//             varint name length and the UTF-8 name
+//   facility  varint-length UTF-8 ID and name, int capacity, varint detainee count,
+//             detainee citizen ordinals ascending, delta-encoded as varints
+//   index     long file offset of every citizen record (since version 2; lets MappedCitizenView seek by ordinal)
+//   trailer   long offset of the index (since version 2), long CRC32 of everything before it
+// Version 1 files (no index, CRC-only trailer) and version 2 files (no leading zeros flag) are still read.
+final class BinarySnapshot {
+    static final int MAGIC = 0x544D5342; // "TMSB"
+    static final short VERSION = 3;
+    static final int CITIZEN_FIXED_BYTES = 8;
+
+    static final int FLAG_PARLIAMENT = 1;
+    static final int FLAG_DETAINED = 1 << 1;
+    static final int ORIGIN_SHIFT = 2;
+    static final int FLAG_ID_ZEROS = 1 << 4;
+    static final String[] ORIGINS = {"A", "B", "C"};
+
+    // What a snapshot file holds, as live objects
+    static final class Contents {
+        final List<Citizen> citizens;
+        final List<Facility> facilities;
+
+        Contents(List<Citizen> citizens, List<Facility> facilities) {
+            this.citizens = citizens;
+            this.facilities = facilities;
+        }
+    }
+
+    private BinarySnapshot() {
+    }
+
+    static void write(DataSnapshot snapshot, OutputStream target) throws IOException {
+        CRC32 checksum = new CRC32();
+        CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(new CheckedOutputStream(target, checksum), 1 << 16));
+        DataOutputStream out = new DataOutputStream(counter);
+        int citizenCount = snapshot.getCitizenCount();
+        long[] offsets = new long[citizenCount];
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(citizenCount);
+        out.writeInt(snapshot.facilityIds.length);
+
+        LongIntMap ordinals = new LongIntMap();
+        for (int i = 0; i < snapshot.ids.length; i++) {
+            if (!ordinals.containsKey(snapshot.ids[i])) {
+                ordinals.put(snapshot.ids[i], i); // The first citizen with an ID owns it, as in the citizen index
+            }
+            offsets[i] = counter.count; // DataOutputStream doesn't buffer, so the count is exact
+            out.writeInt((int) snapshot.birthDates[i].toEpochDay());
+            out.writeByte(snapshot.economicPercentiles[i]);
+            out.writeByte(snapshot.governmentSupportLevels[i] + 1);
+            out.writeByte(snapshot.publicImpactScores[i]);
+            String idText = CitizenStore.idText(snapshot.ids[i]);
+            int zeros = leadingZeros(idText);
+            int flags = (snapshot.parliamentMembers[i] ? FLAG_PARLIAMENT : 0)
+                    | (snapshot.inDetention[i] ? FLAG_DETAINED : 0)
+                    | (zeros > 0 ? FLAG_ID_ZEROS : 0)
+                    | ThreatScoringRules.originIndex(snapshot.origins[i]) << ORIGIN_SHIFT;
+            out.writeByte(flags);
+            writeId(out, idText, zeros);
+            writeString(out, snapshot.names[i]);
+        }
+        if (snapshot.pagedOut != null) { // Citizens that were never loaded, copied from the file they are mapped from
+            MappedCitizenView.Record record = snapshot.pagedOut.view.newRecord();
+            BitSet pagedOut = snapshot.pagedOut.ordinals;
+            int i = snapshot.ids.length;
+            for (int from = pagedOut.nextSetBit(0); from >= 0; from = pagedOut.nextSetBit(from + 1), i++) {
+                record.moveTo(from);
+                if (!ordinals.containsKey(record.getNumericId())) {
+                    ordinals.put(record.getNumericId(), i);
+                }
+                offsets[i] = counter.count;
+                out.writeInt((int) record.getBirthDate().toEpochDay());
+                out.writeByte(record.getEconomicPercentile());
+                out.writeByte(record.getGovernmentSupportLevel() + 1);
+                out.writeByte(record.getPublicImpactScore());
+                String idText = record.getId();
+                int zeros = leadingZeros(idText);
+                out.writeByte((record.isParliamentMember() ? FLAG_PARLIAMENT : 0)
+                        | (zeros > 0 ? FLAG_ID_ZEROS : 0)
+                        | ThreatScoringRules.originIndex(record.getOrigin()) << ORIGIN_SHIFT); // Never detained
+                writeId(out, idText, zeros);
+                writeString(out, record.getName());
+            }
+        }
+
+        for (int f = 0; f < snapshot.facilityIds.length; f++) {
+            writeString(out, snapshot.facilityIds[f]);
+            writeString(out, snapshot.facilityNames[f]);
+            out.writeInt(snapshot.capacities[f]);
+            int[] detainees = new int[snapshot.detaineeIds[f].length];
+            int count = 0;
+            for (long id : snapshot.detaineeIds[f]) {
+                int ordinal = ordinals.get(id);
+                if (ordinal >= 0) {
+                    detainees[count++] = ordinal;
+                }
+            }
+            Arrays.sort(detainees, 0, count);
+            writeVarLong(out, count);
+            int previous = 0;
+            for (int i = 0; i < count; i++) {
+                writeVarLong(out, detainees[i] - previous);
+                previous = detainees[i];
+            }
+        }
+        long indexOffset = counter.count;
+        for (long offset : offsets) {
+            out.writeLong(offset);
+        }
+        out.writeLong(indexOffset);
+        out.flush();
+        out.writeLong(checksum.getValue());
+        out.flush();
+    }
+
+    static Contents read(Path path) throws IOException {
+        return read(path, true);
+    }
+
+    // The facilities only, without creating the citizens (their IDs are read to fill the rosters); see CitizenRepository
+    static List<Facility> readFacilities(Path path) throws IOException {
+        return read(path, false).facilities;
+    }
+
+    // Header only; -1 if the file is missing or not a snapshot
+    static int readCitizenCount(Path path) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 16))) {
+            if (in.readInt() != MAGIC) {
+                return -1;
+            }
+            in.readShort(); // Version
+            return in.readInt();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static Contents read(Path path, boolean withCitizens) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        if (bytes.length < 22) {
+            throw new IOException("Snapshot too short: " + path);
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes, 0, bytes.length - 8);
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        if (in.getLong(bytes.length - 8) != checksum.getValue()) {
+            throw new IOException("Snapshot checksum mismatch: " + path);
+        }
+        if (in.getInt() != MAGIC) {
+            throw new IOException("Not a snapshot file: " + path);
+        }
+        short version = in.getShort();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + ": " + path);
+        }
+        int citizenCount = in.getInt();
+        int facilityCount = in.getInt();
+
+        List<Citizen> citizens = withCitizens ? new ArrayList<>(citizenCount) : null;
+        long[] ids = new long[citizenCount];
+        for (int i = 0; i < citizenCount; i++) {
+            if (!withCitizens) {
+                int flags = in.get(in.position() + CITIZEN_FIXED_BYTES - 1);
+                in.position(in.position() + CITIZEN_FIXED_BYTES);
+                long id = readVarLong(in);
+                ids[i] = (flags & FLAG_ID_ZEROS) != 0 ? CitizenStore.parseId(idText(id, (int) readVarLong(in))) : id;
+                int nameLength = (int) readVarLong(in);
+                in.position(in.position() + nameLength);
+                continue;
+            }
+            LocalDate birthDate = LocalDate.ofEpochDay(in.getInt());
+            int economicPercentile = in.get();
+            int governmentSupportLevel = in.get() - 1;
+            int publicImpactScore = in.get();
+            int flags = in.get();
+            long id = readVarLong(in);
+            String idText = (flags & FLAG_ID_ZEROS) != 0 ? idText(id, (int) readVarLong(in)) : Long.toString(id);
+            ids[i] = CitizenStore.parseId(idText);
+            String name = readString(in);
+            Citizen citizen = new Citizen(name, birthDate, ORIGINS[(flags >>> ORIGIN_SHIFT) & 3], economicPercentile,
+                    governmentSupportLevel, publicImpactScore, (flags & FLAG_PARLIAMENT) != 0, idText);
+            citizen.setInDetention((flags & FLAG_DETAINED) != 0); // As saved; the detention engine settles it from the rosters
+            citizens.add(citizen);
+        }
+
+        List<Facility> facilities = new ArrayList<>(facilityCount);
+        for (int f = 0; f < facilityCount; f++) {
+            Facility facility = new Facility(readString(in), readString(in), in.getInt());
+            long[] detaineeIds = new long[(int) readVarLong(in)];
+            int ordinal = 0;
+            for (int i = 0; i < detaineeIds.length; i++) {
+                ordinal += (int) readVarLong(in);
+                detaineeIds[i] = ids[ordinal];
+            }
+            facility.setDetaineeIds(detaineeIds); // Resolved on first use
+            facilities.add(facility);
+        }
+        return new Contents(citizens, facilities);
+    }
+
+    // Leading zeros of an ID text ("007" -> 2, "00" -> 1: the number is what follows them)
+    static int leadingZeros(String idText) {
+        int zeros = 0;
+        while (zeros < idText.length() - 1 && idText.charAt(zeros) == '0') {
+            zeros++;
+        }
+        return zeros;
+    }
+
+    // The ID as the file stores it: the number, then the count of leading zeros if there are any. Keys of IDs with
+    // leading zeros (see CitizenStore.parseId) are not written, so the format stays the one of version 3.
+    private static void writeId(DataOutputStream out, String idText, int zeros) throws IOException {
+        writeVarLong(out, Long.parseLong(idText));
+        if (zeros > 0) {
+            writeVarLong(out, zeros);
+        }
+    }
+
+    // The ID text of a citizen record: the numeric ID after its leading zeros
+    static String idText(long id, int leadingZeros) {
+        return leadingZeros == 0 ? Long.toString(id) : "0".repeat(leadingZeros) + id;
+    }
+
+    // Byte count of what went through, as a long (DataOutputStream.size() wraps at 2 GB)
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = (int) readVarLong(in);
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,209 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// מוניטור קיבולת מונחה אירועים (במקום חוט שבודק כל 3 דקות).
+// ThreatManagementSystem reports every change to it (see setCapacityMonitor), and it keeps running counters of the
+// citizens, the detainees, the total capacity and the demand: citizens at or above the static threshold, who should be
+// detained. A change marks the counters as changed and schedules a single evaluation on the shared timer, a short delay
+// later, so a burst of changes is evaluated once and nothing runs while nothing changes.
+// The places needed are the larger of the demand and one place per citizensPerPlace citizens; the deficit is what the
+// capacity lacks for that. An alert is raised when the deficit goes above zero and cleared only once there are at
+// least clearMargin spare places, so a system hovering around full capacity doesn't flap between the two.
+// The counters may be updated on any thread; evaluations and alert listeners run on the timer's thread. The monitor
+// prints nothing itself: showing an alert is up to its listeners.
+public final class CapacityMonitor implements AutoCloseable {
+    private final ScheduledExecutorService timer;
+    private final int citizensPerPlace;
+    private final int clearMargin;
+    private final long delayMillis;
+    private final AtomicInteger citizens = new AtomicInteger();
+    private final AtomicInteger detainees = new AtomicInteger();
+    private final AtomicInteger capacity = new AtomicInteger();
+    private final AtomicInteger demand = new AtomicInteger();
+    private final AtomicLong version = new AtomicLong(); // Bumped by every counter change
+    private final AtomicBoolean evaluationScheduled = new AtomicBoolean();
+    private final List<Consumer<Alert>> listeners = new CopyOnWriteArrayList<>();
+    private volatile ScheduledFuture<?> pendingEvaluation;
+    private volatile boolean closed;
+    private long evaluatedVersion = -1; // Timer thread only
+    private volatile boolean alertRaised; // Written by the timer thread only
+    private volatile int deficit;
+    private volatile long evaluations;
+
+    public CapacityMonitor(ScheduledExecutorService timer, int citizensPerPlace, int clearMargin, long delayMillis) {
+        if (citizensPerPlace < 1 || clearMargin < 0) {
+            throw new IllegalArgumentException("citizensPerPlace must be positive and clearMargin not negative.");
+        }
+        this.timer = timer;
+        this.citizensPerPlace = citizensPerPlace;
+        this.clearMargin = clearMargin;
+        this.delayMillis = delayMillis;
+    }
+
+    public void addAlertListener(Consumer<Alert> listener) {
+        listeners.add(listener);
+    }
+
+    // Counter updates, called by ThreatManagementSystem
+    void citizenAdded(double threatLevel, double threshold) {
+        citizens.incrementAndGet();
+        if (threatLevel >= threshold) {
+            demand.incrementAndGet();
+        }
+        changed();
+    }
+
+    void citizenRemoved(double threatLevel, double threshold) {
+        citizens.decrementAndGet();
+        if (threatLevel >= threshold) {
+            demand.decrementAndGet();
+        }
+        changed();
+    }
+
+    void threatLevelChanged(double oldThreatLevel, double newThreatLevel, double threshold) {
+        boolean before = oldThreatLevel >= threshold;
+        boolean after = newThreatLevel >= threshold;
+        if (before != after) {
+            demand.addAndGet(after ? 1 : -1);
+            changed();
+        }
+    }
+
+    void detaineesChanged(int delta) {
+        detainees.addAndGet(delta);
+        changed();
+    }
+
+    void capacityChanged(int totalCapacity) {
+        if (capacity.getAndSet(totalCapacity) != totalCapacity) {
+            changed();
+        }
+    }
+
+    // Start over from counts taken by the system (after a load, a rebuild or a rescore of paged-out citizens)
+    void recount(int citizenCount, int detaineeCount, int totalCapacity, int demandCount) {
+        citizens.set(citizenCount);
+        detainees.set(detaineeCount);
+        capacity.set(totalCapacity);
+        demand.set(demandCount);
+        changed();
+    }
+
+    // Places missing at the last evaluation (negative = spare places)
+    public int getDeficit() {
+        return deficit;
+    }
+
+    public boolean isAlertRaised() {
+        return alertRaised;
+    }
+
+    // Evaluations run so far: one per burst of changes
+    long getEvaluations() {
+        return evaluations;
+    }
+
+    public String getStatus() {
+        return String.format("Capacity monitor: %,d citizens, %,d detained, capacity %,d, demand %,d, deficit %,d%s (%,d evaluations)",
+                citizens.get(), detainees.get(), capacity.get(), demand.get(), deficit, alertRaised ? " ⚠" : "", evaluations);
+    }
+
+    // No more evaluations; the timer itself belongs to the caller
+    @Override
+    public void close() {
+        closed = true;
+        ScheduledFuture<?> pending = pendingEvaluation;
+        if (pending != null) {
+            pending.cancel(false);
+        }
+    }
+
+    private void changed() {
+        version.incrementAndGet();
+        if (!closed && evaluationScheduled.compareAndSet(false, true)) {
+            try {
+                pendingEvaluation = timer.schedule(this::evaluate, delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                evaluationScheduled.set(false); // The timer was shut down before this monitor was closed
+            }
+        }
+    }
+
+    private void evaluate() {
+        evaluationScheduled.set(false); // Changes from now on schedule the next evaluation
+        long current = version.get();
+        if (closed || current == evaluatedVersion) {
+            return;
+        }
+        evaluatedVersion = current;
+        evaluations++;
+        int citizenCount = citizens.get();
+        int totalCapacity = capacity.get();
+        int demandCount = demand.get();
+        int byRatio = (citizenCount + citizensPerPlace - 1) / citizensPerPlace;
+        int placesNeeded = Math.max(demandCount, byRatio);
+        deficit = placesNeeded - totalCapacity;
+        if (!alertRaised && deficit > 0) {
+            alertRaised = true;
+            publish(new Alert(true, citizenCount, detainees.get(), totalCapacity, demandCount, placesNeeded, deficit));
+        } else if (alertRaised && -deficit >= clearMargin) {
+            alertRaised = false;
+            publish(new Alert(false, citizenCount, detainees.get(), totalCapacity, demandCount, placesNeeded, deficit));
+        }
+    }
+
+    private void publish(Alert alert) {
+        for (Consumer<Alert> listener : listeners) {
+            listener.accept(alert);
+        }
+    }
+
+    // A capacity alert being raised or cleared, with the counts it was decided on
+    public static final class Alert {
+        private final boolean raised;
+        private final int citizens;
+        private final int detainees;
+        private final int capacity;
+        private final int demand;
+        private final int placesNeeded;
+        private final int deficit;
+
+        Alert(boolean raised, int citizens, int detainees, int capacity, int demand, int placesNeeded, int deficit) {
+            this.raised = raised;
+            this.citizens = citizens;
+            this.detainees = detainees;
+            this.capacity = capacity;
+            this.demand = demand;
+            this.placesNeeded = placesNeeded;
+            this.deficit = deficit;
+        }
+
+        public boolean isRaised() {
+            return raised;
+        }
+
+        public int getPlacesNeeded() {
+            return placesNeeded;
+        }
+
+        public int getDeficit() {
+            return deficit;
+        }
+
+        @Override
+        public String toString() {
+            return (raised ? "⚠ Capacity alert: " + deficit + " places short" : "✅ Capacity alert cleared: " + -deficit + " spare places")
+                    + " (needed " + placesNeeded + " for " + citizens + " citizens, " + demand + " above the threshold; capacity "
+                    + capacity + ", " + detainees + " detained)";
+        }
+    }
+}
@@ -10,8 +10,16 @@ public class Citizen {
     private int publicImpactScore; // Scale: 1-10
     private boolean isParliamentMember;
     private double threatLevel; // Scale: 1-1000
-    private boolean isInDetention; // Whether the citizen is in detention
-    private String id; // Unique identifier for the citizen
+    private volatile boolean isInDetention; // Whether the citizen is in detention
+    private long id; // Unique identifier, the key of its digits-only String form (CitizenStore.parseId; getId() gives it back)
+    private ThreatLevelListener threatLevelListener; // Notified on every threat level change
+    private double calculatedThreatLevel; // Memoized result of calculateThreatLevel
+    private boolean threatLevelDirty = true; // A scoring input changed since the last calculation
+    private LocalDate nextBracketChange; // The memoized score expires on this day (next age bracket change)
+    private ThreatScoringRules scoredWith; // The rules the memoized score was calculated with
+    private int age; // Memoized age in years, valid from ageFrom until the day before nextBirthday
+    private LocalDate ageFrom; // null = not worked out yet (or the birth date changed)
+    private LocalDate nextBirthday;
 
     public Citizen(String name, LocalDate birthDate, String origin, int economicPercentile, int governmentSupportLevel,
                    int publicImpactScore, boolean isParliamentMember, String id) {
@@ -33,7 +41,8 @@ public class Citizen {
         if (publicImpactScore < 1 || publicImpactScore > 10) {
             throw new IllegalArgumentException("שגיאה: מדד השפעה ציבורית חייב להיות בין 1 ל-10.");
         }
-        if (id == null || !id.matches("\\d+")) {
+        long numericId = CitizenStore.parseId(id);
+        if (numericId < 0) {
             throw new IllegalArgumentException("שגיאה: מזהה חייב להיות מורכב מספרות בלבד.");
         }
 
@@ -44,47 +53,114 @@ public class Citizen {
         this.governmentSupportLevel = governmentSupportLevel;
         this.publicImpactScore = publicImpactScore;
         this.isParliamentMember = isParliamentMember;
-        this.id = id;
+        this.id = numericId;
         this.isInDetention = false;
         
         // Finally calculate the threat level
         this.threatLevel = calculateThreatLevel();
     }
 
-    // Method to calculate threat level
+    // Method to calculate threat level with the current ThreatScoringRules; memoized until a scoring input changes,
+    // the age bracket rolls over or the rules are swapped
     public double calculateThreatLevel() {
-        double baseThreat =  (10-governmentSupportLevel) * 20 + (publicImpactScore *20);
-        int age = calculateAge();
-        if (age >= 20 && age <= 50) {
-            baseThreat += 100; // More active age group increases threat
+        LocalDate today = LocalDate.now();
+        ThreatScoringRules rules = ThreatScoringRules.getCurrent();
+        if (isThreatLevelStale(today, rules)) {
+            calculatedThreatLevel = rules.score(ageOn(today), origin, economicPercentile, governmentSupportLevel,
+                    publicImpactScore, isParliamentMember);
+            nextBracketChange = calculateNextBracketChange(today, rules);
+            scoredWith = rules;
+            threatLevelDirty = false;
         }
-        if ((age > 50 && age <= 75)||(age >= 15 && age <20)) {
-            baseThreat += 50; // More active age group increases threat
+        return calculatedThreatLevel;
+    }
+
+    // First day after today on which the citizen's age enters another age band of the rules, or LocalDate.MAX
+    private LocalDate calculateNextBracketChange(LocalDate today, ThreatScoringRules rules) {
+        for (int bracketAge : rules.ageBreaks) {
+            LocalDate change = birthday(bracketAge);
+            if (change.isAfter(today)) {
+                return change;
+            }
         }
-        if ("B".equalsIgnoreCase(origin)) {
-            baseThreat += 40; // Moderate threat
-        } else if ("C".equalsIgnoreCase(origin)) {
-            baseThreat += 80; // High threat
+        return LocalDate.MAX;
+    }
+
+    // The day the citizen turns the given age
+    private LocalDate birthday(int years) {
+        LocalDate day = birthDate.plusYears(years);
+        if (Period.between(birthDate, day).getYears() < years) {
+            day = day.plusDays(1); // Born on Feb 29: the birthday counts from Mar 1 in non-leap years
         }
-        baseThreat += economicPercentile * 20;
+        return day;
+    }
 
-        if (isParliamentMember) {
-            baseThreat *= 1.25; // Increase by 25% if they are a parliament member
+    // Age in years on the given day; Period.between runs again only once the day leaves the memoized year of age
+    int ageOn(LocalDate today) {
+        if (ageFrom == null || today.isBefore(ageFrom) || !today.isBefore(nextBirthday)) {
+            age = Period.between(birthDate, today).getYears();
+            ageFrom = birthday(age);
+            nextBirthday = birthday(age + 1);
         }
-        
-        return Math.min(1000, Math.max(1, baseThreat)); // Ensure it's within 1-1000
+        return age;
+    }
+
+    // Whether the memoized score is stale on the given day (changed input, age bracket rollover or new rules)
+    boolean isThreatLevelStale(LocalDate today) {
+        return isThreatLevelStale(today, ThreatScoringRules.getCurrent());
+    }
+
+    private boolean isThreatLevelStale(LocalDate today, ThreatScoringRules rules) {
+        return threatLevelDirty || scoredWith != rules || !today.isBefore(nextBracketChange);
     }
 
     // Update threat level after changes
     public void updateThreatLevel() {
-        this.threatLevel = calculateThreatLevel();
+        applyThreatLevel(calculateThreatLevel());
+    }
+
+    // A scoring input changed: drop the memoized score and recalculate
+    private void recalculateThreatLevel() {
+        threatLevelDirty = true;
+        if (threatLevelListener != null) {
+            threatLevelListener.citizenChanged(this);
+        }
+        updateThreatLevel();
+    }
+
+    // Store a threat level computed in bulk (CitizenTable.scoreAll) for this citizen's current data
+    void applyComputedThreatLevel(double computedThreatLevel) {
+        applyThreatLevel(computedThreatLevel);
+    }
+
+    // Store a new threat level and notify the listener if it actually changed
+    private void applyThreatLevel(double newThreatLevel) {
+        double oldThreatLevel = this.threatLevel;
+        this.threatLevel = newThreatLevel;
+        if (threatLevelListener != null && oldThreatLevel != newThreatLevel) {
+            threatLevelListener.threatLevelChanged(this, oldThreatLevel);
+        }
+    }
+
+    public void setThreatLevelListener(ThreatLevelListener threatLevelListener) {
+        this.threatLevelListener = threatLevelListener;
     }
 
     // Set whether the citizen is in detention
-    public void setInDetention(boolean isInDetention) {
+    public synchronized void setInDetention(boolean isInDetention) {
         this.isInDetention = isInDetention;
     }
 
+    // Mark a free citizen as detained; false if it already is. Lets two threads filling different facilities
+    // (see ThreatManagementSystem.admitToFacility) claim the same citizen without both detaining it.
+    synchronized boolean claimForDetention() {
+        if (isInDetention) {
+            return false;
+        }
+        isInDetention = true;
+        return true;
+    }
+
     // Getter for detention status
     public boolean isInDetention() {
         return isInDetention;
@@ -100,7 +176,14 @@ public class Citizen {
             System.out.println("שגיאה: שם האזרח לא יכול להיות ריק. חזור שנית.");
             return;
         }
+        String oldName = this.name;
+        if (threatLevelListener != null) {
+            threatLevelListener.citizenChanged(this);
+        }
         this.name = name;
+        if (threatLevelListener != null) {
+            threatLevelListener.citizenRenamed(this, oldName); // The system's name index
+        }
         updateThreatLevel();
     }
 
@@ -114,11 +197,12 @@ public class Citizen {
             return;
         }
         this.birthDate = birthDate;
-        updateThreatLevel();
+        ageFrom = null;
+        recalculateThreatLevel();
     }
 
     public int calculateAge() {
-        return Period.between(birthDate, LocalDate.now()).getYears();
+        return ageOn(LocalDate.now());
     }
 
     public String getOrigin() {
@@ -131,7 +215,7 @@ public class Citizen {
             return;
         }
         this.origin = origin;
-        updateThreatLevel();
+        recalculateThreatLevel();
     }
 
     public int getEconomicPercentile() {
@@ -144,7 +228,7 @@ public class Citizen {
             return;
         }
         this.economicPercentile = economicPercentile;
-        updateThreatLevel();
+        recalculateThreatLevel();
     }
 
     public int getGovernmentSupportLevel() {
@@ -157,7 +241,7 @@ public class Citizen {
             return;
         }
         this.governmentSupportLevel = governmentSupportLevel;
-        updateThreatLevel();
+        recalculateThreatLevel();
     }
 
     public int getPublicImpactScore() {
@@ -170,7 +254,7 @@ public class Citizen {
             return;
         }
         this.publicImpactScore = publicImpactScore;
-        updateThreatLevel();
+        recalculateThreatLevel();
     }
 
     public boolean isParliamentMember() {
@@ -179,7 +263,7 @@ public class Citizen {
 
     public void setParliamentMember(boolean parliamentMember) {
         isParliamentMember = parliamentMember;
-        updateThreatLevel();
+        recalculateThreatLevel();
     }
 
     public double getThreatLevel() {
@@ -187,15 +271,24 @@ public class Citizen {
     }
 
     public String getId() {
+        return CitizenStore.idText(id);
+    }
+
+    public long getNumericId() {
         return id;
     }
 
     public void setId(String id) {
-        if (id == null || !id.matches("\\d+")) {
+        if (threatLevelListener != null) {
+            System.out.println("שגיאה: לא ניתן לשנות מזהה של אזרח הרשום במערכת.");
+            return; // The ID is the key of the system's indexes
+        }
+        long numericId = CitizenStore.parseId(id);
+        if (numericId < 0) {
             System.out.println("שגיאה: מזהה חייב להיות מורכב מספרות בלבד. חזור שנית.");
             return;
         }
-        this.id = id;
+        this.id = numericId;
     }
 
     @Override
@@ -211,18 +304,18 @@ public class Citizen {
                 ", isParliamentMember=" + isParliamentMember +
                 ", threatLevel=" + threatLevel +
                 ", isInDetention=" + isInDetention +
-                ", id='" + id + '\'' +
+                ", id='" + getId() + '\'' +
                 '}';
     }
 
     // Update threat level to the minimum value
     public void updateThreatLevelToMinimum() {
-        this.threatLevel = 1.0;
+        applyThreatLevel(1.0);
     }
 
     // Set the threat level to the maximum value
     public void setThreatLevelToMax() {
-        this.threatLevel = 1000.0;
+        applyThreatLevel(1000.0);
     }
 
     // New method to set threat level manually
@@ -231,7 +324,7 @@ public class Citizen {
             System.out.println("שגיאה: מדד האיום חייב להיות בין 1 ל-1000.");
             return;
         }
-        this.threatLevel = threatLevel;
+        applyThreatLevel(threatLevel);
     }
  // "Report" methods for the manager to change economicPercentile, governmentSupportLevel, and publicImpactScore
     public void reportEconomicPercentile(int newEconomicPercentile) {
@@ -240,7 +333,7 @@ public class Citizen {
             return;
         }
         this.economicPercentile = newEconomicPercentile;
-        updateThreatLevel(); // Automatically update threat level
+        recalculateThreatLevel(); // Automatically update threat level
     }
 
     public void reportGovernmentSupportLevel(int newGovernmentSupportLevel) {
@@ -249,7 +342,7 @@ public class Citizen {
             return;
         }
         this.governmentSupportLevel = newGovernmentSupportLevel;
-        updateThreatLevel(); // Automatically update threat level
+        recalculateThreatLevel(); // Automatically update threat level
     }
 
     public void reportPublicImpactScore(int newPublicImpactScore) {
@@ -258,7 +351,7 @@ public class Citizen {
             return;
         }
         this.publicImpactScore = newPublicImpactScore;
-        updateThreatLevel(); // Automatically update threat level
+        recalculateThreatLevel(); // Automatically update threat level
     }
 
 }
@@ -0,0 +1,166 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// מטמון חסום לאזרחים שנקראו מהדיסק (ראו CitizenRepository), בשיטת W-TinyLFU.
+// A new entry goes into a small LRU window. When it leaves the window it only gets into the main area (a segmented LRU:
+// probation, then protected after a second hit) if it was requested more often than the entry it would push out,
+// according to a count-min sketch of recent request frequencies. A one-off walk over many citizens (an export, a
+// history query) therefore can't flush the citizens that are looked up again and again.
+// Not thread safe: call on the thread that owns the citizens (the EDT).
+final class CitizenCache {
+    private final int capacity;
+    private final int windowCapacity;
+    private final int protectedCapacity;
+    private final LinkedHashMap<Long, Citizen> window = new LinkedHashMap<>(16, 0.75f, true); // Access order = LRU
+    private final LinkedHashMap<Long, Citizen> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Long, Citizen> protectedArea = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    CitizenCache(int capacity) {
+        this.capacity = Math.max(2, capacity);
+        this.windowCapacity = Math.max(1, this.capacity / 100);
+        this.protectedCapacity = (this.capacity - windowCapacity) * 4 / 5;
+        this.sketch = new FrequencySketch(this.capacity);
+    }
+
+    // The cached citizen, or null on a miss (the caller reads it from the disk and put()s it)
+    Citizen get(long id) {
+        sketch.increment(id);
+        Long key = id;
+        Citizen citizen = window.get(key);
+        if (citizen == null) {
+            citizen = protectedArea.get(key);
+        }
+        if (citizen == null) {
+            citizen = probation.remove(key);
+            if (citizen != null) {
+                protectedArea.put(key, citizen); // Second hit in the main area
+                if (protectedArea.size() > protectedCapacity) {
+                    Map.Entry<Long, Citizen> demoted = eldest(protectedArea);
+                    protectedArea.remove(demoted.getKey());
+                    probation.put(demoted.getKey(), demoted.getValue());
+                }
+            }
+        }
+        if (citizen != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return citizen;
+    }
+
+    void put(Citizen citizen) {
+        window.put(citizen.getNumericId(), citizen);
+        if (window.size() <= windowCapacity) {
+            return;
+        }
+        Map.Entry<Long, Citizen> candidate = eldest(window);
+        window.remove(candidate.getKey());
+        if (probation.size() + protectedArea.size() < capacity - windowCapacity) {
+            probation.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+        LinkedHashMap<Long, Citizen> victims = probation.isEmpty() ? protectedArea : probation;
+        Map.Entry<Long, Citizen> victim = eldest(victims);
+        evictions++;
+        if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey())) {
+            victims.remove(victim.getKey());
+            probation.put(candidate.getKey(), candidate.getValue());
+        } // Otherwise the candidate is the one dropped
+    }
+
+    void invalidate(long id) {
+        Long key = id;
+        if (window.remove(key) == null && probation.remove(key) == null) {
+            protectedArea.remove(key);
+        }
+    }
+
+    void clear() {
+        window.clear();
+        probation.clear();
+        protectedArea.clear();
+    }
+
+    int size() {
+        return window.size() + probation.size() + protectedArea.size();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+
+    long getEvictions() {
+        return evictions;
+    }
+
+    private static Map.Entry<Long, Citizen> eldest(LinkedHashMap<Long, Citizen> map) {
+        return map.entrySet().iterator().next();
+    }
+
+    // Count-min sketch with 4-bit counters (16 per long, one long per cached entry), 4 rows sharing one table. All
+    // counters are halved every 10 x capacity increments, so the frequencies follow recent requests rather than the whole history.
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int length = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+            table = new long[length];
+            mask = length - 1;
+            sampleSize = 10 * capacity;
+        }
+
+        void increment(long id) {
+            boolean added = false;
+            for (long seed : SEEDS) {
+                long hash = hash(id, seed);
+                int slot = (int) hash & mask;
+                int shift = (int) (hash >>> 60) << 2; // One of the 16 counters in the slot
+                if (((table[slot] >>> shift) & 15) < 15) {
+                    table[slot] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(long id) {
+            int frequency = 15;
+            for (long seed : SEEDS) {
+                long hash = hash(id, seed);
+                int shift = (int) (hash >>> 60) << 2;
+                frequency = Math.min(frequency, (int) ((table[(int) hash & mask] >>> shift) & 15));
+            }
+            return frequency;
+        }
+
+        private static long hash(long id, long seed) {
+            long hash = (id ^ seed) * 0xBF58476D1CE4E5B9L;
+            hash ^= hash >>> 31;
+            hash *= 0x94D049BB133111EBL;
+            return hash ^ (hash >>> 29);
+        }
+    }
+}
@@ -0,0 +1,419 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.LongPredicate;
+import java.util.zip.CRC32;
+
+// טעינה מקבילית של קובץ אזרחים גדול (פורמט citizens.txt) - בלי הדפסה לכל שורה.
+// The file is cut into byte ranges on line boundaries; each range is read and parsed on the worker pool by a
+// byte-level field parser (no split, no regex, one String per name and ID). Meanwhile the calling thread checks the
+// checksum trailer. IDs are then deduplicated in file order on the calling thread: the first line with an ID wins,
+// as in the citizen index. Bad lines go to Result.rejected instead of the console.
+final class CitizenCsvIngest {
+    private static final int CHUNK_BYTES = 4 << 20;
+    private static final int FIELDS = 9;
+    private static final byte[] CHECKSUM_PREFIX = "#checksum,".getBytes(StandardCharsets.US_ASCII);
+
+    // Outcome of one ingest; nothing has been added to the system yet
+    static final class Result {
+        final List<Citizen> citizens; // Accepted, in file order
+        final List<String> rejected; // "line <n>: <reason>: <line>"
+        final int lineCount;
+
+        Result(List<Citizen> citizens, List<String> rejected, int lineCount) {
+            this.citizens = citizens;
+            this.rejected = rejected;
+            this.lineCount = lineCount;
+        }
+    }
+
+    private CitizenCsvIngest() {
+    }
+
+    // Parse a citizens file from the data folder. pool may be null (parse on the calling thread); existingIds tells
+    // which IDs are already in the store, so those lines are rejected as duplicates too.
+    // Returns null and keeps a .corrupt copy if the checksum trailer doesn't match, like DataHandler.readVerifiedLines.
+    static Result ingest(String filename, ForkJoinPool pool, LongPredicate existingIds) throws IOException {
+        Path path = DataHandler.getDataPath(filename);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            String trailer = null;
+            long dataEnd = fileSize;
+            long trailerStart = lastLineStart(channel, fileSize);
+            if (trailerStart >= 0) {
+                byte[] last = new byte[(int) (fileSize - trailerStart)];
+                readFully(channel, last, trailerStart);
+                if (startsWith(last, CHECKSUM_PREFIX)) {
+                    trailer = new String(last, StandardCharsets.UTF_8).trim().substring(CHECKSUM_PREFIX.length);
+                    dataEnd = trailerStart;
+                }
+            }
+
+            List<Chunk> chunks = new ArrayList<>();
+            for (long start = 0; start < dataEnd; ) {
+                long end = start + CHUNK_BYTES >= dataEnd ? dataEnd : nextLineStart(channel, start + CHUNK_BYTES, dataEnd);
+                chunks.add(new Chunk(channel, start, (int) (end - start)));
+                start = end;
+            }
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            if (pool != null) {
+                for (Chunk chunk : chunks) {
+                    tasks.add(pool.submit(chunk::parse));
+                }
+            }
+            long checksum = trailer != null ? checksum(channel, dataEnd) : 0; // Overlaps with the parsing
+            if (pool == null) {
+                for (Chunk chunk : chunks) {
+                    chunk.parse();
+                }
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+            int lines = 0;
+            for (Chunk chunk : chunks) {
+                if (chunk.failure != null) {
+                    throw chunk.failure;
+                }
+                lines += chunk.lineCount;
+            }
+            if (trailer != null) {
+                String[] parts = trailer.split(",");
+                if (parts.length != 2 || !parts[0].equals(Long.toHexString(checksum))
+                        || !parts[1].equals(Integer.toString(lines))) {
+                    DataHandler.keepCorruptCopy(filename);
+                    return null;
+                }
+            }
+            return merge(chunks, existingIds);
+        }
+    }
+
+    // Dedupe in file order and number the rejected lines
+    private static Result merge(List<Chunk> chunks, LongPredicate existingIds) {
+        int total = 0;
+        for (Chunk chunk : chunks) {
+            total += chunk.citizens.size();
+        }
+        List<Citizen> accepted = new ArrayList<>(total);
+        List<String> rejected = new ArrayList<>();
+        LongIntMap firstLine = new LongIntMap();
+        int lineBase = 0;
+        for (Chunk chunk : chunks) {
+            int next = 0;
+            for (int i = 0; i < chunk.citizens.size(); i++) {
+                int line = lineBase + chunk.citizenLines[i] + 1;
+                while (next < chunk.rejected.size() && chunk.rejectedLines[next] + lineBase + 1 < line) {
+                    rejected.add("line " + (chunk.rejectedLines[next] + lineBase + 1) + ": " + chunk.rejected.get(next));
+                    next++;
+                }
+                Citizen citizen = chunk.citizens.get(i);
+                long id = citizen.getNumericId();
+                int first = firstLine.get(id); // 0: already in the store
+                if (first < 0 && existingIds.test(id)) {
+                    firstLine.put(id, first = 0);
+                }
+                if (first == 0) {
+                    rejected.add("line " + line + ": ID " + citizen.getId() + " already exists");
+                } else if (first > 0) {
+                    rejected.add("line " + line + ": duplicate ID " + citizen.getId() + " (first on line " + first + ")");
+                } else {
+                    firstLine.put(id, line);
+                    accepted.add(citizen);
+                }
+            }
+            for (; next < chunk.rejected.size(); next++) {
+                rejected.add("line " + (chunk.rejectedLines[next] + lineBase + 1) + ": " + chunk.rejected.get(next));
+            }
+            lineBase += chunk.lineCount;
+        }
+        return new Result(accepted, rejected, lineBase);
+    }
+
+    // One byte range of the file, parsed by one worker
+    private static final class Chunk {
+        private final FileChannel channel;
+        private final long start;
+        private final int length;
+        final List<Citizen> citizens = new ArrayList<>();
+        int[] citizenLines = new int[16]; // Line of each citizen, counted from the start of the chunk
+        final List<String> rejected = new ArrayList<>();
+        int[] rejectedLines = new int[4];
+        int lineCount;
+        IOException failure;
+
+        Chunk(FileChannel channel, long start, int length) {
+            this.channel = channel;
+            this.start = start;
+            this.length = length;
+        }
+
+        void parse() {
+            byte[] bytes = new byte[length];
+            try {
+                readFully(channel, bytes, start);
+            } catch (IOException e) {
+                failure = e;
+                return;
+            }
+            LineParser parser = new LineParser();
+            int from = 0;
+            while (from < length) {
+                int to = from;
+                while (to < length && bytes[to] != '\n') {
+                    to++;
+                }
+                if (!isBlank(bytes, from, to)) {
+                    Citizen citizen = parser.parse(bytes, from, to);
+                    if (citizen != null) {
+                        if (citizens.size() == citizenLines.length) {
+                            citizenLines = Arrays.copyOf(citizenLines, citizenLines.length * 2);
+                        }
+                        citizenLines[citizens.size()] = lineCount;
+                        citizens.add(citizen);
+                    } else {
+                        if (rejected.size() == rejectedLines.length) {
+                            rejectedLines = Arrays.copyOf(rejectedLines, rejectedLines.length * 2);
+                        }
+                        rejectedLines[rejected.size()] = lineCount;
+                        rejected.add(parser.error + ": " + new String(bytes, from, to - from, StandardCharsets.UTF_8).trim());
+                    }
+                }
+                lineCount++;
+                from = to + 1;
+            }
+        }
+    }
+
+    // Field parser for one citizens.txt line: name,birth date,origin,economic,support,impact,parliament,id,detained
+    static final class LineParser {
+        private final int[] fieldStart = new int[FIELDS];
+        private final int[] fieldEnd = new int[FIELDS];
+        String error; // Why the last parse returned null
+
+        // Parse bytes[from, to) (UTF-8, no line break); returns null and sets error on a bad line
+        Citizen parse(byte[] bytes, int from, int to) {
+            int field = 0;
+            int start = from;
+            for (int i = from; i <= to; i++) {
+                if (i == to || bytes[i] == ',') {
+                    if (field == FIELDS) {
+                        return reject("expected " + FIELDS + " fields, found more");
+                    }
+                    fieldStart[field] = start;
+                    fieldEnd[field] = i;
+                    trim(bytes, field);
+                    field++;
+                    start = i + 1;
+                }
+            }
+            if (field != FIELDS) {
+                return reject("expected " + FIELDS + " fields, found " + field);
+            }
+
+            LocalDate birthDate = parseDate(bytes, fieldStart[1], fieldEnd[1]);
+            if (birthDate == null) {
+                return reject("invalid birth date");
+            }
+            String origin = parseOrigin(bytes, fieldStart[2], fieldEnd[2]);
+            if (origin == null) {
+                return reject("invalid origin");
+            }
+            int economicPercentile = parseInt(bytes, fieldStart[3], fieldEnd[3]);
+            int governmentSupportLevel = parseInt(bytes, fieldStart[4], fieldEnd[4]);
+            int publicImpactScore = parseInt(bytes, fieldStart[5], fieldEnd[5]);
+            if (economicPercentile == Integer.MIN_VALUE || governmentSupportLevel == Integer.MIN_VALUE
+                    || publicImpactScore == Integer.MIN_VALUE) {
+                return reject("invalid number");
+            }
+            int parliamentMember = parseBoolean(bytes, fieldStart[6], fieldEnd[6]);
+            int inDetention = parseBoolean(bytes, fieldStart[8], fieldEnd[8]);
+            if (parliamentMember < 0 || inDetention < 0) {
+                return reject("invalid true/false value");
+            }
+            String id = new String(bytes, fieldStart[7], fieldEnd[7] - fieldStart[7], StandardCharsets.ISO_8859_1);
+            if (CitizenStore.parseId(id) < 0) {
+                return reject("ID must be numeric");
+            }
+            String name = new String(bytes, fieldStart[0], fieldEnd[0] - fieldStart[0], StandardCharsets.UTF_8);
+            try {
+                Citizen citizen = new Citizen(name, birthDate, origin, economicPercentile, governmentSupportLevel,
+                        publicImpactScore, parliamentMember == 1, id);
+                citizen.setInDetention(inDetention == 1);
+                return citizen;
+            } catch (IllegalArgumentException e) {
+                return reject(e.getMessage());
+            }
+        }
+
+        private Citizen reject(String reason) {
+            error = reason;
+            return null;
+        }
+
+        private void trim(byte[] bytes, int field) {
+            while (fieldStart[field] < fieldEnd[field] && (bytes[fieldStart[field]] & 0xFF) <= ' ') {
+                fieldStart[field]++;
+            }
+            while (fieldEnd[field] > fieldStart[field] && (bytes[fieldEnd[field] - 1] & 0xFF) <= ' ') {
+                fieldEnd[field]--;
+            }
+        }
+    }
+
+    // yyyy-MM-dd without going through the DateTimeFormatter; anything else falls back to LocalDate.parse
+    private static LocalDate parseDate(byte[] bytes, int from, int to) {
+        try {
+            if (to - from == 10 && bytes[from + 4] == '-' && bytes[from + 7] == '-') {
+                int year = parseInt(bytes, from, from + 4);
+                int month = parseInt(bytes, from + 5, from + 7);
+                int day = parseInt(bytes, from + 8, to);
+                if (year >= 0 && month >= 0 && day >= 0) {
+                    return LocalDate.of(year, month, day);
+                }
+            }
+            return LocalDate.parse(new String(bytes, from, to - from, StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String parseOrigin(byte[] bytes, int from, int to) {
+        if (to - from != 1) {
+            return null;
+        }
+        switch (bytes[from]) {
+            case 'A': return "A";
+            case 'B': return "B";
+            case 'C': return "C";
+            case 'a': return "a";
+            case 'b': return "b";
+            case 'c': return "c";
+            default: return null;
+        }
+    }
+
+    // Optional sign and up to 9 digits; Integer.MIN_VALUE if malformed
+    private static int parseInt(byte[] bytes, int from, int to) {
+        boolean negative = false;
+        if (from < to && (bytes[from] == '-' || bytes[from] == '+')) {
+            negative = bytes[from] == '-';
+            from++;
+        }
+        if (from == to || to - from > 9) {
+            return Integer.MIN_VALUE;
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    // 1 for true, 0 for false (any case), -1 otherwise
+    private static int parseBoolean(byte[] bytes, int from, int to) {
+        if (matchesIgnoreCase(bytes, from, to, "true")) return 1;
+        if (matchesIgnoreCase(bytes, from, to, "false")) return 0;
+        return -1;
+    }
+
+    private static boolean matchesIgnoreCase(byte[] bytes, int from, int to, String word) {
+        if (to - from != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if ((bytes[from + i] | 0x20) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isBlank(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if ((bytes[i] & 0xFF) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        if (bytes.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Start of the first line beginning at or after position, or end if there is none
+    private static long nextLineStart(FileChannel channel, long position, long end) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(1 << 16);
+        long at = position - 1;
+        while (at < end) {
+            window.clear();
+            int read = channel.read(window, at);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read && at + i < end; i++) {
+                if (window.get(i) == '\n') {
+                    return at + i + 1;
+                }
+            }
+            at += read;
+        }
+        return end;
+    }
+
+    // Start of the last non-empty line (ignoring a final line break), or -1 for an empty file
+    private static long lastLineStart(FileChannel channel, long fileSize) throws IOException {
+        if (fileSize == 0) {
+            return -1;
+        }
+        int tail = (int) Math.min(fileSize, 256); // Longer than any checksum trailer
+        byte[] bytes = new byte[tail];
+        readFully(channel, bytes, fileSize - tail);
+        int end = bytes[tail - 1] == '\n' ? tail - 1 : tail;
+        for (int i = end - 1; i >= 0; i--) {
+            if (bytes[i] == '\n') {
+                return fileSize - tail + i + 1;
+            }
+        }
+        return tail == fileSize ? 0 : -1;
+    }
+
+    private static long checksum(FileChannel channel, long length) throws IOException {
+        CRC32 checksum = new CRC32();
+        for (long at = 0; at < length; at += Integer.MAX_VALUE) {
+            checksum.update(channel.map(FileChannel.MapMode.READ_ONLY, at, Math.min(Integer.MAX_VALUE, length - at)));
+        }
+        return checksum.getValue();
+    }
+
+    private static void readFully(FileChannel channel, byte[] bytes, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+}
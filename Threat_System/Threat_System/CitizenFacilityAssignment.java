@@ -2,17 +2,34 @@ import java.io.*;
 import java.time.LocalDateTime;
 import java.time.Duration;
 import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.List;
 
 public class CitizenFacilityAssignment {
-    private Citizen citizen;
-    private Facility facility;
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private Citizen citizen; // null if the citizen is no longer in the system (history records)
+    private Facility facility; // null if the facility is no longer in the system (history records)
+    private final String citizenId;
+    private final String facilityId;
     private LocalDateTime assignedDate;
     private LocalDateTime releaseDate;
 
     public CitizenFacilityAssignment(Citizen citizen, Facility facility, LocalDateTime assignedDate) {
+        this(citizen.getId(), citizen, facility.getFacilityId(), facility, assignedDate, null);
+    }
+
+    // A stay read back from the detention history; citizen and facility may be null, the IDs never are
+    CitizenFacilityAssignment(String citizenId, Citizen citizen, String facilityId, Facility facility,
+                              LocalDateTime assignedDate, LocalDateTime releaseDate) {
         this.citizen = citizen;
         this.facility = facility;
+        this.citizenId = citizenId;
+        this.facilityId = facilityId;
         this.assignedDate = assignedDate;
+        if (releaseDate != null) {
+            setReleaseDate(releaseDate);
+        }
     }
 
     public void setReleaseDate(LocalDateTime releaseDate) {
@@ -23,15 +40,25 @@ public class CitizenFacilityAssignment {
     }
 
     public void exportAssignmentData(String fileName) throws IOException {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName, true))) {
-            writer.write("Citizen Name: " + citizen.getName() + ", Citizen ID: " + citizen.getId() +
-                         ", Facility: " + facility.getName() + 
-                         ", Assigned: " + assignedDate.format(formatter) + 
-                         ", Released: " + (releaseDate != null ? releaseDate.format(formatter) : "Still Detained") + "\n");
+        exportAssignments(List.of(this), fileName);
+    }
+
+    // Append many assignments to a file with a single open and one buffered writer
+    public static void exportAssignments(Collection<CitizenFacilityAssignment> assignments, String fileName) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName, true), 1 << 16)) {
+            for (CitizenFacilityAssignment assignment : assignments) {
+                assignment.writeTo(writer);
+            }
         }
     }
 
+    void writeTo(Writer writer) throws IOException {
+        writer.write("Citizen Name: " + getCitizenName() + ", Citizen ID: " + citizenId +
+                     ", Facility: " + getFacilityName() +
+                     ", Assigned: " + assignedDate.format(FORMATTER) +
+                     ", Released: " + (releaseDate != null ? releaseDate.format(FORMATTER) : "Still Detained") + "\n");
+    }
+
     public long calculateDetentionDuration() {
         LocalDateTime endDate = (releaseDate != null) ? releaseDate : LocalDateTime.now();
         return Duration.between(assignedDate, endDate).toDays();
@@ -45,23 +72,36 @@ public class CitizenFacilityAssignment {
         return facility;
     }
 
+    public String getCitizenId() {
+        return citizenId;
+    }
+
+    public String getFacilityId() {
+        return facilityId;
+    }
+
     public LocalDateTime getAssignedDate() {
         return assignedDate;
     }
 
+    // null while the citizen is still detained
+    public LocalDateTime getReleaseDate() {
+        return releaseDate;
+    }
+
     public String getCitizenName() {
-        return citizen.getName();
+        return citizen != null ? citizen.getName() : "(ID " + citizenId + ")";
     }
 
     public String getFacilityName() {
-        return facility.getName();
+        return facility != null ? facility.getName() : "(ID " + facilityId + ")";
     }
 
     @Override
     public String toString() {
         return "CitizenFacilityAssignment{" +
-                "citizen=" + citizen +
-                ", facility=" + facility +
+                "citizen=" + (citizen != null ? citizen : citizenId) +
+                ", facility=" + (facility != null ? facility : facilityId) +
                 ", assignedDate=" + assignedDate +
                 ", releaseDate=" + releaseDate +
                 '}';
@@ -0,0 +1,253 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+// ייצוא היסטוריית האזרחים בזרימה - טקסט (הפורמט הישן), CSV או JSON Lines, עם דחיסת gzip אופציונלית.
+// The citizen list is never copied: a cursor copies BATCH_ROWS rows at a time on the thread that owns the list
+// (the EDT when called from the GUI) and formats them on the exporting thread into one reused buffer.
+// Every row is consistent, but citizens added or removed while an export runs may be missed or written twice.
+// In tiered mode the paged-out citizens follow, read straight from the mapped snapshot on the exporting thread.
+public class CitizenHistoryExport {
+    public enum Format { TEXT, CSV, JSONL }
+
+    public interface Progress {
+        void update(int rowsWritten, int totalRows);
+    }
+
+    private static final int BATCH_ROWS = 8192;
+
+    private final List<Citizen> citizens;
+    private final CitizenRepository.ColdSet pagedOut; // null when every citizen is in the list
+    private final String fileName;
+    private final Format format;
+    private final boolean gzip;
+
+    // Format and compression from the file name: .csv, .jsonl (or .json), anything else is text; .gz compresses
+    public CitizenHistoryExport(List<Citizen> citizens, String fileName) {
+        this(citizens, null, fileName);
+    }
+
+    CitizenHistoryExport(List<Citizen> citizens, CitizenRepository.ColdSet pagedOut, String fileName) {
+        this.citizens = citizens;
+        this.pagedOut = pagedOut;
+        this.fileName = fileName;
+        String name = fileName.toLowerCase(Locale.ROOT);
+        this.gzip = name.endsWith(".gz");
+        if (gzip) {
+            name = name.substring(0, name.length() - 3);
+        }
+        if (name.endsWith(".csv")) {
+            format = Format.CSV;
+        } else if (name.endsWith(".jsonl") || name.endsWith(".json")) {
+            format = Format.JSONL;
+        } else {
+            format = Format.TEXT;
+        }
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    // Write the export and return the number of rows written. owner runs a task on the thread that owns the citizen
+    // list and waits for it (Runnable::run when that is the calling thread). progress may be null; cancelled is
+    // checked between batches. Plain text is appended to the file like before; other formats replace it.
+    // The export is written to a temp file next to the target (a copy of the target when appending), which replaces
+    // the target only once it is complete: a failed export, or a cancelled one (CancellationException), leaves the
+    // file as it was.
+    public int run(Consumer<Runnable> owner, Progress progress, BooleanSupplier cancelled) throws IOException {
+        boolean append = format == Format.TEXT && !gzip;
+        Path target = Paths.get(fileName).toAbsolutePath();
+        Path temp = Files.createFile(target.resolveSibling(target.getFileName() + "." + System.nanoTime() + ".tmp"));
+        try {
+            if (append && Files.exists(target)) {
+                Files.copy(target, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            int written = write(temp, owner, progress, cancelled);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return written;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private int write(Path temp, Consumer<Runnable> owner, Progress progress, BooleanSupplier cancelled) throws IOException {
+        Cursor cursor = new Cursor(owner);
+        int written = 0;
+        StringBuilder text = new StringBuilder(1 << 16);
+        char[] chars = new char[1 << 16];
+        try (OutputStream file = Files.newOutputStream(temp, StandardOpenOption.APPEND);
+             Writer writer = new OutputStreamWriter(gzip ? new GZIPOutputStream(file, 1 << 16) : new BufferedOutputStream(file, 1 << 16),
+                     StandardCharsets.UTF_8)) {
+            if (format == Format.TEXT) {
+                text.append("Citizen History Export - ").append(LocalDateTime.now()).append('\n');
+            } else if (format == Format.CSV) {
+                text.append("name,id,threatLevel,inDetention\n");
+            }
+            while (true) {
+                if (cancelled.getAsBoolean()) {
+                    throw new CancellationException("History export to " + fileName + " cancelled");
+                }
+                if (!cursor.fetch()) {
+                    break;
+                }
+                for (int row = 0; row < cursor.count; row++) {
+                    appendRow(text, cursor.names[row], cursor.ids[row], cursor.threatLevels[row], cursor.inDetention[row]);
+                }
+                written += cursor.count;
+                chars = flush(writer, text, chars);
+                if (progress != null) {
+                    progress.update(written, Math.max(written, cursor.total));
+                }
+            }
+            flush(writer, text, chars);
+        }
+        return written;
+    }
+
+    private void appendRow(StringBuilder text, String name, String id, double threatLevel, boolean inDetention) {
+        switch (format) {
+            case CSV:
+                appendCsv(text, name).append(',').append(id).append(',').append(threatLevel).append(',').append(inDetention).append('\n');
+                break;
+            case JSONL:
+                text.append("{\"name\":");
+                appendJson(text, name).append(",\"id\":\"").append(id).append("\",\"threatLevel\":").append(threatLevel)
+                        .append(",\"inDetention\":").append(inDetention).append("}\n");
+                break;
+            default:
+                appendTextLine(text, name, id, threatLevel, inDetention);
+        }
+    }
+
+    // One line of the plain text export (also written by SnapshotTool history)
+    static StringBuilder appendTextLine(StringBuilder text, String name, String id, double threatLevel, boolean inDetention) {
+        return text.append("Citizen Name: ").append(name).append(", Citizen ID: ").append(id).append(", Threat Level: ")
+                .append(threatLevel).append(", In Detention: ").append(inDetention).append('\n');
+    }
+
+    private static StringBuilder appendCsv(StringBuilder text, String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            return text.append(value);
+        }
+        text.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                text.append('"');
+            }
+            text.append(c);
+        }
+        return text.append('"');
+    }
+
+    private static StringBuilder appendJson(StringBuilder text, String value) {
+        text.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                text.append('\\').append(c);
+            } else if (c < 0x20) {
+                text.append(String.format("\\u%04x", (int) c));
+            } else {
+                text.append(c);
+            }
+        }
+        return text.append('"');
+    }
+
+    // Move the buffered text to the writer; returns the (possibly grown) reusable char buffer
+    private static char[] flush(Writer writer, StringBuilder text, char[] chars) throws IOException {
+        if (chars.length < text.length()) {
+            chars = new char[text.capacity()];
+        }
+        text.getChars(0, text.length(), chars, 0);
+        writer.write(chars, 0, text.length());
+        text.setLength(0);
+        return chars;
+    }
+
+    // Walks the live list by index, BATCH_ROWS rows per visit to the owning thread, then the paged-out citizens
+    private final class Cursor {
+        private final Consumer<Runnable> owner;
+        final String[] names = new String[BATCH_ROWS];
+        final String[] ids = new String[BATCH_ROWS];
+        final double[] threatLevels = new double[BATCH_ROWS];
+        final boolean[] inDetention = new boolean[BATCH_ROWS];
+        int count; // Rows in the current batch
+        int total; // Size of the list at the last fetch
+        private int next; // Index of the next row in the list
+        private MappedCitizenView.Record record; // Set once the list is done and the paged-out citizens are read
+        private int nextOrdinal;
+
+        Cursor(Consumer<Runnable> owner) {
+            this.owner = owner;
+        }
+
+        boolean fetch() {
+            if (record != null) {
+                return fetchPagedOut();
+            }
+            owner.accept(() -> {
+                total = citizens.size();
+                count = Math.max(0, Math.min(BATCH_ROWS, total - next));
+                for (int row = 0; row < count; row++) {
+                    Citizen citizen = citizens.get(next + row);
+                    names[row] = citizen.getName();
+                    ids[row] = citizen.getId();
+                    threatLevels[row] = citizen.getThreatLevel();
+                    inDetention[row] = citizen.isInDetention();
+                }
+            });
+            next += count;
+            if (pagedOut != null) {
+                total += pagedOut.size;
+                if (count == 0) {
+                    record = pagedOut.view.newRecord();
+                    return fetchPagedOut();
+                }
+            }
+            return count > 0;
+        }
+
+        private boolean fetchPagedOut() {
+            count = 0;
+            for (int ordinal = pagedOut.ordinals.nextSetBit(nextOrdinal); ordinal >= 0 && count < BATCH_ROWS;
+                 ordinal = pagedOut.ordinals.nextSetBit(ordinal + 1)) {
+                record.moveTo(ordinal);
+                names[count] = record.getName();
+                ids[count] = record.getId();
+                threatLevels[count] = record.getThreatLevel();
+                inDetention[count] = record.isInDetention();
+                count++;
+                nextOrdinal = ordinal + 1;
+            }
+            return count > 0;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+// מאגר האזרחים ה"קרים" - אלה שלא נטענו לזיכרון כשהאוכלוסייה גדולה מדי ל-heap.
+// In tiered mode ThreatManagementSystem keeps in memory (pinned) only the detained citizens, the most threatening free
+// citizens (the candidates the detention engine can place) and every citizen that was changed or handed to a system
+// operation since. The others stay in a read-only, memory-mapped copy of the snapshot they were loaded from; a lookup
+// decodes the record into a Citizen held by a bounded CitizenCache, and ceiling() tells the engine how far it can go
+// down the in-memory candidates before a paged-out citizen could outrank them.
+// The paged-out ordinals are kept sorted by threat key (most threatening first) with a cursor past the ones paged in,
+// so a batch of candidates costs the batch, and a Fenwick tree over that order counts the paged-out citizens above
+// any key (ranks, percentiles) in O(log N). Names are found through the record ordinals sorted by name hash.
+// Not thread safe: call on the thread that owns the citizens (the EDT). A ColdSet may be read on any thread.
+public final class CitizenRepository implements Closeable {
+    private final Path path; // Link to (or copy of) the snapshot: the snapshot itself is replaced by every save
+    private MappedCitizenView view;
+    private MappedCitizenView.Record record;
+    private final LongIntMap ordinals = new LongIntMap(); // Citizen ID -> ordinal (the first record with an ID owns it)
+    private final BitSet cold = new BitSet(); // Ordinals of the citizens still paged out
+    private int coldCount;
+    private ThreatKey ceiling; // Highest threat key among the paged-out citizens, null if there are none
+    private int[] byThreat = new int[0]; // Ordinals paged out by selectInMemory, by descending threat key
+    private int[] coldTree = new int[1]; // Fenwick tree over byThreat positions: 1 while that citizen is paged out
+    private int next; // Positions of byThreat before this one are all back in memory
+    private final long[] byName; // (name hash << 32 | ordinal) of every record, sorted
+    private final CitizenCache cache;
+    private long diskReads;
+    private long pagedIn;
+
+    private CitizenRepository(Path path, int cacheCapacity) throws IOException {
+        this.path = path;
+        this.view = MappedCitizenView.open(path);
+        this.record = view.newRecord();
+        this.cache = new CitizenCache(cacheCapacity);
+        this.byName = new long[view.size()];
+        for (int ordinal = 0; ordinal < view.size(); ordinal++) {
+            long id = record.moveTo(ordinal).getNumericId();
+            if (!ordinals.containsKey(id)) {
+                ordinals.put(id, ordinal);
+            }
+            byName[ordinal] = (long) record.getName().hashCode() << 32 | ordinal;
+        }
+        Arrays.sort(byName);
+    }
+
+    // Map a private link to the snapshot file (a copy where links are not supported); every citizen starts in memory
+    // until selectInMemory() decides which ones are paged out
+    public static CitizenRepository open(Path snapshot, int cacheCapacity) throws IOException {
+        Path path = snapshot.resolveSibling(snapshot.getFileName() + ".cold");
+        Files.deleteIfExists(path);
+        try {
+            Files.createLink(path, snapshot);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(snapshot, path);
+        }
+        return new CitizenRepository(path, cacheCapacity);
+    }
+
+    // Decide what stays in memory: the citizens accepted by pinned plus the candidates most threatening others.
+    // Returns them as new Citizen objects; everybody else is paged out.
+    public List<Citizen> selectInMemory(LongPredicate pinned, int candidates) {
+        List<Citizen> inMemory = new ArrayList<>();
+        cold.clear();
+        for (int ordinal = 0; ordinal < view.size(); ordinal++) {
+            long id = record.moveTo(ordinal).getNumericId();
+            if (ordinals.get(id) != ordinal) {
+                continue; // A later duplicate of an ID, dropped like in a full load
+            }
+            if (pinned.test(id)) {
+                inMemory.add(record.toCitizen());
+            } else {
+                cold.set(ordinal);
+            }
+        }
+        coldCount = cold.cardinality();
+        sortByThreat();
+        inMemory.addAll(pageIn(candidates));
+        pagedIn = 0;
+        return inMemory;
+    }
+
+    // Take the count most threatening paged-out citizens into memory, from the cursor in byThreat
+    public List<Citizen> pageIn(int count) {
+        List<Citizen> citizens = new ArrayList<>(Math.min(count, coldCount));
+        while (citizens.size() < count && skipPagedIn() < byThreat.length) {
+            citizens.add(take(byThreat[next]));
+        }
+        ceiling = skipPagedIn() < byThreat.length ? keyOf(byThreat[next]) : null;
+        pagedIn += citizens.size();
+        return citizens;
+    }
+
+    // The paged-out citizen with this ID (from the cache or the disk), or null if it is in memory or unknown
+    public Citizen get(long id) {
+        int ordinal = ordinals.get(id);
+        if (ordinal < 0 || !cold.get(ordinal)) {
+            return null;
+        }
+        Citizen citizen = cache.get(id);
+        if (citizen == null) {
+            citizen = record.moveTo(ordinal).toCitizen();
+            diskReads++;
+            cache.put(citizen);
+        }
+        return citizen;
+    }
+
+    public boolean isPagedOut(long id) {
+        int ordinal = ordinals.get(id);
+        return ordinal >= 0 && cold.get(ordinal);
+    }
+
+    // The citizen is now held in memory (or was deleted): stop serving it from here. Returns false if it wasn't here.
+    public boolean remove(long id) {
+        int ordinal = ordinals.get(id);
+        if (ordinal < 0 || !cold.get(ordinal)) {
+            return false;
+        }
+        clearCold(ordinal);
+        cache.invalidate(id);
+        pagedIn++;
+        return true; // The ceiling stays an upper bound
+    }
+
+    // Highest threat key among the paged-out citizens (null if none): in-memory candidates above it outrank them all
+    public ThreatKey ceiling() {
+        return ceiling;
+    }
+
+    // Threat levels changed for everybody (new scoring rules, a new day for the age brackets): remap the file so its
+    // records are scored with the current rules, and recompute the ceiling
+    public void rescore() throws IOException {
+        view = MappedCitizenView.open(path); // The old mapping stays valid for ColdSets still being written
+        record = view.newRecord();
+        cache.clear();
+        sortByThreat();
+        ceiling = byThreat.length > 0 ? keyOf(byThreat[0]) : null;
+    }
+
+    public int getPagedOutCount() {
+        return coldCount;
+    }
+
+    // How many paged-out citizens have a threat level of at least threshold
+    public int countPagedOutAtOrAbove(double threshold) {
+        return coldBefore(firstBelow(new ThreatKey(threshold, Long.MAX_VALUE)));
+    }
+
+    // How many paged-out citizens rank above the key (for threat ranks and percentiles)
+    public int countPagedOutAbove(ThreatKey key) {
+        int at = firstBelow(key);
+        if (at > 0 && keyOf(byThreat[at - 1]).equals(key)) {
+            at--; // The citizen itself
+        }
+        return coldBefore(at);
+    }
+
+    // The paged-out citizens with minThreatLevel <= threat level <= maxThreatLevel, highest first. They are decoded
+    // for the caller and not cached, so a wide range doesn't push the hot citizens out of the cache.
+    public List<Citizen> getInThreatRange(double minThreatLevel, double maxThreatLevel) {
+        List<Citizen> citizens = new ArrayList<>();
+        int end = firstBelow(new ThreatKey(minThreatLevel, Long.MAX_VALUE));
+        for (int at = firstBelow(new ThreatKey(Math.nextUp(maxThreatLevel), Long.MAX_VALUE)); at < end; at++) {
+            int ordinal = byThreat[at];
+            if (cold.get(ordinal)) {
+                long id = record.moveTo(ordinal).getNumericId();
+                Citizen citizen = cache.get(id);
+                citizens.add(citizen != null ? citizen : record.toCitizen());
+            }
+        }
+        return citizens;
+    }
+
+    // The paged-out citizens with this name, in file order (a binary search on the name hash)
+    public List<Citizen> getByName(String name) {
+        List<Citizen> citizens = new ArrayList<>();
+        long hash = (long) name.hashCode() << 32;
+        int from = Arrays.binarySearch(byName, hash);
+        for (int i = from >= 0 ? from : -from - 1; i < byName.length && (byName[i] & 0xFFFFFFFF00000000L) == hash; i++) {
+            int ordinal = (int) byName[i];
+            if (cold.get(ordinal) && record.moveTo(ordinal).getName().equals(name)) {
+                citizens.add(get(record.getNumericId()));
+            }
+        }
+        return citizens;
+    }
+
+    // The paged-out citizens as of now, for a snapshot written on another thread
+    ColdSet coldSet() {
+        return new ColdSet(view, (BitSet) cold.clone(), coldCount);
+    }
+
+    public String getStats() {
+        long requests = cache.getHits() + cache.getMisses();
+        return String.format("🧊 %d citizens paged out, %d paged in; cache %d/%d, hits %d, misses %d (%.1f%% hit rate), "
+                        + "%d evictions, %d disk reads",
+                coldCount, pagedIn, cache.size(), cache.getCapacity(), cache.getHits(), cache.getMisses(),
+                requests == 0 ? 0.0 : 100.0 * cache.getHits() / requests, cache.getEvictions(), diskReads);
+    }
+
+    // Unmaps the file; ColdSets taken earlier must not be used afterwards
+    @Override
+    public void close() throws IOException {
+        view.close();
+        cache.clear();
+        Files.deleteIfExists(path);
+    }
+
+    private Citizen take(int ordinal) {
+        long id = record.moveTo(ordinal).getNumericId();
+        Citizen citizen = cache.get(id);
+        if (citizen == null) {
+            citizen = record.toCitizen();
+            diskReads++;
+        }
+        clearCold(ordinal);
+        cache.invalidate(id);
+        return citizen;
+    }
+
+    private void clearCold(int ordinal) {
+        int at = firstBelow(keyOf(ordinal)) - 1; // Keys are unique: the citizen is right above the first one below it
+        cold.clear(ordinal);
+        coldCount--;
+        if (at >= 0 && byThreat[at] == ordinal) {
+            for (int i = at + 1; i < coldTree.length; i += i & -i) {
+                coldTree[i]--;
+            }
+        }
+    }
+
+    private ThreatKey keyOf(int ordinal) {
+        record.moveTo(ordinal);
+        return new ThreatKey(record.getThreatLevel(), record.getNumericId());
+    }
+
+    // Advance the cursor past citizens no longer paged out; returns it
+    private int skipPagedIn() {
+        while (next < byThreat.length && !cold.get(byThreat[next])) {
+            next++;
+        }
+        return next;
+    }
+
+    // First position of byThreat whose key is below the given one (binary search over the mapped records)
+    private int firstBelow(ThreatKey key) {
+        int lo = 0, hi = byThreat.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keyOf(byThreat[mid]).compareTo(key) >= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Paged-out citizens among the first count positions of byThreat
+    private int coldBefore(int count) {
+        int sum = 0;
+        for (int i = count; i > 0; i -= i & -i) {
+            sum += coldTree[i];
+        }
+        return sum;
+    }
+
+    // Order the paged-out ordinals by descending threat key, reset the cursor and the Fenwick tree
+    private void sortByThreat() {
+        int[] sorted = new int[coldCount];
+        double[] threat = new double[view.size()];
+        long[] ids = new long[view.size()];
+        int count = 0;
+        for (int ordinal = cold.nextSetBit(0); ordinal >= 0; ordinal = cold.nextSetBit(ordinal + 1)) {
+            record.moveTo(ordinal);
+            threat[ordinal] = record.getThreatLevel();
+            ids[ordinal] = record.getNumericId();
+            sorted[count++] = ordinal;
+        }
+        mergeSort(sorted, new int[count], 0, count, threat, ids);
+        byThreat = sorted;
+        next = 0;
+        coldTree = new int[count + 1];
+        for (int i = 1; i <= count; i++) { // Every position holds a paged-out citizen: build the tree in O(N)
+            coldTree[i]++;
+            int parent = i + (i & -i);
+            if (parent <= count) {
+                coldTree[parent] += coldTree[i];
+            }
+        }
+    }
+
+    // Sort ordinals[from, to) most threatening first (the ThreatKey order, without a ThreatKey per citizen)
+    private static void mergeSort(int[] ordinals, int[] work, int from, int to, double[] threat, long[] ids) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(ordinals, work, from, middle, threat, ids);
+        mergeSort(ordinals, work, middle, to, threat, ids);
+        System.arraycopy(ordinals, from, work, from, to - from);
+        int left = from, right = middle;
+        for (int i = from; i < to; i++) {
+            if (right == to || left < middle && compare(work[left], work[right], threat, ids) >= 0) {
+                ordinals[i] = work[left++];
+            } else {
+                ordinals[i] = work[right++];
+            }
+        }
+    }
+
+    private static int compare(int a, int b, double[] threat, long[] ids) {
+        int byThreat = Double.compare(threat[a], threat[b]);
+        return byThreat != 0 ? byThreat : Long.compare(ids[b], ids[a]);
+    }
+
+    // Paged-out citizens frozen at one moment: the records of a mapped file and which ordinals are included
+    static final class ColdSet {
+        final MappedCitizenView view;
+        final BitSet ordinals;
+        final int size;
+
+        ColdSet(MappedCitizenView view, BitSet ordinals, int size) {
+            this.view = view;
+            this.ordinals = ordinals;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.function.Consumer;
+
+// Citizen store keyed by the numeric citizen ID. String IDs are parsed once at the boundary;
+// everything inside works with primitive long keys in an open-addressing map.
+public class CitizenStore {
+    private static final int MAX_ID_DIGITS = 18; // Always fits in a long, leading zeros included
+    private static final long PADDED_KEYS = 1_000_000_000_000_000_000L; // First key of an ID with leading zeros (10^18)
+
+    private final LongObjectMap<Citizen> byId;
+
+    public CitizenStore() {
+        this.byId = new LongObjectMap<>();
+    }
+
+    public CitizenStore(int expectedSize) {
+        this.byId = new LongObjectMap<>(expectedSize);
+    }
+
+    // Parse a citizen ID made of digits only into its key; returns -1 if it is not valid. An ID without leading zeros
+    // is its own number; one with leading zeros ("007") has a key of its own above every plain ID, so "007" and "7"
+    // are two citizens, as they were when IDs were strings. idText turns a key back into the ID text.
+    public static long parseId(String id) {
+        if (id == null || id.isEmpty() || id.length() > MAX_ID_DIGITS) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < id.length(); i++) {
+            char ch = id.charAt(i);
+            if (ch < '0' || ch > '9') {
+                return -1;
+            }
+            value = value * 10 + (ch - '0');
+        }
+        if (id.length() == 1 || id.charAt(0) != '0') {
+            return value;
+        }
+        // Keys of the padded IDs, by length: the 10 of length 2, then the 100 of length 3...
+        long key = PADDED_KEYS;
+        long count = 10;
+        for (int length = 2; length < id.length(); length++, count *= 10) {
+            key += count;
+        }
+        return key + value;
+    }
+
+    // The ID text of a key from parseId, leading zeros included
+    public static String idText(long key) {
+        if (key < PADDED_KEYS) {
+            return Long.toString(key);
+        }
+        long value = key - PADDED_KEYS;
+        int length = 2;
+        for (long count = 10; value >= count; count *= 10, length++) {
+            value -= count;
+        }
+        String digits = Long.toString(value);
+        return "0".repeat(length - digits.length()) + digits;
+    }
+
+    public Citizen get(long id) {
+        return byId.get(id);
+    }
+
+    // Lookup by the String form of the ID; returns null for unknown or malformed IDs
+    public Citizen get(String id) {
+        long key = parseId(id);
+        return key < 0 ? null : byId.get(key);
+    }
+
+    public boolean contains(long id) {
+        return byId.containsKey(id);
+    }
+
+    // Returns the citizen already stored under the same ID, or null if this one was added
+    public Citizen putIfAbsent(Citizen citizen) {
+        return byId.putIfAbsent(citizen.getNumericId(), citizen);
+    }
+
+    // Remove the citizen if it is the one stored under its ID
+    public boolean remove(Citizen citizen) {
+        return byId.remove(citizen.getNumericId(), citizen);
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public void clear() {
+        byId.clear();
+    }
+
+    public void forEach(Consumer<Citizen> action) {
+        byId.forEachValue(action);
+    }
+}
@@ -0,0 +1,162 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Columnar (struct-of-arrays) copy of the scoring inputs of many citizens.
+// scoreAll() runs one tight loop over primitive arrays and the rules' lookup tables: the age bands are turned into
+// birth-date cut-offs once per run, so there is no Period or LocalDate work per row.
+public class CitizenTable {
+    private int size;
+    private long[] ids;
+    private byte[] economicPercentile;
+    private byte[] governmentSupportLevel;
+    private byte[] publicImpactScore;
+    private byte[] origin; // ThreatScoringRules.originIndex
+    private int[] birthEpochDay;
+    private long[] parliamentMembers; // Bitset, one bit per row
+    private double[] threatLevels; // Output of scoreAll
+
+    public CitizenTable(int capacity) {
+        capacity = Math.max(capacity, 16);
+        ids = new long[capacity];
+        economicPercentile = new byte[capacity];
+        governmentSupportLevel = new byte[capacity];
+        publicImpactScore = new byte[capacity];
+        origin = new byte[capacity];
+        birthEpochDay = new int[capacity];
+        parliamentMembers = new long[(capacity + 63) >>> 6];
+        threatLevels = new double[capacity];
+    }
+
+    // Build a table whose rows follow the order of the list
+    public static CitizenTable of(List<Citizen> citizens) {
+        CitizenTable table = new CitizenTable(citizens.size());
+        for (Citizen citizen : citizens) {
+            table.add(citizen);
+        }
+        return table;
+    }
+
+    // Build and score a table on the pool: every fork/join chunk fills and scores its own rows
+    public static CitizenTable scoreAll(List<Citizen> citizens, LocalDate today, ForkJoinPool pool) {
+        CitizenTable table = new CitizenTable(citizens.size());
+        table.size = citizens.size();
+        ThreatScoringRules rules = ThreatScoringRules.getCurrent();
+        pool.invoke(table.new ChunkTask(citizens, rules, rules.ageCutoffs(today), 0, table.size));
+        return table;
+    }
+
+    // Append a row and return its index
+    public int add(Citizen citizen) {
+        if (size == ids.length) {
+            grow();
+        }
+        int row = size++;
+        load(row, citizen);
+        return row;
+    }
+
+    private void load(int row, Citizen citizen) {
+        ids[row] = citizen.getNumericId();
+        economicPercentile[row] = (byte) citizen.getEconomicPercentile();
+        governmentSupportLevel[row] = (byte) citizen.getGovernmentSupportLevel();
+        publicImpactScore[row] = (byte) citizen.getPublicImpactScore();
+        origin[row] = (byte) ThreatScoringRules.originIndex(citizen.getOrigin());
+        birthEpochDay[row] = (int) citizen.getBirthDate().toEpochDay();
+        if (citizen.isParliamentMember()) {
+            parliamentMembers[row >>> 6] |= 1L << row;
+        }
+    }
+
+    // Score every row as of the given date with the current ThreatScoringRules; same results as Citizen.calculateThreatLevel
+    public void scoreAll(LocalDate today) {
+        ThreatScoringRules rules = ThreatScoringRules.getCurrent();
+        score(rules, rules.ageCutoffs(today), 0, size);
+    }
+
+    private void score(ThreatScoringRules rules, int[] ageCutoffs, int from, int to) {
+        double[] supportPoints = rules.supportPoints;
+        double[] impactPoints = rules.impactPoints;
+        double[] economicPoints = rules.economicPoints;
+        double[] originPoints = rules.originPoints;
+        double[] ageBandPoints = rules.ageBandPoints;
+        double parliamentMultiplier = rules.parliamentMultiplier;
+        double min = rules.minThreatLevel, max = rules.maxThreatLevel;
+
+        for (int i = from; i < to; i++) {
+            // age >= ageBreaks[k]  <=>  born on or before ageCutoffs[k]
+            int birth = birthEpochDay[i];
+            int band = 0;
+            while (band < ageCutoffs.length && birth <= ageCutoffs[band]) {
+                band++;
+            }
+            double threat = supportPoints[governmentSupportLevel[i] + 1]
+                    + impactPoints[publicImpactScore[i]]
+                    + economicPoints[economicPercentile[i]]
+                    + originPoints[origin[i]]
+                    + ageBandPoints[band];
+            if ((parliamentMembers[i >>> 6] & (1L << i)) != 0) {
+                threat *= parliamentMultiplier;
+            }
+            threatLevels[i] = Math.min(max, Math.max(min, threat));
+        }
+    }
+
+    // Splits rows into chunks; chunk edges are multiples of 64 so no two tasks share a parliament bitset word
+    private final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L; // Never serialized; RecursiveAction is Serializable
+        private static final int CHUNK_ROWS = 1 << 14;
+        private final List<Citizen> citizens;
+        private final ThreatScoringRules rules;
+        private final int[] ageCutoffs;
+        private final int from, to;
+
+        ChunkTask(List<Citizen> citizens, ThreatScoringRules rules, int[] ageCutoffs, int from, int to) {
+            this.citizens = citizens;
+            this.rules = rules;
+            this.ageCutoffs = ageCutoffs;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK_ROWS) {
+                for (int row = from; row < to; row++) {
+                    load(row, citizens.get(row));
+                }
+                score(rules, ageCutoffs, from, to);
+                return;
+            }
+            int mid = ((from + to) >>> 1) & ~63;
+            invokeAll(new ChunkTask(citizens, rules, ageCutoffs, from, mid),
+                    new ChunkTask(citizens, rules, ageCutoffs, mid, to));
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getId(int row) {
+        return ids[row];
+    }
+
+    public double getThreatLevel(int row) {
+        return threatLevels[row];
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        economicPercentile = Arrays.copyOf(economicPercentile, capacity);
+        governmentSupportLevel = Arrays.copyOf(governmentSupportLevel, capacity);
+        publicImpactScore = Arrays.copyOf(publicImpactScore, capacity);
+        origin = Arrays.copyOf(origin, capacity);
+        birthEpochDay = Arrays.copyOf(birthEpochDay, capacity);
+        parliamentMembers = Arrays.copyOf(parliamentMembers, (capacity + 63) >>> 6);
+        threatLevels = Arrays.copyOf(threatLevels, capacity);
+    }
+}
@@ -0,0 +1,183 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// צינור פקודות עם כותב יחיד: כל שינוי במצב המערכת נשלח לתור חסום ומבוצע בחוט אחד ("system-writer").
+// The writer takes everything queued (up to maxBatch commands) and applies it as one ThreatManagementSystem.runBatch:
+// one hold of the write lock, one detention pass and one save for the whole batch, so a burst of operator or feed
+// traffic costs a few batches rather than a detention pass and a file rewrite per command. submit blocks while the
+// queue is full, which holds a runaway producer to the writer's pace.
+// A command's future completes once its batch is settled and saved; a command that throws (an Error too, such as a
+// StackOverflowError) fails only its own future, and a failed detention pass or save fails the batch's futures. The
+// writer keeps running either way, so no submitter is left waiting on a future nobody will complete.
+// Callbacks attached to the futures run on the writer thread, so hand anything slow (or Swing) to another thread.
+public final class CommandPipeline implements AutoCloseable {
+    private static final long POLL_MILLIS = 50;
+
+    private final ThreatManagementSystem system;
+    private final BlockingQueue<Command<?>> queue;
+    private final int maxBatch;
+    private final Thread writer;
+    private volatile boolean closed;
+    private volatile long commandCount; // Written by the writer thread only
+    private volatile long batchCount;
+    private volatile int largestBatch;
+
+    public CommandPipeline(ThreatManagementSystem system, int queueCapacity, int maxBatch) {
+        if (queueCapacity < 1 || maxBatch < 1) {
+            throw new IllegalArgumentException("Queue capacity and batch size must be positive.");
+        }
+        this.system = system;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatch = maxBatch;
+        this.writer = new Thread(this::run, "system-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Queue a change; the future holds its result. A command submitted by another command runs right away, in the same batch.
+    public <T> CompletableFuture<T> submit(Function<ThreatManagementSystem, T> command) {
+        Command<T> queued = new Command<>(command);
+        if (Thread.currentThread() == writer) {
+            try {
+                system.runBatch(() -> queued.run(system)); // Nests into the running batch, if any
+            } catch (Throwable e) {
+                queued.fail(e);
+            }
+            queued.complete();
+            return queued.future;
+        }
+        if (closed) {
+            queued.future.completeExceptionally(new RejectedExecutionException("The command pipeline is closed."));
+            return queued.future;
+        }
+        try {
+            queue.put(queued);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued.future.completeExceptionally(e);
+            return queued.future;
+        }
+        if (closed && queue.remove(queued)) { // Closed while we were waiting for room; nobody will take it
+            queued.future.completeExceptionally(new RejectedExecutionException("The command pipeline is closed."));
+        }
+        return queued.future;
+    }
+
+    public CompletableFuture<Void> execute(Consumer<ThreatManagementSystem> command) {
+        return submit(system -> {
+            command.accept(system);
+            return null;
+        });
+    }
+
+    // Stop taking commands, apply the ones already queued and wait for the writer to finish
+    @Override
+    public void close() {
+        closed = true;
+        if (Thread.currentThread() == writer) {
+            return; // The loop ends after the current batch
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    public String getStats() {
+        long commands = commandCount;
+        long batches = batchCount;
+        return String.format("Command pipeline: %,d commands in %,d batches (average %.1f, largest %d), %d queued",
+                commands, batches, batches == 0 ? 0.0 : (double) commands / batches, largestBatch, queue.size());
+    }
+
+    private void run() {
+        List<Command<?>> batch = new ArrayList<>();
+        while (!closed || !queue.isEmpty()) {
+            Command<?> first;
+            try {
+                first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS); // Timed, so close() is noticed without interrupting a save
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, maxBatch - 1);
+            try {
+                apply(batch);
+            } catch (Throwable e) { // Even counting the batch failed: make sure nobody waits on it, and go on
+                for (Command<?> command : batch) {
+                    command.future.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void apply(List<Command<?>> batch) {
+        try {
+            system.runBatch(() -> {
+                for (Command<?> command : batch) {
+                    command.run(system);
+                }
+            });
+        } catch (Throwable e) { // The batch's detention pass or save failed
+            System.out.println("❌ Command batch failed: " + e);
+            for (Command<?> command : batch) {
+                command.fail(e);
+            }
+        }
+        for (Command<?> command : batch) {
+            command.complete();
+        }
+        commandCount += batch.size();
+        batchCount++;
+        largestBatch = Math.max(largestBatch, batch.size());
+    }
+
+    private static final class Command<T> {
+        final Function<ThreatManagementSystem, T> action;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+        private Throwable error;
+
+        Command(Function<ThreatManagementSystem, T> action) {
+            this.action = action;
+        }
+
+        void run(ThreatManagementSystem system) {
+            try {
+                result = action.apply(system);
+            } catch (Throwable e) {
+                error = e;
+            }
+        }
+
+        void fail(Throwable e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+
+        void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+}
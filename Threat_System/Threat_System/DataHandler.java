@@ -1,20 +1,30 @@
 import java.io.*;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 public class DataHandler {
 
     private static final Logger logger = Logger.getLogger(DataHandler.class.getName());
     private static final String DEFAULT_DATA_FOLDER = "Data";
     private static final String DATA_FOLDER = System.getProperty("data.folder", DEFAULT_DATA_FOLDER);
+    private static final String CHECKSUM_PREFIX = "#checksum,"; // Trailer line: #checksum,<crc32 hex>,<line count>
 
     static {
         // Ensure the "Data" folder exists
@@ -25,85 +35,178 @@ public class DataHandler {
         }
     }
 
-    public static void saveCitizensToFile(List<Citizen> citizens, String filename) {
+    public static boolean saveCitizensToFile(List<Citizen> citizens, String filename) {
         String fullPath = DATA_FOLDER + File.separator + filename;
 
         System.out.println("Saving citizens to: " + fullPath);
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fullPath))) {
-            for (Citizen citizen : citizens) {
-                String citizenData = String.format("%s,%s,%s,%d,%d,%d,%b,%s,%b",
-                        citizen.getName(),
-                        citizen.getBirthDate(),
-                        citizen.getOrigin(),
-                        citizen.getEconomicPercentile(),
-                        citizen.getGovernmentSupportLevel(),
-                        citizen.getPublicImpactScore(),
-                        citizen.isParliamentMember(),
-                        citizen.getId(),
-                        citizen.isInDetention());
-
-                writer.write(citizenData);
-                writer.newLine();
-                System.out.println("✅ Citizen saved: " + citizen.getName() + " (ID: " + citizen.getId() + ")");
+        List<String> lines = new ArrayList<>(citizens.size());
+        for (Citizen citizen : citizens) {
+            lines.add(citizenToFileString(citizen));
+        }
+        if (!writeLinesAtomically(filename, lines)) {
+            System.out.println("❌ Error saving citizens to " + fullPath);
+            return false;
+        }
+        System.out.println("✅ Citizens saved successfully: " + citizens.size());
+        return true;
+    }
+
+    // Path of a file in the data folder
+    public static Path getDataPath(String filename) {
+        return Paths.get(DATA_FOLDER, filename);
+    }
+
+    // Text save with a checksum trailer line, written atomically
+    public static boolean writeLinesAtomically(String filename, List<String> lines) {
+        return writeAtomically(filename, out -> {
+            CRC32 checksum = new CRC32();
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new CheckedOutputStream(out, checksum), StandardCharsets.UTF_8));
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
             }
-            System.out.println("✅ Citizens saved successfully: " + citizens.size());
+            writer.flush();
+            writer.write(CHECKSUM_PREFIX + Long.toHexString(checksum.getValue()) + "," + lines.size() + "\n");
+            writer.flush();
+        });
+    }
 
+    public interface FileContent {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    // Crash-safe save: write a temp file in the same folder, fsync, then atomically rename it over the target.
+    // A crash at any point leaves either the old file or the new one, never a mix.
+    public static boolean writeAtomically(String filename, FileContent content) {
+        Path target = getDataPath(filename);
+        Path temp = null;
+        try {
+            temp = Files.createFile(target.resolveSibling(target.getFileName() + "." + System.nanoTime() + ".tmp")); // Default permissions, unlike createTempFile
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                OutputStream out = Channels.newOutputStream(channel);
+                content.writeTo(out);
+                out.flush();
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (FileChannel folder = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+                folder.force(true); // Make the rename itself durable
+            } catch (IOException e) {
+                // Not supported on every platform; the rename is still atomic
+            }
+            return true;
         } catch (IOException e) {
-            System.out.println("❌ Error saving citizens to " + fullPath);
-            e.printStackTrace();
+            logger.log(Level.SEVERE, "Error writing " + target, e);
+            return false;
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Could not delete temp file " + temp, e);
+                }
+            }
+        }
+    }
+
+    // Lines of a data file, checked against its checksum trailer (files saved before the trailer existed are accepted).
+    // Returns null and keeps a .corrupt copy if the checksum doesn't match; throws IOException if the file can't be read.
+    public static List<String> readVerifiedLines(String filename) throws IOException {
+        Path path = getDataPath(filename);
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(lines.size() - 1).startsWith(CHECKSUM_PREFIX)) {
+            return lines;
+        }
+        String[] trailer = lines.remove(lines.size() - 1).substring(CHECKSUM_PREFIX.length()).split(",");
+        CRC32 checksum = new CRC32();
+        for (String line : lines) {
+            checksum.update((line + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        boolean valid = trailer.length == 2
+                && trailer[0].equals(Long.toHexString(checksum.getValue()))
+                && trailer[1].equals(Integer.toString(lines.size()));
+        if (!valid) {
+            keepCorruptCopy(filename);
+            return null;
         }
+        return lines;
+    }
+
+    // A data file failed its checksum: keep a .corrupt copy for inspection
+    static void keepCorruptCopy(String filename) throws IOException {
+        Path path = getDataPath(filename);
+        Path copy = getDataPath(filename + ".corrupt");
+        Files.copy(path, copy, StandardCopyOption.REPLACE_EXISTING);
+        logger.severe("Checksum mismatch in " + path + ", file not loaded (copy kept as " + copy + ")");
     }
 
+// Parse the citizens file; the caller installs the list (setCitizens). The system is only asked which IDs it has.
 public static List<Citizen> loadCitizensFromFile(ThreatManagementSystem system, String filename) {
     String fullPath = DATA_FOLDER + File.separator + filename;
     List<Citizen> citizens = new ArrayList<>();
 
     System.out.println("Loading citizens from: " + fullPath);
 
-    try (BufferedReader reader = new BufferedReader(new FileReader(fullPath))) {
-        String line;
-        while ((line = reader.readLine()) != null) {
-            System.out.println("Reading line: " + line);
-            Citizen citizen = citizenFromFileString(line);
-            if (citizen != null) {
+    try {
+        // פענוח מקבילי בלי הדפסה לכל שורה - שורות פסולות נאספות לדוח שגיאות
+        long start = System.nanoTime();
+        CitizenCsvIngest.Result result = CitizenCsvIngest.ingest(filename, system.getWorkerPool(),
+                id -> system.findCitizenById(id) != null);
+        if (result != null) {
+            for (Citizen citizen : result.citizens) {
                 citizen.setInDetention(false); // 👈 אפס את הסטטוס של כל האזרחים!
-                citizens.add(citizen);
-                system.addCitizen(citizen);
-                System.out.println("✅ Citizen added: " + citizen.getName() + " | Detention Reset: " + citizen.isInDetention());
-            } else {
-                System.out.println("⚠ Skipping invalid citizen entry: " + line);
+            }
+            citizens = result.citizens;
+            System.out.printf("✅ Citizens loaded successfully: %d of %d lines in %d ms%n",
+                    citizens.size(), result.lineCount, (System.nanoTime() - start) / 1_000_000);
+            if (!result.rejected.isEmpty()) {
+                String report = filename + ".rejected";
+                writeAtomically(report, out -> {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                    for (String line : result.rejected) {
+                        writer.write(line);
+                        writer.write('\n');
+                    }
+                    writer.flush();
+                });
+                System.out.println("⚠ Skipped " + result.rejected.size() + " invalid citizen entries, see "
+                        + DATA_FOLDER + File.separator + report);
             }
         }
-        System.out.println("✅ Citizens loaded successfully: " + citizens.size());
     } catch (IOException e) {
         System.out.println("❌ Error loading citizens from " + fullPath);
         e.printStackTrace();
     }
 
+    // רק פענוח: הקורא מתקין את הרשימה פעם אחת (setCitizens), בלי אינדוקס כפול ובלי לשמור את הקובץ שנקרא זה עתה
     return citizens;
 }
 
 
-    public static void saveFacilitiesToFile(List<Facility> facilities, String filename) {
+    public static boolean saveFacilitiesToFile(List<Facility> facilities, String filename) {
         String fullPath = DATA_FOLDER + File.separator + filename;
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fullPath, false))) { // false = כתיבה מחדש
-            for (Facility facility : facilities) {
-                writer.write(facilityToFileString(facility));
-                writer.newLine();
-            }
-            logger.info("Facilities saved successfully to " + fullPath);
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "Error saving facilities to " + fullPath, e);
+        List<String> lines = new ArrayList<>(facilities.size());
+        for (Facility facility : facilities) {
+            lines.add(facilityToFileString(facility));
+        }
+        if (!writeLinesAtomically(filename, lines)) {
+            return false;
         }
+        logger.info("Facilities saved successfully to " + fullPath);
+        return true;
     }
 
     public static List<Facility> loadFacilitiesFromFile(ThreatManagementSystem system, String filename) {
         String fullPath = DATA_FOLDER + File.separator + filename;
         List<Facility> facilities = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(fullPath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
+        try {
+            List<String> lines = readVerifiedLines(filename);
+            for (String line : lines == null ? List.<String>of() : lines) {
                 try {
                     Facility facility = facilityFromFileString(line, system);
                     facilities.add(facility);
@@ -117,6 +220,127 @@ public static List<Citizen> loadCitizensFromFile(ThreatManagementSystem system,
         }
         return facilities;
     }
+    // Load citizens and facilities from the binary snapshot; returns false if there is none. A snapshot that can't be
+    // read (bad checksum, truncated, unknown version) is moved aside as .corrupt and reported as an IOException: the
+    // journal segments it folded are gone, so loading anything else instead would lose data without a word.
+    public static boolean loadSnapshotFromFile(ThreatManagementSystem system, String filename) throws IOException {
+        Path path = getDataPath(filename);
+        if (!Files.exists(path)) {
+            return false;
+        }
+        BinarySnapshot.Contents contents;
+        try {
+            contents = BinarySnapshot.read(path);
+        } catch (IOException | RuntimeException e) {
+            throw quarantineSnapshot(filename, e);
+        }
+        system.setCitizens(contents.citizens);
+        system.setFacilities(contents.facilities);
+        logger.info("Snapshot loaded successfully from " + path + ": " + contents.citizens.size() + " citizens, "
+                + contents.facilities.size() + " facilities");
+        return true;
+    }
+
+    // Tiered load for a population too large for the heap (see CitizenRepository): the facilities, the detained
+    // citizens and the candidates most threatening free citizens are loaded; everybody else stays paged out in the
+    // mapped snapshot and is read through a cache of cacheCapacity citizens. Returns false if there is no snapshot;
+    // an unreadable one is moved aside like in loadSnapshotFromFile.
+    public static boolean loadSnapshotTiered(ThreatManagementSystem system, String filename, int cacheCapacity, int candidates)
+            throws IOException {
+        Path path = getDataPath(filename);
+        if (!Files.exists(path)) {
+            return false;
+        }
+        List<Facility> facilities;
+        try {
+            facilities = BinarySnapshot.readFacilities(path); // Checks the whole file
+        } catch (IOException | RuntimeException e) {
+            throw quarantineSnapshot(filename, e);
+        }
+        try {
+            LongIntMap detained = new LongIntMap();
+            int freeCapacity = 0;
+            for (Facility facility : facilities) {
+                long[] detaineeIds = facility.getDetaineeIds();
+                for (long id : detaineeIds) {
+                    detained.put(id, 1);
+                }
+                freeCapacity += Math.max(0, facility.getCapacity() - detaineeIds.length);
+            }
+            CitizenRepository repository = CitizenRepository.open(path, cacheCapacity);
+            List<Citizen> inMemory = repository.selectInMemory(detained::containsKey, freeCapacity + candidates);
+            system.setCitizens(inMemory);
+            system.setFacilities(facilities);
+            system.setPagedOutCitizens(repository, candidates);
+            logger.info("Snapshot loaded (tiered) from " + path + ": " + inMemory.size() + " citizens in memory, "
+                    + repository.getPagedOutCount() + " paged out, " + facilities.size() + " facilities");
+            return true;
+        } catch (RuntimeException e) { // The file itself is fine: it stays where it is
+            throw new IOException("Error loading snapshot from " + path, e);
+        }
+    }
+
+    // A snapshot set aside by quarantineSnapshot, left for somebody to inspect or restore
+    public static boolean hasQuarantinedSnapshot(String filename) {
+        return Files.exists(getDataPath(filename + ".corrupt"));
+    }
+
+    // Move an unreadable snapshot to <filename>.corrupt, so it is neither loaded again nor overwritten by the next save
+    private static IOException quarantineSnapshot(String filename, Exception cause) {
+        Path path = getDataPath(filename);
+        Path quarantined = getDataPath(filename + ".corrupt");
+        IOException error = new IOException("Snapshot " + path + " can't be read, moved to " + quarantined, cause);
+        try {
+            Files.move(path, quarantined, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            error = new IOException("Snapshot " + path + " can't be read and could not be moved aside", cause);
+            error.addSuppressed(e);
+        }
+        logger.log(Level.SEVERE, error.getMessage(), cause);
+        return error;
+    }
+
+    // Number of citizens in the binary snapshot (read from its header), -1 if there is none
+    public static int getSnapshotCitizenCount(String filename) {
+        return BinarySnapshot.readCitizenCount(getDataPath(filename));
+    }
+
+    // Load and compile threat scoring rules (key=value lines, # comments); returns null if the file is missing or invalid
+    public static ThreatScoringRules loadScoringRulesFromFile(String filename) {
+        String fullPath = DATA_FOLDER + File.separator + filename;
+        Map<String, String> definitions = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(fullPath))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int separator = line.indexOf('=');
+                if (separator <= 0) {
+                    logger.warning("Invalid scoring rule line: " + line);
+                    return null;
+                }
+                definitions.put(line.substring(0, separator).trim(), line.substring(separator + 1).trim());
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error loading scoring rules from " + fullPath, e);
+            return null;
+        }
+        try {
+            ThreatScoringRules rules = ThreatScoringRules.compile(definitions);
+            logger.info("Scoring rules loaded successfully from " + fullPath);
+            return rules;
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Invalid scoring rules in " + fullPath, e);
+            return null;
+        }
+    }
+
     public static void saveCitizenHistoryToFile(String history, String filename) {
         String fullPath = DATA_FOLDER + File.separator + filename;
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(fullPath))) {
@@ -127,71 +351,48 @@ public static List<Citizen> loadCitizensFromFile(ThreatManagementSystem system,
         }
     }
 
-    private static String citizenToFileString(Citizen citizen) {
-        return String.format("%s,%s,%s,%d,%d,%d,%s,%s,%b", //%b for boolean
-                citizen.getName(), citizen.getBirthDate(), citizen.getOrigin(),
-                citizen.getEconomicPercentile(), citizen.getGovernmentSupportLevel(),
-                citizen.getPublicImpactScore(), citizen.isInDetention(), citizen.getId(),
-                citizen.calculateThreatLevel());
+    // One line of the citizens file (also the payload of a journal record)
+    static String citizenToFileString(Citizen citizen) {
+        return citizenToFileString(citizen.getName(), citizen.getBirthDate(), citizen.getOrigin(),
+                citizen.getEconomicPercentile(), citizen.getGovernmentSupportLevel(), citizen.getPublicImpactScore(),
+                citizen.isParliamentMember(), citizen.getId(), citizen.isInDetention());
     }
 
+    static String citizenToFileString(String name, LocalDate birthDate, String origin, int economicPercentile,
+                                      int governmentSupportLevel, int publicImpactScore, boolean isParliamentMember,
+                                      String id, boolean isInDetention) {
+        return String.format("%s,%s,%s,%d,%d,%d,%b,%s,%b",
+                name, birthDate, origin, economicPercentile, governmentSupportLevel, publicImpactScore,
+                isParliamentMember, id, isInDetention);
+    }
 
-
-    private static Citizen citizenFromFileString(String data) {
-        try {
-            System.out.println("Parsing citizen data: " + data);
-            String[] parts = data.split(",");
-
-            if (parts.length != 9) {  // בדיקה שהשורה מכילה בדיוק 9 חלקים
-                System.out.println("❌ Invalid citizen data format: " + data);
-                return null;
-            }
-
-            String name = parts[0].trim();
-            LocalDate birthDate = LocalDate.parse(parts[1].trim());  // תאריך לידה
-            String origin = parts[2].trim();
-            int economicPercentile = Integer.parseInt(parts[3].trim());
-            int governmentSupportLevel = Integer.parseInt(parts[4].trim());
-            int publicImpactScore = Integer.parseInt(parts[5].trim());
-            boolean isParliamentMember = Boolean.parseBoolean(parts[6].trim());
-            String id = parts[7].trim();
-            boolean isInDetention = Boolean.parseBoolean(parts[8].trim());
-
-            if (!id.matches("\\d+")) { // בדיקה שה-ID מורכב ממספרים בלבד
-                System.out.println("❌ Error: ID must be numeric! Invalid ID: " + id);
-                return null;
-            }
-
-            Citizen citizen = new Citizen(name, birthDate, origin, economicPercentile, governmentSupportLevel,
-                    publicImpactScore, isParliamentMember, id);
-            
-            citizen.setInDetention(isInDetention); // עדכון סטטוס מעצר
-            System.out.println("✅ Citizen created: " + citizen.getName() + " (ID: " + id + ", Detained: " + isInDetention + ")");
-            return citizen;
-
-        } catch (Exception e) {
-            System.out.println("❌ Error parsing citizen: " + data);
-            e.printStackTrace();
-            return null;
+    // One citizens file line (or journal payload) through the same parser as the bulk ingest; null if invalid
+    static Citizen citizenFromFileString(String data) {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        CitizenCsvIngest.LineParser parser = new CitizenCsvIngest.LineParser();
+        Citizen citizen = parser.parse(bytes, 0, bytes.length);
+        if (citizen == null) {
+            System.out.println("❌ Invalid citizen data (" + parser.error + "): " + data);
         }
+        return citizen;
     }
 
+    static String facilityToFileString(Facility facility) {
+        return facilityToFileString(facility.getFacilityId(), facility.getName(), facility.getCapacity(), facility.getDetaineeIds());
+    }
 
-
-    private static String facilityToFileString(Facility facility) {
-        // Existing code ... (modify to include detained citizens)
-        List<Citizen> detainedCitizens = facility.getDetainedCitizens();
+    static String facilityToFileString(String facilityId, String name, int capacity, long[] detaineeIds) {
         StringBuilder builder = new StringBuilder();
-        builder.append(String.format("%s,%s,%d", facility.getFacilityId(), facility.getName(), facility.getCapacity()));
+        builder.append(String.format("%s,%s,%d", facilityId, name, capacity));
         builder.append(","); // separator
-        for (Citizen citizen : detainedCitizens) {
-            builder.append(citizen.getId()); // Assuming citizen ID is unique identifier
+        for (long detaineeId : detaineeIds) {
+            builder.append(CitizenStore.idText(detaineeId)); // Citizen IDs as given, leading zeros included
             builder.append(",");
         }
         return builder.toString();
     }
 
-    private static Facility facilityFromFileString(String data, ThreatManagementSystem system) {
+    static Facility facilityFromFileString(String data, ThreatManagementSystem system) {
         String[] parts = data.split(",");
         if (parts.length < 3) {
             throw new IllegalArgumentException("Invalid facility data format: " + data);
@@ -199,19 +400,19 @@ public static List<Citizen> loadCitizensFromFile(ThreatManagementSystem system,
 
         Facility facility = new Facility(parts[0], parts[1], Integer.parseInt(parts[2]));
 
-        // Extract detained citizen IDs
+        // Extract detained citizen IDs; they are looked up when the roster is first used (unknown ones are dropped then)
         if (parts.length > 3) {
-            List<Citizen> detainedCitizens = new ArrayList<>();
+            long[] detaineeIds = new long[parts.length - 3];
+            int count = 0;
             for (int i = 3; i < parts.length; i++) {
-                String citizenId = parts[i];
-                Citizen citizen = system.findCitizenById(citizenId); // Assuming system can find citizen by ID
-                if (citizen != null) {
-                    detainedCitizens.add(citizen);
+                long citizenId = CitizenStore.parseId(parts[i]);
+                if (citizenId >= 0) {
+                    detaineeIds[count++] = citizenId;
                 } else {
-                    logger.warning("Citizen with ID " + citizenId + " not found while loading facility");
+                    logger.warning("Invalid citizen ID " + parts[i] + " while loading facility " + parts[0]);
                 }
             }
-            facility.setDetainedCitizens(detainedCitizens);
+            facility.setDetaineeIds(Arrays.copyOf(detaineeIds, count));
         }
 
         return facility;
@@ -221,21 +422,16 @@ public static List<Citizen> loadCitizensFromFile(ThreatManagementSystem system,
     
     public static void saveManagerToFile(Manager manager, String filename) {
         String fullPath = DATA_FOLDER + File.separator + filename;
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fullPath));
-             FileChannel channel = new RandomAccessFile(fullPath, "rw").getChannel();
-             FileLock lock = channel.lock()) {
-            writer.write(managerToFileString(manager));
-            writer.newLine();
+        if (writeLinesAtomically(filename, List.of(managerToFileString(manager)))) {
             logger.info("Manager saved successfully to " + fullPath);
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "Error saving manager to " + fullPath, e);
         }
     }
 
     public static Manager loadManagerFromFile(ThreatManagementSystem system, String filename) {
         String fullPath = DATA_FOLDER + File.separator + filename;
-        try(BufferedReader reader = new BufferedReader(new FileReader(fullPath))) {
-            String line = reader.readLine();
+        try {
+            List<String> lines = readVerifiedLines(filename);
+            String line = lines == null || lines.isEmpty() ? null : lines.get(0);
             if (line != null) {
                 Manager manager = managerFromFileString(line, system);
                 logger.info("Manager loaded successfully: " + manager.getUsername());
@@ -255,22 +451,16 @@ public static List<Citizen> loadCitizensFromFile(ThreatManagementSystem system,
 
     public static void savePresidentToFile(President president, String filename) {
         String fullPath = DATA_FOLDER + File.separator + filename;
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fullPath));
-             FileChannel channel = new RandomAccessFile(fullPath, "rw").getChannel();
-             FileLock lock = channel.lock()) {
-            writer.write(presidentToFileString(president));
-            writer.newLine();
+        if (writeLinesAtomically(filename, List.of(presidentToFileString(president)))) {
             logger.info("President saved successfully to " + fullPath);
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "Error saving president to " + fullPath, e);
         }
     }
 
-    
     public static President loadPresidentFromFile(ThreatManagementSystem system, String filename) {
         String fullPath = DATA_FOLDER + File.separator + filename;
-        try(BufferedReader reader = new BufferedReader(new FileReader(fullPath))) {
-            String line = reader.readLine();
+        try {
+            List<String> lines = readVerifiedLines(filename);
+            String line = lines == null || lines.isEmpty() ? null : lines.get(0);
             if (line != null) {
             	President president = presidentFromFileString(line, system);
                 logger.info("President loaded successfully: " + president.getUsername());
@@ -0,0 +1,100 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// תמונת מצב עקבית של האזרחים והמתקנים - נלקחת בחוט ה-EDT ונכתבת לדיסק בחוט רקע.
+// capture() only copies field values into arrays (no formatting, no I/O), so later changes to the live
+// citizens and facilities don't leak into a snapshot that is still being written. The arrays are read by BinarySnapshot.
+final class DataSnapshot {
+    final String[] names;
+    final LocalDate[] birthDates;
+    final String[] origins;
+    final byte[] economicPercentiles;
+    final byte[] governmentSupportLevels;
+    final byte[] publicImpactScores;
+    final boolean[] parliamentMembers;
+    final long[] ids;
+    final boolean[] inDetention;
+
+    final String[] facilityIds;
+    final String[] facilityNames;
+    final int[] capacities;
+    final long[][] detaineeIds;
+    final CitizenRepository.ColdSet pagedOut; // Citizens not in memory (tiered mode), written after the others; or null
+
+    private DataSnapshot(List<Citizen> citizens, List<Facility> facilities, CitizenRepository.ColdSet pagedOut) {
+        this.pagedOut = pagedOut;
+        int n = citizens.size();
+        names = new String[n];
+        birthDates = new LocalDate[n];
+        origins = new String[n];
+        economicPercentiles = new byte[n];
+        governmentSupportLevels = new byte[n];
+        publicImpactScores = new byte[n];
+        parliamentMembers = new boolean[n];
+        ids = new long[n];
+        inDetention = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            Citizen citizen = citizens.get(i);
+            names[i] = citizen.getName();
+            birthDates[i] = citizen.getBirthDate();
+            origins[i] = citizen.getOrigin();
+            economicPercentiles[i] = (byte) citizen.getEconomicPercentile();
+            governmentSupportLevels[i] = (byte) citizen.getGovernmentSupportLevel();
+            publicImpactScores[i] = (byte) citizen.getPublicImpactScore();
+            parliamentMembers[i] = citizen.isParliamentMember();
+            ids[i] = citizen.getNumericId();
+            inDetention[i] = citizen.isInDetention();
+        }
+
+        int f = facilities.size();
+        facilityIds = new String[f];
+        facilityNames = new String[f];
+        capacities = new int[f];
+        detaineeIds = new long[f][];
+        for (int i = 0; i < f; i++) {
+            Facility facility = facilities.get(i);
+            facilityIds[i] = facility.getFacilityId();
+            facilityNames[i] = facility.getName();
+            capacities[i] = facility.getCapacity();
+            detaineeIds[i] = facility.getDetaineeIds(); // Unresolved rosters stay unresolved
+        }
+    }
+
+    // Call on the thread that owns the citizens and facilities (the EDT)
+    static DataSnapshot capture(List<Citizen> citizens, List<Facility> facilities) {
+        return new DataSnapshot(citizens, facilities, null);
+    }
+
+    // Same, plus the citizens paged out to the repository (only their ordinals are copied here)
+    static DataSnapshot capture(List<Citizen> citizens, List<Facility> facilities, CitizenRepository pagedOut) {
+        return new DataSnapshot(citizens, facilities, pagedOut != null ? pagedOut.coldSet() : null);
+    }
+
+    int getCitizenCount() {
+        return ids.length + (pagedOut != null ? pagedOut.size : 0);
+    }
+
+    // Write the binary snapshot (BinarySnapshot format) atomically; safe to call from any thread
+    boolean writeBinary(String filename) {
+        return DataHandler.writeAtomically(filename, out -> BinarySnapshot.write(this, out));
+    }
+
+    // Write the citizens and facilities text files atomically; safe to call from any thread
+    boolean write(String citizensFile, String facilitiesFile) {
+        List<String> citizenLines = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            citizenLines.add(DataHandler.citizenToFileString(names[i], birthDates[i], origins[i], economicPercentiles[i],
+                    governmentSupportLevels[i], publicImpactScores[i], parliamentMembers[i],
+                    CitizenStore.idText(ids[i]),
+                    inDetention[i]));
+        }
+        List<String> facilityLines = new ArrayList<>(facilityIds.length);
+        for (int i = 0; i < facilityIds.length; i++) {
+            facilityLines.add(DataHandler.facilityToFileString(facilityIds[i], facilityNames[i], capacities[i], detaineeIds[i]));
+        }
+        boolean citizensSaved = DataHandler.writeLinesAtomically(citizensFile, citizenLines);
+        boolean facilitiesSaved = DataHandler.writeLinesAtomically(facilitiesFile, facilityLines);
+        return citizensSaved && facilitiesSaved;
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.*;
+
+// Indexed binary min-heap of detainees ordered by threat level (see ThreatKey for the tie-breaker).
+// An id-to-position map makes contains, remove-by-id and re-sifting a changed detainee O(log n).
+class DetaineeHeap {
+    private Citizen[] heap = new Citizen[16];
+    private final LongIntMap positions = new LongIntMap(); // Citizen ID -> index in heap
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean contains(Citizen citizen) {
+        int position = positions.get(citizen.getNumericId());
+        return position >= 0 && heap[position] == citizen;
+    }
+
+    boolean containsId(long id) {
+        return positions.containsKey(id);
+    }
+
+    // Returns false if a citizen with the same ID is already in the heap
+    boolean add(Citizen citizen) {
+        if (positions.containsKey(citizen.getNumericId())) {
+            return false;
+        }
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        heap[size] = citizen;
+        positions.put(citizen.getNumericId(), size);
+        siftUp(size++);
+        return true;
+    }
+
+    // The detainee with the lowest threat level, or null if empty
+    Citizen peekMin() {
+        return size == 0 ? null : heap[0];
+    }
+
+    Citizen pollMin() {
+        if (size == 0) {
+            return null;
+        }
+        Citizen min = heap[0];
+        removeAt(0);
+        return min;
+    }
+
+    boolean remove(Citizen citizen) {
+        int position = positions.get(citizen.getNumericId());
+        if (position < 0 || heap[position] != citizen) {
+            return false;
+        }
+        removeAt(position);
+        return true;
+    }
+
+    // Restore the heap order after the citizen's threat level changed in place
+    void update(Citizen citizen) {
+        int position = positions.get(citizen.getNumericId());
+        if (position >= 0 && heap[position] == citizen) {
+            siftDown(siftUp(position));
+        }
+    }
+
+    // Restore the heap order after threat levels changed in place without update (bottom-up, O(n))
+    void reorder() {
+        for (int i = (size >>> 1) - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    void clear() {
+        Arrays.fill(heap, 0, size, null);
+        positions.clear();
+        size = 0;
+    }
+
+    // Snapshot of the detainees in heap order
+    List<Citizen> toList() {
+        return new ArrayList<>(Arrays.asList(heap).subList(0, size));
+    }
+
+    // Detainee IDs in heap order
+    long[] ids() {
+        long[] ids = new long[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = heap[i].getNumericId();
+        }
+        return ids;
+    }
+
+    private void removeAt(int position) {
+        positions.remove(heap[position].getNumericId());
+        size--;
+        if (position != size) {
+            heap[position] = heap[size];
+            positions.put(heap[position].getNumericId(), position);
+            heap[size] = null;
+            siftDown(siftUp(position));
+        } else {
+            heap[size] = null;
+        }
+    }
+
+    private int siftUp(int position) {
+        Citizen citizen = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (ThreatKey.compare(citizen, heap[parent]) >= 0) {
+                break;
+            }
+            place(heap[parent], position);
+            position = parent;
+        }
+        place(citizen, position);
+        return position;
+    }
+
+    private int siftDown(int position) {
+        Citizen citizen = heap[position];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if (right < size && ThreatKey.compare(heap[right], heap[child]) < 0) {
+                child = right;
+            }
+            if (ThreatKey.compare(citizen, heap[child]) <= 0) {
+                break;
+            }
+            place(heap[child], position);
+            position = child;
+        }
+        place(citizen, position);
+        return position;
+    }
+
+    private void place(Citizen citizen, int position) {
+        heap[position] = citizen;
+        positions.put(citizen.getNumericId(), position);
+    }
+}
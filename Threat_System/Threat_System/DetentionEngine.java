@@ -0,0 +1,597 @@
+import java.util.*;
+
+// מנוע כליאה אינקרמנטלי - מקבל שינויים (דלתאות) ומטפל רק באזרחים ובמתקנים שהושפעו.
+// The engine keeps the same fixpoint that repeated manageDetention passes converge to:
+//  - while any facility has free space, every free citizen at or above the static threshold is detained;
+//  - once all facilities are full, no free citizen has a higher threat level than the weakest detainee.
+// It detains the same citizens as manageDetentionFullScan repeated until nothing changes, and fills free places into
+// the same facilities (test/DetentionEngineCheck compares the two). Where it differs on purpose:
+//  - A candidate replaces the weakest detainee of all; the full scan replaces the weakest of the first facility
+//    that holds a weaker one and moves the evicted citizen on in its next pass. Same detainees, but the swapped
+//    citizens may sit in other facilities.
+//  - Equal threat levels are ordered by citizen ID (lower ID first, see ThreatKey), not by position in the list.
+//  - The detainees of a removed facility keep a place, most threatening first, even below the static threshold;
+//    the old pass released them and only took back those at or above the threshold.
+//  - A change is settled when it is made (or once per batch, see deferSettling), not by the next full pass.
+public class DetentionEngine {
+    private final ThreatManagementSystem system;
+    private final ThreatIndex freeCitizens = new ThreatIndex(); // Citizens not in detention, by threat level
+    private final ThreatIndex detainees = new ThreatIndex(); // Detained citizens, by threat level
+    private final Map<Citizen, Facility> placements = new IdentityHashMap<>(); // The facility holding each detainee
+    private int freeCapacity; // Total free places across all facilities
+    private boolean built;
+    private int settleDeferrals; // > 0 inside ThreatManagementSystem.runBatch or while a DetentionScheduler is open
+    private boolean settlePending;
+    private int pendingTriggers; // Changes that asked for a settle since the last one
+
+    public DetentionEngine(ThreatManagementSystem system) {
+        this.system = system;
+    }
+
+    // Mark the engine state as stale after the citizen or facility lists were replaced wholesale
+    public void invalidate() {
+        built = false;
+    }
+
+    // Whether queries can be answered without a rebuild
+    public boolean isBuilt() {
+        return built;
+    }
+
+    // A citizen entered or left a facility's roster behind the engine's back (ThreatManagementSystem.admitToFacility,
+    // transferCitizen, the full scan). Changes are applied in the order they happened; call rosterChangesDone after.
+    public void rosterChanged(Citizen citizen, Facility facility, boolean admitted) {
+        if (!built) {
+            return; // The rebuild reads the rosters
+        }
+        ThreatKey key = new ThreatKey(citizen);
+        if (admitted) {
+            Facility previous = placements.put(citizen, facility);
+            if (previous == null && freeCitizens.remove(key) == null) {
+                built = false; // Not a citizen the engine knows under its current key: start over from the rosters
+                return;
+            }
+            if (previous == null) {
+                detainees.add(citizen);
+            }
+        } else if (placements.get(citizen) == facility) { // Already admitted elsewhere if the changes crossed
+            placements.remove(citizen);
+            detainees.remove(key);
+            freeCitizens.add(citizen);
+        }
+    }
+
+    // Recount the free places after rosterChanged calls and restore the fixpoint
+    public void rosterChangesDone() {
+        if (!built) {
+            return;
+        }
+        freeCapacity = 0;
+        for (Facility facility : system.getFacilities()) {
+            freeCapacity += spaceIn(facility);
+        }
+        settle();
+    }
+
+    // Put off restoring the fixpoint until the matching resumeSettling; calls nest
+    public void deferSettling() {
+        settleDeferrals++;
+    }
+
+    // The last resumeSettling settles whatever the changes since deferSettling left unsettled, in one pass
+    public void resumeSettling() {
+        if (--settleDeferrals == 0 && settlePending) {
+            settlePending = false;
+            pendingTriggers = 0;
+            if (built) {
+                restoreFixpoint();
+            }
+        }
+    }
+
+    // Whether deferred changes are waiting for a settle
+    public boolean hasPendingSettle() {
+        return settlePending;
+    }
+
+    public int getPendingTriggers() {
+        return pendingTriggers;
+    }
+
+    // Settle the deferred changes now, staying deferred; returns how many settle requests the pass absorbed
+    public int settleNow() {
+        if (!settlePending) {
+            return 0;
+        }
+        int absorbed = pendingTriggers;
+        settlePending = false;
+        pendingTriggers = 0;
+        if (built) {
+            restoreFixpoint();
+        }
+        return absorbed;
+    }
+
+    // Rebuild the engine state from the facility rosters, then settle detention
+    public void rebuild() {
+        freeCitizens.clear();
+        detainees.clear();
+        placements.clear();
+        freeCapacity = 0;
+
+        // Rosters are walked by ID so that loaded rosters nobody has looked at stay unresolved
+        for (Facility facility : system.getFacilities()) {
+            facility.reorderRoster(); // Levels may have changed while the engine was stale, with no placement to re-sift
+            long[] roster = facility.getDetaineeIds();
+            long[] kept = new long[roster.length];
+            int count = 0;
+            for (long id : roster) {
+                Citizen citizen = system.citizenById(id);
+                // אזרח יכול להיות כלוא במתקן אחד בלבד
+                if (citizen != null && facility.containsCitizen(citizen) && !placements.containsKey(citizen)) {
+                    placements.put(citizen, facility);
+                    kept[count++] = id;
+                }
+            }
+            if (count != roster.length) {
+                System.out.println("⚠ Dropped " + (roster.length - count) + " duplicate or unknown detainees from facility " + facility.getName());
+                facility.setDetaineeIds(Arrays.copyOf(kept, count));
+            }
+            freeCapacity += spaceIn(facility);
+        }
+
+        for (Citizen citizen : system.getCitizens()) {
+            boolean detained = placements.containsKey(citizen);
+            citizen.setInDetention(detained);
+            if (detained) {
+                detainees.add(citizen);
+            } else {
+                freeCitizens.add(citizen);
+            }
+        }
+
+        built = true;
+        System.out.println("🔄 Detention engine rebuilt: " + detainees.size() + " detained, " + freeCitizens.size() + " free, " + freeCapacity + " free places.");
+        settle();
+    }
+
+    // A registered citizen's threat level changed from oldThreatLevel to its current value
+    public void threatLevelChanged(Citizen citizen, double oldThreatLevel) {
+        if (!built) {
+            rebuild();
+            return;
+        }
+        ThreatKey oldKey = new ThreatKey(oldThreatLevel, citizen.getNumericId());
+        if (detainees.remove(oldKey) != null) {
+            detainees.add(citizen);
+            placements.get(citizen).detaineeThreatLevelChanged(citizen); // Keep the facility heap in order
+        } else if (freeCitizens.remove(oldKey) != null) {
+            freeCitizens.add(citizen);
+        } else {
+            return; // Not registered in the system
+        }
+        settle();
+    }
+
+    // A new citizen joined the system
+    public void citizenAdded(Citizen citizen) {
+        if (!built) {
+            rebuild();
+            return;
+        }
+        citizen.setInDetention(false);
+        freeCitizens.add(citizen);
+        settle();
+    }
+
+    // A citizen left the system; frees its place if it was detained
+    public void citizenRemoved(Citizen citizen) {
+        if (!built) {
+            rebuild();
+            return;
+        }
+        Facility facility = placements.get(citizen);
+        if (facility != null) {
+            release(citizen, facility);
+        }
+        freeCitizens.remove(new ThreatKey(citizen));
+        settle();
+    }
+
+    // A facility was added; its existing roster is registered and its free places are filled
+    public void facilityAdded(Facility facility) {
+        if (!built) {
+            rebuild();
+            return;
+        }
+        for (Citizen citizen : facility.getDetainedCitizens()) {
+            if (freeCitizens.remove(new ThreatKey(citizen)) != null) {
+                placements.put(citizen, facility);
+                detainees.add(citizen);
+                citizen.setInDetention(true);
+            } else {
+                facility.removeCitizen(citizen); // Unknown or already detained elsewhere
+                citizen.setInDetention(placements.containsKey(citizen));
+            }
+        }
+        freeCapacity += spaceIn(facility);
+        settle();
+    }
+
+    // A facility was removed; its detainees are moved to the remaining facilities where possible
+    public void facilityRemoved(Facility facility) {
+        if (!built) {
+            rebuild();
+            return;
+        }
+        freeCapacity -= spaceIn(facility);
+        List<Citizen> displaced = new ArrayList<>();
+        for (Citizen citizen : facility.getDetainedCitizens()) {
+            if (placements.get(citizen) == facility) {
+                placements.remove(citizen);
+                detainees.remove(new ThreatKey(citizen));
+                citizen.setInDetention(false);
+                freeCitizens.add(citizen);
+                displaced.add(citizen);
+            }
+        }
+        // Like assignCitizenToFacility, displaced detainees keep their place even below the static threshold; the most
+        // threatening go first, so the outcome doesn't depend on the order of the removed facility's heap
+        displaced.sort((a, b) -> ThreatKey.compare(b, a));
+        for (Citizen citizen : displaced) {
+            if (!placements.containsKey(citizen)) {
+                Facility target = freeCapacity > 0 ? getFacilityWithMostSpace() : null;
+                if (target != null) {
+                    admit(citizen, target);
+                } else {
+                    replaceWeakest(citizen);
+                }
+            }
+        }
+        settle();
+    }
+
+    // Release a detainee (pardon, revoked detention) and refill the place it leaves
+    public boolean releaseCitizen(Citizen citizen) {
+        if (!built) {
+            rebuild();
+        }
+        Facility facility = placements.get(citizen);
+        if (facility == null) {
+            return false;
+        }
+        release(citizen, facility);
+        settle();
+        return true;
+    }
+
+    // Detain a citizen regardless of the static threshold, replacing the weakest detainee if everything is full
+    public boolean detainCitizen(Citizen citizen) {
+        if (!built) {
+            rebuild();
+        }
+        if (placements.containsKey(citizen)) {
+            return true;
+        }
+        if (!freeCitizens.contains(new ThreatKey(citizen))) {
+            return false; // Not registered in the system
+        }
+        boolean detained;
+        Facility facility = freeCapacity > 0 ? getFacilityWithMostSpace() : null;
+        if (facility != null) {
+            admit(citizen, facility);
+            detained = true;
+        } else {
+            detained = replaceWeakest(citizen);
+        }
+        settle();
+        return detained;
+    }
+
+    public Facility getFacilityOf(Citizen citizen) {
+        catchUp();
+        return placements.get(citizen);
+    }
+
+    // The detainee with the lowest threat level across all facilities, or null if nobody is detained
+    public Citizen getLowestThreatDetainee() {
+        catchUp();
+        return detainees.first();
+    }
+
+    public int getFreeCapacity() {
+        return freeCapacity;
+    }
+
+    // The k most threatening citizens that are not in detention, highest first
+    public List<Citizen> getTopFreeCitizens(int k) {
+        catchUp();
+        List<Citizen> top = new ArrayList<>(Math.min(k, freeCitizens.size()));
+        Iterator<Citizen> it = freeCitizens.descendingIterator();
+        while (top.size() < k && it.hasNext()) {
+            top.add(it.next());
+        }
+        return top;
+    }
+
+    // 1-based position of the citizen among all citizens by descending threat level, or -1 if unknown
+    public int getThreatRank(Citizen citizen) {
+        if (!built) {
+            rebuild();
+        }
+        ThreatKey key = new ThreatKey(citizen);
+        if (!freeCitizens.contains(key) && !detainees.contains(key)) {
+            return -1;
+        }
+        return freeCitizens.countAbove(key) + detainees.countAbove(key) + 1;
+    }
+
+    // Indexed citizens ranking above the key, which need not be indexed itself (a paged-out citizen's)
+    int countAbove(ThreatKey key) {
+        if (!built) {
+            rebuild();
+        }
+        return freeCitizens.countAbove(key) + detainees.countAbove(key);
+    }
+
+    public int getIndexedCitizenCount() {
+        return freeCitizens.size() + detainees.size();
+    }
+
+    // All citizens with minThreatLevel <= threat level <= maxThreatLevel, highest first
+    public List<Citizen> getCitizensInThreatRange(double minThreatLevel, double maxThreatLevel) {
+        if (!built) {
+            rebuild();
+        }
+        Iterator<Citizen> free = freeCitizens.descendingFrom(maxThreatLevel);
+        Iterator<Citizen> detained = detainees.descendingFrom(maxThreatLevel);
+        List<Citizen> result = new ArrayList<>();
+        Citizen nextFree = free.hasNext() ? free.next() : null;
+        Citizen nextDetained = detained.hasNext() ? detained.next() : null;
+        while (nextFree != null || nextDetained != null) {
+            Citizen next;
+            if (nextDetained == null || (nextFree != null && ThreatKey.compare(nextFree, nextDetained) > 0)) {
+                next = nextFree;
+                nextFree = free.hasNext() ? free.next() : null;
+            } else {
+                next = nextDetained;
+                nextDetained = detained.hasNext() ? detained.next() : null;
+            }
+            if (next.getThreatLevel() < minThreatLevel) {
+                break;
+            }
+            result.add(next);
+        }
+        return result;
+    }
+
+    // Queries about placements see the settled state, even half-way through a batch
+    private void catchUp() {
+        if (!built) {
+            rebuild();
+        }
+        settleNow();
+    }
+
+    private void settle() {
+        if (settleDeferrals > 0) {
+            settlePending = true;
+            pendingTriggers++;
+            return;
+        }
+        restoreFixpoint();
+    }
+
+    // Batch solver: plan the final rosters in one pass, then apply only the changes. The strongest free candidates are
+    // merged against the detainees from the weakest up: while there are free places every candidate at or above the
+    // static threshold gets one, in the facility with the lowest occupancy rate (a heap of facilities); once they are
+    // full a candidate takes the place of the weakest detainee left if it is strictly more threatening. A candidate
+    // admitted by the plan never becomes the weakest a later, lower candidate could replace, and an evicted detainee
+    // never outranks the detainees still in, so one merge reaches the same fixpoint as admitting one at a time.
+    // k changed placements cost O(F log F + k (log F + log N)); nothing to do costs O(log N).
+    private void restoreFixpoint() {
+        double staticThreshold = system.getStaticThreshold();
+        while (!planAndApply(staticThreshold)) {
+            // Paged-out citizens were brought in: plan again with them among the candidates
+        }
+    }
+
+    // Returns false, with nothing applied, if paged-out citizens had to be brought into memory first
+    private boolean planAndApply(double staticThreshold) {
+        Iterator<Citizen> candidates = freeCitizens.descendingIterator();
+        Iterator<Citizen> weakestFirst = null; // Detainees from the weakest up, once the places run out
+        FacilitySpace space = null; // Built on the first admission into a free place
+        boolean placesLeft = freeCapacity > 0;
+        Citizen weakest = null;
+        List<Citizen> admitted = new ArrayList<>();
+        List<Facility> targets = new ArrayList<>();
+        List<Citizen> evicted = new ArrayList<>(); // null where the admission takes a free place
+        while (true) {
+            Citizen candidate = candidates.hasNext() ? candidates.next() : null;
+            if (placesLeft && space == null && candidate != null && candidate.getThreatLevel() >= staticThreshold) {
+                space = new FacilitySpace(system.getFacilities());
+                placesLeft = space.hasSpace(); // Capacities may have changed behind the engine's back
+            }
+            if (!placesLeft && weakest == null) {
+                if (weakestFirst == null) {
+                    weakestFirst = detainees.ascendingIterator();
+                }
+                weakest = weakestFirst.hasNext() ? weakestFirst.next() : null;
+            }
+            if (pageInOutranking(candidate, staticThreshold, placesLeft, weakest)) {
+                return false;
+            }
+            if (candidate == null) {
+                break;
+            }
+            if (placesLeft) {
+                if (candidate.getThreatLevel() < staticThreshold) {
+                    break;
+                }
+                admitted.add(candidate);
+                targets.add(space.take());
+                evicted.add(null);
+                placesLeft = space.hasSpace();
+            } else {
+                if (weakest == null || candidate.getThreatLevel() <= weakest.getThreatLevel()) {
+                    break;
+                }
+                admitted.add(candidate);
+                targets.add(placements.get(weakest));
+                evicted.add(weakest);
+                weakest = null;
+            }
+        }
+
+        for (int i = 0; i < admitted.size(); i++) {
+            Citizen candidate = admitted.get(i);
+            Facility facility = targets.get(i);
+            Citizen replaced = evicted.get(i);
+            if (replaced != null) {
+                release(replaced, facility, true);
+                System.out.println("Replaced citizen " + replaced.getName() + " with citizen " + candidate.getName() + " in facility " + facility.getName());
+            }
+            admit(candidate, facility);
+        }
+        if (space != null) {
+            freeCapacity = space.remaining();
+        }
+        return true;
+    }
+
+    // Tiered mode: if a paged-out citizen could outrank the best free candidate and be placed (in a free place, or
+    // instead of the weakest detainee the plan has left), bring the next batch of candidates into memory and the free
+    // index. Returns false if nothing had to be paged in.
+    private boolean pageInOutranking(Citizen candidate, double staticThreshold, boolean placesLeft, Citizen weakest) {
+        ThreatKey ceiling = system.getPagedOutCeiling();
+        if (ceiling == null || candidate != null && new ThreatKey(candidate).compareTo(ceiling) > 0) {
+            return false;
+        }
+        boolean placeable = placesLeft ? ceiling.getThreatLevel() >= staticThreshold
+                : weakest != null && ceiling.getThreatLevel() > weakest.getThreatLevel();
+        if (!placeable) {
+            return false;
+        }
+        for (Citizen citizen : system.pageInCandidates()) {
+            citizen.setInDetention(false);
+            freeCitizens.add(citizen);
+        }
+        return true;
+    }
+
+    // Paged-out citizens were rescored (tiered mode); one of them may now outrank the free candidates
+    public void pagedOutCitizensRescored() {
+        if (built) {
+            settle();
+        }
+    }
+
+    // Swap the weakest detainee out for the candidate if the candidate is strictly more threatening
+    private boolean replaceWeakest(Citizen candidate) {
+        Citizen weakest = detainees.first();
+        if (weakest == null || candidate.getThreatLevel() <= weakest.getThreatLevel()) {
+            return false;
+        }
+        Facility facility = placements.get(weakest);
+        release(weakest, facility, true);
+        admit(candidate, facility);
+        System.out.println("Replaced citizen " + weakest.getName() + " with citizen " + candidate.getName() + " in facility " + facility.getName());
+        return true;
+    }
+
+    private void admit(Citizen citizen, Facility facility) {
+        int spaceBefore = spaceIn(facility);
+        freeCitizens.remove(new ThreatKey(citizen));
+        facility.addCitizen(citizen);
+        placements.put(citizen, facility);
+        detainees.add(citizen);
+        freeCapacity += spaceIn(facility) - spaceBefore;
+        System.out.println("✅ Citizen " + citizen.getName() + " assigned to facility " + facility.getName());
+    }
+
+    private void release(Citizen citizen, Facility facility) {
+        release(citizen, facility, false);
+    }
+
+    private void release(Citizen citizen, Facility facility, boolean evicted) {
+        int spaceBefore = spaceIn(facility);
+        detainees.remove(new ThreatKey(citizen));
+        placements.remove(citizen);
+        facility.removeCitizen(citizen, evicted);
+        freeCitizens.add(citizen);
+        freeCapacity += spaceIn(facility) - spaceBefore;
+    }
+
+    // The non-full facility with the lowest occupancy rate (first one wins on ties, like getFacilityWithLowestOccupancy)
+    private Facility getFacilityWithMostSpace() {
+        Facility best = null;
+        double bestRate = Double.MAX_VALUE;
+        for (Facility facility : system.getFacilities()) {
+            if (facility.hasAvailableSpace()) {
+                double rate = (double) facility.getCurrentOccupancy() / facility.getCapacity();
+                if (rate < bestRate) {
+                    best = facility;
+                    bestRate = rate;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static int spaceIn(Facility facility) {
+        return Math.max(0, facility.getCapacity() - facility.getCurrentOccupancy());
+    }
+
+    // The free places the plan hands out: facilities with space in a heap by occupancy rate, ties to the facility listed
+    // first (like getFacilityWithMostSpace). Rates are compared by cross-multiplying, without a division.
+    private static final class FacilitySpace {
+        private final PriorityQueue<Slot> open;
+        private int remaining;
+
+        FacilitySpace(List<Facility> facilities) {
+            open = new PriorityQueue<>(Math.max(1, facilities.size()), (a, b) -> {
+                int cmp = Long.compare((long) a.occupancy * b.capacity, (long) b.occupancy * a.capacity);
+                return cmp != 0 ? cmp : Integer.compare(a.order, b.order);
+            });
+            for (int i = 0; i < facilities.size(); i++) {
+                Facility facility = facilities.get(i);
+                if (facility.hasAvailableSpace()) {
+                    open.add(new Slot(facility, i));
+                    remaining += facility.getCapacity() - facility.getCurrentOccupancy();
+                }
+            }
+        }
+
+        boolean hasSpace() {
+            return !open.isEmpty();
+        }
+
+        int remaining() {
+            return remaining;
+        }
+
+        Facility take() {
+            Slot slot = open.poll();
+            slot.occupancy++;
+            remaining--;
+            if (slot.occupancy < slot.capacity) {
+                open.add(slot);
+            }
+            return slot.facility;
+        }
+
+        private static final class Slot {
+            final Facility facility;
+            final int order;
+            final int capacity;
+            int occupancy;
+
+            Slot(Facility facility, int order) {
+                this.facility = facility;
+                this.order = order;
+                this.capacity = facility.getCapacity();
+                this.occupancy = facility.getCurrentOccupancy();
+            }
+        }
+    }
+}
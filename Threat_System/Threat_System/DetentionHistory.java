@@ -0,0 +1,656 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// היסטוריית כליאה - כל כניסה, שחרור ופינוי נרשמים ביומן לפי חודשים, ונשארים בדיסק (לא ב-heap).
+// Events go to <folder>/<yyyy-MM>.log through a MutationJournal (group commit, torn tail dropped), one line each:
+//   <A|R|E>,<epoch millis>,<citizen ID>,<facility ID>    A = admitted, R = released, E = evicted for a stronger citizen
+// Once a month is over its log gets an index file <yyyy-MM>.idx, built once on a background thread: the month's events
+// sorted by citizen and, separately, by facility. Queries binary-search the memory-mapped index files and only scan
+// the logs of months without one (the current month). Only query results are kept on the heap.
+// Every checkpointEveryEvents events (and at the end of each month) the same thread writes a roster checkpoint
+// <time>-<yyyy-MM>-<offset>.chk: every facility's roster after the log events up to that byte offset, computed from the
+// previous checkpoint and the events since (never from the live rosters, which can be mid-change). getRostersAt(T)
+// loads the last checkpoint before T and replays at most about checkpointEveryEvents events after it.
+public class DetentionHistory implements Closeable {
+    private static final Logger logger = Logger.getLogger(DetentionHistory.class.getName());
+    private static final int INDEX_MAGIC = 0x544D4448; // "TMDH"
+    private static final int RECORD_BYTES = 24; // long citizen ID, long epoch millis, int facility ordinal, int type
+    private static final int CHECKPOINT_MAGIC = 0x544D4443; // "TMDC"
+    static final char ADMITTED = 'A';
+    static final char RELEASED = 'R';
+    static final char EVICTED = 'E';
+
+    private final String folder; // Relative to the data folder
+    private final Path folderPath;
+    private final ThreatManagementSystem system; // Resolves IDs back to live citizens and facilities
+    private final long syncIntervalMillis;
+    private final int maxBatchRecords;
+    private final int checkpointEveryEvents;
+    private int eventsSinceCheckpoint;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final Map<YearMonth, MonthIndex> indexes = new HashMap<>(); // Index files opened so far (they never change)
+    private final ExecutorService indexer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "history-indexer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile YearMonth currentMonth; // Both change only under this object's monitor (record)
+    private volatile MutationJournal journal;
+
+    public DetentionHistory(String folder, ThreatManagementSystem system, long syncIntervalMillis, int maxBatchRecords,
+                            int checkpointEveryEvents) throws IOException {
+        this.folder = folder;
+        this.folderPath = DataHandler.getDataPath(folder);
+        this.system = system;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.maxBatchRecords = maxBatchRecords;
+        this.checkpointEveryEvents = Math.max(1, checkpointEveryEvents);
+        Files.createDirectories(folderPath);
+        currentMonth = YearMonth.now(zone);
+        journal = new MutationJournal(logPath(currentMonth), syncIntervalMillis, maxBatchRecords, false);
+        for (YearMonth month : months()) {
+            if (month.isBefore(currentMonth) && !Files.exists(indexPath(month))) {
+                indexer.execute(() -> buildIndex(month)); // Months that ended while the system was down
+            }
+        }
+        long size = Files.size(logPath(currentMonth));
+        indexer.execute(() -> writeCheckpoint(currentMonth, size)); // Catch up with the events of earlier runs
+    }
+
+    // Facilities admitting on different threads (see ThreatManagementSystem) record here concurrently
+    public synchronized void record(char type, Citizen citizen, Facility facility) {
+        long now = System.currentTimeMillis();
+        YearMonth month = YearMonth.from(Instant.ofEpochMilli(now).atZone(zone));
+        if (!month.equals(currentMonth)) {
+            rollOver(month);
+        }
+        journal.append(type + "," + now + "," + citizen.getNumericId() + "," + facility.getFacilityId());
+        if (++eventsSinceCheckpoint >= checkpointEveryEvents) {
+            checkpointCurrentMonth();
+        }
+    }
+
+    // Every facility's roster (sorted citizen IDs) as it was at the given moment; facilities that held nobody are left out
+    public Map<String, long[]> getRostersAt(LocalDateTime time) {
+        long until = time.atZone(zone).toInstant().toEpochMilli();
+        journal.flush();
+        Map<String, Set<Long>> rosters = new HashMap<>();
+        Checkpoint checkpoint = null;
+        for (Checkpoint candidate : checkpoints()) {
+            if (candidate.time <= until) {
+                checkpoint = candidate; // The last one at or before the requested time
+            }
+        }
+        try {
+            if (checkpoint != null) {
+                checkpoint.load(rosters);
+            }
+            replay(rosters, checkpoint, until, null, 0, Integer.MAX_VALUE);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error reconstructing detention rosters at " + time, e);
+        }
+        Map<String, long[]> result = new TreeMap<>();
+        for (Map.Entry<String, Set<Long>> roster : rosters.entrySet()) {
+            if (!roster.getValue().isEmpty()) {
+                long[] ids = roster.getValue().stream().mapToLong(Long::longValue).toArray();
+                Arrays.sort(ids);
+                result.put(roster.getKey(), ids);
+            }
+        }
+        return result;
+    }
+
+    // Every stay of a citizen, oldest first; a stay still going has no release date
+    public List<CitizenFacilityAssignment> getCitizenHistory(long citizenId) {
+        List<Event> events = new ArrayList<>();
+        for (YearMonth month : months()) {
+            MonthIndex index = index(month);
+            if (index != null) {
+                index.eventsOfCitizen(citizenId, events);
+            } else {
+                scanLog(month, event -> event.citizenId == citizenId, events);
+            }
+        }
+        return stays(events, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    // The stays in a facility that overlap the given day (everyone who was held there at some point of that day)
+    public List<CitizenFacilityAssignment> getFacilityOccupants(String facilityId, LocalDate date) {
+        long dayStart = date.atStartOfDay(zone).toInstant().toEpochMilli();
+        long dayEnd = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        YearMonth last = YearMonth.from(date);
+        List<Event> events = new ArrayList<>();
+        for (YearMonth month : months()) {
+            if (month.isAfter(last)) {
+                break;
+            }
+            MonthIndex index = index(month);
+            if (index != null) {
+                index.eventsOfFacility(facilityId, dayEnd, events);
+            } else {
+                scanLog(month, event -> event.facilityId.equals(facilityId) && event.time < dayEnd, events);
+            }
+        }
+        return stays(events, dayStart, dayEnd);
+    }
+
+    // Append every stay overlapping [from, to] to a file, in the CitizenFacilityAssignment format, streaming the logs
+    // month by month; only the stays still open are held in memory. Returns the number of stays written.
+    public int exportAssignments(String fileName, LocalDate from, LocalDate to) throws IOException {
+        long start = from.atStartOfDay(zone).toInstant().toEpochMilli();
+        long end = to.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        journal.flush();
+        Map<String, Event> open = new HashMap<>();
+        int[] written = {0};
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName, true), 1 << 16)) {
+            for (YearMonth month : months()) {
+                if (month.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli() >= end) {
+                    break;
+                }
+                readEvents(logPath(month), 0, Long.MAX_VALUE, (event, offset) -> {
+                    if (event.time >= end) {
+                        return true;
+                    }
+                    String key = event.citizenId + "," + event.facilityId;
+                    Event admitted = event.type == ADMITTED ? open.put(key, event) : open.remove(key);
+                    if (admitted != null && event.time >= start) {
+                        assignment(admitted, event.time).writeTo(writer);
+                        written[0]++;
+                    }
+                    return true;
+                });
+            }
+            List<Event> stillOpen = new ArrayList<>(open.values());
+            stillOpen.sort(Comparator.comparingLong(event -> event.time));
+            for (Event admitted : stillOpen) {
+                assignment(admitted, Long.MAX_VALUE).writeTo(writer);
+                written[0]++;
+            }
+        }
+        return written[0];
+    }
+
+    @Override
+    public void close() throws IOException {
+        indexer.shutdown();
+        synchronized (this) { // Not while waiting for the indexer, it may need index()
+            journal.close();
+        }
+        try {
+            indexer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void rollOver(YearMonth month) {
+        YearMonth ended = currentMonth;
+        try {
+            journal.close();
+            long size = Files.size(logPath(ended));
+            journal = new MutationJournal(logPath(month), syncIntervalMillis, maxBatchRecords, false);
+            currentMonth = month;
+            eventsSinceCheckpoint = 0;
+            indexer.execute(() -> writeCheckpoint(ended, size)); // The rosters at the end of the month
+            indexer.execute(() -> buildIndex(ended));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error starting detention history month " + month, e);
+        }
+    }
+
+    private void checkpointCurrentMonth() {
+        eventsSinceCheckpoint = 0;
+        journal.flush();
+        YearMonth month = currentMonth;
+        try {
+            long size = Files.size(logPath(month));
+            indexer.execute(() -> writeCheckpoint(month, size));
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error checkpointing detention history " + month, e);
+        }
+    }
+
+    // Write checkpoints for the logs up to (month, offset), one every checkpointEveryEvents events after the newest
+    // existing one (so logs written before checkpoints existed get them too). Layout: int magic, int facility count, then per facility its ID (writeUTF), int detainee count, the citizen IDs.
+    private void writeCheckpoint(YearMonth month, long offset) {
+        try {
+            List<Checkpoint> checkpoints = checkpoints();
+            Checkpoint base = checkpoints.isEmpty() ? null : checkpoints.get(checkpoints.size() - 1);
+            if (base != null && (base.month.isAfter(month) || base.month.equals(month) && base.offset >= offset)) {
+                return; // Already covered
+            }
+            Map<String, Set<Long>> rosters = new HashMap<>();
+            if (base != null) {
+                base.load(rosters);
+            }
+            Checkpoint reached = base;
+            while (true) {
+                Checkpoint next = replay(rosters, reached, Long.MAX_VALUE, month, offset, checkpointEveryEvents);
+                if (next.time == Long.MIN_VALUE
+                        || reached != null && next.month.equals(reached.month) && next.offset == reached.offset) {
+                    return; // No events left
+                }
+                String name = next.time + "-" + next.month + "-" + next.offset + ".chk";
+                DataHandler.writeAtomically(folder + "/" + name, target -> {
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(target, 1 << 16));
+                    out.writeInt(CHECKPOINT_MAGIC);
+                    out.writeInt(rosters.size());
+                    for (Map.Entry<String, Set<Long>> roster : rosters.entrySet()) {
+                        out.writeUTF(roster.getKey());
+                        out.writeInt(roster.getValue().size());
+                        for (long citizenId : roster.getValue()) {
+                            out.writeLong(citizenId);
+                        }
+                    }
+                    out.flush();
+                });
+                reached = next;
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error writing detention roster checkpoint for " + month, e);
+        }
+    }
+
+    // Apply the log events after a checkpoint (or from the very first one) to rosters, up to and including time until
+    // and, if stopMonth is given, not past stopOffset in that month's log, applying at most maxEvents events.
+    // Returns the position reached.
+    private Checkpoint replay(Map<String, Set<Long>> rosters, Checkpoint from, long until, YearMonth stopMonth,
+                              long stopOffset, int maxEvents) throws IOException {
+        long lastTime = from != null ? from.time : Long.MIN_VALUE;
+        YearMonth lastMonth = from != null ? from.month : null;
+        long lastOffset = from != null ? from.offset : 0;
+        int[] applied = {0};
+        for (YearMonth month : months()) {
+            if (from != null && month.isBefore(from.month)) {
+                continue;
+            }
+            if (stopMonth != null && month.isAfter(stopMonth)) {
+                break;
+            }
+            long start = from != null && month.equals(from.month) ? from.offset : 0;
+            long end = stopMonth != null && month.equals(stopMonth) ? stopOffset : Long.MAX_VALUE;
+            long[] position = {lastTime, -1};
+            boolean[] passed = {false};
+            readEvents(logPath(month), start, end, (event, offset) -> {
+                if (event.time > until || applied[0] == maxEvents) {
+                    passed[0] = true;
+                    return false;
+                }
+                if (event.type == ADMITTED) {
+                    rosters.computeIfAbsent(event.facilityId, k -> new HashSet<>()).add(event.citizenId);
+                } else {
+                    Set<Long> roster = rosters.get(event.facilityId);
+                    if (roster != null) {
+                        roster.remove(event.citizenId);
+                    }
+                }
+                applied[0]++;
+                position[0] = event.time;
+                position[1] = offset;
+                return true;
+            });
+            if (position[1] >= 0) { // Applied events of this month
+                lastTime = position[0];
+                lastMonth = month;
+                lastOffset = position[1];
+            }
+            if (passed[0]) {
+                break;
+            }
+        }
+        return new Checkpoint(null, lastTime, lastMonth, lastOffset);
+    }
+
+    // Checkpoint files, in log order
+    private List<Checkpoint> checkpoints() {
+        List<Checkpoint> checkpoints = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folderPath, "*.chk")) {
+            for (Path file : files) {
+                String[] parts = file.getFileName().toString().replace(".chk", "").split("-");
+                try {
+                    checkpoints.add(new Checkpoint(file, Long.parseLong(parts[0]),
+                            YearMonth.of(Integer.parseInt(parts[1]), Integer.parseInt(parts[2])), Long.parseLong(parts[3])));
+                } catch (RuntimeException e) {
+                    // Not a checkpoint file
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error listing detention roster checkpoints in " + folderPath, e);
+        }
+        checkpoints.sort(Comparator.comparing((Checkpoint checkpoint) -> checkpoint.month).thenComparingLong(checkpoint -> checkpoint.offset));
+        return checkpoints;
+    }
+
+    private interface EventVisitor {
+        boolean visit(Event event, long end) throws IOException; // end: offset just past the event's line; false stops
+    }
+
+    // The events of a log between byte offsets from and to; a line still being written (no line break yet) is left out
+    private static void readEvents(Path log, long from, long to, EventVisitor visitor) throws IOException {
+        if (!Files.exists(log)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            byte[] line = new byte[128];
+            int length = 0;
+            long position = from;
+            long limit = Math.min(to, channel.size());
+            while (position < limit) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), limit - position));
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    return;
+                }
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer.get(i);
+                    if (b != '\n') {
+                        if (length == line.length) {
+                            line = Arrays.copyOf(line, length * 2);
+                        }
+                        line[length++] = b;
+                        continue;
+                    }
+                    Event event = Event.parse(new String(line, 0, length, StandardCharsets.UTF_8));
+                    length = 0;
+                    if (event != null && !visitor.visit(event, position + i + 1)) {
+                        return;
+                    }
+                }
+                position += read;
+            }
+        }
+    }
+
+    // Pair admissions with the release that follows them; events are in time order per citizen and facility.
+    // Stays ending before from or starting at or after to are dropped. A release without an admission (the
+    // admission was before the history began) is skipped.
+    private List<CitizenFacilityAssignment> stays(List<Event> events, long from, long to) {
+        Map<String, Event> open = new LinkedHashMap<>();
+        List<CitizenFacilityAssignment> stays = new ArrayList<>();
+        for (Event event : events) {
+            String key = event.citizenId + "," + event.facilityId;
+            Event admitted = event.type == ADMITTED ? open.put(key, event) : open.remove(key);
+            if (admitted != null && event.time >= from && admitted.time < to) {
+                stays.add(assignment(admitted, event.time));
+            }
+        }
+        for (Event admitted : open.values()) {
+            if (admitted.time < to) {
+                stays.add(assignment(admitted, Long.MAX_VALUE));
+            }
+        }
+        stays.sort(Comparator.comparing(CitizenFacilityAssignment::getAssignedDate));
+        return stays;
+    }
+
+    private CitizenFacilityAssignment assignment(Event admitted, long releaseTime) {
+        Citizen citizen = system.findCitizenById(admitted.citizenId);
+        return new CitizenFacilityAssignment(citizen != null ? citizen.getId() : CitizenStore.idText(admitted.citizenId), citizen,
+                admitted.facilityId, system.findFacilityById(admitted.facilityId), dateTime(admitted.time),
+                releaseTime == Long.MAX_VALUE ? null : dateTime(releaseTime));
+    }
+
+    private LocalDateTime dateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone);
+    }
+
+    private void scanLog(YearMonth month, java.util.function.Predicate<Event> filter, List<Event> out) {
+        if (month.equals(currentMonth)) {
+            journal.flush();
+        }
+        try {
+            readEvents(logPath(month), 0, Long.MAX_VALUE, (event, offset) -> {
+                if (filter.test(event)) {
+                    out.add(event);
+                }
+                return true;
+            });
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error reading detention history " + logPath(month), e);
+        }
+    }
+
+    // Months with a log, oldest first
+    private List<YearMonth> months() {
+        List<YearMonth> months = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folderPath, "*.log")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    months.add(YearMonth.parse(name.substring(0, name.length() - 4)));
+                } catch (DateTimeException e) {
+                    // Not a history log
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error listing detention history in " + folderPath, e);
+        }
+        Collections.sort(months);
+        return months;
+    }
+
+    private Path logPath(YearMonth month) {
+        return folderPath.resolve(month + ".log");
+    }
+
+    private Path indexPath(YearMonth month) {
+        return folderPath.resolve(month + ".idx");
+    }
+
+    // The index of a month that is over, or null if it has none (yet)
+    private synchronized MonthIndex index(YearMonth month) {
+        if (!month.isBefore(currentMonth)) {
+            return null;
+        }
+        MonthIndex index = indexes.get(month);
+        if (index == null && Files.exists(indexPath(month))) {
+            try {
+                index = new MonthIndex(indexPath(month));
+                indexes.put(month, index);
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.WARNING, "Unreadable detention history index " + indexPath(month) + ", reading the log", e);
+            }
+        }
+        return index;
+    }
+
+    // Index layout: int magic, int facility count, the facility IDs (sorted, writeUTF), int event count,
+    // then the events sorted by citizen and then the same events sorted by facility (both stable, so time-ordered)
+    private void buildIndex(YearMonth month) {
+        try {
+            List<Event> events = new ArrayList<>();
+            readEvents(logPath(month), 0, Long.MAX_VALUE, (event, offset) -> events.add(event));
+            String[] facilityIds = events.stream().map(event -> event.facilityId).distinct().sorted().toArray(String[]::new);
+            List<Event> byCitizen = new ArrayList<>(events);
+            byCitizen.sort(Comparator.comparingLong(event -> event.citizenId));
+            List<Event> byFacility = new ArrayList<>(events);
+            byFacility.sort(Comparator.comparing(event -> event.facilityId));
+            boolean written = DataHandler.writeAtomically(folder + "/" + month + ".idx", target -> {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(target, 1 << 16));
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(facilityIds.length);
+                for (String facilityId : facilityIds) {
+                    out.writeUTF(facilityId);
+                }
+                out.writeInt(events.size());
+                for (List<Event> sorted : List.of(byCitizen, byFacility)) {
+                    for (Event event : sorted) {
+                        out.writeLong(event.citizenId);
+                        out.writeLong(event.time);
+                        out.writeInt(Arrays.binarySearch(facilityIds, event.facilityId));
+                        out.writeInt(event.type);
+                    }
+                }
+                out.flush();
+            });
+            if (written) {
+                logger.info("Indexed detention history " + month + ": " + events.size() + " events");
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error indexing detention history " + month, e);
+        }
+    }
+
+    // One line of a history log
+    private static final class Event {
+        final char type;
+        final long time;
+        final long citizenId;
+        final String facilityId;
+
+        Event(char type, long time, long citizenId, String facilityId) {
+            this.type = type;
+            this.time = time;
+            this.citizenId = citizenId;
+            this.facilityId = facilityId;
+        }
+
+        static Event parse(String line) {
+            int first = line.indexOf(',');
+            int second = line.indexOf(',', first + 1);
+            int third = line.indexOf(',', second + 1);
+            if (first != 1 || second < 0 || third < 0) {
+                return null;
+            }
+            try {
+                return new Event(line.charAt(0), Long.parseLong(line.substring(first + 1, second)),
+                        Long.parseLong(line.substring(second + 1, third)), line.substring(third + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    // A roster checkpoint file: the rosters after every log event before offset in month's log (time: the last one's)
+    private static final class Checkpoint {
+        final Path path; // null for a position that has no file
+        final long time;
+        final YearMonth month;
+        final long offset;
+
+        Checkpoint(Path path, long time, YearMonth month, long offset) {
+            this.path = path;
+            this.time = time;
+            this.month = month;
+            this.offset = offset;
+        }
+
+        void load(Map<String, Set<Long>> rosters) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+                if (in.readInt() != CHECKPOINT_MAGIC) {
+                    throw new IOException("Not a detention roster checkpoint: " + path);
+                }
+                int facilities = in.readInt();
+                for (int f = 0; f < facilities; f++) {
+                    String facilityId = in.readUTF();
+                    int count = in.readInt();
+                    Set<Long> roster = new HashSet<>(count * 2);
+                    for (int i = 0; i < count; i++) {
+                        roster.add(in.readLong());
+                    }
+                    rosters.put(facilityId, roster);
+                }
+            }
+        }
+    }
+
+    // A memory-mapped .idx file
+    private static final class MonthIndex {
+        private final String[] facilityIds;
+        private final MappedByteBuffer buffer;
+        private final int count;
+        private final int byCitizen; // Offset of the events sorted by citizen
+        private final int byFacility; // Offset of the events sorted by facility
+
+        MonthIndex(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            DataInputStream in = new DataInputStream(new ByteBufferInput(buffer.duplicate()));
+            if (in.readInt() != INDEX_MAGIC) {
+                throw new IOException("Not a detention history index: " + path);
+            }
+            facilityIds = new String[in.readInt()];
+            for (int i = 0; i < facilityIds.length; i++) {
+                facilityIds[i] = in.readUTF();
+            }
+            count = in.readInt();
+            byCitizen = buffer.capacity() - 2 * count * RECORD_BYTES;
+            byFacility = byCitizen + count * RECORD_BYTES;
+        }
+
+        void eventsOfCitizen(long citizenId, List<Event> out) {
+            int lo = 0, hi = count; // First event with a citizen ID >= citizenId
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (buffer.getLong(byCitizen + mid * RECORD_BYTES) < citizenId) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (int i = lo; i < count && buffer.getLong(byCitizen + i * RECORD_BYTES) == citizenId; i++) {
+                out.add(event(byCitizen + i * RECORD_BYTES));
+            }
+        }
+
+        // Events of a facility before the given time
+        void eventsOfFacility(String facilityId, long before, List<Event> out) {
+            int facility = Arrays.binarySearch(facilityIds, facilityId);
+            if (facility < 0) {
+                return;
+            }
+            int lo = 0, hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (buffer.getInt(byFacility + mid * RECORD_BYTES + 16) < facility) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (int i = lo; i < count; i++) {
+                int at = byFacility + i * RECORD_BYTES;
+                if (buffer.getInt(at + 16) != facility || buffer.getLong(at + 8) >= before) {
+                    break;
+                }
+                out.add(event(at));
+            }
+        }
+
+        private Event event(int at) {
+            return new Event((char) buffer.getInt(at + 20), buffer.getLong(at + 8), buffer.getLong(at),
+                    facilityIds[buffer.getInt(at + 16)]);
+        }
+    }
+
+    // Reads the index header through DataInputStream
+    private static final class ByteBufferInput extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// מתזמן הערכת כליאה: שינויים שמגיעים בחלון זמן קצר מסומנים ומאוחדים למעבר כליאה אחד.
+// While it is open the detention engine stays deferred (DetentionEngine.deferSettling): every change still updates the
+// engine's indexes, but restoring the fixpoint waits. The first change after a pass starts the window; when it ends, or
+// as soon as maxTriggers changes are waiting, one pass settles them all. Until then the rosters may lag behind the
+// threat levels by up to one window. Queries about placements (getFacilityOf, the dynamic threshold...) flush first,
+// and ThreatManagementSystem.flushDetention forces a pass for anything else that needs the settled state.
+// All methods except getStats run under the system's write lock.
+final class DetentionScheduler {
+    static final String WINDOW = "window";
+    static final String FULL = "max batch";
+    static final String FORCED = "forced";
+
+    private final ThreatManagementSystem system;
+    private final ScheduledExecutorService timer;
+    private final long windowMillis;
+    private final int maxTriggers;
+    private ScheduledFuture<?> scheduledPass; // null = no window is open
+    private long windows; // Windows opened so far; a window's pass knows its number
+    private volatile long passes;
+    private volatile long triggers;
+    private volatile int mostTriggersInOnePass;
+    private volatile long windowPasses;
+    private volatile long fullPasses;
+    private volatile long forcedPasses;
+
+    DetentionScheduler(ThreatManagementSystem system, ScheduledExecutorService timer, long windowMillis, int maxTriggers) {
+        this.system = system;
+        this.timer = timer;
+        this.windowMillis = windowMillis;
+        this.maxTriggers = Math.max(1, maxTriggers);
+    }
+
+    // A change was applied and waits for settling; pendingTriggers is how many are waiting now.
+    // Returns true if the batch is full and the caller should settle right away.
+    boolean changesApplied(int pendingTriggers) {
+        if (pendingTriggers >= maxTriggers) {
+            return true;
+        }
+        if (pendingTriggers > 0 && scheduledPass == null) {
+            long window = ++windows;
+            scheduledPass = timer.schedule(() -> windowEnded(window), windowMillis, TimeUnit.MILLISECONDS);
+        }
+        return false;
+    }
+
+    // The window's pass, on the timer's thread (not under the lock). Whatever happens to the pass the window is over:
+    // a pass that throws must not leave scheduledPass set, or no later change would open another window.
+    private void windowEnded(long window) {
+        try {
+            system.flushDetention(WINDOW);
+        } catch (RuntimeException e) {
+            System.out.println("❌ Detention pass after the window failed: " + e);
+        } finally {
+            system.closeDetentionWindow(this, window);
+        }
+    }
+
+    // Window number window is over. A failed pass never reached passDone, so it is cleared here; a newer window stays.
+    void windowClosed(long window) {
+        if (window == windows) {
+            scheduledPass = null;
+        }
+    }
+
+    // A pass ran (absorbed > 0) or found nothing to do; either way the window is over
+    void passDone(int absorbed, String cause) {
+        if (scheduledPass != null) {
+            scheduledPass.cancel(false); // A no-op if this is the scheduled pass itself
+            scheduledPass = null;
+        }
+        if (absorbed == 0) {
+            return;
+        }
+        passes++;
+        triggers += absorbed;
+        mostTriggersInOnePass = Math.max(mostTriggersInOnePass, absorbed);
+        if (WINDOW.equals(cause)) {
+            windowPasses++;
+        } else if (FULL.equals(cause)) {
+            fullPasses++;
+        } else {
+            forcedPasses++;
+        }
+    }
+
+    void close() {
+        if (scheduledPass != null) {
+            scheduledPass.cancel(false);
+            scheduledPass = null;
+        }
+    }
+
+    String getStats() {
+        long passCount = passes;
+        return String.format("Detention scheduler: %,d changes settled in %,d passes (average %.1f, most %d) - %,d after the %d ms window, %,d at %d changes, %,d forced",
+                triggers, passCount, passCount == 0 ? 0.0 : (double) triggers / passCount, mostTriggersInOnePass,
+                windowPasses, windowMillis, fullPasses, maxTriggers, forcedPasses);
+    }
+}
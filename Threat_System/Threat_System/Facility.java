@@ -1,60 +1,131 @@
 import java.util.*;
+import java.util.function.LongFunction;
 
 public class Facility {
     private String facilityId;
     private String name;
     private int capacity;
-    private List<Citizen> detainedCitizens;
+    private final DetaineeHeap detainedCitizens; // Min-heap on threat level, indexed by citizen ID
+    // רשימת כלואים שנטענה וטרם נפתרה לאזרחים: מזהים ממוינים, null אחרי הגישה הראשונה.
+    // Occupancy and capacity checks use its length; anything that needs the Citizen objects resolves it once.
+    private long[] unresolvedIds;
+    private LongFunction<Citizen> citizenResolver; // Looks up a detainee by ID when the roster is resolved
+    private FacilityRosterListener rosterListener; // null = nobody is told about admissions and releases
 
     // Constructor
     public Facility(String facilityId, String name, int capacity) {
         setFacilityId(facilityId);
         setName(name);
         setCapacity(capacity);
-        this.detainedCitizens = new ArrayList<>();
+        this.detainedCitizens = new DetaineeHeap();
     }
 
     // Add a citizen to the facility
     public boolean addCitizen(Citizen citizen) {
+        if (roster().containsId(citizen.getNumericId())) {
+            return false; // Already detained here
+        }
         if (isFull()) {
             Citizen lowestThreatCitizen = getLowestThreatCitizen();
             if (lowestThreatCitizen != null && lowestThreatCitizen.getThreatLevel() < citizen.getThreatLevel()) {
-                detainedCitizens.remove(lowestThreatCitizen);
+                detainedCitizens.pollMin();
                 lowestThreatCitizen.setInDetention(false); // Release the citizen
                 System.out.println("Citizen removed: " + lowestThreatCitizen.getName() + ", Threat Level: " + lowestThreatCitizen.getThreatLevel());
                 System.out.println("Citizen added: " + citizen.getName() + ", Threat Level: " + citizen.getThreatLevel());
                 detainedCitizens.add(citizen);
                 citizen.setInDetention(true);
+                if (rosterListener != null) {
+                    rosterListener.citizenReleased(this, lowestThreatCitizen, true);
+                    rosterListener.citizenAdmitted(this, citizen);
+                }
                 return true;
             }
             return false; // No replacement occurred
         } else {
             detainedCitizens.add(citizen);
             citizen.setInDetention(true);
+            if (rosterListener != null) {
+                rosterListener.citizenAdmitted(this, citizen);
+            }
             return true;
         }
     }
 
+    public void setRosterListener(FacilityRosterListener rosterListener) {
+        this.rosterListener = rosterListener;
+    }
+
+    public void setCitizenResolver(LongFunction<Citizen> citizenResolver) {
+        this.citizenResolver = citizenResolver;
+    }
+
+    // The detainee heap, resolving a loaded ID roster first; unknown IDs are dropped
+    private DetaineeHeap roster() {
+        if (unresolvedIds != null) {
+            long[] ids = unresolvedIds;
+            unresolvedIds = null;
+            int missing = 0;
+            for (long id : ids) {
+                Citizen citizen = citizenResolver != null ? citizenResolver.apply(id) : null;
+                if (citizen != null) {
+                    detainedCitizens.add(citizen);
+                } else {
+                    missing++;
+                }
+            }
+            if (missing > 0) {
+                System.out.println("⚠ " + missing + " detainees of facility " + name + " were not found and were dropped.");
+            }
+        }
+        return detainedCitizens;
+    }
+
+    // Whether the detainees were looked up already (false for a loaded roster nobody has read yet)
+    public boolean isRosterResolved() {
+        return unresolvedIds == null;
+    }
+
     // Check if the facility has available space
     public boolean hasAvailableSpace() {
-        return detainedCitizens.size() < capacity;
+        return getCurrentOccupancy() < capacity;
     }
 
     // Check if the facility is full
     public boolean isFull() {
-        return detainedCitizens.size() >= capacity;
+        return getCurrentOccupancy() >= capacity;
     }
 
     // Get the citizen with the lowest threat level
     public Citizen getLowestThreatCitizen() {
-        return detainedCitizens.stream()
-                .min(Comparator.comparingDouble(Citizen::getThreatLevel))
-                .orElse(null);
+        return roster().peekMin();
+    }
+
+    // Whether the citizen is detained in this facility
+    public boolean containsCitizen(Citizen citizen) {
+        if (unresolvedIds != null) {
+            return Arrays.binarySearch(unresolvedIds, citizen.getNumericId()) >= 0
+                    && citizenResolver != null && citizenResolver.apply(citizen.getNumericId()) == citizen;
+        }
+        return detainedCitizens.contains(citizen);
+    }
+
+    // Re-position a detainee whose threat level changed while detained here
+    public void detaineeThreatLevelChanged(Citizen citizen) {
+        if (unresolvedIds == null) { // An unresolved roster is ordered when it is resolved
+            detainedCitizens.update(citizen);
+        }
+    }
+
+    // Re-sift a resolved roster whose detainees' threat levels changed while nobody kept it in order (a stale engine)
+    public void reorderRoster() {
+        if (unresolvedIds == null) {
+            detainedCitizens.reorder();
+        }
     }
 
     // Print all detained citizens
     public void printAllDetainedCitizens() {
-        for (Citizen citizen : detainedCitizens) {
+        for (Citizen citizen : roster().toList()) {
             System.out.println(citizen);
         }
     }
@@ -97,32 +168,64 @@ public class Facility {
     }
 
     public int getCurrentOccupancy() {
-        return detainedCitizens.size();
+        return unresolvedIds != null ? unresolvedIds.length : detainedCitizens.size();
     }
 
     public List<Citizen> getDetainedCitizens() {
-        return new ArrayList<>(detainedCitizens); // Return a copy to prevent external modifications
+        return roster().toList(); // Return a copy to prevent external modifications
+    }
+
+    // Detainee IDs without resolving the roster (a copy)
+    public long[] getDetaineeIds() {
+        return unresolvedIds != null ? unresolvedIds.clone() : detainedCitizens.ids();
+    }
+
+    // Replace the roster with detainee IDs, looked up only when the detainees are first needed; duplicates are kept once
+    public void setDetaineeIds(long[] detaineeIds) {
+        long[] ids = detaineeIds.clone();
+        Arrays.sort(ids);
+        int count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                ids[count++] = ids[i];
+            }
+        }
+        detainedCitizens.clear();
+        unresolvedIds = Arrays.copyOf(ids, count);
     }
 
+    // Replace the roster; a citizen listed more than once is kept once
     public void setDetainedCitizens(List<Citizen> detainedCitizens) {
         if (detainedCitizens == null) {
             System.out.println("שגיאה: רשימת אזרחים לא יכולה להיות ריקה. חזור שנית.");
             return;
         }
-        this.detainedCitizens = new ArrayList<>(detainedCitizens); // Ensure the list is modifiable
+        this.detainedCitizens.clear();
+        unresolvedIds = null;
+        for (Citizen citizen : detainedCitizens) {
+            this.detainedCitizens.add(citizen);
+        }
     }
 
     // Return all detained citizens sorted by their IDs
     public List<Citizen> getDetainedCitizensSortedById() {
-        return detainedCitizens.stream()
-                .sorted(Comparator.comparing(Citizen::getId))
+        return roster().toList().stream()
+                .sorted(Comparator.comparingLong(Citizen::getNumericId))
                 .toList();
     }
 
     public boolean removeCitizen(Citizen citizen) {
-        boolean removed = detainedCitizens.remove(citizen); // Remove citizen from the list
+        return removeCitizen(citizen, false);
+    }
+
+    // evicted: the place is needed for a more threatening citizen (recorded as such in the detention history)
+    boolean removeCitizen(Citizen citizen, boolean evicted) {
+        boolean removed = roster().remove(citizen); // O(log n) removal by ID
         if (removed) {
             citizen.setInDetention(false); // Update the citizen's detention status
+            if (rosterListener != null) {
+                rosterListener.citizenReleased(this, citizen, evicted);
+            }
             System.out.println("Citizen " + citizen.getName() + " has been released from facility " + name + ".");
         } else {
             System.out.println("Citizen " + citizen.getName() + " was not found in facility " + name + ".");
@@ -131,9 +234,6 @@ public class Facility {
     }
 
     public void refreshFacilityData() {
-        // Refresh the list by sorting citizens by ID
-        detainedCitizens = new ArrayList<>(getDetainedCitizensSortedById());
-
         // Update current occupancy
         int currentOccupancy = getCurrentOccupancy();
 
@@ -146,7 +246,7 @@ public class Facility {
         System.out.printf("Occupancy rate: %.2f%%\n", occupancyRate);
 
         // Refresh citizens (e.g., update detention status if needed)
-        for (Citizen citizen : detainedCitizens) {
+        for (Citizen citizen : roster().toList()) {
             citizen.setInDetention(true); // Ensure all citizens are marked as detained
         }
     }
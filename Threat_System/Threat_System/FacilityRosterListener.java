@@ -0,0 +1,9 @@
+// Notified whenever a citizen enters or leaves a facility's roster (not when a roster is loaded or replaced wholesale).
+// Called with the facility's lock and ThreatManagementSystem's read lock held: a listener must not call the system's
+// detention queries (getFacilityOf, threat ranks, thresholds), which could answer from a stale engine there.
+public interface FacilityRosterListener {
+    void citizenAdmitted(Facility facility, Citizen citizen);
+
+    // evicted: the citizen was pushed out to make room for a more threatening one
+    void citizenReleased(Facility facility, Citizen citizen, boolean evicted);
+}
@@ -1,40 +1,73 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeParseException;
-import java.util.Collection;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 
 public class MainGUI extends JFrame {
 
     // הגדרת המשתנים הקבועים
-    private static final String CITIZENS_FILE = "citizens.txt";
-    private static final String FACILITIES_FILE = "facilities.txt";
+    private static final String CITIZENS_FILE = ThreatManagementSystem.CITIZENS_FILE;
+    private static final String FACILITIES_FILE = ThreatManagementSystem.FACILITIES_FILE;
     private static final String MANAGER_FILE = "manager.txt";
     private static final String PRESIDENT_FILE = "president.txt";
+    private static final int IN_MEMORY_CITIZEN_LIMIT = 2_000_000; // מעבר לזה - טעינה בשכבות
+    private static final int CITIZEN_CACHE_SIZE = 100_000;
+    private static final int DETENTION_CANDIDATES = 50_000; // אזרחים חופשיים מובילים שנשמרים בזיכרון מעבר למקומות הפנויים
+    private static final int COMMAND_QUEUE_SIZE = 10_000; // שינויים שממתינים לחוט הכתיבה; מעבר לזה השולח ממתין
+    private static final int COMMAND_BATCH_SIZE = 256;
+    private static final long DETENTION_WINDOW_MILLIS = 250; // שינויים בתוך החלון מאוחדים למעבר כליאה אחד
+    private static final int DETENTION_MAX_CHANGES = 1_000;
+    private static final int CITIZENS_PER_PLACE = 10; // לכל 10 אזרחים, מקום כליאה אחד
+    private static final int CAPACITY_ALERT_CLEAR_MARGIN = 50; // ההתראה יורדת רק כשיש לפחות 50 מקומות פנויים
+    private static final long CAPACITY_CHECK_DELAY_MILLIS = 1_000;
 
     private final ThreatManagementSystem system;
     private final CardLayout cardLayout = new CardLayout();
     private final JPanel mainPanel = new JPanel(cardLayout);
     private final JTextArea outputArea = new JTextArea(20, 60);
+    private final CommandPipeline commands;
+    private CapacityMonitor capacityMonitor;
+    private final ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "system-timer"); // משימות מתוזמנות של המערכת
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public MainGUI() {
         this.system = new ThreatManagementSystem(null);
+        system.setScoringParallelism(Runtime.getRuntime().availableProcessors() - 1); // ליבה אחת נשארת ל-EDT
+        system.openDetentionHistory(50, 256, 50_000); // כל כניסה ושחרור ממתקן נרשמים, כולל אלה שבטעינה
         loadData(); // ✅ קודם נטען את הנתונים
+        system.recoverFromJournal(); // שינויים שנרשמו ביומן אחרי תמונת המצב האחרונה
+        system.openJournal(50, 256, 10_000); // fsync כל 50ms או 256 רשומות, קיפול לתמונת מצב כל 10,000 רשומות
         system.manageDetention(); // ✅ עכשיו אפשר להפעיל את זה, אחרי שהנתונים נטענו
+        this.commands = new CommandPipeline(system, COMMAND_QUEUE_SIZE, COMMAND_BATCH_SIZE); // מכאן כל שינוי עובר דרך חוט הכתיבה
+        system.openDetentionScheduler(DETENTION_WINDOW_MILLIS, DETENTION_MAX_CHANGES, timers);
         setupWindow();
         createPanels();
-        startRatioThread();
+        startCapacityMonitor();
+        startAgeRolloverTimer();
         setVisible(true);
     }
 
     private void setupWindow() {
         setTitle("Threat Management System");
         setSize(1000, 700);
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE); // היציאה מתבצעת אחרי שהשמירה ברקע מסתיימת
         setLayout(new BorderLayout());
 
         outputArea.setEditable(false);
@@ -96,7 +129,7 @@ public class MainGUI extends JFrame {
     }
 
     private JPanel createManagerPanel() {
-        JPanel panel = new JPanel(new GridLayout(8, 1, 5, 5)); // שיניתי ל-8 שורות כי הוספתי אופציה
+        JPanel panel = new JPanel(new GridLayout(9, 1, 5, 5)); // 9 שורות - נוספה טעינת חוקי ניקוד
         addButton(panel, "View All Citizens", e -> printCitizens());
         addButton(panel, "Add New Citizen", e -> addCitizenDialog());
         addButton(panel, "Update Support Level", e -> updateSupportLevelDialog());
@@ -104,11 +137,22 @@ public class MainGUI extends JFrame {
         addButton(panel, "Update Economic Percentile", e -> updateEconomicDialog());
         addButton(panel, "View Facilities", e -> printFacilities());
         addButton(panel, "View Detained Citizens", e -> viewDetainedCitizensDialog()); // הוספתי את האופציה החדשה
+        addButton(panel, "Reload Scoring Rules", e -> reloadScoringRules());
         addButton(panel, "Logout", e -> cardLayout.show(mainPanel, "login"));
 
         return panel;
     }
 
+    private void reloadScoringRules() {
+        commands.submit(ThreatManagementSystem::reloadScoringRules).thenAccept(reloaded -> SwingUtilities.invokeLater(() -> {
+            if (reloaded) {
+                outputArea.setText("Scoring rules reloaded from " + ThreatManagementSystem.SCORING_RULES_FILE + " and all citizens rescored.\n");
+            } else {
+                outputArea.setText("Could not load " + ThreatManagementSystem.SCORING_RULES_FILE + " - the current scoring rules were kept.\n");
+            }
+        }));
+    }
+
     private JPanel createPresidentPanel() {
         JPanel panel = new JPanel(new GridLayout(7, 1, 5, 5)); // שיניתי ל-7 שורות כי הוספתי אופציה
         addButton(panel, "View All Citizens", e -> printCitizens());
@@ -148,35 +192,65 @@ public class MainGUI extends JFrame {
         }
     }
 
+    // Queue a change for the writer thread; its message (or the error) is shown once the change is applied
+    private void applyChange(Consumer<ThreatManagementSystem> change, String doneMessage) {
+        commands.execute(change).whenComplete((ignored, error) -> SwingUtilities.invokeLater(() -> {
+            if (error == null) {
+                outputArea.append(doneMessage + "\n");
+            } else {
+                JOptionPane.showMessageDialog(this, "❌ Error: " + error.getMessage());
+            }
+        }));
+    }
+
+    // Read through the writer thread: it waits for the changes queued before it, so the operator sees their own
+    // updates, and nothing changes the lists while they are copied. The EDT doesn't wait: show gets the result on the
+    // EDT once the writer has it (or the error is shown instead).
+    private <T> void readApplied(Function<ThreatManagementSystem, T> read, Consumer<T> show) {
+        commands.submit(read).whenComplete((value, error) -> SwingUtilities.invokeLater(() -> {
+            if (error == null) {
+                show.accept(value);
+            } else {
+                JOptionPane.showMessageDialog(this, "❌ Error: " + error.getMessage());
+            }
+        }));
+    }
+
     private void printCitizens() {
         outputArea.setText("");
-        system.getCitizens().forEach(c -> outputArea.append(c.toString() + "\n"));
+        readApplied(s -> new ArrayList<>(s.getCitizens()),
+                citizens -> citizens.forEach(c -> outputArea.append(c.toString() + "\n")));
     }
 
     private void printFacilities() {
         outputArea.setText("🔍 Facilities List:\n");
 
-        List<Facility> facilities = system.getFacilities();
-        if (facilities.isEmpty()) {
-            outputArea.append("❌ No facilities available.\n");
-            return;
-        }
+        readApplied(s -> { // Occupancy is read on the writer thread, between batches
+            List<String> lines = new ArrayList<>();
+            for (Facility facility : s.getFacilities()) {
+                double occupancyRate = (facility.getCurrentOccupancy() / (double) facility.getCapacity()) * 100;
+                lines.add(String.format("%-10s | %-35s | %-10d | %-10d | %-9.2f%%\n",
+                        facility.getFacilityId(),
+                        facility.getName(),
+                        facility.getCapacity(),
+                        facility.getCurrentOccupancy(),
+                        occupancyRate));
+            }
+            return lines;
+        }, rows -> {
+            if (rows.isEmpty()) {
+                outputArea.append("❌ No facilities available.\n");
+                return;
+            }
 
-        outputArea.append(String.format("%-10s | %-35s | %-10s | %-10s | %-10s\n", 
-                "ID", "Name", "Capacity", "Occupied", "Occupancy %"));
-        outputArea.append("----------------------------------------------------------------------------------\n");
-
-        for (Facility facility : facilities) {
-            double occupancyRate = (facility.getCurrentOccupancy() / (double) facility.getCapacity()) * 100;
-            outputArea.append(String.format("%-10s | %-35s | %-10d | %-10d | %-9.2f%%\n",
-                    facility.getFacilityId(),
-                    facility.getName(),
-                    facility.getCapacity(),
-                    facility.getCurrentOccupancy(),
-                    occupancyRate));
-        }
+            outputArea.append(String.format("%-10s | %-35s | %-10s | %-10s | %-10s\n",
+                    "ID", "Name", "Capacity", "Occupied", "Occupancy %"));
+            outputArea.append("----------------------------------------------------------------------------------\n");
+
+            rows.forEach(outputArea::append);
 
-        System.out.println("✅ Displayed " + facilities.size() + " facilities.");
+            System.out.println("✅ Displayed " + rows.size() + " facilities.");
+        });
     }
 
 private void addCitizenDialog() {
@@ -222,10 +296,7 @@ private void addCitizenDialog() {
 
             citizen.setInDetention(false); // 👈 ודא שכל אזרח חדש לא נכנס ישר לכליאה!
 
-            system.addCitizen(citizen);
-            system.manageDetention(); // 👈 הפעל שיבוץ מחדש אחרי הוספת אזרח
-
-            outputArea.append("✅ Citizen added successfully: " + citizen.getName() + "\n");
+            applyChange(s -> s.addCitizen(citizen), "✅ Citizen added successfully: " + citizen.getName()); // 👈 מנוע הכליאה משבץ את האזרח החדש
 
         } catch (DateTimeParseException | IllegalArgumentException ex) {
             JOptionPane.showMessageDialog(this, "❌ Error: " + ex.getMessage());
@@ -240,8 +311,7 @@ private void addCitizenDialog() {
             String input = JOptionPane.showInputDialog("Enter new support level (-1-10):");
             try {
                 int level = Integer.parseInt(input);
-                system.getManager().updateGovernmentSupportLevel(citizen, level);
-                outputArea.append("Support level updated!\n");
+                applyChange(s -> s.getManager().updateGovernmentSupportLevel(citizen, level), "Support level updated!");
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Invalid number format!");
             }
@@ -257,8 +327,7 @@ private void addCitizenDialog() {
             String input = JOptionPane.showInputDialog("Enter new public impact score (1-10):");
             try {
                 int score = Integer.parseInt(input);
-                system.getManager().updatePublicImpactScore(citizen, score);
-                outputArea.append("Public impact score updated!\n");
+                applyChange(s -> s.getManager().updatePublicImpactScore(citizen, score), "Public impact score updated!");
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Invalid number format!");
             }
@@ -274,8 +343,7 @@ private void addCitizenDialog() {
             String input = JOptionPane.showInputDialog("Enter new economic percentile (1-10):");
             try {
                 int percentile = Integer.parseInt(input);
-                system.getManager().updateEconomicPercentile(citizen, percentile);
-                outputArea.append("Economic percentile updated!\n");
+                applyChange(s -> s.getManager().updateEconomicPercentile(citizen, percentile), "Economic percentile updated!");
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Invalid number format!");
             }
@@ -288,8 +356,7 @@ private void addCitizenDialog() {
         String id = JOptionPane.showInputDialog("Enter citizen ID to pardon:");
         Citizen citizen = system.findCitizenById(id);
         if (citizen != null) {
-            system.getPresident().grantPardon(citizen);
-            outputArea.append("Citizen pardoned!\n");
+            applyChange(s -> s.getPresident().grantPardon(citizen), "Citizen pardoned!");
         } else {
             JOptionPane.showMessageDialog(this, "Citizen not found!");
         }
@@ -299,47 +366,166 @@ private void addCitizenDialog() {
         String id = JOptionPane.showInputDialog("Enter citizen ID for emergency detention:");
         Citizen citizen = system.findCitizenById(id);
         if (citizen != null) {
-            system.getPresident().emergencyDetention(citizen);
-            outputArea.append("Citizen detained!\n");
+            applyChange(s -> s.getPresident().emergencyDetention(citizen), "Citizen detained!");
         } else {
             JOptionPane.showMessageDialog(this, "Citizen not found!");
         }
     }
 
+    // הייצוא רץ ברקע עם חלון התקדמות וכפתור ביטול; האזרחים נקראים במנות על ה-EDT
     private void exportHistoryDialog() {
-        String filename = JOptionPane.showInputDialog("Enter filename to export history:");
-        if (filename != null && !filename.isEmpty()) {
-            try {
-                system.exportCitizenHistory(filename);
-                outputArea.append("History exported successfully to " + filename + "\n");
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(this, "Error exporting history: " + ex.getMessage());
+        String filename = JOptionPane.showInputDialog("Enter filename to export history (.txt, .csv or .jsonl, add .gz to compress):");
+        if (filename == null || filename.isEmpty()) {
+            return;
+        }
+        CitizenHistoryExport export = system.newHistoryExport(filename);
+        ProgressMonitor monitor = new ProgressMonitor(this, "Exporting citizen history to " + filename, null, 0, 100);
+        monitor.setMillisToDecideToPopup(200);
+        long start = System.nanoTime();
+        // SwingWorker.cancel would call done() while the export is still writing: the export stops itself instead,
+        // at the next batch, and done() runs once it has
+        AtomicBoolean cancelRequested = new AtomicBoolean();
+        SwingWorker<Integer, Void> worker = new SwingWorker<>() {
+            @Override
+            protected Integer doInBackground() throws Exception {
+                return export.run(MainGUI::runOnEdt,
+                        (written, total) -> setProgress((int) (100L * written / Math.max(1, total))),
+                        cancelRequested::get);
             }
+
+            @Override
+            protected void done() {
+                monitor.close();
+                try {
+                    int rows = get();
+                    outputArea.append("History exported successfully to " + filename + " (" + rows + " citizens, "
+                            + (System.nanoTime() - start) / 1_000_000 + " ms)\n");
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    if (cause instanceof CancellationException) {
+                        outputArea.append("History export to " + filename + " cancelled, the file was left as it was\n");
+                        return;
+                    }
+                    JOptionPane.showMessageDialog(MainGUI.this, "Error exporting history: " + cause.getMessage());
+                }
+            }
+        };
+        worker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) {
+                monitor.setProgress((Integer) e.getNewValue());
+            }
+            if (monitor.isCanceled()) {
+                cancelRequested.set(true);
+            }
+        });
+        worker.execute();
+    }
+
+    // Run a task on the EDT and wait for it (the export reads the live citizen list there)
+    private static void runOnEdt(Runnable task) {
+        try {
+            SwingUtilities.invokeAndWait(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while reading citizens");
+        } catch (java.lang.reflect.InvocationTargetException e) {
+            throw new IllegalStateException("Error reading citizens", e.getCause());
         }
     }
 
+    // The window closes right away; citizens and facilities are written by the snapshot writer, then the app exits
     private void saveData() {
-    	DataHandler.saveCitizensToFile(new ArrayList<>(system.getCitizens()), CITIZENS_FILE);
-        DataHandler.saveFacilitiesToFile(system.getFacilities(), FACILITIES_FILE);
+        setVisible(false);
+        commands.close(); // השינויים שכבר בתור מוחלים לפני השמירה
+        system.closeDetentionScheduler(); // מעבר כליאה אחרון לשינויים שעוד ממתינים
+        system.setCapacityMonitor(null);
+        capacityMonitor.close();
         DataHandler.saveManagerToFile(system.getManager(), MANAGER_FILE);
         DataHandler.savePresidentToFile(system.getPresident(), PRESIDENT_FILE);
+        system.saveSnapshotInBackground().whenComplete((saved, error) -> { // אזרחים ומתקנים - מקפל את היומן לתוך תמונת המצב
+            system.closeJournal();
+            system.closeDetentionHistory();
+            timers.shutdown();
+            System.exit(Boolean.TRUE.equals(saved) ? 0 : 1);
+        });
     }
 
     private void loadData() {
-        system.setCitizens(DataHandler.loadCitizensFromFile(system, CITIZENS_FILE));
-        system.setFacilities(DataHandler.loadFacilitiesFromFile(system, FACILITIES_FILE));
+        ThreatScoringRules rules = DataHandler.loadScoringRulesFromFile(ThreatManagementSystem.SCORING_RULES_FILE);
+        if (rules != null) {
+            ThreatScoringRules.setCurrent(rules); // לפני טעינת האזרחים - הם ינוקדו פעם אחת עם החוקים הנכונים
+        }
+        // תמונת המצב הבינארית, ואם אין - קבצי הטקסט. אוכלוסייה גדולה מדי ל-heap נטענת בשכבות:
+        // רק הכלואים והמועמדים לכליאה בזיכרון, השאר נקראים מהדיסק דרך מטמון חסום
+        boolean loaded = false;
+        String snapshotProblem = null;
+        try {
+            if (DataHandler.getSnapshotCitizenCount(ThreatManagementSystem.SNAPSHOT_FILE) > IN_MEMORY_CITIZEN_LIMIT) {
+                loaded = DataHandler.loadSnapshotTiered(system, ThreatManagementSystem.SNAPSHOT_FILE, CITIZEN_CACHE_SIZE, DETENTION_CANDIDATES);
+            } else {
+                loaded = DataHandler.loadSnapshotFromFile(system, ThreatManagementSystem.SNAPSHOT_FILE);
+            }
+        } catch (IOException e) {
+            snapshotProblem = e.getMessage();
+        }
+        if (!loaded && snapshotProblem == null && DataHandler.hasQuarantinedSnapshot(ThreatManagementSystem.SNAPSHOT_FILE)) {
+            snapshotProblem = "There is no snapshot, only " + ThreatManagementSystem.SNAPSHOT_FILE
+                    + ".corrupt set aside by an earlier start.";
+        }
+        // תמונת מצב פגומה: קבצי הטקסט ישנים ממנה (היומן כבר קופל ונמחק) - לא עוברים אליהם בלי לשאול
+        if (snapshotProblem != null && !confirmStartFromTextFiles(snapshotProblem)) {
+            System.out.println("❌ " + snapshotProblem);
+            System.exit(1);
+        }
+        if (!loaded) {
+            system.setCitizens(DataHandler.loadCitizensFromFile(system, CITIZENS_FILE));
+            system.setFacilities(DataHandler.loadFacilitiesFromFile(system, FACILITIES_FILE));
+        }
         system.setManager(DataHandler.loadManagerFromFile(system, MANAGER_FILE));
         system.setPresident(DataHandler.loadPresidentFromFile(system, PRESIDENT_FILE));
 
         // בדיקות דיאגנוסטיות
         System.out.println("Citizens loaded: " + system.getCitizens().size());
         System.out.println("Facilities loaded: " + system.getFacilities().size());
+        if (system.getCitizenCacheStats() != null) {
+            System.out.println(system.getCitizenCacheStats());
+        }
+    }
+
+    private static boolean confirmStartFromTextFiles(String snapshotProblem) {
+        int choice = JOptionPane.showConfirmDialog(null,
+                snapshotProblem + "\n\nThe citizens and facilities text files are older than the snapshot: changes saved "
+                        + "since they were written will be missing.\nStart from the text files anyway?",
+                "Snapshot can't be loaded", JOptionPane.YES_NO_OPTION, JOptionPane.ERROR_MESSAGE);
+        return choice == JOptionPane.YES_OPTION;
+    }
+
+    // התראות קיבולת - מחושבות רק אחרי שינוי, על חוט הטיימרים המשותף
+    private void startCapacityMonitor() {
+        capacityMonitor = new CapacityMonitor(timers, CITIZENS_PER_PLACE, CAPACITY_ALERT_CLEAR_MARGIN, CAPACITY_CHECK_DELAY_MILLIS);
+        capacityMonitor.addAlertListener(alert -> {
+            System.out.println(alert);
+            SwingUtilities.invokeLater(() -> outputArea.append(alert + "\n"));
+        });
+        system.setCapacityMonitor(capacityMonitor);
     }
 
+    // מעבר יומי בחצות - ניקוד מחדש רק לאזרחים שעברו קבוצת גיל (רץ בחוט הכתיבה כמו שאר השינויים)
+    private void startAgeRolloverTimer() {
+        Timer timer = new Timer(0, e -> commands.submit(ThreatManagementSystem::rolloverAgeBrackets));
+        timer.setRepeats(false);
+        timer.addActionListener(e -> {
+            timer.setInitialDelay(millisUntilMidnight());
+            timer.restart();
+        });
+        timer.setInitialDelay(millisUntilMidnight());
+        timer.start();
+    }
 
-    private void startRatioThread() {
-        CitizenToFacilityRatioThread ratioThread = new CitizenToFacilityRatioThread(system);
-        ratioThread.start();
+    private static int millisUntilMidnight() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime midnight = now.toLocalDate().plusDays(1).atStartOfDay();
+        return (int) Duration.between(now, midnight).toMillis() + 1000;
     }
 
     public static void main(String[] args) {
@@ -347,8 +533,12 @@ private void addCitizenDialog() {
     }
     private void viewDetainedCitizensDialog() {
         outputArea.setText("Available Facilities:\n");
-        List<Facility> facilities = system.getFacilities();
-        
+        readApplied(s -> new ArrayList<>(s.getFacilities()), facilities ->
+                readApplied(s -> facilities.stream().mapToInt(Facility::getCurrentOccupancy).toArray(),
+                        occupied -> chooseFacilityToView(facilities, occupied)));
+    }
+
+    private void chooseFacilityToView(List<Facility> facilities, int[] occupied) {
         if (facilities.isEmpty()) {
             outputArea.append("No facilities available.\n");
             return;
@@ -358,7 +548,7 @@ private void addCitizenDialog() {
         for (int i = 0; i < facilities.size(); i++) {
             Facility facility = facilities.get(i);
             outputArea.append(String.format("%d. %s (Capacity: %d, Occupied: %d)\n", 
-                    i + 1, facility.getName(), facility.getCapacity(), facility.getCurrentOccupancy()));
+                    i + 1, facility.getName(), facility.getCapacity(), occupied[i]));
         }
 
         // Prompt user to choose a facility
@@ -367,16 +557,16 @@ private void addCitizenDialog() {
             int choice = Integer.parseInt(input);
             if (choice > 0 && choice <= facilities.size()) {
                 Facility selectedFacility = facilities.get(choice - 1);
-                List<Citizen> detainedCitizens = selectedFacility.getDetainedCitizens();
-                
-                outputArea.append("\nDetained Citizens in " + selectedFacility.getName() + ":\n");
-                if (detainedCitizens.isEmpty()) {
-                    outputArea.append("No detained citizens in this facility.\n");
-                } else {
-                    for (Citizen citizen : detainedCitizens) {
-                        outputArea.append(citizen.toString() + "\n");
+                readApplied(s -> selectedFacility.getDetainedCitizens(), detainedCitizens -> {
+                    outputArea.append("\nDetained Citizens in " + selectedFacility.getName() + ":\n");
+                    if (detainedCitizens.isEmpty()) {
+                        outputArea.append("No detained citizens in this facility.\n");
+                    } else {
+                        for (Citizen citizen : detainedCitizens) {
+                            outputArea.append(citizen.toString() + "\n");
+                        }
                     }
-                }
+                });
             } else {
                 JOptionPane.showMessageDialog(this, "Invalid facility number!");
             }
@@ -60,7 +60,7 @@ public class Manager {
 
     // Add a citizen through the manager
     public void addCitizen(Citizen citizen) {
-        if (threatManagementSystem.findCitizenById(citizen.getId()) != null) {
+        if (threatManagementSystem.findCitizenById(citizen.getNumericId()) != null) {
             System.out.println("Error: Citizen with ID " + citizen.getId() + " already exists in the system.");
             return;
         }
@@ -123,20 +123,22 @@ public class Manager {
             System.out.println("Error: Public impact score must be between 1 and 10.");
             return;
         }
-        citizen.setPublicImpactScore(newPublicImpactScore);
-        citizen.updateThreatLevel(); // עדכון מדד האיום לאחר שינוי ההשפעה הציבורית
+        threatManagementSystem.updateCitizen(citizen, () -> { // Under the system's write lock
+            citizen.setPublicImpactScore(newPublicImpactScore);
+            citizen.updateThreatLevel(); // עדכון מדד האיום לאחר שינוי ההשפעה הציבורית - מנוע הכליאה מתעדכן אוטומטית
+        });
         System.out.println("Public impact score for Citizen " + citizen.getName() + " (ID: " + citizen.getId() + ") updated to: " + newPublicImpactScore);
-        threatManagementSystem.manageDetention(); // עדכון מערכת הכליאה
     }
     public void updateEconomicPercentile(Citizen citizen, int newEconomicPercentile) {
         if (newEconomicPercentile < 1 || newEconomicPercentile > 10) {
             System.out.println("Error: Economic percentile must be between 1 and 10.");
             return;
         }
-        citizen.setEconomicPercentile(newEconomicPercentile);
-        citizen.updateThreatLevel(); // עדכון מדד האיום לאחר שינוי האחוזון הכלכלי
+        threatManagementSystem.updateCitizen(citizen, () -> {
+            citizen.setEconomicPercentile(newEconomicPercentile);
+            citizen.updateThreatLevel(); // עדכון מדד האיום לאחר שינוי האחוזון הכלכלי - מנוע הכליאה מתעדכן אוטומטית
+        });
         System.out.println("Economic percentile for Citizen " + citizen.getName() + " (ID: " + citizen.getId() + ") updated to: " + newEconomicPercentile);
-        threatManagementSystem.manageDetention(); // עדכון מערכת הכליאה
     }
     public void updateGovernmentSupportLevel(Citizen citizen, int newSupportLevel) {
         if (newSupportLevel < -1 || newSupportLevel > 10) {
@@ -144,28 +146,25 @@ public class Manager {
             return;
         }
 
-        citizen.setGovernmentSupportLevel(newSupportLevel); // עדכון רמת התמיכה בממשלה
-        citizen.updateThreatLevel(); // עדכון מדד האיום לאחר שינוי התמיכה בממשלה
+        threatManagementSystem.updateCitizen(citizen, () -> {
+            citizen.setGovernmentSupportLevel(newSupportLevel); // עדכון רמת התמיכה בממשלה
+            citizen.updateThreatLevel(); // עדכון מדד האיום לאחר שינוי התמיכה בממשלה - מנוע הכליאה מתעדכן אוטומטית
+        });
         System.out.println("Government support level for Citizen " + citizen.getName() + " (ID: " + citizen.getId() + ") updated to: " + newSupportLevel);
-
-        // הפעלת manageDetention לעדכון מצב הכלואים
-        if (threatManagementSystem != null) {
-            threatManagementSystem.manageDetention();
-        }
     }
  // Method to report economicPercentile change for a Citizen
     public void reportEconomicPercentile(Citizen citizen, int newEconomicPercentile) {
-        citizen.reportEconomicPercentile(newEconomicPercentile);
+        threatManagementSystem.updateCitizen(citizen, () -> citizen.reportEconomicPercentile(newEconomicPercentile));
     }
 
     // Method to report governmentSupportLevel change for a Citizen
     public void reportGovernmentSupportLevel(Citizen citizen, int newGovernmentSupportLevel) {
-        citizen.reportGovernmentSupportLevel(newGovernmentSupportLevel);
+        threatManagementSystem.updateCitizen(citizen, () -> citizen.reportGovernmentSupportLevel(newGovernmentSupportLevel));
     }
 
     // Method to report publicImpactScore change for a Citizen
     public void reportPublicImpactScore(Citizen citizen, int newPublicImpactScore) {
-        citizen.reportPublicImpactScore(newPublicImpactScore);
+        threatManagementSystem.updateCitizen(citizen, () -> citizen.reportPublicImpactScore(newPublicImpactScore));
     }
 
     public byte[] getHashedPassword() {
@@ -0,0 +1,279 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// תצוגה לקריאה בלבד של האזרחים בקובץ תמונת המצב, ממופה לזיכרון (בלי לטעון את כל האוכלוסייה ל-heap).
+// The file is mapped read-only and nothing is decoded up front: a Record cursor seeks to a citizen through the
+// snapshot's offset index and decodes single fields on access. Opening costs a few mmap calls whatever the file size.
+// Files over 2 GB are mapped in 1 GB segments that overlap by MAX_RECORD_BYTES, so every record lies inside one segment.
+// Reads never move buffer positions: the view can be shared between threads as long as each uses its own Record.
+public final class MappedCitizenView implements Closeable {
+    private static final long SEGMENT_BYTES = 1L << 30;
+    private static final int MAX_RECORD_BYTES = 1 << 16; // Longest citizen record (or index entry) the view can read
+
+    private final Path path;
+    private final long fileSize;
+    private final int size;
+    private final long[] offsets; // Version 1 files only (no index in the file); null otherwise
+    private final long indexOffset;
+    private final ThreatScoringRules rules;
+    private final int[] ageCutoffs; // Ages as of the day the view was opened
+    private MappedByteBuffer[] segments;
+
+    private MappedCitizenView(Path path) throws IOException {
+        this.path = path;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            fileSize = channel.size();
+            if (fileSize < 22) {
+                throw new IOException("Snapshot too short: " + path);
+            }
+            int count = (int) ((fileSize + SEGMENT_BYTES - 1) / SEGMENT_BYTES);
+            segments = new MappedByteBuffer[count];
+            for (int s = 0; s < count; s++) {
+                long start = s * SEGMENT_BYTES;
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(fileSize - start, SEGMENT_BYTES + MAX_RECORD_BYTES));
+            }
+        } // The mappings stay valid after the channel is closed
+
+        ByteBuffer header = segments[0];
+        if (header.getInt(0) != BinarySnapshot.MAGIC) {
+            throw new IOException("Not a snapshot file: " + path);
+        }
+        short version = header.getShort(4);
+        size = header.getInt(6);
+        if (version >= 2 && version <= BinarySnapshot.VERSION) {
+            offsets = null;
+            indexOffset = getLong(fileSize - 16);
+            if (indexOffset < 14 || indexOffset + 8L * size != fileSize - 16) {
+                throw new IOException("Snapshot index out of bounds: " + path);
+            }
+        } else if (version == 1) {
+            offsets = scanOffsets(); // Old file without an index: one pass over the records, nothing decoded
+            indexOffset = -1;
+        } else {
+            throw new IOException("Unsupported snapshot version " + version + ": " + path);
+        }
+
+        rules = ThreatScoringRules.getCurrent();
+        ageCutoffs = rules.ageCutoffs(LocalDate.now());
+    }
+
+    // Map a snapshot file (BinarySnapshot format). The checksum is not checked here, see verify().
+    public static MappedCitizenView open(Path path) throws IOException {
+        return new MappedCitizenView(path);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // A reusable cursor; call moveTo() before reading fields
+    public Record newRecord() {
+        return new Record();
+    }
+
+    // Visit every citizen in file order through one reused Record (don't keep it past the call)
+    public void forEach(Consumer<Record> action) {
+        Record record = new Record();
+        for (int i = 0; i < size; i++) {
+            action.accept(record.moveTo(i));
+        }
+    }
+
+    // Check the CRC32 trailer; reads the whole file once
+    public boolean verify() {
+        CRC32 checksum = new CRC32();
+        long remaining = fileSize - 8;
+        for (MappedByteBuffer segment : segments()) {
+            int length = (int) Math.min(remaining, SEGMENT_BYTES);
+            checksum.update(segment.duplicate().limit(length));
+            remaining -= length;
+        }
+        return getLong(fileSize - 8) == checksum.getValue();
+    }
+
+    // Drop the mappings; the memory is unmapped once they are garbage collected
+    @Override
+    public void close() {
+        segments = null;
+    }
+
+    // One citizen of the view, decoded field by field straight from the mapped file
+    public final class Record {
+        private int ordinal = -1;
+        private ByteBuffer buffer;
+        private int base; // Offset of the record inside buffer
+        private byte[] nameBytes = new byte[64];
+
+        private Record() {
+        }
+
+        public Record moveTo(int ordinal) {
+            if (ordinal < 0 || ordinal >= size) {
+                throw new IndexOutOfBoundsException("Citizen " + ordinal + " of " + size);
+            }
+            long offset = offsets != null ? offsets[ordinal] : getLong(indexOffset + 8L * ordinal);
+            MappedByteBuffer[] mapped = segments();
+            this.buffer = mapped[(int) (offset / SEGMENT_BYTES)];
+            this.base = (int) (offset % SEGMENT_BYTES);
+            this.ordinal = ordinal;
+            return this;
+        }
+
+        public int getOrdinal() {
+            return ordinal;
+        }
+
+        public LocalDate getBirthDate() {
+            return LocalDate.ofEpochDay(buffer.getInt(base));
+        }
+
+        public int getEconomicPercentile() {
+            return buffer.get(base + 4);
+        }
+
+        public int getGovernmentSupportLevel() {
+            return buffer.get(base + 5) - 1;
+        }
+
+        public int getPublicImpactScore() {
+            return buffer.get(base + 6);
+        }
+
+        public String getOrigin() {
+            return BinarySnapshot.ORIGINS[(buffer.get(base + 7) >>> BinarySnapshot.ORIGIN_SHIFT) & 3];
+        }
+
+        public boolean isParliamentMember() {
+            return (buffer.get(base + 7) & BinarySnapshot.FLAG_PARLIAMENT) != 0;
+        }
+
+        public boolean isInDetention() {
+            return (buffer.get(base + 7) & BinarySnapshot.FLAG_DETAINED) != 0;
+        }
+
+        // The citizen's key (CitizenStore.parseId): the stored number, unless the ID has leading zeros
+        public long getNumericId() {
+            long number = readVarLong(buffer, base + BinarySnapshot.CITIZEN_FIXED_BYTES);
+            if ((buffer.get(base + 7) & BinarySnapshot.FLAG_ID_ZEROS) == 0) {
+                return number;
+            }
+            return CitizenStore.parseId(getId());
+        }
+
+        public String getId() {
+            long number = readVarLong(buffer, base + BinarySnapshot.CITIZEN_FIXED_BYTES);
+            if ((buffer.get(base + 7) & BinarySnapshot.FLAG_ID_ZEROS) == 0) {
+                return Long.toString(number);
+            }
+            int zeros = (int) readVarLong(buffer, skipVarLong(buffer, base + BinarySnapshot.CITIZEN_FIXED_BYTES));
+            return BinarySnapshot.idText(number, zeros);
+        }
+
+        public String getName() {
+            int at = nameOffset(buffer, base);
+            int length = (int) readVarLong(buffer, at);
+            at = skipVarLong(buffer, at);
+            if (length > nameBytes.length) {
+                nameBytes = new byte[length];
+            }
+            buffer.get(at, nameBytes, 0, length);
+            return new String(nameBytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        // Threat level as of the day the view was opened, with the rules current at that time
+        // (same additions as CitizenTable.scoreAll, so it matches Citizen.getThreatLevel)
+        public double getThreatLevel() {
+            int birth = buffer.getInt(base);
+            int band = 0;
+            while (band < ageCutoffs.length && birth <= ageCutoffs[band]) {
+                band++;
+            }
+            int flags = buffer.get(base + 7);
+            double threat = rules.supportPoints[buffer.get(base + 5)]
+                    + rules.impactPoints[buffer.get(base + 6)]
+                    + rules.economicPoints[buffer.get(base + 4)]
+                    + rules.originPoints[(flags >>> BinarySnapshot.ORIGIN_SHIFT) & 3]
+                    + rules.ageBandPoints[band];
+            if ((flags & BinarySnapshot.FLAG_PARLIAMENT) != 0) {
+                threat *= rules.parliamentMultiplier;
+            }
+            return Math.min(rules.maxThreatLevel, Math.max(rules.minThreatLevel, threat));
+        }
+
+        // A live, detached Citizen with this record's fields
+        public Citizen toCitizen() {
+            Citizen citizen = new Citizen(getName(), getBirthDate(), getOrigin(), getEconomicPercentile(),
+                    getGovernmentSupportLevel(), getPublicImpactScore(), isParliamentMember(), getId());
+            citizen.setInDetention(isInDetention());
+            return citizen;
+        }
+    }
+
+    private MappedByteBuffer[] segments() {
+        MappedByteBuffer[] mapped = segments;
+        if (mapped == null) {
+            throw new IllegalStateException("Citizen view is closed: " + path);
+        }
+        return mapped;
+    }
+
+    private long getLong(long offset) {
+        return segments()[(int) (offset / SEGMENT_BYTES)].getLong((int) (offset % SEGMENT_BYTES));
+    }
+
+    // Record offsets of a version 1 file: records are walked by their lengths only
+    private long[] scanOffsets() throws IOException {
+        long[] result = new long[size];
+        long offset = 14; // Header
+        for (int i = 0; i < size; i++) {
+            if (offset >= fileSize - 8) {
+                throw new IOException("Snapshot truncated: " + path);
+            }
+            result[i] = offset;
+            ByteBuffer buffer = segments[(int) (offset / SEGMENT_BYTES)];
+            int start = (int) (offset % SEGMENT_BYTES);
+            int at = nameOffset(buffer, start);
+            int length = (int) readVarLong(buffer, at);
+            offset += skipVarLong(buffer, at) + length - start;
+        }
+        return result;
+    }
+
+    // Where the name length of the record at base is: after the fixed part, the ID and its leading zeros count
+    private static int nameOffset(ByteBuffer buffer, int base) {
+        int at = skipVarLong(buffer, base + BinarySnapshot.CITIZEN_FIXED_BYTES);
+        return (buffer.get(base + 7) & BinarySnapshot.FLAG_ID_ZEROS) != 0 ? skipVarLong(buffer, at) : at;
+    }
+
+    private static long readVarLong(ByteBuffer buffer, int at) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(at++);
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static int skipVarLong(ByteBuffer buffer, int at) {
+        while (buffer.get(at++) < 0) {
+        }
+        return at;
+    }
+}
@@ -0,0 +1,278 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// יומן שינויים (write-ahead log) - רשומה קצרה אחת לכל שינוי במקום כתיבה מחדש של כל הקובץ.
+// Group commit: appended records wait in memory and one write + fsync covers everything appended since the last flush.
+// With syncIntervalMillis = 0 every append is flushed and fsynced before it returns; otherwise a background flusher
+// runs every interval, and a batch is flushed right away once maxBatchRecords records are waiting.
+// Checkpoints rotate the log into numbered segments that are deleted once the snapshot covering them is written.
+public class MutationJournal implements Closeable {
+    private static final Logger logger = Logger.getLogger(MutationJournal.class.getName());
+
+    private final Path path;
+    private FileChannel channel;
+    private final int maxBatchRecords;
+    private final ScheduledExecutorService flusher; // null when every append syncs
+    private final Object writeLock = new Object(); // Held while writing; appenders only need the monitor of this
+    private StringBuilder pending = new StringBuilder();
+    private int pendingRecords;
+    private int recordCount; // Records appended since the last checkpoint
+    private long nextSegment; // Number of the next journal.log.<n> segment
+
+    public MutationJournal(Path path, long syncIntervalMillis, int maxBatchRecords) throws IOException {
+        this(path, syncIntervalMillis, maxBatchRecords, true);
+    }
+
+    // countExisting = false: only the tail of the log is read on open (for logs that never check getRecordCount,
+    // whose count then starts at 0)
+    public MutationJournal(Path path, long syncIntervalMillis, int maxBatchRecords, boolean countExisting) throws IOException {
+        this.path = path;
+        List<Path> segments = segments(path);
+        if (countExisting) {
+            int[] count = {0};
+            for (Path segment : segments) {
+                forEachRecord(segment, record -> count[0]++);
+            }
+            forEachRecord(path, record -> count[0]++);
+            this.recordCount = count[0];
+        }
+        this.nextSegment = segments.isEmpty() ? 1 : segmentNumber(path, segments.get(segments.size() - 1)) + 1;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        long complete = completeLength(path);
+        if (channel.size() > complete) {
+            channel.truncate(complete); // Drop a torn last record so new records start on a fresh line
+        }
+        this.maxBatchRecords = Math.max(1, maxBatchRecords);
+        if (syncIntervalMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "journal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    // Append one record (a single line, no line breaks)
+    public void append(String record) {
+        boolean flushNow;
+        synchronized (this) {
+            pending.append(record).append('\n');
+            pendingRecords++;
+            recordCount++;
+            flushNow = flusher == null || pendingRecords >= maxBatchRecords;
+        }
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    // Write and fsync everything appended so far; a failed batch is kept and retried on the next flush
+    public void flush() {
+        synchronized (writeLock) {
+            StringBuilder batch;
+            int batchRecords;
+            synchronized (this) {
+                if (pendingRecords == 0) {
+                    return;
+                }
+                batch = pending;
+                batchRecords = pendingRecords;
+                pending = new StringBuilder();
+                pendingRecords = 0;
+            }
+            try {
+                ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(batch));
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error writing " + batchRecords + " journal records to " + path, e);
+                synchronized (this) {
+                    pending.insert(0, batch);
+                    pendingRecords += batchRecords;
+                }
+            }
+        }
+    }
+
+    // Checkpoint step 1: move everything written so far into a new segment journal.log.<n> and start an empty log.
+    // Once a snapshot taken at this point is safely on disk, deleteSegmentsUpTo(n) drops what it covers.
+    // Returns n, or -1 if the log could not be rotated (records stay in the live log, so nothing is lost).
+    public long rotate() {
+        synchronized (writeLock) {
+            flush();
+            synchronized (this) {
+                if (pendingRecords > 0) {
+                    return -1; // The log itself could not be written
+                }
+                long segment = nextSegment;
+                boolean moved = false;
+                try {
+                    channel.close();
+                    Files.move(path, segmentPath(path, segment));
+                    moved = true;
+                } catch (IOException e) {
+                    logger.log(Level.SEVERE, "Error rotating journal " + path, e);
+                }
+                try {
+                    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                } catch (IOException e) {
+                    logger.log(Level.SEVERE, "Error reopening journal " + path, e);
+                }
+                if (!moved) {
+                    return -1;
+                }
+                nextSegment++;
+                recordCount = 0;
+                return segment;
+            }
+        }
+    }
+
+    // Checkpoint step 2: the snapshot covering segments 1..segment is on disk
+    public void deleteSegmentsUpTo(long segment) {
+        try {
+            for (Path file : segments(path)) {
+                if (segmentNumber(path, file) <= segment) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error deleting folded journal segments of " + path, e);
+        }
+    }
+
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flush();
+        channel.close();
+    }
+
+    // Length of the log up to and including its last line break, reading backwards from the end
+    private static long completeLength(Path path) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer block = ByteBuffer.allocate(4096);
+            long end = in.size();
+            while (end > 0) {
+                long start = Math.max(0, end - block.capacity());
+                block.clear();
+                block.limit((int) (end - start));
+                while (block.hasRemaining() && in.read(block, start + block.position()) > 0) {
+                    // Fill the block
+                }
+                for (int i = block.position() - 1; i >= 0; i--) {
+                    if (block.get(i) == '\n') {
+                        return start + i + 1;
+                    }
+                }
+                end = start;
+            }
+            return 0;
+        }
+    }
+
+    // Records not folded into a snapshot yet: the leftover segments in order, then the live log
+    public static List<String> readAllRecords(Path path) throws IOException {
+        List<String> records = new ArrayList<>();
+        for (Path segment : segments(path)) {
+            records.addAll(readRecords(segment));
+        }
+        records.addAll(readRecords(path));
+        return records;
+    }
+
+    private static Path segmentPath(Path path, long segment) {
+        return path.resolveSibling(path.getFileName() + "." + segment);
+    }
+
+    private static long segmentNumber(Path path, Path segment) {
+        return Long.parseLong(segment.getFileName().toString().substring(path.getFileName().toString().length() + 1));
+    }
+
+    // journal.log.<n> files, by ascending n
+    private static List<Path> segments(Path path) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        Path folder = path.toAbsolutePath().getParent();
+        String prefix = path.getFileName() + ".";
+        if (!Files.isDirectory(folder)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(prefix) && name.length() > prefix.length()
+                        && name.substring(prefix.length()).chars().allMatch(Character::isDigit)) {
+                    segments.add(path.resolveSibling(name));
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong(segment -> segmentNumber(path, segment)));
+        return segments;
+    }
+
+    // All complete records in one log file; a torn last line (crash in the middle of a write) is dropped
+    public static List<String> readRecords(Path path) throws IOException {
+        List<String> records = new ArrayList<>();
+        forEachRecord(path, records::add);
+        return records;
+    }
+
+    // The same records one at a time, read through a fixed buffer instead of holding the whole file
+    public static void forEachRecord(Path path, Consumer<String> action) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            byte[] line = new byte[128];
+            int length = 0;
+            int read;
+            while ((read = in.read(buffer.clear())) > 0) {
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer.get(i);
+                    if (b != '\n') {
+                        if (length == line.length) {
+                            line = Arrays.copyOf(line, length * 2);
+                        }
+                        line[length++] = b;
+                    } else if (length > 0) {
+                        action.accept(new String(line, 0, length, StandardCharsets.UTF_8));
+                        length = 0;
+                    }
+                }
+            }
+            if (length > 0) {
+                logger.warning("Ignoring torn record at the end of " + path);
+            }
+        }
+    }
+}
@@ -14,30 +14,27 @@ public class President extends Manager {
 
     // Grant pardon to a citizen
     public void grantPardon(Citizen citizen) {
-        boolean isPardoned = false; // משתנה לסימון אם האזרח חנון
-
-        // מציאת המתקן שבו האזרח כלוא ושחרורו
-        for (Facility facility : getThreatManagementSystem().getFacilities()) {
-            if (facility.getDetainedCitizens().contains(citizen)) {
-                boolean removed = facility.removeCitizen(citizen); // הסרת האזרח מבית הכלא
-                if (removed) {
-                    citizen.setInDetention(false); // עדכון סטטוס האזרח
-                    citizen.updateThreatLevelToMinimum(); // שינוי מדד האיום ל-1
-                    System.out.println("Citizen " + citizen.getName() + " has been pardoned and released from facility " + facility.getName() + ".");
-                    isPardoned = true;
-                    break; // אין צורך להמשיך לחפש
-                }
-            }
-        }
+        // מציאת המתקן שבו האזרח כלוא
+        Facility facility = getThreatManagementSystem().getFacilityOf(citizen);
 
         // אם האזרח לא נמצא במעצר
-        if (!isPardoned) {
+        if (facility == null) {
             System.out.println("Citizen " + citizen.getName() + " is not currently detained.");
             return;
         }
 
-        // הפעלת manageDetention לעדכון מצב הכלואים
-        getThreatManagementSystem().manageDetention();
+        // One detention pass after both changes, so the lowered citizen isn't swapped out before it is released
+        ThreatManagementSystem system = getThreatManagementSystem();
+        boolean[] released = new boolean[1];
+        system.runBatch(() -> {
+            system.updateCitizen(citizen, citizen::updateThreatLevelToMinimum); // שינוי מדד האיום ל-1
+            released[0] = system.releaseCitizen(citizen); // שחרור האזרח ומילוי המקום שהתפנה
+        });
+        if (!released[0]) {
+            System.out.println("❌ Citizen " + citizen.getName() + " could not be released from facility " + facility.getName() + ".");
+            return;
+        }
+        System.out.println("Citizen " + citizen.getName() + " has been pardoned and released from facility " + facility.getName() + ".");
     }
 
     // Emergency detention for a citizen
@@ -47,11 +44,8 @@ public class President extends Manager {
             return;
         }
 
-        citizen.setThreatLevelToMax(); // העלת מדד האיום למקסימום
+        getThreatManagementSystem().updateCitizen(citizen, citizen::setThreatLevelToMax); // העלת מדד האיום למקסימום - מנוע הכליאה משבץ את האזרח
         System.out.println("Emergency detention initiated for Citizen " + citizen.getName() + " (ID: " + citizen.getId() + ").");
-
-        // הפעלת manageDetention כדי לעדכן את מצב הכלואים
-        getThreatManagementSystem().manageDetention();
     }
 
     // Authenticate the president with key
@@ -109,28 +103,24 @@ public class President extends Manager {
 
         // אם האזרח לא במעצר, נעדכן את מדד האיום ונחזיר אותו למתקן
         if (!citizen.isInDetention()) {
-            citizen.updateThreatLevel(); // עדכון מדד האיום לפי הנתונים האמיתיים
+            getThreatManagementSystem().updateCitizen(citizen, citizen::updateThreatLevel); // עדכון מדד האיום לפי הנתונים האמיתיים
             System.out.println("Pardon for Citizen " + citizen.getName() + " has been revoked. Threat level reset to " + citizen.getThreatLevel() + ".");
 
-            // הוספת האזרח חזרה למתקן כליאה כלשהו (נניח כל מתקן)
-            for (Facility facility : getThreatManagementSystem().getFacilities()) {
-                boolean added = facility.addCitizen(citizen); // הוספת האזרח למתקן כליאה
-                if (added) {
-                    citizen.setInDetention(true); // עדכון סטטוס האזרח כמי שנמצא במעצר
-                    System.out.println("Citizen " + citizen.getName() + " has been returned to facility " + facility.getName() + ".");
-                    isRevoked = true;
-                    break; // אין צורך להמשיך לחפש
-                }
+            // הוספת האזרח חזרה למתקן כליאה כלשהו
+            // The detention pass after the admission may give the place to a stronger candidate
+            Facility facility = getThreatManagementSystem().detainCitizen(citizen) ? getThreatManagementSystem().getFacilityOf(citizen) : null;
+            if (facility != null) {
+                System.out.println("Citizen " + citizen.getName() + " has been returned to facility " + facility.getName() + ".");
+            } else {
+                System.out.println("Citizen " + citizen.getName() + " is not detained: no facility has a place for them.");
             }
+            isRevoked = true;
         }
 
         // אם האזרח לא היה חנון מלכתחילה
         if (!isRevoked) {
             System.out.println("Citizen " + citizen.getName() + " is not pardoned or is already in detention.");
         }
-
-        // הפעלת manageDetention לעדכון מצב הכלואים
-        getThreatManagementSystem().manageDetention();
     }
 
     // Revoke emergency detention - resets the citizen's threat level and returns them to their original status
@@ -141,14 +131,11 @@ public class President extends Manager {
         }
 
         // עדכון מדד האיום של האזרח
-        citizen.updateThreatLevel();
+        getThreatManagementSystem().updateCitizen(citizen, citizen::updateThreatLevel);
         System.out.println("Emergency detention for Citizen " + citizen.getName() + " (ID: " + citizen.getId() + ") has been revoked. Threat level updated to " + citizen.getThreatLevel() + ".");
 
-        // עדכון סטטוס האזרח כמי שלא במעצר
-        citizen.setInDetention(false);
-
-        // הפעלת manageDetention לעדכון מצב הכלואים
-        getThreatManagementSystem().manageDetention();
+        // שחרור האזרח - מנוע הכליאה יחזיר אותו אם מדד האיום האמיתי שלו עדיין מצדיק מעצר
+        getThreatManagementSystem().releaseCitizen(citizen);
     }
 
     // New method for immediate detention and assigning to a facility with available space
@@ -158,19 +145,13 @@ public class President extends Manager {
             return;
         }
 
-        // Set threat level to maximum
-        citizen.setThreatLevelToMax();
-        citizen.setInDetention(true); // Mark citizen as in detention
-
-        // Try to find a facility with available space
-        for (Facility facility : getThreatManagementSystem().getFacilities()) {
-            if (facility.hasAvailableSpace()) { // If the facility has space
-                boolean added = facility.addCitizen(citizen); // Add citizen to the facility
-                if (added) {
-                    System.out.println("Citizen " + citizen.getName() + " (ID: " + citizen.getId() + ") has been immediately detained and assigned to facility " + facility.getName() + ".");
-                    break;
-                }
-            }
+        // Set threat level to maximum - the detention engine assigns the citizen right away
+        getThreatManagementSystem().updateCitizen(citizen, citizen::setThreatLevelToMax);
+
+        Facility facility = getThreatManagementSystem().getFacilityOf(citizen);
+        if (facility != null) {
+            System.out.println("Citizen " + citizen.getName() + " (ID: " + citizen.getId() + ") has been immediately detained and assigned to facility " + facility.getName() + ".");
+            return;
         }
 
         // If no facility was found with available space
@@ -0,0 +1,91 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// כלי המרה בין תמונת המצב הבינארית לקבצי הטקסט (CSV), לתאימות לאחור.
+// Usage (file names are relative to the Data folder):
+//   java SnapshotTool export snapshot.bin citizens.txt facilities.txt
+//   java SnapshotTool import citizens.txt facilities.txt snapshot.bin
+//   java SnapshotTool history snapshot.bin history.txt   (output path as given, like Export History)
+public class SnapshotTool {
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && "history".equals(args[0])) {
+            exportHistory(args[1], args[2]);
+            return;
+        }
+        if (args.length != 4 || !("export".equals(args[0]) || "import".equals(args[0]))) {
+            System.out.println("Usage: SnapshotTool export <snapshot> <citizens csv> <facilities csv>");
+            System.out.println("       SnapshotTool import <citizens csv> <facilities csv> <snapshot>");
+            System.out.println("       SnapshotTool history <snapshot> <output file>");
+            System.exit(2);
+        }
+
+        DataSnapshot snapshot;
+        if ("export".equals(args[0])) {
+            BinarySnapshot.Contents contents = BinarySnapshot.read(DataHandler.getDataPath(args[1]));
+            snapshot = DataSnapshot.capture(contents.citizens, contents.facilities);
+            if (!snapshot.write(args[2], args[3])) {
+                System.out.println("❌ Export failed");
+                System.exit(1);
+            }
+            System.out.println("✅ Exported " + snapshot.getCitizenCount() + " citizens and " + contents.facilities.size() + " facilities");
+        } else {
+            // Parse the files without running scoring, detention or saves on them
+            CitizenCsvIngest.Result result = CitizenCsvIngest.ingest(args[1], ForkJoinPool.commonPool(), id -> false);
+            if (result == null) {
+                throw new IOException("Checksum mismatch in " + args[1]);
+            }
+            List<Citizen> citizens = result.citizens;
+            for (String rejected : result.rejected) {
+                System.out.println("⚠ " + args[1] + " " + rejected);
+            }
+            List<Facility> facilities = new ArrayList<>();
+            ThreatManagementSystem system = new ThreatManagementSystem(null);
+            system.setCitizens(citizens); // Facilities resolve their detainees through the system's ID index
+            for (String line : lines(args[2])) {
+                facilities.add(DataHandler.facilityFromFileString(line, system));
+            }
+            snapshot = DataSnapshot.capture(citizens, facilities);
+            if (!snapshot.writeBinary(args[3])) {
+                System.out.println("❌ Import failed");
+                System.exit(1);
+            }
+            System.out.println("✅ Imported " + citizens.size() + " citizens and " + facilities.size() + " facilities");
+        }
+    }
+
+    // Citizen history straight from the mapped snapshot: no Citizen objects, no scoring pass over a loaded system
+    private static void exportHistory(String snapshotFile, String fileName) throws IOException {
+        long start = System.nanoTime();
+        try (MappedCitizenView view = MappedCitizenView.open(DataHandler.getDataPath(snapshotFile));
+             BufferedWriter writer = new BufferedWriter(new FileWriter(fileName, true), 1 << 16)) {
+            if (!view.verify()) {
+                throw new IOException("Checksum mismatch in " + snapshotFile);
+            }
+            writer.write("Citizen History Export - " + LocalDateTime.now() + "\n");
+            MappedCitizenView.Record record = view.newRecord();
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < view.size(); i++) {
+                record.moveTo(i);
+                CitizenHistoryExport.appendTextLine(line, record.getName(), record.getId(), record.getThreatLevel(),
+                        record.isInDetention());
+                writer.append(line);
+                line.setLength(0);
+            }
+            System.out.println("✅ Exported the history of " + view.size() + " citizens in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+    }
+
+    private static List<String> lines(String filename) throws IOException {
+        List<String> lines = DataHandler.readVerifiedLines(filename);
+        if (lines == null) {
+            throw new IOException("Checksum mismatch in " + filename);
+        }
+        return lines;
+    }
+}
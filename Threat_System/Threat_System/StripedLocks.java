@@ -0,0 +1,61 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+// מנעולים מפוצלים (lock striping): מספר קבוע של מנעולים, וכל אובייקט ממופה לאחד מהם לפי הזהות שלו.
+// Two objects on different stripes can be worked on in parallel; two on the same stripe simply share a lock.
+// Whoever needs more than one stripe takes them in ascending stripe order (lockBoth), so two threads moving
+// citizens between the same facilities in opposite directions can't deadlock.
+final class StripedLocks {
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    StripedLocks(int count) {
+        int size = Integer.highestOneBit(Math.max(1, count - 1)) << 1; // Rounded up to a power of two
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    // Identity, not equals: two facilities with the same ID are still two rosters
+    int stripeOf(Object key) {
+        int hash = System.identityHashCode(key);
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    void lock(Object key) {
+        stripes[stripeOf(key)].lock();
+    }
+
+    void unlock(Object key) {
+        stripes[stripeOf(key)].unlock();
+    }
+
+    // Lock the stripes of both keys, lower stripe first (once if they share a stripe)
+    void lockBoth(Object a, Object b) {
+        int first = stripeOf(a);
+        int second = stripeOf(b);
+        stripes[Math.min(first, second)].lock();
+        if (first != second) {
+            stripes[Math.max(first, second)].lock();
+        }
+    }
+
+    void unlockBoth(Object a, Object b) {
+        int first = stripeOf(a);
+        int second = stripeOf(b);
+        if (first != second) {
+            stripes[Math.max(first, second)].unlock();
+        }
+        stripes[Math.min(first, second)].unlock();
+    }
+
+    // Whether the calling thread holds the key's stripe (for assertions)
+    boolean isHeldByCurrentThread(Object key) {
+        return stripes[stripeOf(key)].isHeldByCurrentThread();
+    }
+
+    int getStripeCount() {
+        return stripes.length;
+    }
+}
@@ -0,0 +1,223 @@
+import java.util.*;
+
+// Ordered index of citizens keyed by ThreatKey (threat level, then ID), implemented as a size-augmented treap.
+// Insert, remove, min/max and rank queries are O(log n); a descending scan costs O(log n + k) for k results.
+class ThreatIndex {
+    private static final class Node {
+        final ThreatKey key;
+        final Citizen citizen;
+        final int priority;
+        int size = 1;
+        Node left, right;
+
+        Node(ThreatKey key, Citizen citizen, int priority) {
+            this.key = key;
+            this.citizen = citizen;
+            this.priority = priority;
+        }
+    }
+
+    private Node root;
+    private int seed = 0x2545F491;
+
+    int size() {
+        return size(root);
+    }
+
+    boolean isEmpty() {
+        return root == null;
+    }
+
+    void clear() {
+        root = null;
+    }
+
+    // Index the citizen under its current threat level; returns false if the key is already present
+    boolean add(Citizen citizen) {
+        ThreatKey key = new ThreatKey(citizen);
+        if (contains(key)) {
+            return false;
+        }
+        Node[] parts = split(root, key);
+        root = merge(merge(parts[0], new Node(key, citizen, nextPriority())), parts[1]);
+        return true;
+    }
+
+    // Remove the entry stored under the key; returns its citizen or null if absent
+    Citizen remove(ThreatKey key) {
+        Citizen[] removed = new Citizen[1];
+        root = remove(root, key, removed);
+        return removed[0];
+    }
+
+    boolean contains(ThreatKey key) {
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                return true;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return false;
+    }
+
+    // Lowest-ranked citizen (lowest threat level), or null if empty
+    Citizen first() {
+        Node node = root;
+        if (node == null) return null;
+        while (node.left != null) node = node.left;
+        return node.citizen;
+    }
+
+    // Highest-ranked citizen (highest threat level), or null if empty
+    Citizen last() {
+        Node node = root;
+        if (node == null) return null;
+        while (node.right != null) node = node.right;
+        return node.citizen;
+    }
+
+    // Number of entries ranked above the key
+    int countAbove(ThreatKey key) {
+        int count = 0;
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp < 0) {
+                count += 1 + size(node.right);
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return count;
+    }
+
+    // Citizens from the highest threat level down, starting at the first one whose threat level is at most maxThreatLevel
+    Iterator<Citizen> descendingFrom(double maxThreatLevel) {
+        Deque<Node> stack = new ArrayDeque<>();
+        Node node = root;
+        while (node != null) {
+            if (node.key.getThreatLevel() <= maxThreatLevel) {
+                stack.push(node);
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public Citizen next() {
+                if (stack.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node current = stack.pop();
+                for (Node n = current.left; n != null; n = n.right) {
+                    stack.push(n);
+                }
+                return current.citizen;
+            }
+        };
+    }
+
+    Iterator<Citizen> descendingIterator() {
+        return descendingFrom(Double.POSITIVE_INFINITY);
+    }
+
+    // Citizens from the lowest threat level up
+    Iterator<Citizen> ascendingIterator() {
+        Deque<Node> stack = new ArrayDeque<>();
+        for (Node node = root; node != null; node = node.left) {
+            stack.push(node);
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public Citizen next() {
+                if (stack.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node current = stack.pop();
+                for (Node n = current.right; n != null; n = n.left) {
+                    stack.push(n);
+                }
+                return current.citizen;
+            }
+        };
+    }
+
+    private Node remove(Node node, ThreatKey key, Citizen[] removed) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = key.compareTo(node.key);
+        if (cmp == 0) {
+            removed[0] = node.citizen;
+            return merge(node.left, node.right);
+        }
+        if (cmp < 0) {
+            node.left = remove(node.left, key, removed);
+        } else {
+            node.right = remove(node.right, key, removed);
+        }
+        if (removed[0] != null) {
+            node.size--;
+        }
+        return node;
+    }
+
+    // Split into keys below the given key and keys at or above it
+    private Node[] split(Node node, ThreatKey key) {
+        if (node == null) {
+            return new Node[]{null, null};
+        }
+        if (node.key.compareTo(key) < 0) {
+            Node[] parts = split(node.right, key);
+            node.right = parts[0];
+            update(node);
+            return new Node[]{node, parts[1]};
+        }
+        Node[] parts = split(node.left, key);
+        node.left = parts[1];
+        update(node);
+        return new Node[]{parts[0], node};
+    }
+
+    private Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        update(b);
+        return b;
+    }
+
+    private static void update(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private int nextPriority() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+}
@@ -0,0 +1,58 @@
+// Immutable ordering key for a citizen: threat level first, citizen ID as a tie-breaker.
+// Among equal threat levels the lower ID ranks higher. That is a fixed order of its own: the stable sort this replaced
+// kept list order, and a lower ID is not necessarily an earlier insertion.
+// Kept separate from Citizen so an index can still find an entry by its old threat level after a change.
+final class ThreatKey implements Comparable<ThreatKey> {
+    private final double threatLevel;
+    private final long id;
+
+    ThreatKey(double threatLevel, long id) {
+        this.threatLevel = threatLevel;
+        this.id = id;
+    }
+
+    ThreatKey(Citizen citizen) {
+        this(citizen.getThreatLevel(), citizen.getNumericId());
+    }
+
+    double getThreatLevel() {
+        return threatLevel;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    @Override
+    public int compareTo(ThreatKey other) {
+        return compare(threatLevel, id, other.threatLevel, other.id);
+    }
+
+    // Same ordering applied directly to citizens, using their current threat levels
+    static int compare(Citizen a, Citizen b) {
+        return compare(a.getThreatLevel(), a.getNumericId(), b.getThreatLevel(), b.getNumericId());
+    }
+
+    private static int compare(double threatA, long idA, double threatB, long idB) {
+        int byThreat = Double.compare(threatA, threatB);
+        return byThreat != 0 ? byThreat : Long.compare(idB, idA);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ThreatKey)) return false;
+        ThreatKey other = (ThreatKey) o;
+        return Double.compare(threatLevel, other.threatLevel) == 0 && id == other.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Double.hashCode(threatLevel) + Long.hashCode(id);
+    }
+
+    @Override
+    public String toString() {
+        return "ThreatKey{threatLevel=" + threatLevel + ", id=" + id + "}";
+    }
+}
@@ -0,0 +1,12 @@
+// Notified whenever a citizen's threat level changes, with the value it had before the change
+public interface ThreatLevelListener {
+    void threatLevelChanged(Citizen citizen, double oldThreatLevel);
+
+    // Called when any of the citizen's data changed, before its threat level is recalculated
+    default void citizenChanged(Citizen citizen) {
+    }
+
+    // Called after the citizen's name changed from oldName
+    default void citizenRenamed(Citizen citizen, String oldName) {
+    }
+}
@@ -1,172 +1,1427 @@
 
 import java.io.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
-public class ThreatManagementSystem {
+// מודל המקביליות של המערכת:
+//  - stateLock guards the citizen and facility lists, the indexes, the counters, the detention engine and the paged-out
+//    repository. Whatever changes them holds the write lock, and so does every detention decision (the engine's
+//    fixpoint spans all facilities); lookups and queries hold the read lock.
+//  - Under the read lock a facility's roster may still change, holding that facility's stripe of facilityLocks:
+//    admitToFacility, transferCitizen and the full-scan pass. Roster reads under the read lock take the stripe too.
+//    Under the write lock nobody else is inside, so stripes are not needed. Those roster changes are queued and
+//    folded into the detention engine by the next holder of the write lock.
+//  - Lock order: stateLock, then facility stripes in ascending stripe order (StripedLocks.lockBoth), then a citizen's
+//    monitor (claimForDetention, setInDetention). The read lock can't be upgraded: code holding it never asks for the
+//    write lock, so a citizen's scoring data is only changed under the write lock (updateCitizen).
+//  - getCitizens() and getFacilities() return the live lists, for callers holding the lock or running on the thread
+//    that changes the system.
+//  - CommandPipeline puts all changes on one writer thread and applies them in batches (runBatch). An open
+//    DetentionScheduler settles detention once per time window instead; its pass runs under the write lock too.
+public class ThreatManagementSystem implements ThreatLevelListener, FacilityRosterListener {
+    public static final String SCORING_RULES_FILE = "threat_rules.txt";
+    public static final String CITIZENS_FILE = "citizens.txt";
+    public static final String FACILITIES_FILE = "facilities.txt";
+    public static final String JOURNAL_FILE = "journal.log";
+    public static final String SNAPSHOT_FILE = "snapshot.bin";
+    public static final String DETENTION_HISTORY_FOLDER = "detention-history";
+    public static final int FACILITY_LOCK_STRIPES = 64;
     private List<Citizen> citizens;
     private List<Facility> facilities;
     private Manager manager;
     private President president;
-    private int citizenCount; // קאונטר לאזרחים
-    private int totalCapacity;  // משתנה חדש לקיבולת כוללת
+    private volatile int citizenCount; // קאונטר לאזרחים - נקרא גם מחוטים אחרים ללא מנעול
+    private volatile int totalCapacity;  // משתנה חדש לקיבולת כוללת
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+    private final StripedLocks facilityLocks = new StripedLocks(FACILITY_LOCK_STRIPES);
+    private final Queue<RosterChange> rosterChangesOutsideEngine = new ConcurrentLinkedQueue<>(); // Made under the read lock
+    private final DetentionEngine detentionEngine; // מנוע כליאה אינקרמנטלי
+    private final CitizenStore citizenStore = new CitizenStore(); // אינדקס ראשי לפי מזהה מספרי
+    private final Map<String, List<Citizen>> citizensByName = new HashMap<>(); // אינדקס משני לפי שם
+    private final List<Citizen> shadowedCitizens = new ArrayList<>(); // Registered under an ID another citizen holds
+    private final Map<String, Facility> facilitiesById = new HashMap<>();
+    private final Map<String, List<Facility>> facilitiesByName = new HashMap<>();
+    private boolean columnarScoring = true; // ניקוד מרוכז דרך CitizenTable במקום אזרח-אזרח
+    private ForkJoinPool scoringPool; // null = ניקוד בחוט הקורא
+    private MutationJournal journal; // null = כל שינוי כותב מחדש את הקובץ כולו
+    private final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "snapshot-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private int checkpointEveryRecords;
+    private volatile DetentionHistory detentionHistory; // null = admissions and releases are not recorded
+    private DetentionScheduler detentionScheduler; // null = detention settles after every change
+    private volatile CapacityMonitor capacityMonitor; // null = nobody watches the capacity
+    private CitizenRepository pagedOutCitizens; // null = every citizen is in memory (see setPagedOutCitizens)
+    private int pageInBatch;
+    private int batchDepth; // > 0 inside runBatch: saving waits for the end of the batch
+    private boolean snapshotDue; // Saves put off by the running batch
+    private boolean citizensFileDue;
+    private boolean facilitiesFileDue;
     public ThreatManagementSystem(Manager manager) {
         this.citizens = new ArrayList<>();
         this.facilities = new ArrayList<>();
         this.manager = manager;
         this.citizenCount = 0;
         this.totalCapacity = 0;
+        this.detentionEngine = new DetentionEngine(this);
+    }
+
+    // Called by every registered citizen when its threat level changes
+    @Override
+    public void threatLevelChanged(Citizen citizen, double oldThreatLevel) {
+        lockWrite();
+        try {
+            CapacityMonitor monitor = capacityMonitor;
+            if (monitor != null) {
+                monitor.threatLevelChanged(oldThreatLevel, citizen.getThreatLevel(), getStaticThreshold());
+            }
+            if (isPagedOut(citizen)) {
+                pageIn(citizen); // Registered with its new threat level
+                return;
+            }
+            detentionEngine.threatLevelChanged(citizen, oldThreatLevel);
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // A paged-out citizen is about to change: keep it in memory from now on so the change is saved
+    @Override
+    public void citizenChanged(Citizen citizen) {
+        lockWrite();
+        try {
+            if (isPagedOut(citizen)) {
+                pageIn(citizen);
+            }
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Keep the name index in step with Citizen.setName
+    @Override
+    public void citizenRenamed(Citizen citizen, String oldName) {
+        lockWrite();
+        try {
+            if (removeFromMultiMap(citizensByName, oldName, citizen)) {
+                citizensByName.computeIfAbsent(citizen.getName(), k -> new ArrayList<>(1)).add(citizen);
+            }
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Called by every facility in the system when a citizen enters its roster
+    @Override
+    public void citizenAdmitted(Facility facility, Citizen citizen) {
+        if (!stateLock.isWriteLockedByCurrentThread()) { // Not the engine's own doing
+            rosterChangesOutsideEngine.add(new RosterChange(citizen, facility, true));
+        }
+        CapacityMonitor monitor = capacityMonitor;
+        if (monitor != null) {
+            monitor.detaineesChanged(1);
+        }
+        DetentionHistory history = detentionHistory;
+        if (history != null) {
+            history.record(DetentionHistory.ADMITTED, citizen, facility);
+        }
+    }
+
+    // Called by every facility in the system when a citizen leaves its roster
+    @Override
+    public void citizenReleased(Facility facility, Citizen citizen, boolean evicted) {
+        if (!stateLock.isWriteLockedByCurrentThread()) {
+            rosterChangesOutsideEngine.add(new RosterChange(citizen, facility, false));
+        }
+        CapacityMonitor monitor = capacityMonitor;
+        if (monitor != null) {
+            monitor.detaineesChanged(-1);
+        }
+        DetentionHistory history = detentionHistory;
+        if (history != null) {
+            history.record(evicted ? DetentionHistory.EVICTED : DetentionHistory.RELEASED, citizen, facility);
+        }
     }
 
     // Start periodic threat level updates
 
     // Refresh threat levels for all citizens
     public void refreshThreatLevels() {
-        for (Citizen citizen : citizens) {
-            citizen.updateThreatLevel();
+        lockWrite();
+        try {
+            if (!columnarScoring) {
+                for (Citizen citizen : citizens) {
+                    citizen.updateThreatLevel();
+                }
+                return;
+            }
+            long start = System.nanoTime();
+            CitizenTable table;
+            if (scoringPool == null) {
+                table = CitizenTable.of(citizens);
+                table.scoreAll(LocalDate.now());
+            } else {
+                table = CitizenTable.scoreAll(citizens, LocalDate.now(), scoringPool);
+            }
+            long scored = System.nanoTime();
+            // החזרת התוצאות נעשית בחוט הקורא - מנוע הכליאה אינו בטוח לחוטים
+            for (int i = 0; i < table.size(); i++) {
+                citizens.get(i).applyComputedThreatLevel(table.getThreatLevel(i));
+            }
+            long applied = System.nanoTime();
+            if (!citizens.isEmpty()) {
+                System.out.printf("⚡ Rescored %d citizens on %d thread(s): scoring %d ms (%.0f citizens/sec) | apply %d ms%n",
+                        citizens.size(), scoringPool == null ? 1 : scoringPool.getParallelism(),
+                        (scored - start) / 1_000_000, citizens.size() * 1e9 / Math.max(1, scored - start),
+                        (applied - scored) / 1_000_000);
+            }
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Number of threads used for full rescoring; 1 keeps it on the calling thread.
+    // A dedicated pool (not the common pool) so a nightly rescore can't starve the EDT or other jobs.
+    public void setScoringParallelism(int threads) {
+        if (scoringPool != null) {
+            scoringPool.shutdown();
+        }
+        scoringPool = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    // The scoring pool, also used for other bulk CPU work (file ingest); null when there is none
+    ForkJoinPool getWorkerPool() {
+        return scoringPool;
+    }
+
+    // Hot-swap the scoring rules and rescore everyone with them; detention follows through the listeners
+    public void setScoringRules(ThreatScoringRules rules) {
+        lockWrite();
+        try {
+            ThreatScoringRules.setCurrent(rules);
+            System.out.println("📐 Scoring rules replaced, rescoring all citizens.");
+            refreshThreatLevels();
+            rescorePagedOutCitizens();
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Reload the rules file from the Data folder; the current rules stay in effect if it is missing or invalid
+    public boolean reloadScoringRules() {
+        ThreatScoringRules rules = DataHandler.loadScoringRulesFromFile(SCORING_RULES_FILE);
+        if (rules == null) {
+            System.out.println("❌ Scoring rules not loaded, keeping the current rules.");
+            return false;
+        }
+        setScoringRules(rules);
+        return true;
+    }
+
+    // Daily job: rescore only the citizens whose memoized score went stale (age bracket changed today)
+    public int rolloverAgeBrackets() {
+        lockWrite();
+        try {
+            LocalDate today = LocalDate.now();
+            int rescored = 0;
+            for (Citizen citizen : citizens) {
+                if (citizen.isThreatLevelStale(today)) {
+                    citizen.updateThreatLevel();
+                    rescored++;
+                }
+            }
+            System.out.println("🎂 Age rollover " + today + ": rescored " + rescored + " of " + citizens.size() + " citizens.");
+            rescorePagedOutCitizens();
+            return rescored;
+        } finally {
+            unlockWrite();
         }
     }
 
+    public void setColumnarScoring(boolean columnarScoring) {
+        this.columnarScoring = columnarScoring;
+    }
+
     public double getStaticThreshold() {
         return 500.0; // Static threat level threshold example
     }
 
     // Assign a citizen to the best available facility
     public void assignCitizenToFacility(Citizen citizen) {
-        for (Facility facility : facilities) {
-            if (facility.addCitizen(citizen)) {
-                System.out.println("Citizen " + citizen.getName() + " assigned to facility " + facility.getName());
-                return;
+        lockWrite();
+        try {
+            keepInMemory(citizen);
+            if (!detentionEngine.detainCitizen(citizen)) {
+                System.out.println("No available space for citizen " + citizen.getName());
             }
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Release a detained citizen and let the engine refill the freed place
+    public boolean releaseCitizen(Citizen citizen) {
+        lockWrite();
+        try {
+            keepInMemory(citizen);
+            return detentionEngine.releaseCitizen(citizen);
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Detain a citizen even below the static threshold (e.g. revoked pardon)
+    public boolean detainCitizen(Citizen citizen) {
+        lockWrite();
+        try {
+            keepInMemory(citizen);
+            return detentionEngine.detainCitizen(citizen);
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // The facility currently holding the citizen, or null if the citizen is free
+    public Facility getFacilityOf(Citizen citizen) {
+        lockReadForEngine();
+        try {
+            return detentionEngine.getFacilityOf(citizen);
+        } finally {
+            stateLock.readLock().unlock();
         }
-        System.out.println("No available space for citizen " + citizen.getName());
     }
 
-    // Export the history of all citizens to a file
+    // Export the history of all citizens to a file, on the calling thread (format by file name, see CitizenHistoryExport)
     public void exportCitizenHistory(String fileName) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName, true))) {
-            writer.write("Citizen History Export - " + LocalDateTime.now() + "\n");
-            for (Citizen citizen : citizens) {
-                writer.write("Citizen Name: " + citizen.getName() + ", Citizen ID: " + citizen.getId() + ", Threat Level: " + citizen.getThreatLevel() + ", In Detention: " + citizen.isInDetention() + "\n");
-            }
+        newHistoryExport(fileName).run(Runnable::run, null, () -> false);
+    }
+
+    // A history export over the citizens as of now, to be run in the background (see MainGUI)
+    public CitizenHistoryExport newHistoryExport(String fileName) {
+        stateLock.readLock().lock();
+        try {
+            // The list may change during the export; the paged-out citizens are read from the mapped file after it
+            return new CitizenHistoryExport(new ArrayList<>(citizens), pagedOutCitizens != null ? pagedOutCitizens.coldSet() : null,
+                    fileName);
+        } finally {
+            stateLock.readLock().unlock();
         }
     }
 
     // Add a new citizen to the system
     public void addCitizen(Citizen citizen) {
-        citizens.add(citizen);
-        refreshThreatLevels();
-        manageDetention(); // ביצוע איוס מחדש של הכלואים
-        citizenCount++; // עדכון קאונטר של אזרחים
-        System.out.println("Citizen " + citizen.getName() + " (ID: " + citizen.getId() + ") added to the system.");
-        DataHandler.saveCitizensToFile(citizens, "citizen.txt");
+        lockWrite();
+        try {
+            citizens.add(citizen);
+            indexCitizen(citizen);
+            citizen.setThreatLevelListener(this);
+            boolean engineStale = !detentionEngine.isBuilt();
+            citizen.updateThreatLevel(); // A change of score rebuilds a stale engine, from a list that has the citizen already
+            if (!engineStale || !detentionEngine.isBuilt()) {
+                detentionEngine.citizenAdded(citizen); // שיבוץ האזרח החדש בלבד
+            }
+            citizenCount++; // עדכון קאונטר של אזרחים
+            CapacityMonitor monitor = capacityMonitor;
+            if (monitor != null) {
+                monitor.citizenAdded(citizen.getThreatLevel(), getStaticThreshold());
+            }
+            System.out.println("Citizen " + citizen.getName() + " (ID: " + citizen.getId() + ") added to the system.");
+            persistCitizenAdded(citizen);
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Add many citizens at once: insert, score, run detention and save a single time
+    public void addCitizensBulk(Collection<Citizen> newCitizens) {
+        lockWrite();
+        try {
+            long start = System.nanoTime();
+            citizens.addAll(newCitizens);
+            for (Citizen citizen : newCitizens) {
+                indexCitizen(citizen);
+            }
+            citizenCount += newCitizens.size(); // עדכון קאונטר של אזרחים
+            long inserted = System.nanoTime();
+
+            refreshThreatLevels();
+            long scored = System.nanoTime();
+
+            // רישום מאוחר - הניקוד של האזרחים החדשים לא מפעיל את מנוע הכליאה אחד-אחד
+            for (Citizen citizen : newCitizens) {
+                citizen.setThreatLevelListener(this);
+            }
+
+            manageDetention(); // מעבר כליאה אחד לכל הטעינה - סופר מחדש גם את מוניטור הקיבולת
+            long detained = System.nanoTime();
+
+            if (journal != null || pagedOutCitizens != null) {
+                saveSnapshotWhenDue(); // תמונת מצב אחת במקום רשומת יומן לכל אזרח
+            } else {
+                saveCitizensFileWhenDue();
+            }
+            long saved = System.nanoTime();
+
+            System.out.println("Bulk added " + newCitizens.size() + " citizens to the system.");
+            System.out.printf("Bulk timings: insert %d ms | scoring %d ms | detention %d ms | save %d ms | total %d ms%n",
+                    (inserted - start) / 1_000_000,
+                    (scored - inserted) / 1_000_000,
+                    (detained - scored) / 1_000_000,
+                    (saved - detained) / 1_000_000,
+                    (saved - start) / 1_000_000);
+        } finally {
+            unlockWrite();
+        }
     }
 
 
 
    public void removeCitizen(Citizen citizen) {
-    if (citizens.remove(citizen)) {
-        citizen.setInDetention(false);
-        System.out.println("Citizen " + citizen.getName() + " removed from the system.");
-        manageDetention(); // Reassess detention after removal
-        citizenCount--; // עדכון קאונטר של אזרחים
-        DataHandler.saveCitizensToFile(citizens, "citizen.txt");
-    } else {
-        System.out.println("Citizen " + citizen.getName() + " does not exist in the system.");
+    lockWrite();
+    try {
+        keepInMemory(citizen);
+        if (citizens.remove(citizen)) {
+            unindexCitizen(citizen);
+            citizen.setThreatLevelListener(null);
+            detentionEngine.citizenRemoved(citizen); // Free the citizen's place and refill it
+            citizen.setInDetention(false);
+            System.out.println("Citizen " + citizen.getName() + " removed from the system.");
+            citizenCount--; // עדכון קאונטר של אזרחים
+            CapacityMonitor monitor = capacityMonitor;
+            if (monitor != null) {
+                monitor.citizenRemoved(citizen.getThreatLevel(), getStaticThreshold());
+            }
+            persistCitizenRemoved(citizen);
+        } else {
+            System.out.println("Citizen " + citizen.getName() + " does not exist in the system.");
+        }
+    } finally {
+        unlockWrite();
     }
 }
    public void addFacility(Facility facility) {
-	    facilities.add(facility);
-	    manageDetention(); // עדכון הכלואים מחדש
-	    totalCapacity = getTotalCapacity(); // חישוב מחדש של הקיבולת במקום להסתמך על משתנה
-	    System.out.println("Facility " + facility.getName() + " added. New total capacity: " + totalCapacity);
-	    DataHandler.saveFacilitiesToFile(facilities, "facilities.txt");
+	    lockWrite();
+	    try {
+	        facilities.add(facility);
+	        indexFacility(facility);
+	        detentionEngine.facilityAdded(facility); // מילוי המקומות הפנויים במתקן החדש
+	        totalCapacity = getTotalCapacity(); // חישוב מחדש של הקיבולת במקום להסתמך על משתנה
+	        capacityChanged();
+	        System.out.println("Facility " + facility.getName() + " added. New total capacity: " + totalCapacity);
+	        persistFacilityAdded(facility);
+	    } finally {
+	        unlockWrite();
+	    }
 	}
 
    
    public void removeFacility(Facility facility) {
-	    if (!facilities.remove(facility)) {
-	        System.out.println("Facility " + facility.getName() + " does not exist in the system.");
-	        DataHandler.saveFacilitiesToFile(facilities, "facilities.txt");
-	        return;
-	        
-	    }
+	    lockWrite();
+	    try {
+	        if (!facilities.remove(facility)) {
+	            System.out.println("Facility " + facility.getName() + " does not exist in the system.");
+	            return;
+	            
+	        }
+	        unindexFacility(facility);
+	        for (Citizen citizen : facility.getDetainedCitizens()) {
+	            citizenReleased(facility, citizen, false); // The detainees leave with the facility; the engine re-places them
+	        }
+	        facility.setRosterListener(null);
 
-	    System.out.println("Facility " + facility.getName() + " removed.");
+	        System.out.println("Facility " + facility.getName() + " removed.");
 
-	    // שמירה מחדש לאחר מחיקת מתקן
-	    DataHandler.saveFacilitiesToFile(facilities, "facilities.txt");
+	        // שמירה לאחר מחיקת מתקן
+	        persistFacilityRemoved(facility);
 
-	    // שחרור אזרחים שנכלאו במתקן
-	    List<Citizen> detainedCitizens = facility.getDetainedCitizens();
-	    for (Citizen citizen : detainedCitizens) {
-	        citizen.setInDetention(false);
-	        assignCitizenToFacility(citizen); 
-	    }
+	        // שחרור אזרחים שנכלאו במתקן ושיבוצם מחדש
+	        detentionEngine.facilityRemoved(facility);
 
-	    totalCapacity = getTotalCapacity(); // חישוב מחדש של הקיבולת
-	    System.out.println("New total facility capacity: " + totalCapacity);
-	    manageDetention();
+	        totalCapacity = getTotalCapacity(); // חישוב מחדש של הקיבולת
+	        capacityChanged();
+	        System.out.println("New total facility capacity: " + totalCapacity);
+	    } finally {
+	        unlockWrite();
+	    }
 	}
 
+    // Put a citizen into one facility without a detention decision (an operator's placement). Runs under the read
+    // lock and the facility's stripe only, so admissions to different facilities proceed in parallel; the engine
+    // catches up from the rosters at its next call. A full facility swaps out its weakest detainee for a more
+    // threatening citizen. Returns false if the citizen is detained already, unknown or doesn't fit.
+    public boolean admitToFacility(Citizen citizen, Facility facility) {
+        stateLock.readLock().lock();
+        try {
+            if (citizenStore.get(citizen.getNumericId()) != citizen || facilitiesById.get(facility.getFacilityId()) != facility) {
+                System.out.println("Citizen " + citizen.getName() + " or facility " + facility.getName() + " is not in the system.");
+                return false; // A paged-out citizen is brought in by detainCitizen, which needs the write lock
+            }
+            return admitUnderReadLock(citizen, facility);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    // Move a detainee to another facility with a free place. Both stripes are held for the move, taken in stripe
+    // order, and the citizen's monitor too so nobody can claim it while it is between the two rosters.
+    public boolean transferCitizen(Citizen citizen, Facility from, Facility to) {
+        if (from == to) {
+            return false;
+        }
+        stateLock.readLock().lock();
+        try {
+            facilityLocks.lockBoth(from, to);
+            try {
+                synchronized (citizen) {
+                    if (!from.containsCitizen(citizen) || !to.hasAvailableSpace()) {
+                        return false;
+                    }
+                    from.removeCitizen(citizen);
+                    to.addCitizen(citizen);
+                }
+                return true;
+            } finally {
+                facilityLocks.unlockBoth(from, to);
+            }
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    // Change a citizen's data under the write lock, so no query sees it half-way: the new threat level is stored in
+    // the citizen before the engine hears about it
+    public void updateCitizen(Citizen citizen, Runnable change) {
+        lockWrite();
+        try {
+            change.run();
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Apply many changes as one (CommandPipeline): a single hold of the write lock, one detention pass once the last
+    // change is in, and without a journal one rewrite of each changed file (or one snapshot) instead of one per change.
+    // Journal records are still appended per change; the journal's group commit already shares their fsync.
+    public void runBatch(Runnable changes) {
+        lockWrite();
+        batchDepth++;
+        detentionEngine.deferSettling();
+        try {
+            changes.run();
+        } finally {
+            batchDepth--;
+            try {
+                detentionEngine.resumeSettling(); // The batch's detention pass
+                if (batchDepth == 0) {
+                    saveDueFiles();
+                }
+            } finally {
+                unlockWrite();
+            }
+        }
+    }
+
+    // Settle changes within windowMillis of each other (at most maxTriggers of them) in one detention pass, run on the
+    // timer's thread, instead of after each change. See DetentionScheduler.
+    public void openDetentionScheduler(long windowMillis, int maxTriggers, ScheduledExecutorService timer) {
+        lockWrite();
+        try {
+            if (detentionScheduler != null) {
+                return;
+            }
+            detentionScheduler = new DetentionScheduler(this, timer, windowMillis, maxTriggers);
+            detentionEngine.deferSettling();
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Report citizen, detention and capacity changes to monitor from now on (null stops reporting)
+    public void setCapacityMonitor(CapacityMonitor monitor) {
+        lockWrite();
+        try {
+            capacityMonitor = monitor;
+            recountCapacityMonitor();
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Settle whatever is waiting and go back to settling after every change
+    public void closeDetentionScheduler() {
+        lockWrite();
+        try {
+            if (detentionScheduler == null) {
+                return;
+            }
+            settleDetention(DetentionScheduler.FORCED);
+            System.out.println(detentionScheduler.getStats());
+            detentionScheduler.close();
+            detentionScheduler = null;
+            detentionEngine.resumeSettling();
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Settle the changes the detention scheduler is holding back, right now (for work that needs the final rosters);
+    // returns how many changes the pass covered
+    public int flushDetention() {
+        return flushDetention(DetentionScheduler.FORCED);
+    }
+
+    int flushDetention(String cause) {
+        lockWrite();
+        try {
+            return settleDetention(cause);
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Called by the scheduler once a window's pass is over, even if it failed (see DetentionScheduler.windowEnded)
+    void closeDetentionWindow(DetentionScheduler scheduler, long window) {
+        lockWrite();
+        try {
+            scheduler.windowClosed(window);
+        } finally {
+            unlockWrite(); // Changes that came in after a failed pass open the next window here
+        }
+    }
+
+    public String getDetentionSchedulerStats() {
+        stateLock.readLock().lock();
+        try {
+            return detentionScheduler != null ? detentionScheduler.getStats() : null;
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock
+    private int settleDetention(String cause) {
+        int absorbed = detentionEngine.settleNow();
+        if (detentionScheduler != null) {
+            detentionScheduler.passDone(absorbed, cause);
+        }
+        return absorbed;
+    }
+
+    // Caller holds the read lock. The citizen is claimed first: another thread may be placing it elsewhere right now.
+    private boolean admitUnderReadLock(Citizen citizen, Facility facility) {
+        if (!citizen.claimForDetention()) {
+            return false;
+        }
+        boolean admitted;
+        facilityLocks.lock(facility);
+        try {
+            admitted = facility.addCitizen(citizen);
+        } finally {
+            facilityLocks.unlock(facility);
+        }
+        if (!admitted) {
+            citizen.setInDetention(false);
+        }
+        return admitted;
+    }
+
+    private void lockWrite() {
+        stateLock.writeLock().lock();
+        if (!rosterChangesOutsideEngine.isEmpty()) { // Nobody can add more until we let go
+            RosterChange change;
+            while ((change = rosterChangesOutsideEngine.poll()) != null) {
+                detentionEngine.rosterChanged(change.citizen, change.facility, change.admitted);
+            }
+            detentionEngine.rosterChangesDone();
+        }
+    }
+
+    private void unlockWrite() {
+        try {
+            if (detentionScheduler != null && stateLock.getWriteHoldCount() == 1
+                    && detentionScheduler.changesApplied(detentionEngine.getPendingTriggers())) {
+                settleDetention(DetentionScheduler.FULL);
+            }
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    // Read lock for queries answered by the detention engine. A stale engine is rebuilt under the write lock first,
+    // which is then downgraded to the read lock so no writer gets in between.
+    // A caller that holds the read lock already can't upgrade it, so there the engine would answer without the roster
+    // changes made under the read lock (admitToFacility, transferCitizen) since its last update. Nothing in the system
+    // nests these queries: roster listeners (FacilityRosterListener), which run under the read lock, must not call
+    // getFacilityOf, the ranks or the thresholds. The assertion catches one that does when run with -ea (run-checks.sh).
+    private void lockReadForEngine() {
+        stateLock.readLock().lock();
+        if (detentionEngine.isBuilt() && !detentionEngine.hasPendingSettle() && rosterChangesOutsideEngine.isEmpty()) {
+            return;
+        }
+        if (stateLock.getReadHoldCount() > 1) {
+            assert false : "Detention query nested in a read lock while the engine is behind the rosters";
+            return; // Can't be upgraded: the answer may miss the latest roster changes
+        }
+        stateLock.readLock().unlock();
+        lockWrite();
+        try {
+            if (!detentionEngine.isBuilt()) {
+                detentionEngine.rebuild();
+            }
+            settleDetention(DetentionScheduler.FORCED); // Answers come from the settled state
+            stateLock.readLock().lock();
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // A facility's detainee IDs, safe to call from any thread (Facility itself is not thread safe)
+    public long[] getDetaineeIds(Facility facility) {
+        stateLock.readLock().lock();
+        facilityLocks.lock(facility);
+        try {
+            return facility.getDetaineeIds();
+        } finally {
+            facilityLocks.unlock(facility);
+            stateLock.readLock().unlock();
+        }
+    }
+
+    // Roster reads under the read lock hold the facility's stripe: another thread may be admitting to it
+    private int occupancyOf(Facility facility) {
+        facilityLocks.lock(facility);
+        try {
+            return facility.getCurrentOccupancy();
+        } finally {
+            facilityLocks.unlock(facility);
+        }
+    }
+
 
 
    
+    // Open the write-ahead journal in the Data folder; from now on every mutation appends one record to it.
+    // Call after recoverFromJournal, so records that were not folded into the snapshot yet are not lost.
+    public void openJournal(long syncIntervalMillis, int maxBatchRecords, int checkpointEveryRecords) {
+        lockWrite();
+        try {
+            try {
+                journal = new MutationJournal(DataHandler.getDataPath(JOURNAL_FILE), syncIntervalMillis, maxBatchRecords);
+                this.checkpointEveryRecords = checkpointEveryRecords;
+                System.out.println("📒 Journal opened (" + journal.getRecordCount() + " records pending).");
+                if (journal.getRecordCount() > 0) {
+                    saveSnapshotInBackground();
+                }
+            } catch (IOException e) {
+                System.out.println("❌ Could not open the journal, falling back to full-file saves: " + e.getMessage());
+                journal = null;
+            }
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    public void closeJournal() {
+        lockWrite();
+        try {
+            if (journal == null) {
+                return;
+            }
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.out.println("❌ Error closing the journal: " + e.getMessage());
+            }
+            journal = null;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Start recording every admission, release and eviction (see DetentionHistory)
+    public void openDetentionHistory(long syncIntervalMillis, int maxBatchRecords, int checkpointEveryEvents) {
+        lockWrite();
+        try {
+            try {
+                detentionHistory = new DetentionHistory(DETENTION_HISTORY_FOLDER, this, syncIntervalMillis, maxBatchRecords,
+                        checkpointEveryEvents);
+                System.out.println("🗂 Detention history opened.");
+            } catch (IOException e) {
+                System.out.println("❌ Could not open the detention history, admissions won't be recorded: " + e.getMessage());
+                detentionHistory = null;
+            }
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    public void closeDetentionHistory() {
+        DetentionHistory history;
+        lockWrite();
+        try {
+            history = detentionHistory;
+            detentionHistory = null; // From now on nothing is recorded
+        } finally {
+            unlockWrite();
+        }
+        if (history == null) {
+            return;
+        }
+        try {
+            history.close();
+        } catch (IOException e) {
+            System.out.println("❌ Error closing the detention history: " + e.getMessage());
+        }
+    }
+
+    // History queries take no lock: they read files, and the history resolves IDs through the locked lookups
+
+    // Every detention of a citizen, oldest first (empty if the history is not open)
+    public List<CitizenFacilityAssignment> getDetentionHistory(String citizenId) {
+        DetentionHistory history = detentionHistory;
+        long numericId = CitizenStore.parseId(citizenId);
+        if (history == null || numericId < 0) {
+            return new ArrayList<>();
+        }
+        return history.getCitizenHistory(numericId);
+    }
+
+    // Who was held in a facility at some point of the given day (empty if the history is not open)
+    public List<CitizenFacilityAssignment> getFacilityOccupants(String facilityId, LocalDate date) {
+        DetentionHistory history = detentionHistory;
+        return history == null ? new ArrayList<>() : history.getFacilityOccupants(facilityId, date);
+    }
+
+    // Every facility's roster (sorted citizen IDs) at a past moment (empty if the history is not open)
+    public Map<String, long[]> getFacilityRostersAt(LocalDateTime time) {
+        DetentionHistory history = detentionHistory;
+        return history == null ? new TreeMap<>() : history.getRostersAt(time);
+    }
+
+    // Append every detention overlapping [from, to] to a file; returns the number written
+    public int exportDetentionHistory(String fileName, LocalDate from, LocalDate to) throws IOException {
+        DetentionHistory history = detentionHistory;
+        return history == null ? 0 : history.exportAssignments(fileName, from, to);
+    }
+
+    // Replay the journal on top of the loaded snapshot (binary or text files); returns the records applied.
+    // Records carry full state (upsert / delete by ID), so replaying records already in the snapshot is harmless.
+    public int recoverFromJournal() {
+        lockWrite();
+        try {
+            List<String> records;
+            try {
+                records = MutationJournal.readAllRecords(DataHandler.getDataPath(JOURNAL_FILE));
+            } catch (IOException e) {
+                System.out.println("❌ Could not read the journal: " + e.getMessage());
+                return 0;
+            }
+            int applied = 0;
+            for (String record : records) {
+                if (record.length() < 3 || record.charAt(2) != ',') {
+                    System.out.println("⚠ Skipping invalid journal record: " + record);
+                    continue;
+                }
+                String payload = record.substring(3);
+                switch (record.substring(0, 2)) {
+                    case "+C": {
+                        Citizen citizen = DataHandler.citizenFromFileString(payload);
+                        if (citizen == null) {
+                            continue;
+                        }
+                        Citizen existing = citizenStore.get(citizen.getNumericId());
+                        if (existing != null) {
+                            dropCitizen(existing);
+                        } else if (pagedOutCitizens != null && pagedOutCitizens.remove(citizen.getNumericId())) {
+                            citizenCount--; // Replaced by the journaled version
+                        }
+                        citizens.add(citizen);
+                        indexCitizen(citizen);
+                        citizen.setThreatLevelListener(this);
+                        citizenCount++;
+                        break;
+                    }
+                    case "-C": {
+                        Citizen existing = findCitizenById(payload);
+                        if (existing != null) {
+                            dropCitizen(existing);
+                        }
+                        break;
+                    }
+                    case "+F": {
+                        Facility facility;
+                        try {
+                            facility = DataHandler.facilityFromFileString(payload, this);
+                        } catch (IllegalArgumentException e) {
+                            System.out.println("⚠ Skipping invalid journal record: " + record);
+                            continue;
+                        }
+                        Facility existing = findFacilityById(facility.getFacilityId());
+                        if (existing != null) {
+                            facilities.remove(existing);
+                            unindexFacility(existing);
+                        }
+                        facilities.add(facility);
+                        indexFacility(facility);
+                        break;
+                    }
+                    case "-F": {
+                        Facility existing = findFacilityById(payload);
+                        if (existing != null) {
+                            facilities.remove(existing);
+                            unindexFacility(existing);
+                        }
+                        break;
+                    }
+                    default:
+                        System.out.println("⚠ Skipping invalid journal record: " + record);
+                        continue;
+                }
+                applied++;
+            }
+            if (applied > 0) {
+                totalCapacity = getTotalCapacity();
+                detentionEngine.invalidate(); // Detention is settled once by the next manageDetention
+                recountCapacityMonitor();
+            }
+            System.out.println("📒 Replayed " + applied + " of " + records.size() + " journal records.");
+            return applied;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Write the citizens and facilities snapshot and wait for it; with a journal open this folds the journal into it
+    public boolean saveSnapshot() {
+        return saveSnapshotInBackground().join();
+    }
+
+    // Capture a consistent copy of the data on the calling thread, then write it atomically on the snapshot writer thread.
+    // Snapshots are written one at a time in capture order; the journal segments a snapshot covers are deleted after it.
+    public CompletableFuture<Boolean> saveSnapshotInBackground() {
+        DataSnapshot snapshot;
+        long segment;
+        MutationJournal folding;
+        lockWrite(); // The copy reads every roster: nobody may be admitting meanwhile
+        try {
+            snapshot = DataSnapshot.capture(citizens, facilities, pagedOutCitizens);
+            segment = journal != null ? journal.rotate() : -1;
+            folding = journal;
+        } finally {
+            unlockWrite();
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            boolean saved = snapshot.writeBinary(SNAPSHOT_FILE);
+            if (saved && segment > 0) {
+                folding.deleteSegmentsUpTo(segment);
+            }
+            System.out.println((saved ? "💾 Snapshot saved: " : "❌ Snapshot failed: ") + snapshot.getCitizenCount()
+                    + " citizens, " + (System.nanoTime() - start) / 1_000_000 + " ms"
+                    + (saved && segment > 0 ? ", journal folded" : ""));
+            return saved;
+        }, snapshotWriter);
+    }
+
+    private void dropCitizen(Citizen citizen) {
+        if (pagedOutCitizens != null && citizenStore.get(citizen.getNumericId()) != citizen) {
+            pagedOutCitizens.remove(citizen.getNumericId());
+        }
+        citizens.remove(citizen);
+        unindexCitizen(citizen);
+        citizen.setThreatLevelListener(null);
+        citizenCount--;
+    }
+
+    // Report changes to the capacity monitor, if there is one
+    private void capacityChanged() {
+        CapacityMonitor monitor = capacityMonitor;
+        if (monitor != null) {
+            monitor.capacityChanged(totalCapacity);
+        }
+    }
+
+    // Caller holds the write lock. Counts everything the capacity monitor tracks from scratch, for changes that
+    // don't report themselves one by one (loads, rebuilds, a rescore of the paged-out citizens, journal replay).
+    private void recountCapacityMonitor() {
+        CapacityMonitor monitor = capacityMonitor;
+        if (monitor == null) {
+            return;
+        }
+        double threshold = getStaticThreshold();
+        int detained = 0;
+        int capacity = 0;
+        for (Facility facility : facilities) {
+            detained += facility.getCurrentOccupancy();
+            capacity += facility.getCapacity();
+        }
+        int demand = 0;
+        for (Citizen citizen : citizens) {
+            if (citizen.getThreatLevel() >= threshold) {
+                demand++;
+            }
+        }
+        if (pagedOutCitizens != null) {
+            demand += pagedOutCitizens.countPagedOutAtOrAbove(threshold);
+        }
+        monitor.recount(citizenCount, detained, capacity, demand);
+    }
+
+    // Persist a single mutation: one journal record when the journal is open, otherwise the old full-file rewrite
+    private void persistCitizenAdded(Citizen citizen) {
+        if (journal != null) {
+            journalAppend("+C," + DataHandler.citizenToFileString(citizen));
+        } else if (pagedOutCitizens != null) {
+            saveSnapshotWhenDue(); // The text file can't hold citizens that are not in memory
+        } else {
+            saveCitizensFileWhenDue();
+        }
+    }
+
+    private void persistCitizenRemoved(Citizen citizen) {
+        if (journal != null) {
+            journalAppend("-C," + citizen.getId());
+        } else if (pagedOutCitizens != null) {
+            saveSnapshotWhenDue(); // The text file can't hold citizens that are not in memory
+        } else {
+            saveCitizensFileWhenDue();
+        }
+    }
+
+    private void persistFacilityAdded(Facility facility) {
+        if (journal != null) {
+            journalAppend("+F," + DataHandler.facilityToFileString(facility));
+        } else {
+            saveFacilitiesFileWhenDue();
+        }
+    }
+
+    private void persistFacilityRemoved(Facility facility) {
+        if (journal != null) {
+            journalAppend("-F," + facility.getFacilityId());
+        } else {
+            saveFacilitiesFileWhenDue();
+        }
+    }
+
+    private void journalAppend(String record) {
+        journal.append(record);
+        if (checkpointEveryRecords > 0 && journal.getRecordCount() >= checkpointEveryRecords) {
+            saveSnapshotWhenDue();
+        }
+    }
+
+    // Outside a batch these save right away; inside one they are noted and done once by saveDueFiles
+    private void saveSnapshotWhenDue() {
+        if (batchDepth > 0) {
+            snapshotDue = true;
+        } else {
+            saveSnapshotInBackground();
+        }
+    }
+
+    private void saveCitizensFileWhenDue() {
+        if (batchDepth > 0) {
+            citizensFileDue = true;
+        } else {
+            DataHandler.saveCitizensToFile(citizens, CITIZENS_FILE);
+        }
+    }
+
+    private void saveFacilitiesFileWhenDue() {
+        if (batchDepth > 0) {
+            facilitiesFileDue = true;
+        } else {
+            DataHandler.saveFacilitiesToFile(facilities, FACILITIES_FILE);
+        }
+    }
+
+    private void saveDueFiles() {
+        if (snapshotDue) {
+            snapshotDue = false;
+            saveSnapshotInBackground();
+        }
+        if (citizensFileDue) {
+            citizensFileDue = false;
+            DataHandler.saveCitizensToFile(citizens, CITIZENS_FILE);
+        }
+        if (facilitiesFileDue) {
+            facilitiesFileDue = false;
+            DataHandler.saveFacilitiesToFile(facilities, FACILITIES_FILE);
+        }
+    }
+
     // Print all citizens in descending order of threat level
     public void printAllCitizensInThreatLevelOrder() {
-        citizens.stream()
-                .sorted(Comparator.comparingDouble(Citizen::getThreatLevel).reversed())
+        getCitizensInThreatRange(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY)
                 .forEach(citizen -> System.out.println("Name: " + citizen.getName() + ", ID: " + citizen.getId() + ", Threat Level: " + citizen.getThreatLevel()));
     }
 
+    // The k most threatening citizens that are not in detention, read from the threat index
+    public List<Citizen> getTopThreateningFreeCitizens(int k) {
+        lockReadForEngine();
+        try {
+            return detentionEngine.getTopFreeCitizens(k);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    // 1-based rank of the citizen by descending threat level (1 = most threatening), or -1 if not in the system
+    public int getThreatRank(Citizen citizen) {
+        lockReadForEngine();
+        try {
+            return threatRank(citizen);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    // Percentage of citizens with a lower threat level than this one, or -1 if not in the system
+    public double getThreatPercentile(Citizen citizen) {
+        lockReadForEngine();
+        try {
+            int rank = threatRank(citizen);
+            if (rank < 0) {
+                return -1;
+            }
+            int total = detentionEngine.getIndexedCitizenCount()
+                    + (pagedOutCitizens != null ? pagedOutCitizens.getPagedOutCount() : 0);
+            return 100.0 * (total - rank) / total;
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    // Citizens whose threat level is within [minThreatLevel, maxThreatLevel], highest first
+    public List<Citizen> getCitizensInThreatRange(double minThreatLevel, double maxThreatLevel) {
+        lockReadForEngine();
+        try {
+            List<Citizen> inMemory = detentionEngine.getCitizensInThreatRange(minThreatLevel, maxThreatLevel);
+            if (pagedOutCitizens == null) {
+                return inMemory;
+            }
+            List<Citizen> pagedOut;
+            synchronized (pagedOutCitizens) {
+                pagedOut = pagedOutCitizens.getInThreatRange(minThreatLevel, maxThreatLevel);
+            }
+            List<Citizen> result = new ArrayList<>(inMemory.size() + pagedOut.size());
+            int i = 0, j = 0;
+            while (i < inMemory.size() || j < pagedOut.size()) { // Both highest first: merge them
+                if (j == pagedOut.size() || i < inMemory.size() && ThreatKey.compare(inMemory.get(i), pagedOut.get(j)) > 0) {
+                    result.add(inMemory.get(i++));
+                } else {
+                    Citizen citizen = pagedOut.get(j++);
+                    citizen.setThreatLevelListener(this);
+                    result.add(citizen);
+                }
+            }
+            return result;
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    // threatRank for callers holding the read lock: the engine ranks the citizens in memory, the repository counts the
+    // paged-out citizens above them
+    private int threatRank(Citizen citizen) {
+        int rank = detentionEngine.getThreatRank(citizen);
+        if (pagedOutCitizens == null) {
+            return rank;
+        }
+        if (rank < 0 && !isPagedOut(citizen)) {
+            return -1;
+        }
+        ThreatKey key = new ThreatKey(citizen);
+        int pagedOutAbove;
+        synchronized (pagedOutCitizens) {
+            pagedOutAbove = pagedOutCitizens.countPagedOutAbove(key);
+        }
+        return pagedOutAbove + (rank >= 0 ? rank : detentionEngine.countAbove(key) + 1);
+    }
+
  // Print all facilities with detailed information
     public void printAllFacilities() {
-        facilities.forEach(facility -> {
-            double occupancyRate = ((double) facility.getCurrentOccupancy() / facility.getCapacity()) * 100;
-            System.out.printf(
-                "Facility Name: %s (ID: %s) | Capacity: %d | Occupancy: %d/%d (%.2f%%)%n",
-                facility.getName(),
-                facility.getFacilityId(),
-                facility.getCapacity(),
-                facility.getCurrentOccupancy(),
-                facility.getCapacity(),
-                occupancyRate
-            );
-        });
-    }
-
-
-    // Get a citizen by name
+        stateLock.readLock().lock();
+        try {
+            facilities.forEach(facility -> {
+                int occupancy = occupancyOf(facility);
+                double occupancyRate = ((double) occupancy / facility.getCapacity()) * 100;
+                System.out.printf(
+                    "Facility Name: %s (ID: %s) | Capacity: %d | Occupancy: %d/%d (%.2f%%)%n",
+                    facility.getName(),
+                    facility.getFacilityId(),
+                    facility.getCapacity(),
+                    occupancy,
+                    facility.getCapacity(),
+                    occupancyRate
+                );
+            });
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+
+    // Get a citizen by name (the first one registered under that name)
     public Citizen getCitizenByName(String name) {
-        for (Citizen citizen : citizens) {
-            if (citizen.getName().equals(name)) {
-                return citizen;
+        stateLock.readLock().lock();
+        try {
+            List<Citizen> matches = citizensByName.get(name);
+            if (matches != null && !matches.isEmpty()) {
+                return matches.get(0);
             }
+            List<Citizen> pagedOut = pagedOutByName(name);
+            return pagedOut.isEmpty() ? null : pagedOut.get(0);
+        } finally {
+            stateLock.readLock().unlock();
         }
-        return null;
+    }
+
+    // All citizens registered under the given name (in tiered mode the ones in memory first)
+    public List<Citizen> getCitizensByName(String name) {
+        stateLock.readLock().lock();
+        try {
+            List<Citizen> matches = citizensByName.get(name);
+            List<Citizen> pagedOut = pagedOutByName(name);
+            if (pagedOut.isEmpty()) {
+                return matches == null ? Collections.emptyList() : new ArrayList<>(matches);
+            }
+            List<Citizen> all = matches == null ? new ArrayList<>() : new ArrayList<>(matches);
+            all.addAll(pagedOut);
+            return all;
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    // Paged-out citizens with the name, through the repository's name index (empty when every citizen is in memory)
+    private List<Citizen> pagedOutByName(String name) {
+        if (pagedOutCitizens == null || name == null) {
+            return Collections.emptyList();
+        }
+        List<Citizen> pagedOut;
+        synchronized (pagedOutCitizens) {
+            pagedOut = pagedOutCitizens.getByName(name);
+        }
+        for (Citizen citizen : pagedOut) {
+            citizen.setThreatLevelListener(this);
+        }
+        return pagedOut;
     }
 
     // Get a facility by name
     public Facility getFacilityByName(String name) {
-        for (Facility facility : facilities) {
-            if (facility.getName().equals(name)) {
-                return facility;
-            }
+        stateLock.readLock().lock();
+        try {
+            List<Facility> matches = facilitiesByName.get(name);
+            return matches == null || matches.isEmpty() ? null : matches.get(0);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    // Get a facility by its ID
+    public Facility findFacilityById(String facilityId) {
+        stateLock.readLock().lock();
+        try {
+            return facilityId == null ? null : facilitiesById.get(facilityId);
+        } finally {
+            stateLock.readLock().unlock();
         }
-        return null;
     }
 
     // Search for a citizen by ID
     public Citizen findCitizenById(String id) {
-        if (id == null || !id.matches("\\d+")) {
+        long numericId = CitizenStore.parseId(id);
+        if (numericId < 0) {
             System.out.println("\u05E9\u05D2\u05D9\u05D0\u05D4: \u05DE\u05D6\u05D4\u05D4 \u05D7\u05D9\u05D9\u05D1 \u05DC\u05D4\u05D9\u05D5\u05EA \u05DE\u05D5\u05E8\u05DB\u05D1 \u05DE\u05DE\u05E1\u05E4\u05E8\u05D9\u05DD \u05D1\u05DC\u05D1\u05D3. \u05D7\u05D6\u05D5\u05E8 \u05E9\u05E0\u05D9\u05EA.");
             return null;
         }
-        return citizens.stream()
-                .filter(citizen -> id.equals(citizen.getId()))
-                .findFirst()
-                .orElse(null);
+        return findCitizenById(numericId);
+    }
+
+    // In tiered mode a paged-out citizen comes from the repository's cache or the disk; it joins the in-memory
+    // citizens as soon as it changes or is passed to an operation of the system
+    public Citizen findCitizenById(long id) {
+        stateLock.readLock().lock();
+        try {
+            return citizenById(id);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    // findCitizenById for callers that hold the lock already (the engine, roster resolution)
+    Citizen citizenById(long id) {
+        Citizen citizen = citizenStore.get(id);
+        if (citizen == null && pagedOutCitizens != null) {
+            synchronized (pagedOutCitizens) { // Its cache changes on every lookup, and readers look up in parallel
+                citizen = pagedOutCitizens.get(id);
+            }
+            if (citizen != null) {
+                citizen.setThreatLevelListener(this);
+            }
+        }
+        return citizen;
+    }
+
+    // Tiered mode: only the detained citizens, the best free candidates and the citizens touched since are in memory
+    // (getCitizens); the others are served by the repository. The engine pages candidates in pageInBatch at a time.
+    // Name lookups, threat ranks, percentiles, range queries and history exports cover the paged-out citizens too.
+    public void setPagedOutCitizens(CitizenRepository repository, int pageInBatch) {
+        lockWrite();
+        try {
+            this.pagedOutCitizens = repository;
+            this.pageInBatch = Math.max(1, pageInBatch);
+            this.citizenCount = citizens.size() + (repository != null ? repository.getPagedOutCount() : 0);
+            detentionEngine.invalidate();
+            recountCapacityMonitor();
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Hit, miss, eviction and paging counters of the citizen repository; null when every citizen is in memory
+    public String getCitizenCacheStats() {
+        stateLock.readLock().lock();
+        try {
+            return pagedOutCitizens != null ? pagedOutCitizens.getStats() : null;
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    // The highest threat key among paged-out citizens, null if there are none (see DetentionEngine)
+    ThreatKey getPagedOutCeiling() {
+        return pagedOutCitizens != null ? pagedOutCitizens.ceiling() : null;
+    }
+
+    // The next batch of the most threatening paged-out citizens, now in memory; the engine registers them
+    List<Citizen> pageInCandidates() {
+        List<Citizen> pagedIn = pagedOutCitizens.pageIn(pageInBatch);
+        for (Citizen citizen : pagedIn) {
+            citizens.add(citizen);
+            indexCitizen(citizen);
+            citizen.setThreatLevelListener(this);
+        }
+        System.out.println("🧊 Paged in " + pagedIn.size() + " detention candidates.");
+        return pagedIn;
+    }
+
+    private boolean isPagedOut(Citizen citizen) {
+        return pagedOutCitizens != null && citizenStore.get(citizen.getNumericId()) != citizen
+                && pagedOutCitizens.isPagedOut(citizen.getNumericId());
+    }
+
+    private void keepInMemory(Citizen citizen) {
+        if (isPagedOut(citizen)) {
+            pageIn(citizen);
+        }
+    }
+
+    // Move a paged-out citizen into memory for good, as a free citizen
+    private void pageIn(Citizen citizen) {
+        pagedOutCitizens.remove(citizen.getNumericId());
+        citizens.add(citizen);
+        indexCitizen(citizen);
+        citizen.setThreatLevelListener(this);
+        detentionEngine.citizenAdded(citizen);
+    }
+
+    private void rescorePagedOutCitizens() {
+        if (pagedOutCitizens == null) {
+            return;
+        }
+        try {
+            pagedOutCitizens.rescore();
+        } catch (IOException e) {
+            System.out.println("❌ Could not rescore the paged-out citizens: " + e.getMessage());
+            return;
+        }
+        detentionEngine.pagedOutCitizensRescored();
+        recountCapacityMonitor();
+    }
+
+    private void indexCitizen(Citizen citizen) {
+        Citizen existing = citizenStore.putIfAbsent(citizen);
+        if (existing != null && existing != citizen) {
+            System.out.println("⚠ Duplicate citizen ID " + citizen.getId() + ": lookups keep returning " + existing.getName());
+            shadowedCitizens.add(citizen);
+        }
+        citizensByName.computeIfAbsent(citizen.getName(), k -> new ArrayList<>(1)).add(citizen);
+    }
+
+    private void unindexCitizen(Citizen citizen) {
+        if (citizenStore.remove(citizen)) {
+            promoteShadowedCitizen(citizen.getNumericId());
+        } else {
+            shadowedCitizens.removeIf(c -> c == citizen);
+        }
+        removeFromMultiMap(citizensByName, citizen.getName(), citizen);
+    }
+
+    // The holder of a duplicate ID left: the next citizen registered under it takes over the ID lookups
+    private void promoteShadowedCitizen(long id) {
+        for (Iterator<Citizen> it = shadowedCitizens.iterator(); it.hasNext(); ) {
+            Citizen citizen = it.next();
+            if (citizen.getNumericId() == id) {
+                it.remove();
+                citizenStore.putIfAbsent(citizen);
+                return;
+            }
+        }
+    }
+
+    private void indexFacility(Facility facility) {
+        facility.setRosterListener(this);
+        facility.setCitizenResolver(this::citizenById); // Rosters are read under the lock
+        facilitiesById.putIfAbsent(facility.getFacilityId(), facility);
+        facilitiesByName.computeIfAbsent(facility.getName(), k -> new ArrayList<>(1)).add(facility);
+    }
+
+    private void unindexFacility(Facility facility) {
+        facilitiesById.remove(facility.getFacilityId(), facility);
+        removeFromMultiMap(facilitiesByName, facility.getName(), facility);
+    }
+
+    private static <T> boolean removeFromMultiMap(Map<String, List<T>> map, String key, T value) {
+        List<T> values = map.get(key);
+        if (values == null || !values.removeIf(v -> v == value)) {
+            return false;
+        }
+        if (values.isEmpty()) {
+            map.remove(key);
+        }
+        return true;
+    }
+
+    private void reindexCitizens() {
+        citizenStore.clear();
+        citizensByName.clear();
+        shadowedCitizens.clear();
+        for (Citizen citizen : citizens) {
+            indexCitizen(citizen);
+        }
+    }
+
+    private void reindexFacilities() {
+        facilitiesById.clear();
+        facilitiesByName.clear();
+        for (Facility facility : facilities) {
+            indexFacility(facility);
+        }
     }
 
     // Getter and setters
@@ -175,7 +1430,19 @@ public class ThreatManagementSystem {
     }
 
     public void setCitizens(List<Citizen> citizens) {
-        this.citizens = citizens;
+        lockWrite();
+        try {
+            this.citizens = citizens;
+            this.citizenCount = citizens.size();
+            for (Citizen citizen : citizens) {
+                citizen.setThreatLevelListener(this);
+            }
+            reindexCitizens();
+            detentionEngine.invalidate();
+            recountCapacityMonitor();
+        } finally {
+            unlockWrite();
+        }
     }
 
     public List<Facility> getFacilities() {
@@ -183,7 +1450,16 @@ public class ThreatManagementSystem {
     }
 
     public void setFacilities(List<Facility> facilities) {
-        this.facilities = facilities;
+        lockWrite();
+        try {
+            this.facilities = facilities;
+            reindexFacilities();
+            detentionEngine.invalidate();
+            totalCapacity = getTotalCapacity();
+            recountCapacityMonitor();
+        } finally {
+            unlockWrite();
+        }
     }
 
     public Manager getManager() {
@@ -194,45 +1470,86 @@ public class ThreatManagementSystem {
         this.manager = manager;
     }
 //////////////////////////// פונקציה החשובה בקוד
+// Full resynchronisation: rebuilds the detention engine from the facility rosters and settles it.
+// Single changes are applied incrementally by the engine and don't need this.
 public void manageDetention() {
-    System.out.println("🔄 Running manageDetention...");
-    totalCapacity = getTotalCapacity(); // חישוב קיבולת כוללת
+    lockWrite();
+    try {
+        System.out.println("🔄 Running manageDetention...");
+        totalCapacity = getTotalCapacity(); // חישוב קיבולת כוללת
+        detentionEngine.rebuild();
+        settleDetention(DetentionScheduler.FORCED); // A full pass doesn't wait for the detention scheduler
+        recountCapacityMonitor();
+    } finally {
+        unlockWrite();
+    }
+}
 
-    List<Citizen> sortedCitizens = getSortedCitizensByThreat();
-    double dynamicThreshold = areFacilitiesFull() ? getDynamicThresholdForAllFacilities() : getStaticThreshold();
+// The original full-rescan pass, kept as the reference implementation the engine is checked against.
+// It only places citizens into rosters, so it runs under the read lock with facility stripes, alongside admitToFacility.
+public void manageDetentionFullScan() {
+    stateLock.readLock().lock();
+    try {
+        System.out.println("🔄 Running manageDetention (full scan)...");
+        totalCapacity = getTotalCapacity(); // חישוב קיבולת כוללת
 
-    System.out.println("Total citizens in system: " + citizens.size());
-    System.out.println("Total facilities in system: " + facilities.size());
-    System.out.println("Dynamic threshold: " + dynamicThreshold);
+        List<Citizen> sortedCitizens = getSortedCitizensByThreat();
+        double dynamicThreshold = areFacilitiesFull() ? scanDynamicThresholdForAllFacilities() : getStaticThreshold();
 
-    for (Citizen citizen : sortedCitizens) {
-        System.out.println("🧐 Checking citizen: " + citizen.getName() + " | Threat Level: " + citizen.getThreatLevel());
+        System.out.println("Total citizens in system: " + citizens.size());
+        System.out.println("Total facilities in system: " + facilities.size());
+        System.out.println("Dynamic threshold: " + dynamicThreshold);
 
-        if (citizen.isInDetention()) {
-            System.out.println("⚠ Citizen " + citizen.getName() + " is already in detention. Skipping.");
-            continue;
-        }
+        for (Citizen citizen : sortedCitizens) {
+            System.out.println("🧐 Checking citizen: " + citizen.getName() + " | Threat Level: " + citizen.getThreatLevel());
 
-        if (citizen.getThreatLevel() < dynamicThreshold) {
-            System.out.println("❌ Citizen " + citizen.getName() + " does not meet threat threshold.");
-            break;
-        }
+            if (citizen.isInDetention()) {
+                System.out.println("⚠ Citizen " + citizen.getName() + " is already in detention. Skipping.");
+                continue;
+            }
 
-        boolean assigned = tryAssignCitizenToFacility(citizen);
-        if (assigned) {
-            System.out.println("✅ Citizen " + citizen.getName() + " assigned successfully.");
-        } else {
-            System.out.println("❌ Citizen " + citizen.getName() + " could not be assigned.");
+            if (citizen.getThreatLevel() < dynamicThreshold) {
+                System.out.println("❌ Citizen " + citizen.getName() + " does not meet threat threshold.");
+                break;
+            }
+
+            boolean assigned = tryAssignCitizenToFacility(citizen);
+            if (assigned) {
+                System.out.println("✅ Citizen " + citizen.getName() + " assigned successfully.");
+            } else {
+                System.out.println("❌ Citizen " + citizen.getName() + " could not be assigned.");
+            }
         }
+    } finally {
+        stateLock.readLock().unlock();
     }
 }
 
+   // Lowest threat level among all detainees, or the static threshold if nobody is detained
    public double getDynamicThresholdForAllFacilities() {
-	    return facilities.stream()
-	            .flatMap(facility -> facility.getDetainedCitizens().stream()) // שילוב כל הכלואים מכל המתקנים
-	            .mapToDouble(Citizen::getThreatLevel) // המרת רמת האיום ל-double
-	            .min() // מציאת הערך המינימלי
-	            .orElse(getStaticThreshold()); // אם אין כלואים, חזור לרף הסטטי
+	    lockReadForEngine();
+	    try {
+	        Citizen weakest = detentionEngine.getLowestThreatDetainee();
+	        return weakest != null ? weakest.getThreatLevel() : getStaticThreshold();
+	    } finally {
+	        stateLock.readLock().unlock();
+	    }
+	}
+
+   private double scanDynamicThresholdForAllFacilities() {
+	    double lowest = Double.MAX_VALUE;
+	    for (Facility facility : facilities) { // שילוב כל הכלואים מכל המתקנים
+	        facilityLocks.lock(facility);
+	        try {
+	            Citizen weakest = facility.getLowestThreatCitizen();
+	            if (weakest != null) {
+	                lowest = Math.min(lowest, weakest.getThreatLevel());
+	            }
+	        } finally {
+	            facilityLocks.unlock(facility);
+	        }
+	    }
+	    return lowest != Double.MAX_VALUE ? lowest : getStaticThreshold(); // אם אין כלואים, חזור לרף הסטטי
 	}
 
     private List<Citizen> getSortedCitizensByThreat() {
@@ -243,12 +1560,17 @@ public void manageDetention() {
 
  
 
+    // Caller holds the read lock
     private boolean tryAssignCitizenToFacility(Citizen citizen) {
         // ניסיון להוסיף למתקן עם אחוז התפוסה הנמוך ביותר
         Facility facility = getFacilityWithLowestOccupancy();
-        if (facility != null && facility.addCitizen(citizen)) {
-            citizen.setInDetention(true);
-            facility.refreshFacilityData();
+        if (facility != null && admitUnderReadLock(citizen, facility)) {
+            facilityLocks.lock(facility);
+            try {
+                facility.refreshFacilityData();
+            } finally {
+                facilityLocks.unlock(facility);
+            }
             System.out.println("Citizen " + citizen.getName() + " assigned to facility " + facility.getName());
             return true;
         }
@@ -258,52 +1580,82 @@ public void manageDetention() {
     }
 
 
+    // Caller holds the read lock. One facility at a time, each under its own stripe, so the weakest detainee can't
+    // change between the comparison and the swap; stripes are never nested here. The new citizen is claimed first so
+    // no other thread places it meanwhile. Moves between two facilities go through transferCitizen (both stripes).
     private boolean replaceCitizenInFacility(Citizen newCitizen) {
+    if (!newCitizen.claimForDetention()) {
+        return false; // Placed by another thread in the meantime
+    }
     for (Facility facility : facilities) {
-        Citizen citizenToReplace = facility.getDetainedCitizens().stream()
-                .min(Comparator.comparingDouble(Citizen::getThreatLevel))
-                .orElse(null);
-
-        if (citizenToReplace != null && newCitizen.getThreatLevel() > citizenToReplace.getThreatLevel()) {
-            facility.removeCitizen(citizenToReplace); // הסרת האזרח הקיים
-            citizenToReplace.setInDetention(false); // עדכון סטטוס מעצר
-
-            boolean added = facility.addCitizen(newCitizen); // הוספת האזרח החדש
-            if (added) {
-                newCitizen.setInDetention(true); // עדכון סטטוס מעצר
-                facility.refreshFacilityData(); // רענון נתוני המתקן
-                System.out.println("Replaced citizen " + citizenToReplace.getName() +
-                        " with citizen " + newCitizen.getName() + " in facility " + facility.getName());
-                return true;
+        facilityLocks.lock(facility);
+        try {
+            Citizen citizenToReplace = facility.getLowestThreatCitizen(); // O(1) heap lookup, no copy
+
+            if (citizenToReplace != null && newCitizen.getThreatLevel() > citizenToReplace.getThreatLevel()) {
+                facility.removeCitizen(citizenToReplace, true); // הסרת האזרח הקיים (פינוי)
+                citizenToReplace.setInDetention(false); // עדכון סטטוס מעצר
+
+                boolean added = facility.addCitizen(newCitizen); // הוספת האזרח החדש
+                if (added) {
+                    newCitizen.setInDetention(true); // עדכון סטטוס מעצר
+                    facility.refreshFacilityData(); // רענון נתוני המתקן
+                    System.out.println("Replaced citizen " + citizenToReplace.getName() +
+                            " with citizen " + newCitizen.getName() + " in facility " + facility.getName());
+                    return true;
+                }
             }
+        } finally {
+            facilityLocks.unlock(facility);
         }
     }
+    newCitizen.setInDetention(false);
     return false; // לא ניתן להחליף
 }
 
     // Check if all facilities are full
     public boolean areFacilitiesFull() {
-        return facilities.stream().allMatch(f -> f.getCurrentOccupancy() == f.getCapacity());
+        stateLock.readLock().lock();
+        try {
+            return facilities.stream().allMatch(f -> occupancyOf(f) == f.getCapacity());
+        } finally {
+            stateLock.readLock().unlock();
+        }
     }
 
     // Check if any facility is not full
     public boolean areFacilitiesNotFull() {
-        return facilities.stream().anyMatch(f -> f.getCurrentOccupancy() < f.getCapacity());
+        stateLock.readLock().lock();
+        try {
+            return facilities.stream().anyMatch(f -> occupancyOf(f) < f.getCapacity());
+        } finally {
+            stateLock.readLock().unlock();
+        }
     }
 
     // Get the dynamic threshold based on facility's current occupancy
     public double getDynamicThreshold(Facility facility) {
-        return facility.getDetainedCitizens().stream()
-                .min(Comparator.comparingDouble(Citizen::getThreatLevel))
-                .map(Citizen::getThreatLevel)
-                .orElse(0.0);
+        stateLock.readLock().lock();
+        facilityLocks.lock(facility);
+        try {
+            Citizen lowest = facility.getLowestThreatCitizen();
+            return lowest != null ? lowest.getThreatLevel() : 0.0;
+        } finally {
+            facilityLocks.unlock(facility);
+            stateLock.readLock().unlock();
+        }
     }
 
-    // Get facility with the lowest occupancy
+    // Get facility with the lowest occupancy (a hint under concurrent admissions: the roster may fill up right after)
     public Facility getFacilityWithLowestOccupancy() {
-        return facilities.stream()
-                .min(Comparator.comparingDouble(f -> (double) f.getCurrentOccupancy() / f.getCapacity()))
-                .orElse(null);
+        stateLock.readLock().lock();
+        try {
+            return facilities.stream()
+                    .min(Comparator.comparingDouble(f -> (double) occupancyOf(f) / f.getCapacity()))
+                    .orElse(null);
+        } finally {
+            stateLock.readLock().unlock();
+        }
     }
 
 	public void setPresident(President president) {
@@ -315,13 +1667,31 @@ public void manageDetention() {
 	}
 
 	public int getTotalCapacity() {
-	    int total = facilities.stream().mapToInt(Facility::getCapacity).sum();
-	    return total;
+	    stateLock.readLock().lock();
+	    try {
+	        int total = facilities.stream().mapToInt(Facility::getCapacity).sum();
+	        return total;
+	    } finally {
+	        stateLock.readLock().unlock();
+	    }
 	}
 
 
-	    // שיטה לקבלת מספר האזרחים
+	    // שיטה לקבלת מספר האזרחים - ללא מנעול, המונה volatile
 	    public int getCitizenCount() {
 	        return citizenCount;
 	    }
+
+    // One roster change made under the read lock, waiting for the engine
+    private static final class RosterChange {
+        final Citizen citizen;
+        final Facility facility;
+        final boolean admitted; // false = released or evicted
+
+        RosterChange(Citizen citizen, Facility facility, boolean admitted) {
+            this.citizen = citizen;
+            this.facility = facility;
+            this.admitted = admitted;
+        }
+    }
 }
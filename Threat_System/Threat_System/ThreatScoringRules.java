@@ -0,0 +1,169 @@
+import java.time.LocalDate;
+import java.util.*;
+
+// חוקי ניקוד האיום - משקלים שנטענים מקובץ בתיקיית Data ומקומפלים לטבלאות חיפוש.
+// Scoring a citizen is a handful of array reads: one table per factor, age bands resolved through a few break ages.
+// Instances are immutable; swapping getCurrent() makes every memoized Citizen score stale.
+public final class ThreatScoringRules {
+    static final int MAX_AGE = 150; // Age rules above this are ignored
+
+    private static volatile ThreatScoringRules current = defaults();
+
+    final double[] supportPoints; // Index: government support level + 1 (-1..10)
+    final double[] impactPoints; // Index: public impact score (1..10)
+    final double[] economicPoints; // Index: economic percentile (1..10)
+    final double[] originPoints; // Index: originIndex (A, B, C)
+    final int[] ageBreaks; // Ages at which the age points change, ascending
+    final double[] ageBandPoints; // ageBandPoints[k] applies from ageBreaks[k-1] up to ageBreaks[k] - 1
+    final double parliamentMultiplier;
+    final double minThreatLevel;
+    final double maxThreatLevel;
+
+    private ThreatScoringRules(double[] supportPoints, double[] impactPoints, double[] economicPoints, double[] originPoints,
+                               double[] pointsByAge, double parliamentMultiplier, double minThreatLevel, double maxThreatLevel) {
+        this.supportPoints = supportPoints;
+        this.impactPoints = impactPoints;
+        this.economicPoints = economicPoints;
+        this.originPoints = originPoints;
+        this.parliamentMultiplier = parliamentMultiplier;
+        this.minThreatLevel = minThreatLevel;
+        this.maxThreatLevel = maxThreatLevel;
+
+        // Collapse the per-age table into bands
+        List<Integer> breaks = new ArrayList<>();
+        List<Double> bands = new ArrayList<>();
+        bands.add(pointsByAge[0]);
+        for (int age = 1; age <= MAX_AGE; age++) {
+            if (pointsByAge[age] != pointsByAge[age - 1]) {
+                breaks.add(age);
+                bands.add(pointsByAge[age]);
+            }
+        }
+        this.ageBreaks = breaks.stream().mapToInt(Integer::intValue).toArray();
+        this.ageBandPoints = bands.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    public static ThreatScoringRules getCurrent() {
+        return current;
+    }
+
+    public static void setCurrent(ThreatScoringRules rules) {
+        current = Objects.requireNonNull(rules);
+    }
+
+    // The weights that used to be hard-coded in Citizen.calculateThreatLevel
+    public static ThreatScoringRules defaults() {
+        return compile(Collections.emptyMap());
+    }
+
+    // Compile rule definitions (key=value, see Data/threat_rules.txt) into lookup tables.
+    // Throws IllegalArgumentException on an unknown key or a malformed value.
+    public static ThreatScoringRules compile(Map<String, String> definitions) {
+        Map<String, String> rules = new HashMap<>(definitions);
+
+        double[] support = linearTable(rules, "support", -1, 10, 200, -20);
+        double[] impact = linearTable(rules, "impact", 0, 10, 0, 20);
+        double[] economic = linearTable(rules, "economic", 0, 10, 0, 20);
+
+        double[] origin = {
+                number(rules.remove("origin.A"), "origin.A", 0),
+                number(rules.remove("origin.B"), "origin.B", 40),
+                number(rules.remove("origin.C"), "origin.C", 80)
+        };
+
+        double[] pointsByAge = new double[MAX_AGE + 1];
+        boolean ageRulesGiven = rules.keySet().stream().anyMatch(key -> key.startsWith("age."));
+        if (!ageRulesGiven) {
+            Arrays.fill(pointsByAge, 15, 20, 50);
+            Arrays.fill(pointsByAge, 20, 51, 100);
+            Arrays.fill(pointsByAge, 51, 76, 50);
+        }
+        for (Iterator<Map.Entry<String, String>> it = rules.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, String> rule = it.next();
+            if (!rule.getKey().startsWith("age.")) {
+                continue;
+            }
+            String[] range = rule.getKey().substring(4).split("-");
+            if (range.length != 2) {
+                throw new IllegalArgumentException("Age rule must look like age.<from>-<to>: " + rule.getKey());
+            }
+            int from = (int) number(range[0], rule.getKey(), 0);
+            int to = Math.min(MAX_AGE, (int) number(range[1], rule.getKey(), 0));
+            double points = number(rule.getValue(), rule.getKey(), 0);
+            for (int age = Math.max(0, from); age <= to; age++) {
+                pointsByAge[age] = points;
+            }
+            it.remove();
+        }
+
+        double parliament = number(rules.remove("parliament.multiplier"), "parliament.multiplier", 1.25);
+        double min = number(rules.remove("threat.min"), "threat.min", 1);
+        double max = number(rules.remove("threat.max"), "threat.max", 1000);
+
+        if (!rules.isEmpty()) {
+            throw new IllegalArgumentException("Unknown scoring rules: " + rules.keySet());
+        }
+        return new ThreatScoringRules(support, impact, economic, origin, pointsByAge, parliament, min, max);
+    }
+
+    public double score(int age, String origin, int economicPercentile, int governmentSupportLevel,
+                        int publicImpactScore, boolean isParliamentMember) {
+        // Same order of additions as CitizenTable.scoreAll, so both give identical results
+        double threat = supportPoints[governmentSupportLevel + 1]
+                + impactPoints[publicImpactScore]
+                + economicPoints[economicPercentile]
+                + originPoints[originIndex(origin)]
+                + ageBandPoints[ageBand(age)];
+        if (isParliamentMember) {
+            threat *= parliamentMultiplier;
+        }
+        return Math.min(maxThreatLevel, Math.max(minThreatLevel, threat));
+    }
+
+    int ageBand(int age) {
+        int band = 0;
+        while (band < ageBreaks.length && age >= ageBreaks[band]) {
+            band++;
+        }
+        return band;
+    }
+
+    // ageCutoffs[k]: epoch day of the latest birth date whose age on the given day is at least ageBreaks[k]
+    int[] ageCutoffs(LocalDate today) {
+        int[] cutoffs = new int[ageBreaks.length];
+        for (int k = 0; k < ageBreaks.length; k++) {
+            cutoffs[k] = (int) today.minusYears(ageBreaks[k]).toEpochDay();
+        }
+        return cutoffs;
+    }
+
+    static int originIndex(String origin) {
+        if ("B".equalsIgnoreCase(origin)) return 1;
+        if ("C".equalsIgnoreCase(origin)) return 2;
+        return 0;
+    }
+
+    // <factor>.base + <factor>.perPoint * value for every value, then <factor>.<value> overrides single entries
+    private static double[] linearTable(Map<String, String> rules, String factor, int minValue, int maxValue,
+                                        double defaultBase, double defaultPerPoint) {
+        double base = number(rules.remove(factor + ".base"), factor + ".base", defaultBase);
+        double perPoint = number(rules.remove(factor + ".perPoint"), factor + ".perPoint", defaultPerPoint);
+        double[] table = new double[maxValue - minValue + 1];
+        for (int value = minValue; value <= maxValue; value++) {
+            String key = factor + "." + value;
+            table[value - minValue] = number(rules.remove(key), key, base + perPoint * value);
+        }
+        return table;
+    }
+
+    private static double number(String value, String key, double defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + key + ": " + value);
+        }
+    }
+}
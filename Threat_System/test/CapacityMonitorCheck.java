@@ -0,0 +1,305 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// מוניטור הקיבולת על טיימר ידני: המונים מול ספירה מחדש, חישוב החוסר, היסטרזיס בין הרמה לניקוי, איחוד פרץ שינויים להערכה
+// אחת, וסגירה שמתחרה בהערכה מתוזמנת. שום דבר לא רץ עד שהבדיקה מקדמת את השעון.
+public class CapacityMonitorCheck {
+    private static final long DELAY = 100;
+
+    public static void main(String[] args) {
+        Checks.run("CapacityMonitorCheck", () -> {
+            countersMatchRecount();
+            deficitUsesDemandOrRatio();
+            alertClearsOnlyAtMargin();
+            burstIsEvaluatedOnce();
+            closeBeatsScheduledEvaluation();
+        });
+    }
+
+    // A timer whose clock moves only when advance is called; tasks run on the caller's thread
+    private static final class ManualTimer extends AbstractExecutorService implements ScheduledExecutorService {
+        private final List<Task> tasks = new ArrayList<>();
+        private long now;
+        private long sequence;
+
+        private final class Task implements ScheduledFuture<Object> {
+            final Runnable command;
+            final long due;
+            final long order;
+            boolean cancelled;
+            boolean done;
+
+            Task(Runnable command, long due) {
+                this.command = command;
+                this.due = due;
+                this.order = sequence++;
+            }
+
+            void run() {
+                done = true;
+                command.run();
+            }
+
+            @Override
+            public long getDelay(TimeUnit unit) {
+                return unit.convert(due - now, TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            public int compareTo(Delayed other) {
+                Task task = (Task) other;
+                return due != task.due ? Long.compare(due, task.due) : Long.compare(order, task.order);
+            }
+
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                if (done) {
+                    return false;
+                }
+                cancelled = true;
+                tasks.remove(this);
+                return true;
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return cancelled;
+            }
+
+            @Override
+            public boolean isDone() {
+                return done || cancelled;
+            }
+
+            @Override
+            public Object get() {
+                return null;
+            }
+
+            @Override
+            public Object get(long timeout, TimeUnit unit) {
+                return null;
+            }
+        }
+
+        int pending() {
+            return tasks.size();
+        }
+
+        // Move the clock forward and run what became due, in order
+        void advance(long millis) {
+            now += millis;
+            Task next;
+            while ((next = take()) != null) {
+                next.run();
+            }
+        }
+
+        // The next due task, taken off the queue as the timer's thread does just before running it (null if none)
+        Task take() {
+            tasks.sort(null);
+            if (tasks.isEmpty() || tasks.get(0).due > now) {
+                return null;
+            }
+            return tasks.remove(0);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            Task task = new Task(command, now + unit.toMillis(delay));
+            tasks.add(task);
+            return task;
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            schedule(command, 0, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return false;
+        }
+    }
+
+    // The status without the evaluation count, which depends on how the changes were reported
+    private static String counters(CapacityMonitor monitor) {
+        return monitor.getStatus().replaceAll(" \\([\\d,]+ evaluations\\)$", "");
+    }
+
+    // Citizens added, removed and rescored and facilities added one by one: the running counters end where a recount
+    // from the system's state does
+    private static void countersMatchRecount() {
+        ManualTimer timer = new ManualTimer();
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        CapacityMonitor running = new CapacityMonitor(timer, 20, 3, DELAY);
+        system.setCapacityMonitor(running);
+        Random random = new Random(24);
+        long nextId = 1000;
+        int nextFacility = 0;
+        for (int step = 0; step < 600; step++) {
+            int kind = random.nextInt(10);
+            List<Citizen> citizens = system.getCitizens();
+            if (kind < 4 || citizens.isEmpty()) {
+                system.addCitizen(Checks.randomCitizen(random, nextId++));
+            } else if (kind < 8) {
+                Citizen citizen = citizens.get(random.nextInt(citizens.size()));
+                double level = 300 + random.nextInt(9) * 50;
+                system.updateCitizen(citizen, () -> citizen.setThreatLevelManually(level));
+            } else if (kind < 9) {
+                system.removeCitizen(citizens.get(random.nextInt(citizens.size())));
+            } else {
+                int id = nextFacility++;
+                system.addFacility(new Facility("F" + id, "Facility " + id, 1 + random.nextInt(4)));
+            }
+            if (step % 50 == 49) {
+                timer.advance(DELAY);
+            }
+        }
+        timer.advance(DELAY);
+        String incremental = counters(running);
+        running.close();
+
+        CapacityMonitor recounted = new CapacityMonitor(timer, 20, 3, DELAY);
+        system.setCapacityMonitor(recounted);
+        timer.advance(DELAY);
+        Checks.checkEquals(counters(recounted), incremental, "running counters against a recount");
+        recounted.close();
+    }
+
+    // Places needed = max(demand, ceil(citizens / citizensPerPlace)); the deficit is what the capacity lacks for that
+    private static void deficitUsesDemandOrRatio() {
+        ManualTimer timer = new ManualTimer();
+        CapacityMonitor monitor = new CapacityMonitor(timer, 4, 0, DELAY);
+        int[][] cases = { // citizens, capacity, demand, expected deficit
+                {12, 3, 0, 0}, // 12 / 4 exactly
+                {13, 3, 0, 1}, // Rounded up
+                {13, 3, 6, 3}, // Demand above the ratio
+                {0, 5, 0, -5},
+                {1, 0, 0, 1},
+                {40, 20, 9, -10},
+        };
+        for (int[] c : cases) {
+            monitor.recount(c[0], 0, c[1], c[2]);
+            timer.advance(DELAY);
+            Checks.checkEquals(c[3], monitor.getDeficit(), "deficit for " + c[0] + " citizens, capacity " + c[1] + ", demand " + c[2]);
+        }
+        monitor.close();
+    }
+
+    // Raised above zero deficit, kept while the spare places are under clearMargin, cleared at clearMargin
+    private static void alertClearsOnlyAtMargin() {
+        ManualTimer timer = new ManualTimer();
+        CapacityMonitor monitor = new CapacityMonitor(timer, 1, 3, DELAY);
+        List<CapacityMonitor.Alert> alerts = new ArrayList<>();
+        monitor.addAlertListener(alerts::add);
+        int[] capacities = {10, 9, 10, 12, 9, 12, 13, 11, 10, 9};
+        boolean[] raised = {false, true, true, true, true, true, false, false, false, true};
+        for (int i = 0; i < capacities.length; i++) {
+            monitor.recount(10, 0, capacities[i], 0); // Ten places needed
+            timer.advance(DELAY);
+            Checks.checkEquals(raised[i], monitor.isAlertRaised(), "alert at capacity " + capacities[i] + " (step " + i + ")");
+        }
+        Checks.checkEquals(3, alerts.size(), "alerts published (raise, clear, raise)");
+        Checks.check(alerts.get(0).isRaised() && !alerts.get(1).isRaised() && alerts.get(2).isRaised(), "raise, clear, raise");
+        Checks.checkEquals(1, alerts.get(0).getDeficit(), "deficit of the first alert");
+        Checks.checkEquals(-3, alerts.get(1).getDeficit(), "deficit of the clear");
+        monitor.close();
+    }
+
+    // A burst of changes schedules one evaluation, which sees all of them; nothing is scheduled while nothing changes
+    private static void burstIsEvaluatedOnce() {
+        ManualTimer timer = new ManualTimer();
+        CapacityMonitor monitor = new CapacityMonitor(timer, 1, 0, DELAY);
+        List<CapacityMonitor.Alert> alerts = new ArrayList<>();
+        monitor.addAlertListener(alerts::add);
+        monitor.capacityChanged(50);
+        for (int i = 0; i < 1000; i++) {
+            monitor.citizenAdded(600, 500);
+            if (i % 2 == 1) {
+                monitor.detaineesChanged(1);
+            }
+        }
+        Checks.checkEquals(1, timer.pending(), "evaluations scheduled for the burst");
+        timer.advance(DELAY - 1);
+        Checks.checkEquals(0L, monitor.getEvaluations(), "evaluations before the delay");
+        timer.advance(1);
+        Checks.checkEquals(1L, monitor.getEvaluations(), "evaluations after the burst");
+        Checks.checkEquals(950, monitor.getDeficit(), "deficit seen by the evaluation");
+        Checks.checkEquals(1, alerts.size(), "alerts for the burst");
+        Checks.checkEquals(0, timer.pending(), "evaluations scheduled while nothing changes");
+
+        monitor.threatLevelChanged(600, 610, 500); // Still above the threshold: not a change of the counters
+        Checks.checkEquals(0, timer.pending(), "evaluations scheduled for a change that moves no counter");
+        monitor.citizenRemoved(600, 500);
+        timer.advance(DELAY);
+        Checks.checkEquals(2L, monitor.getEvaluations(), "evaluations after the next change");
+        monitor.close();
+    }
+
+    // close() while an evaluation is scheduled cancels it; one the timer had already taken runs but does nothing
+    private static void closeBeatsScheduledEvaluation() {
+        ManualTimer timer = new ManualTimer();
+        CapacityMonitor monitor = new CapacityMonitor(timer, 1, 0, DELAY);
+        List<CapacityMonitor.Alert> alerts = new ArrayList<>();
+        monitor.addAlertListener(alerts::add);
+        monitor.recount(10, 0, 0, 0);
+        Checks.checkEquals(1, timer.pending(), "evaluation scheduled");
+        monitor.close();
+        Checks.checkEquals(0, timer.pending(), "evaluation cancelled by close");
+
+        CapacityMonitor racing = new CapacityMonitor(timer, 1, 0, DELAY);
+        racing.addAlertListener(alerts::add);
+        racing.recount(10, 0, 0, 0);
+        timer.now += DELAY;
+        ManualTimer.Task taken = timer.take(); // Already on its way to run when close() comes
+        racing.close();
+        taken.run();
+        Checks.checkEquals(0L, racing.getEvaluations(), "evaluations after close");
+        Checks.check(!racing.isAlertRaised(), "No alert raised after close");
+        racing.citizenAdded(900, 500);
+        Checks.checkEquals(0, timer.pending(), "evaluations scheduled after close");
+        Checks.check(alerts.isEmpty(), "No alert published by a closed monitor");
+    }
+}
@@ -0,0 +1,91 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.Objects;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// עזרים משותפים לבדיקות שבתיקייה הזו.
+// The project has no test framework: every check is a class with a main that runs its scenarios and exits with status 1
+// on the first expectation that fails. run-checks.sh compiles the sources with the checks and runs each of them with
+// its own scratch data folder (-Ddata.folder), so nothing under Data is touched. The *Benchmark classes are run by hand.
+final class Checks {
+    private static final PrintStream console = System.out;
+
+    private Checks() {
+    }
+
+    // Run a check's scenarios with the system's per-change printing silenced, and report the outcome
+    static void run(String name, Runnable scenarios) {
+        requireScratchDataFolder();
+        long start = System.nanoTime();
+        Logger.getLogger("").setLevel(Level.WARNING); // The persistence classes log every save
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            scenarios.run();
+        } catch (AssertionError | RuntimeException e) {
+            System.setOut(console);
+            console.println("❌ " + name + " failed: " + e.getMessage());
+            e.printStackTrace(console);
+            System.exit(1);
+        }
+        System.setOut(console);
+        console.println("✅ " + name + " passed (" + (System.nanoTime() - start) / 1_000_000 + " ms)");
+    }
+
+    // Run a scenario step that makes the system log errors on purpose (a broken file, say) without showing them
+    static <T> T withErrorsExpected(Supplier<T> step) {
+        Logger root = Logger.getLogger("");
+        Level level = root.getLevel();
+        root.setLevel(Level.OFF);
+        try {
+            return step.get();
+        } finally {
+            root.setLevel(level);
+        }
+    }
+
+    // Progress lines that should be seen while System.out is silenced
+    static void log(String line) {
+        console.println("   " + line);
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    static void checkEquals(Object expected, Object actual, String what) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(what + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    // Files written by the system go to data.folder; running without it would overwrite the real Data folder
+    static void requireScratchDataFolder() {
+        if (System.getProperty("data.folder") == null) {
+            console.println("❌ Run the checks with -Ddata.folder=<scratch folder> (see run-checks.sh).");
+            System.exit(2);
+        }
+    }
+
+    // A citizen with random scoring data
+    static Citizen randomCitizen(Random random, long id) {
+        return new Citizen("Citizen" + id, LocalDate.of(1940 + random.nextInt(70), 1 + random.nextInt(12), 1 + random.nextInt(28)),
+                new String[]{"A", "B", "C"}[random.nextInt(3)], 1 + random.nextInt(10), -1 + random.nextInt(12),
+                1 + random.nextInt(10), random.nextInt(8) == 0, Long.toString(id));
+    }
+
+    // A copy with the same data and threat level, not registered anywhere
+    static Citizen copyOf(Citizen citizen) {
+        Citizen copy = new Citizen(citizen.getName(), citizen.getBirthDate(), citizen.getOrigin(), citizen.getEconomicPercentile(),
+                citizen.getGovernmentSupportLevel(), citizen.getPublicImpactScore(), citizen.isParliamentMember(), citizen.getId());
+        if (copy.getThreatLevel() != citizen.getThreatLevel()) {
+            copy.setThreatLevelManually(citizen.getThreatLevel());
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,127 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// מזהה עם אפסים מובילים ("007") נשמר ומוצג כפי שהוזן, והוא אזרח אחר מ-"7": גם המפתח באינדקס שומר את האפסים.
+public class CitizenIdCheck {
+    public static void main(String[] args) {
+        Checks.requireScratchDataFolder();
+        Checks.run("CitizenIdCheck", () -> {
+            lookupsKeepLeadingZeros();
+            zeroLedAndPlainIdsStayDistinct();
+            textFilesKeepLeadingZeros();
+            binarySnapshotKeepsLeadingZeros();
+        });
+    }
+
+    private static List<Citizen> citizens() {
+        Random random = new Random(11);
+        List<Citizen> citizens = new ArrayList<>();
+        for (String id : new String[]{"007", "8", "0", "00", "7", "000123456789012345"}) {
+            Citizen citizen = Checks.randomCitizen(random, 1);
+            citizen.setId(id);
+            citizen.setName("Citizen " + id);
+            citizens.add(citizen);
+        }
+        return citizens;
+    }
+
+    private static void checkIds(List<Citizen> expected, List<Citizen> actual, String where) {
+        Checks.checkEquals(expected.size(), actual.size(), "citizens in " + where);
+        for (int i = 0; i < expected.size(); i++) {
+            Checks.checkEquals(expected.get(i).getId(), actual.get(i).getId(), "ID in " + where);
+            Checks.checkEquals(expected.get(i).getName(), actual.get(i).getName(), "name in " + where);
+        }
+    }
+
+    private static void lookupsKeepLeadingZeros() {
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        system.setCitizens(citizens());
+        Checks.checkEquals(6, system.getCitizens().size(), "citizens (no two IDs share a key)");
+        for (String id : new String[]{"007", "7", "0", "00", "000123456789012345"}) {
+            Citizen citizen = system.findCitizenById(id);
+            Checks.checkEquals(id, citizen == null ? null : citizen.getId(), "citizen found under " + id);
+            Checks.check(citizen == system.findCitizenById(citizen.getNumericId()), "same citizen by key for " + id);
+            Checks.checkEquals(id, CitizenStore.idText(citizen.getNumericId()), "ID text of the key of " + id);
+        }
+        Checks.checkEquals(7L, system.findCitizenById("7").getNumericId(), "key of a plain ID");
+        Checks.check(system.findCitizenById("0007") == null, "\"0007\" is nobody");
+        Checks.checkEquals(-1L, CitizenStore.parseId("0001234567890123456"), "19 characters, leading zeros included, are rejected");
+    }
+
+    // "007" and "7" tie on threat: both are listed, both are detained, and the roster keeps both through the text files
+    private static void zeroLedAndPlainIdsStayDistinct() {
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        List<Citizen> citizens = citizens();
+        for (Citizen citizen : citizens) {
+            citizen.setThreatLevelManually(citizen.getId().endsWith("7") ? 900 : 100);
+        }
+        system.setCitizens(citizens);
+        system.setFacilities(List.of(new Facility("F1", "Facility 1", 5)));
+        system.manageDetention();
+        List<String> tied = new ArrayList<>();
+        for (Citizen citizen : system.getCitizensInThreatRange(900, 900)) {
+            tied.add(citizen.getId());
+        }
+        tied.sort(null);
+        Checks.checkEquals(List.of("007", "7"), tied, "citizens at threat 900");
+        Checks.checkEquals(List.of("007", "7"), detainedIds(system), "detained");
+
+        Checks.check(DataSnapshot.capture(system.getCitizens(), system.getFacilities()).write("tied.txt", "tied-facilities.txt"),
+                "Text files written");
+        ThreatManagementSystem loaded = new ThreatManagementSystem(null);
+        loaded.setCitizens(DataHandler.loadCitizensFromFile(loaded, "tied.txt"));
+        loaded.setFacilities(DataHandler.loadFacilitiesFromFile(loaded, "tied-facilities.txt"));
+        Checks.checkEquals(6, loaded.getCitizens().size(), "citizens loaded");
+        Checks.checkEquals(List.of("007", "7"), detainedIds(loaded), "detained after the text files are loaded");
+    }
+
+    private static List<String> detainedIds(ThreatManagementSystem system) {
+        List<String> ids = new ArrayList<>();
+        for (Facility facility : system.getFacilities()) {
+            for (long id : facility.getDetaineeIds()) {
+                Citizen citizen = system.findCitizenById(id);
+                ids.add(citizen == null ? "missing " + id : citizen.getId());
+            }
+        }
+        ids.sort(null);
+        return ids;
+    }
+
+    private static void textFilesKeepLeadingZeros() {
+        List<Citizen> citizens = citizens();
+        Checks.check(DataSnapshot.capture(citizens, List.of()).write("ids.txt", "id-facilities.txt"), "Text files written");
+        List<Citizen> loaded = DataHandler.loadCitizensFromFile(new ThreatManagementSystem(null), "ids.txt");
+        checkIds(citizens, loaded, "the text file");
+    }
+
+    private static void binarySnapshotKeepsLeadingZeros() {
+        List<Citizen> citizens = citizens();
+        Checks.check(DataSnapshot.capture(citizens, List.of()).writeBinary("ids.bin"), "Snapshot written");
+        Path path = DataHandler.getDataPath("ids.bin");
+        try {
+            checkIds(citizens, BinarySnapshot.read(path).citizens, "the snapshot");
+
+            try (MappedCitizenView view = MappedCitizenView.open(path)) {
+                List<Citizen> mapped = new ArrayList<>();
+                view.forEach(record -> mapped.add(record.toCitizen()));
+                checkIds(citizens, mapped, "the mapped snapshot");
+            }
+
+            // Everybody paged out, then copied from the mapped file into a new snapshot
+            try (CitizenRepository repository = CitizenRepository.open(path, 16)) {
+                repository.selectInMemory(id -> false, 0);
+                Checks.checkEquals("007", repository.get(CitizenStore.parseId("007")).getId(), "ID of a paged-out citizen");
+                Checks.check(DataSnapshot.capture(List.of(), List.of(), repository).writeBinary("ids-copy.bin"),
+                        "Snapshot of the paged-out citizens written");
+            }
+            List<Citizen> copied = BinarySnapshot.read(DataHandler.getDataPath("ids-copy.bin")).citizens;
+            checkIds(citizens, copied, "the snapshot copied from paged-out records");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// אינדקסי החיפוש לפי מזהה ולפי שם נשארים מסונכרנים עם רשימת האזרחים.
+public class CitizenIndexCheck {
+    public static void main(String[] args) {
+        Checks.run("CitizenIndexCheck", () -> {
+            duplicateIdIsPromotedOnRemoval();
+            renameMovesTheNameIndexEntry();
+        });
+    }
+
+    // Two citizens loaded under one ID: lookups return the first, and the second once the first is gone
+    private static void duplicateIdIsPromotedOnRemoval() {
+        Random random = new Random(5);
+        Citizen first = Checks.randomCitizen(random, 42);
+        Citizen second = Checks.randomCitizen(random, 42);
+        Citizen other = Checks.randomCitizen(random, 43);
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        List<Citizen> citizens = new ArrayList<>(List.of(first, second, other));
+        system.setCitizens(citizens);
+        Checks.check(system.findCitizenById(42) == first, "The first citizen registered under a duplicate ID is found");
+        system.removeCitizen(first);
+        Checks.check(system.findCitizenById(42) == second, "The remaining duplicate is found once the first is removed");
+        system.removeCitizen(second);
+        Checks.check(system.findCitizenById(42) == null, "No citizen is left under the ID");
+        Checks.check(system.findCitizenById(43) == other, "Other citizens are not affected");
+
+        // The shadowed duplicate leaves first: the holder keeps the ID
+        Citizen holder = Checks.randomCitizen(random, 50);
+        Citizen shadowed = Checks.randomCitizen(random, 50);
+        system.setCitizens(new ArrayList<>(List.of(holder, shadowed)));
+        system.removeCitizen(shadowed);
+        Checks.check(system.findCitizenById(50) == holder, "Removing the shadowed duplicate keeps the holder");
+        system.removeCitizen(holder);
+        Checks.check(system.findCitizenById(50) == null, "A removed shadowed duplicate is not promoted");
+    }
+
+    private static void renameMovesTheNameIndexEntry() {
+        Citizen citizen = Checks.randomCitizen(new Random(6), 7);
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        system.addCitizen(citizen);
+        String oldName = citizen.getName();
+        system.updateCitizen(citizen, () -> citizen.setName("Renamed Citizen"));
+        Checks.check(system.getCitizenByName("Renamed Citizen") == citizen, "The citizen is found under its new name");
+        Checks.check(system.getCitizenByName(oldName) == null, "The old name no longer finds the citizen");
+        Citizen unregistered = Checks.randomCitizen(new Random(7), 8);
+        unregistered.setName("Renamed Citizen");
+        Checks.checkEquals(1, system.getCitizensByName("Renamed Citizen").size(), "citizens under the new name");
+    }
+}
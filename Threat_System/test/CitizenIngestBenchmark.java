@@ -0,0 +1,44 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// זמני טעינת קובץ אזרחים: הפענוח המקבילי מול הלולאה הישנה שורה אחר שורה.
+// Usage: CitizenIngestBenchmark [rows=1000000] [threads=1] [rounds=3]
+// Writes a citizens file with a few malformed and duplicate lines to the data folder (run with a scratch
+// -Ddata.folder), then times CitizenCsvIngest.ingest against readVerifiedLines + citizenFromFileString per line.
+// The line-by-line loop prints one line per row, as the old loader did; the output goes to a null stream.
+public class CitizenIngestBenchmark {
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        List<String> lines = CitizenIngestCheck.dirtyLines(rows);
+        Files.write(DataHandler.getDataPath("benchmark-citizens.txt"), lines, StandardCharsets.UTF_8);
+        System.out.printf("%,d lines, %d MB%n", lines.size(), Files.size(DataHandler.getDataPath("benchmark-citizens.txt")) >> 20);
+
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        PrintStream console = System.out;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            CitizenCsvIngest.Result result = CitizenCsvIngest.ingest("benchmark-citizens.txt", pool, id -> false);
+            long ingested = System.nanoTime();
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            for (String line : DataHandler.readVerifiedLines("benchmark-citizens.txt")) {
+                System.out.println("Reading line: " + line);
+            }
+            List<Citizen> old = CitizenIngestCheck.lineByLine("benchmark-citizens.txt", new HashSet<>());
+            long looped = System.nanoTime();
+            System.setOut(console);
+            System.out.printf("ingest (%d threads) %5d ms, %d accepted | line by line %5d ms, %d accepted%n", threads,
+                    (ingested - start) / 1_000_000, result.citizens.size(), (looped - ingested) / 1_000_000, old.size());
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
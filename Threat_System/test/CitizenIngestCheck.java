@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+// טעינת קובץ האזרחים המקבילית: אותה תוצאה כמו הלולאה הישנה, דחייה על checksum שגוי ודוח .rejected.
+public class CitizenIngestCheck {
+    public static void main(String[] args) {
+        Checks.run("CitizenIngestCheck", () -> {
+            List<String> lines = dirtyLines(90_000); // Over 4 MB: several chunks
+            ingestMatchesLineByLineLoop(lines);
+            rejectedLinesAreReported(lines);
+            checksumMismatchIsRejected();
+            loadingInstallsOnceWithoutSaving();
+        });
+    }
+
+    // Valid lines with duplicate IDs and malformed lines mixed in; a few hundred of the valid ones reuse an earlier ID
+    static List<String> dirtyLines(int count) {
+        Random random = new Random(15);
+        List<String> lines = new ArrayList<>(count + 16);
+        for (int i = 0; i < count; i++) {
+            long id = i % 300 == 299 ? 100_000_000L + random.nextInt(i) * 7L : 100_000_000L + i * 7L;
+            lines.add(DataHandler.citizenToFileString("Citizen Name " + i,
+                    LocalDate.of(1940, 1, 1).plusDays(random.nextInt(30_000)), new String[]{"A", "B", "C"}[random.nextInt(3)],
+                    1 + random.nextInt(10), -1 + random.nextInt(12), 1 + random.nextInt(10), random.nextInt(10) == 0,
+                    (i % 1000 == 0 ? "00" : "") + id, false));
+        }
+        lines.add(5, "bad,line");
+        lines.add(7, lines.get(3));
+        lines.add(count / 2, "x,2020-02-30,A,1,1,1,false,5,false");
+        lines.add("y,2000-01-01,Q,1,1,1,false,6,false");
+        lines.add("z,2000-01-01,A,1,1,1,maybe,7,false");
+        lines.add("w,2000-01-01,A,11,1,1,false,8,false");
+        lines.add("v,2000-01-01,A,1,1,1,false,12a,false");
+        lines.add("");
+        return lines;
+    }
+
+    private static void writeLines(String filename, List<String> lines) {
+        try {
+            Files.write(DataHandler.getDataPath(filename), lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // The loop the ingest replaced: verified lines, citizenFromFileString one by one, the first line of an ID wins
+    static List<Citizen> lineByLine(String filename, Set<Long> existingIds) {
+        List<Citizen> citizens = new ArrayList<>();
+        Set<Long> seen = new HashSet<>(existingIds);
+        try {
+            for (String line : DataHandler.readVerifiedLines(filename)) {
+                Citizen citizen = DataHandler.citizenFromFileString(line);
+                if (citizen != null && seen.add(citizen.getNumericId())) {
+                    citizens.add(citizen);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return citizens;
+    }
+
+    private static void checkSameCitizens(List<Citizen> expected, List<Citizen> actual, String what) {
+        Checks.checkEquals(expected.size(), actual.size(), "citizens accepted by " + what);
+        for (int i = 0; i < expected.size(); i++) {
+            Checks.checkEquals(DataHandler.citizenToFileString(expected.get(i)), DataHandler.citizenToFileString(actual.get(i)),
+                    "citizen " + i + " accepted by " + what);
+        }
+    }
+
+    private static void ingestMatchesLineByLineLoop(List<String> lines) {
+        writeLines("dirty.txt", lines);
+        Set<Long> existing = Set.of(100_000_007L, 100_000_700L);
+        List<Citizen> expected = lineByLine("dirty.txt", existing);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (ForkJoinPool on : new ForkJoinPool[]{null, pool}) {
+                CitizenCsvIngest.Result result = CitizenCsvIngest.ingest("dirty.txt", on, existing::contains);
+                String what = on == null ? "the ingest" : "the ingest on a pool";
+                checkSameCitizens(expected, result.citizens, what);
+                Checks.checkEquals(lines.size(), result.lineCount, "lines counted by " + what);
+                Checks.checkEquals(lines.size() - expected.size() - 1, result.rejected.size(), "lines rejected by " + what);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // loadCitizensFromFile writes every rejected line, numbered from 1, with its reason, to <file>.rejected
+    private static void rejectedLinesAreReported(List<String> lines) {
+        writeLines("dirty.txt", lines);
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        List<Citizen> loaded = DataHandler.loadCitizensFromFile(system, "dirty.txt");
+        try {
+            List<String> report = Files.readAllLines(DataHandler.getDataPath("dirty.txt.rejected"), StandardCharsets.UTF_8);
+            Checks.checkEquals(lines.size() - loaded.size() - 1, report.size(), "lines in dirty.txt.rejected");
+            Checks.checkEquals("line 6: ", report.get(0).substring(0, 8), "first rejected line number");
+            Checks.check(report.get(0).endsWith(": bad,line"), "The rejected line is quoted: " + report.get(0));
+            Checks.check(report.get(1).startsWith("line 8: duplicate ID ") && report.get(1).contains("(first on line 4)"),
+                    "A repeated line is reported against the line it repeats: " + report.get(1));
+            int previous = 0;
+            for (String entry : report) {
+                int number = Integer.parseInt(entry.substring(5, entry.indexOf(':')));
+                Checks.check(number > previous, "Rejected lines are reported in file order");
+                previous = number;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // A file saved with a checksum trailer and changed afterwards is not loaded, and a .corrupt copy is kept
+    private static void checksumMismatchIsRejected() {
+        Random random = new Random(16);
+        List<Citizen> citizens = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            citizens.add(Checks.randomCitizen(random, 500 + i));
+        }
+        Checks.check(DataHandler.saveCitizensToFile(citizens, "checked.txt"), "Citizens file saved");
+        Path path = DataHandler.getDataPath("checked.txt");
+        try {
+            CitizenCsvIngest.Result intact = CitizenCsvIngest.ingest("checked.txt", null, id -> false);
+            Checks.checkEquals(100, intact.citizens.size(), "citizens of the intact file");
+            byte[] bytes = Files.readAllBytes(path);
+            bytes[10] = (byte) (bytes[10] == 'a' ? 'b' : 'a');
+            Files.write(path, bytes);
+            CitizenCsvIngest.Result changed = Checks.withErrorsExpected(() -> {
+                try {
+                    return CitizenCsvIngest.ingest("checked.txt", null, id -> false);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            Checks.check(changed == null, "A file that doesn't match its checksum is rejected");
+            Checks.check(Files.exists(DataHandler.getDataPath("checked.txt.corrupt")), "A .corrupt copy is kept");
+            ThreatManagementSystem system = new ThreatManagementSystem(null);
+            List<Citizen> loaded = Checks.withErrorsExpected(() -> DataHandler.loadCitizensFromFile(system, "checked.txt"));
+            Checks.checkEquals(0, loaded.size(), "citizens loaded from the changed file");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Loading citizens.txt the way MainGUI does puts every citizen in the system once and leaves the file as it was
+    private static void loadingInstallsOnceWithoutSaving() {
+        Random random = new Random(17);
+        List<Citizen> citizens = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Citizen citizen = Checks.randomCitizen(random, 700 + i);
+            citizen.setName("Loaded" + i);
+            citizens.add(citizen);
+        }
+        Checks.check(DataHandler.saveCitizensToFile(citizens, ThreatManagementSystem.CITIZENS_FILE), "Citizens file saved");
+        Path path = DataHandler.getDataPath(ThreatManagementSystem.CITIZENS_FILE);
+        try {
+            FileTime written = FileTime.fromMillis(0);
+            Files.setLastModifiedTime(path, written);
+            ThreatManagementSystem system = new ThreatManagementSystem(null);
+            system.setCitizens(DataHandler.loadCitizensFromFile(system, ThreatManagementSystem.CITIZENS_FILE));
+            Checks.checkEquals(written, Files.getLastModifiedTime(path), "modification time of the loaded file");
+            Checks.checkEquals(200, system.getCitizenCount(), "citizens in the system");
+            for (Citizen citizen : citizens) {
+                Checks.checkEquals(1, system.getCitizensByName(citizen.getName()).size(), "citizens named " + citizen.getName());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
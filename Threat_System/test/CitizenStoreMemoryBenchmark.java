@@ -0,0 +1,52 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// טביעת הזיכרון של האזרחים ושל אינדקס המזהים, אחרי GC.
+// Usage: CitizenStoreMemoryBenchmark [citizens=1000000] [paddedPercent=0]
+// Run with a fixed heap (e.g. -Xms2g -Xmx2g) so the used-memory readings are comparable. paddedPercent gives that share
+// of the citizens an ID with leading zeros, which is the only case where a citizen keeps its ID text.
+public class CitizenStoreMemoryBenchmark {
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int paddedPercent = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        LocalDate birthDate = LocalDate.of(1980, 1, 1);
+
+        long before = used();
+        List<Citizen> citizens = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String id = (i % 100 < paddedPercent ? "00" : "") + (100_000 + i);
+            citizens.add(new Citizen("N", birthDate, "A", 5, 5, 5, false, id));
+        }
+        long list = used();
+        CitizenStore store = new CitizenStore(n);
+        for (Citizen citizen : citizens) {
+            store.putIfAbsent(citizen);
+        }
+        long withStore = used();
+        Map<String, Citizen> byString = new HashMap<>();
+        for (Citizen citizen : citizens) {
+            byString.put(citizen.getId(), citizen);
+        }
+        long withHashMap = used();
+
+        System.out.printf("%,d citizens, %d%% with leading zeros%n", n, paddedPercent);
+        System.out.printf("  list only                    %4d MB%n", (list - before) >> 20);
+        System.out.printf("  CitizenStore                 %4d MB%n", (withStore - list) >> 20);
+        System.out.printf("  HashMap<String, Citizen>     %4d MB (the String-keyed index it replaced)%n",
+                (withHashMap - withStore) >> 20);
+        if (store.size() + byString.size() < 0) {
+            System.out.println(); // Keeps both indexes reachable until here
+        }
+    }
+
+    private static long used() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
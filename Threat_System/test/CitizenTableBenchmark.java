@@ -0,0 +1,61 @@
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// זמני הניקוד: חישוב לכל אזרח בנפרד מול איסוף לטבלה וניקוד עמודתי.
+// Usage: CitizenTableBenchmark [citizens=10000000] [rounds=5] [threads=1,2,4]
+// Needs a heap of about 4 GB at 10M citizens (-Xmx4g). The per-citizen column times the calculation
+// Citizen.calculateThreatLevel does when its memoized score is stale. Then the gather and scoring run on dedicated
+// fork/join pools of each thread count (CitizenTable.scoreAll(citizens, today, pool), as refreshThreatLevels does).
+public class CitizenTableBenchmark {
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        String[] threadCounts = (args.length > 2 ? args[2] : "1,2,4").split(",");
+        LocalDate today = LocalDate.now();
+        List<Citizen> citizens = CitizenTableCheck.population(n, today, 7);
+        System.out.printf("%,d citizens%n", n);
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            double sum = 0;
+            for (Citizen citizen : citizens) {
+                sum += CitizenTableCheck.referenceThreatLevel(citizen, today);
+            }
+            long perCitizen = System.nanoTime();
+            CitizenTable table = CitizenTable.of(citizens);
+            long gathered = System.nanoTime();
+            table.scoreAll(today);
+            long scored = System.nanoTime();
+            int mismatches = 0;
+            for (int row = 0; row < n; row++) {
+                if (table.getThreatLevel(row) != CitizenTableCheck.referenceThreatLevel(citizens.get(row), today)) {
+                    mismatches++;
+                }
+            }
+            System.out.printf("per citizen %5d ms | gather %5d ms | scoreAll %5d ms | %d mismatches%s%n",
+                    (perCitizen - start) / 1_000_000, (gathered - perCitizen) / 1_000_000, (scored - gathered) / 1_000_000,
+                    mismatches, sum > 0 ? "" : " (empty)");
+        }
+
+        CitizenTable sequential = CitizenTable.of(citizens);
+        sequential.scoreAll(today);
+        for (String threads : threadCounts) {
+            ForkJoinPool pool = new ForkJoinPool(Integer.parseInt(threads.trim()));
+            long best = Long.MAX_VALUE;
+            int mismatches = 0;
+            for (int round = 0; round < rounds; round++) {
+                long start = System.nanoTime();
+                CitizenTable table = CitizenTable.scoreAll(citizens, today, pool);
+                best = Math.min(best, System.nanoTime() - start);
+                for (int row = 0; row < n; row++) {
+                    if (table.getThreatLevel(row) != sequential.getThreatLevel(row)) {
+                        mismatches++;
+                    }
+                }
+            }
+            pool.shutdown();
+            System.out.printf("%2s threads: best %5d ms, %.1f M citizens/sec | %d mismatches with the sequential kernel%n",
+                    threads.trim(), best / 1_000_000, n / (best / 1e9) / 1e6, mismatches);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// הניקוד העמודתי של CitizenTable נותן בדיוק את ערכי החישוב לכל אזרח בנפרד.
+// Birth dates include leap days and births a day around every age break, scored on days around Feb 29 too.
+public class CitizenTableCheck {
+    public static void main(String[] args) {
+        Checks.run("CitizenTableCheck", () -> {
+            for (LocalDate today : new LocalDate[]{LocalDate.now(), LocalDate.of(2023, 2, 28), LocalDate.of(2023, 3, 1),
+                    LocalDate.of(2024, 2, 29), LocalDate.of(2024, 12, 31)}) {
+                tableMatchesPerCitizenScoring(today);
+            }
+            poolMatchesSequentialScoring();
+        });
+    }
+
+    // Random citizens; one in 50 born on Feb 29 and one in 37 born within a day of an age break as of today
+    static List<Citizen> population(int n, LocalDate today, long seed) {
+        Random random = new Random(seed);
+        int[] ageBreaks = ThreatScoringRules.getCurrent().ageBreaks;
+        List<Citizen> citizens = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            LocalDate birthDate = today.minusDays(random.nextInt(365 * 90));
+            if (i % 50 == 0) {
+                birthDate = LocalDate.of(1940 + random.nextInt(20) * 4, 2, 29);
+            } else if (i % 37 == 0) {
+                birthDate = today.minusYears(ageBreaks[random.nextInt(ageBreaks.length)]).plusDays(random.nextInt(3) - 1);
+            }
+            citizens.add(new Citizen("Citizen" + i, birthDate, new String[]{"A", "B", "C"}[random.nextInt(3)],
+                    1 + random.nextInt(10), -1 + random.nextInt(12), 1 + random.nextInt(10), random.nextInt(10) == 0,
+                    Long.toString(100_000 + i)));
+        }
+        return citizens;
+    }
+
+    // The per-citizen calculation of Citizen.calculateThreatLevel, as of any day
+    static double referenceThreatLevel(Citizen citizen, LocalDate today) {
+        return ThreatScoringRules.getCurrent().score(Period.between(citizen.getBirthDate(), today).getYears(),
+                citizen.getOrigin(), citizen.getEconomicPercentile(), citizen.getGovernmentSupportLevel(),
+                citizen.getPublicImpactScore(), citizen.isParliamentMember());
+    }
+
+    // Chunked fork/join scoring, with row counts around the 64-row bitset words and the chunk size
+    private static void poolMatchesSequentialScoring() {
+        LocalDate today = LocalDate.now();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int n : new int[]{0, 1, 63, 64, 65, (1 << 14) - 1, 1 << 14, (1 << 14) + 1, 100_003}) {
+                List<Citizen> citizens = population(n, today, n);
+                CitizenTable sequential = CitizenTable.of(citizens);
+                sequential.scoreAll(today);
+                CitizenTable parallel = CitizenTable.scoreAll(citizens, today, pool);
+                Checks.checkEquals(n, parallel.size(), "rows scored on the pool");
+                for (int row = 0; row < n; row++) {
+                    Checks.checkEquals(sequential.getId(row), parallel.getId(row), "ID of row " + row + " of " + n);
+                    Checks.checkEquals(sequential.getThreatLevel(row), parallel.getThreatLevel(row),
+                            "threat level of row " + row + " of " + n + " scored on the pool");
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void tableMatchesPerCitizenScoring(LocalDate today) {
+        List<Citizen> citizens = population(50_000, today, today.toEpochDay());
+        CitizenTable table = CitizenTable.of(citizens);
+        table.scoreAll(today);
+        for (int row = 0; row < citizens.size(); row++) {
+            Citizen citizen = citizens.get(row);
+            Checks.checkEquals(citizen.getNumericId(), table.getId(row), "ID of row " + row);
+            Checks.checkEquals(referenceThreatLevel(citizen, today), table.getThreatLevel(row),
+                    "threat level of " + citizen.getBirthDate() + " on " + today);
+        }
+        if (today.equals(LocalDate.now())) {
+            for (int row = 0; row < citizens.size(); row++) {
+                Checks.checkEquals(citizens.get(row).calculateThreatLevel(), table.getThreatLevel(row),
+                        "threat level against calculateThreatLevel");
+            }
+        }
+    }
+}
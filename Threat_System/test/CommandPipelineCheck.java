@@ -0,0 +1,67 @@
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// צינור הפקודות: פקודה שזורקת (גם Error) נכשלת לבד, והכותב ממשיך לבצע את הפקודות שאחריה.
+public class CommandPipelineCheck {
+    public static void main(String[] args) {
+        Checks.run("CommandPipelineCheck", () -> {
+            ThreatManagementSystem system = new ThreatManagementSystem(null);
+            system.setCitizens(new ArrayList<>());
+            system.setFacilities(new ArrayList<>());
+            try (CommandPipeline commands = new CommandPipeline(system, 16, 8)) {
+                failingCommandsFailOnlyThemselves(commands);
+            }
+        });
+    }
+
+    private static void failingCommandsFailOnlyThemselves(CommandPipeline commands) {
+        CompletableFuture<Integer> before = commands.submit(s -> 1);
+        CompletableFuture<Object> runtime = commands.submit(s -> {
+            throw new IllegalStateException("broken command");
+        });
+        CompletableFuture<Object> error = commands.submit(s -> {
+            throw new StackOverflowError("deep command");
+        });
+        CompletableFuture<Object> nested = commands.submit(s -> commands.submit(inner -> {
+            throw new AssertionError("nested command");
+        }).isCompletedExceptionally());
+        CompletableFuture<Integer> after = commands.submit(s -> 2);
+
+        Checks.checkEquals(1, await(before), "result before the failures");
+        checkFailed(runtime, IllegalStateException.class);
+        checkFailed(error, StackOverflowError.class);
+        Checks.checkEquals(true, await(nested), "a nested command that throws an Error fails its own future");
+        Checks.checkEquals(2, await(after), "result of the command after the failures");
+        Checks.checkEquals(3, await(commands.submit(s -> 3)), "result of a command submitted afterwards");
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get(1, TimeUnit.MINUTES);
+        } catch (ExecutionException e) {
+            throw new AssertionError("Command failed: " + e.getCause(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new AssertionError("The writer never completed the command", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void checkFailed(CompletableFuture<?> future, Class<? extends Throwable> expected) {
+        try {
+            future.get(1, TimeUnit.MINUTES);
+            throw new AssertionError("The command should have failed with " + expected.getSimpleName());
+        } catch (ExecutionException e) {
+            Checks.checkEquals(expected, e.getCause().getClass(), "failure of the command");
+        } catch (TimeoutException e) {
+            throw new AssertionError("The writer never completed the failing command", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        }
+    }
+}
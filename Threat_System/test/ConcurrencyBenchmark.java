@@ -0,0 +1,116 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// תפוקה לפי מספר החוטים: הכנסות, העברות ושאילתות תחת נעילת הקריאה והמנעולים המפוצלים, עם ובלי עדכוני אזרחים
+// שלוקחים את נעילת הכתיבה.
+// Usage: ConcurrencyBenchmark [threads=1,2,4,8] [seconds=3] [facilities=64]
+// Every thread runs the same mix for the given time on a fresh system, after a warm-up run; prints the operations per
+// second and the speedup over the first thread count. A mix only scales while its operations take the read lock and
+// different stripes, and only as far as the machine has cores (Runtime.availableProcessors is printed first).
+public class ConcurrencyBenchmark {
+    private static final int CITIZENS = 20_000;
+
+    public static void main(String[] args) throws Exception {
+        String[] threadCounts = (args.length > 0 ? args[0] : "1,2,4,8").split(",");
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 3;
+        int facilities = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        PrintStream console = System.out;
+        Logger.getLogger("").setLevel(Level.WARNING);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        console.printf("%d processors, %d facility lock stripes, %d facilities%n", Runtime.getRuntime().availableProcessors(),
+                ThreatManagementSystem.FACILITY_LOCK_STRIPES, facilities);
+        run(Integer.parseInt(threadCounts[threadCounts.length - 1]), seconds, facilities, 10); // Warm-up, not printed
+        for (int writePercent : new int[]{0, 10}) {
+            double single = 0; // The first thread count's throughput
+            for (String count : threadCounts) {
+                int threads = Integer.parseInt(count);
+                double perSecond = run(threads, seconds, facilities, writePercent);
+                if (single == 0) {
+                    single = perSecond;
+                }
+                console.printf("%2d%% updates, %2d threads: %,12.0f operations/s, speedup %.2f%n", writePercent, threads,
+                        perSecond, perSecond / single);
+            }
+        }
+    }
+
+    // Operations per second of all the threads together
+    private static double run(int threads, long seconds, int facilityCount, int writePercent) throws Exception {
+        ThreatManagementSystem system = newSystem(facilityCount);
+        List<Citizen> citizens = new ArrayList<>(system.getCitizens());
+        List<Facility> facilities = system.getFacilities();
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> counts = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            counts.add(pool.submit(() -> {
+                Random random = new Random(thread);
+                long operations = 0;
+                start.await();
+                while (!stop.get()) {
+                    int operation = random.nextInt(100);
+                    Facility facility = facilities.get(random.nextInt(facilities.size()));
+                    if (operation < writePercent) {
+                        Citizen citizen = citizens.get(random.nextInt(CITIZENS));
+                        int score = 1 + random.nextInt(10);
+                        system.updateCitizen(citizen, () -> citizen.reportPublicImpactScore(score));
+                    } else if (operation < 40) {
+                        system.admitToFacility(citizens.get(random.nextInt(CITIZENS)), facility);
+                    } else if (operation < 60) {
+                        long[] ids = system.getDetaineeIds(facility);
+                        Citizen detainee = ids.length == 0 ? null : system.findCitizenById(ids[random.nextInt(ids.length)]);
+                        if (detainee != null) {
+                            system.transferCitizen(detainee, facility, facilities.get(random.nextInt(facilities.size())));
+                        }
+                    } else {
+                        system.getDetaineeIds(facility);
+                        system.findCitizenById(citizens.get(random.nextInt(CITIZENS)).getNumericId());
+                    }
+                    operations++;
+                }
+                return operations;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        TimeUnit.SECONDS.sleep(seconds);
+        stop.set(true);
+        long total = 0;
+        for (Future<Long> count : counts) {
+            total += count.get();
+        }
+        long elapsed = System.nanoTime() - begin;
+        pool.shutdown();
+        return total * 1e9 / elapsed;
+    }
+
+    // Places for about a third of the citizens, so admissions both fill free places and swap out the weakest
+    private static ThreatManagementSystem newSystem(int facilityCount) {
+        Random random = new Random(21);
+        List<Citizen> citizens = new ArrayList<>(CITIZENS);
+        for (int i = 0; i < CITIZENS; i++) {
+            citizens.add(Checks.randomCitizen(random, 10_000 + i));
+        }
+        List<Facility> facilities = new ArrayList<>();
+        for (int f = 0; f < facilityCount; f++) {
+            facilities.add(new Facility("F" + f, "Facility " + f, CITIZENS / 3 / facilityCount + random.nextInt(10)));
+        }
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        system.setCitizens(citizens);
+        system.setFacilities(facilities);
+        return system;
+    }
+}
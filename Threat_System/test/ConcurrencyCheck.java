@@ -0,0 +1,135 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// עומס מקבילי: הכנסות, העברות ועדכוני אזרחים מכמה חוטים, ואחריהם ספירה מחדש של המתקנים מול מנוע הכליאה.
+public class ConcurrencyCheck {
+    private static final int CITIZENS = 4000;
+    private static final int FACILITIES = 32;
+    private static final int THREADS = 6;
+    private static final int OPERATIONS = 20_000;
+
+    public static void main(String[] args) {
+        Checks.run("ConcurrencyCheck", () -> {
+            ThreatManagementSystem system = newSystem();
+            stress(system);
+            checkRecount(system, "after the parallel operations");
+            system.manageDetention();
+            checkRecount(system, "after a full detention pass");
+        });
+    }
+
+    private static ThreatManagementSystem newSystem() {
+        Random random = new Random(31);
+        List<Citizen> citizens = new ArrayList<>();
+        for (int i = 0; i < CITIZENS; i++) {
+            citizens.add(Checks.randomCitizen(random, 10_000 + i));
+        }
+        List<Facility> facilities = new ArrayList<>();
+        for (int f = 0; f < FACILITIES; f++) {
+            facilities.add(new Facility("F" + f, "Facility " + f, 20 + random.nextInt(20)));
+        }
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        system.setCitizens(citizens);
+        system.setFacilities(facilities);
+        system.manageDetention();
+        return system;
+    }
+
+    // Writers admit citizens, move detainees between pairs of facilities (even threads one way, odd threads the other,
+    // so the facility locks are taken in opposite orders) and change citizens; a reader asks the engine meanwhile
+    private static void stress(ThreatManagementSystem system) {
+        List<Citizen> citizens = new ArrayList<>(system.getCitizens());
+        List<Facility> facilities = system.getFacilities();
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS + 1);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            writers.add(pool.submit(() -> {
+                Random random = new Random(thread);
+                for (int i = 0; i < OPERATIONS; i++) {
+                    int operation = random.nextInt(20);
+                    if (operation < 12) {
+                        system.admitToFacility(citizens.get(random.nextInt(CITIZENS)), facilities.get(random.nextInt(FACILITIES)));
+                    } else if (operation < 18) {
+                        int pair = random.nextInt(FACILITIES / 2) * 2;
+                        Facility from = facilities.get(thread % 2 == 0 ? pair : pair + 1);
+                        Facility to = facilities.get(thread % 2 == 0 ? pair + 1 : pair);
+                        long[] ids = system.getDetaineeIds(from);
+                        if (ids.length > 0) {
+                            Citizen detainee = system.findCitizenById(ids[random.nextInt(ids.length)]);
+                            if (detainee != null) {
+                                system.transferCitizen(detainee, from, to);
+                            }
+                        }
+                    } else {
+                        Citizen citizen = citizens.get(random.nextInt(CITIZENS));
+                        int score = 1 + random.nextInt(10);
+                        system.updateCitizen(citizen, () -> citizen.reportPublicImpactScore(score));
+                    }
+                }
+            }));
+        }
+        Future<?> reader = pool.submit(() -> {
+            Random random = new Random(99);
+            while (!stop.get()) {
+                Citizen citizen = citizens.get(random.nextInt(CITIZENS));
+                system.getFacilityOf(citizen);
+                system.getThreatRank(citizen);
+                system.getDynamicThresholdForAllFacilities();
+            }
+        });
+        try {
+            for (Future<?> writer : writers) {
+                writer.get(5, TimeUnit.MINUTES);
+            }
+            stop.set(true);
+            reader.get(1, TimeUnit.MINUTES);
+        } catch (TimeoutException e) {
+            throw new AssertionError("The parallel operations did not finish (deadlock?)", e);
+        } catch (ExecutionException e) {
+            throw new AssertionError("A parallel operation failed: " + e.getCause(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        } finally {
+            stop.set(true);
+            pool.shutdownNow();
+        }
+    }
+
+    // Rosters within capacity, every detainee in one roster with its flag set, and the engine placing every citizen
+    // where the rosters say it is
+    private static void checkRecount(ThreatManagementSystem system, String when) {
+        Map<Long, String> placedIn = new HashMap<>();
+        int detained = 0;
+        for (Facility facility : system.getFacilities()) {
+            long[] ids = system.getDetaineeIds(facility);
+            Checks.checkEquals(ids.length, facility.getCurrentOccupancy(), "occupancy of " + facility.getFacilityId() + " " + when);
+            Checks.check(ids.length <= facility.getCapacity(), facility.getFacilityId() + " over capacity " + when);
+            for (long id : ids) {
+                String other = placedIn.put(id, facility.getFacilityId());
+                Checks.check(other == null, "Citizen " + id + " in " + other + " and " + facility.getFacilityId() + " " + when);
+            }
+            detained += ids.length;
+        }
+        Checks.check(detained > 0, "Citizens are detained " + when);
+        for (Citizen citizen : system.getCitizens()) {
+            String facilityId = placedIn.get(citizen.getNumericId());
+            Checks.checkEquals(facilityId != null, citizen.isInDetention(), "detention flag of " + citizen.getId() + " " + when);
+            Facility placement = system.getFacilityOf(citizen);
+            Checks.checkEquals(facilityId, placement != null ? placement.getFacilityId() : null,
+                    "engine placement of " + citizen.getId() + " " + when);
+        }
+    }
+}
@@ -0,0 +1,378 @@
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// בדיקה דיפרנציאלית: מנוע הכליאה מול manageDetentionFullScan על עומסי עבודה אקראיים.
+// Every step starts from one state in two systems: the engine's system applies a random change and settles it, and a
+// copy applies the same change with its engine held back (an open DetentionScheduler whose window never ends) and is
+// settled by manageDetentionFullScan, repeated until a pass changes nothing. The rosters must then agree:
+//  - the same detained citizens and the same occupancy in every facility;
+//  - the same facility for every detainee, unless the full scan had to evict someone: the engine swaps a candidate
+//    with the weakest detainee of all, the full scan with the weakest of the first facility holding a weaker one
+//    and moves the evicted detainee on in its next pass, so swapped citizens may end up in other facilities.
+// Threat levels are set by hand and never tie; ties are broken by citizen ID in the engine and by list order in the
+// full scan (see DetentionEngine). The engine's own bookkeeping is checked against the rosters after every step.
+// Arguments: [workloads] [steps per workload] [first seed]
+public class DetentionEngineCheck {
+    private static final int MAX_FULL_SCAN_PASSES = 100;
+
+    public static void main(String[] args) {
+        int workloads = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+        long firstSeed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        Checks.run("DetentionEngineCheck", () -> {
+            addingToStaleEngineRegistersOnce();
+            pardonReleasesAndRefills();
+            revokedPardonMayStayFree();
+            threatChangeOnStaleEngineKeepsRosterOrder();
+            loadedRosterStaysOrderedAfterResolve();
+            ScheduledExecutorService idleTimer = new ScheduledThreadPoolExecutor(1);
+            try {
+                int[] totals = new int[2];
+                for (long seed = firstSeed; seed < firstSeed + workloads; seed++) {
+                    new Workload(seed, idleTimer).run(steps, totals);
+                }
+                Checks.log(workloads + " workloads, " + workloads * steps + " steps: " + totals[0]
+                        + " compared placement by placement, " + totals[1] + " with evictions compared by set and occupancy");
+            } finally {
+                idleTimer.shutdownNow();
+            }
+        });
+    }
+
+    // A citizen whose threat level changes as it is added to a system with a stale engine: the change rebuilds the
+    // engine from the citizen list, which has the citizen already, so it must not be registered a second time
+    private static void addingToStaleEngineRegistersOnce() {
+        Random random = new Random(0);
+        Citizen citizen;
+        do {
+            citizen = Checks.randomCitizen(random, 7);
+        } while (citizen.getThreatLevel() < 500);
+        citizen.setThreatLevelManually(1); // addCitizen scores it again, from its data
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        system.addFacility(new Facility("F1", "Facility 1", 3));
+        system.setCitizens(new ArrayList<>()); // The engine is stale until something rebuilds it
+        system.addCitizen(citizen);
+        Facility facility = system.getFacilityOf(citizen);
+        Checks.check(facility != null, "The added citizen is not detained");
+        Checks.check(citizen.isInDetention(), "The added citizen is detained but not flagged as such");
+        Checks.checkEquals(1, system.getFacilities().get(0).getCurrentOccupancy(), "occupancy after adding to a stale engine");
+        Checks.checkEquals(1, system.getThreatRank(citizen), "rank of the only citizen");
+    }
+
+    // A pardon lowers the threat level and releases the citizen in one batch; the freed place goes to the next candidate
+    private static void pardonReleasesAndRefills() {
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        President president = new President("president", "president123", "key", system);
+        Citizen pardoned = Checks.randomCitizen(new Random(1), 1);
+        Citizen waiting = Checks.randomCitizen(new Random(2), 2);
+        system.runBatch(() -> {
+            system.addFacility(new Facility("F1", "Facility 1", 1));
+            addCitizen(system, pardoned, 900);
+            addCitizen(system, waiting, 800);
+        });
+        Checks.checkEquals("F1", system.getFacilityOf(pardoned).getFacilityId(), "facility of the citizen to pardon");
+        president.grantPardon(pardoned);
+        Checks.check(system.getFacilityOf(pardoned) == null && !pardoned.isInDetention(), "The pardoned citizen is still detained");
+        Checks.checkEquals(1.0, pardoned.getThreatLevel(), "threat level after the pardon");
+        Checks.checkEquals("F1", system.getFacilityOf(waiting).getFacilityId(), "facility of the next candidate");
+    }
+
+    // A revoked pardon admits the citizen to the free place, and the pass after it gives the place to a stronger waiting
+    // candidate: revokePardon reports the citizen as not detained instead of failing on the missing facility
+    private static void revokedPardonMayStayFree() {
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        President president = new President("president", "president123", "key", system);
+        Random random = new Random(3);
+        Citizen revoked;
+        do {
+            revoked = Checks.randomCitizen(random, 1);
+        } while (revoked.getThreatLevel() >= 400);
+        Citizen waiting = Checks.randomCitizen(random, 2);
+        Citizen pardoned = revoked;
+        system.runBatch(() -> {
+            system.addFacility(new Facility("F1", "Facility 1", 1));
+            addCitizen(system, pardoned, pardoned.getThreatLevel());
+            addCitizen(system, waiting, 499); // Below the static threshold: waits while the place is free
+        });
+        Checks.check(system.getFacilityOf(waiting) == null, "The candidate below the threshold waits");
+        president.revokePardon(revoked);
+        Checks.check(system.getFacilityOf(revoked) == null && !revoked.isInDetention(), "The weaker citizen lost the place");
+        Checks.checkEquals("F1", system.getFacilityOf(waiting).getFacilityId(), "facility of the stronger candidate");
+    }
+
+    // A detainee's threat changes while the engine is stale (after setCitizens): the change only rebuilds the engine,
+    // which must put the facility's heap back in order, or the raised citizen stays the weakest and is evicted first
+    private static void threatChangeOnStaleEngineKeepsRosterOrder() {
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        Random random = new Random(4);
+        Citizen[] detained = new Citizen[3];
+        system.runBatch(() -> {
+            system.addFacility(new Facility("F1", "Facility 1", 3));
+            for (int i = 0; i < detained.length; i++) {
+                detained[i] = Checks.randomCitizen(random, i + 1);
+                addCitizen(system, detained[i], 610 + 10 * i);
+            }
+        });
+        Facility facility = system.findFacilityById("F1");
+        Checks.checkEquals(detained[0], facility.getLowestThreatCitizen(), "weakest detainee");
+        system.setCitizens(system.getCitizens()); // The engine is stale until something rebuilds it
+        system.updateCitizen(detained[0], () -> detained[0].setThreatLevelManually(900));
+        Checks.checkEquals(detained[1], facility.getLowestThreatCitizen(), "weakest detainee after the change on the stale engine");
+        Citizen stronger = Checks.randomCitizen(random, 4);
+        system.runBatch(() -> addCitizen(system, stronger, 700));
+        Checks.checkEquals("F1", system.getFacilityOf(stronger).getFacilityId(), "facility of the stronger newcomer");
+        Checks.check(system.getFacilityOf(detained[1]) == null, "The weakest detainee (620) made way");
+        Checks.checkEquals("F1", system.getFacilityOf(detained[0]).getFacilityId(), "facility of the raised detainee");
+    }
+
+    // A loaded roster (IDs only) is resolved by its first use: the heap must come out in threat order, with a change
+    // made before the resolve, and stay in order through changes made after it
+    private static void loadedRosterStaysOrderedAfterResolve() {
+        ThreatManagementSystem original = new ThreatManagementSystem(null);
+        Random random = new Random(19);
+        original.runBatch(() -> {
+            original.addFacility(new Facility("F1", "Facility 1", 8));
+            for (int i = 0; i < 12; i++) {
+                addCitizen(original, Checks.randomCitizen(random, i + 1), 510 + 10 * i); // 1..4 free, 5..12 detained
+            }
+        });
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        List<Citizen> citizens = new ArrayList<>();
+        for (Citizen citizen : original.getCitizens()) {
+            citizens.add(Checks.copyOf(citizen));
+        }
+        Facility facility = new Facility("F1", "Facility 1", 8);
+        facility.setDetaineeIds(original.findFacilityById("F1").getDetaineeIds());
+        system.setCitizens(citizens);
+        system.setFacilities(List.of(facility));
+        Checks.check(!facility.isRosterResolved(), "The loaded roster is not resolved yet");
+
+        Citizen strongest = system.findCitizenById(12);
+        system.updateCitizen(strongest, () -> strongest.setThreatLevelManually(545));
+        Checks.checkEquals(strongest, facility.getLowestThreatCitizen(), "weakest detainee after a change made before the resolve");
+        Checks.check(facility.isRosterResolved(), "The roster is resolved");
+        checkHeapOrder(system, facility, "after the resolve");
+
+        system.updateCitizen(strongest, () -> strongest.setThreatLevelManually(900));
+        checkHeapOrder(system, facility, "after raising the weakest detainee");
+        Checks.checkEquals(system.findCitizenById(5), facility.getLowestThreatCitizen(), "weakest detainee after the raise");
+        Citizen lowered = system.findCitizenById(10);
+        system.updateCitizen(lowered, () -> lowered.setThreatLevelManually(547));
+        checkHeapOrder(system, facility, "after lowering a detainee");
+        Checks.checkEquals(lowered, facility.getLowestThreatCitizen(), "weakest detainee after the lowering");
+
+        Citizen newcomer = Checks.randomCitizen(random, 13);
+        system.runBatch(() -> addCitizen(system, newcomer, 700));
+        Checks.checkEquals("F1", system.getFacilityOf(newcomer).getFacilityId(), "facility of the newcomer");
+        Checks.check(system.getFacilityOf(lowered) == null, "The lowered detainee (547) made way");
+        checkHeapOrder(system, facility, "after the newcomer");
+    }
+
+    // No detainee is ranked below its parent in the facility's heap (getDetaineeIds lists a resolved heap in order)
+    private static void checkHeapOrder(ThreatManagementSystem system, Facility facility, String when) {
+        long[] ids = facility.getDetaineeIds();
+        for (int i = 1; i < ids.length; i++) {
+            Citizen parent = system.findCitizenById(ids[(i - 1) / 2]);
+            Citizen child = system.findCitizenById(ids[i]);
+            Checks.check(ThreatKey.compare(parent, child) <= 0, "Heap of " + facility.getFacilityId() + " out of order " + when
+                    + ": " + parent.getThreatLevel() + " above " + child.getThreatLevel());
+        }
+    }
+
+    private static final class Workload {
+        private final long seed;
+        private final Random random;
+        private final ScheduledExecutorService idleTimer;
+        private final ThreatManagementSystem system = new ThreatManagementSystem(null);
+        private final Set<Double> usedThreatLevels = new HashSet<>();
+        private long nextCitizenId = 1000;
+        private int nextFacilityId = 1;
+
+        Workload(long seed, ScheduledExecutorService idleTimer) {
+            this.seed = seed;
+            this.random = new Random(seed);
+            this.idleTimer = idleTimer;
+        }
+
+        void run(int steps, int[] totals) {
+            int citizenCount = 20 + random.nextInt(60);
+            system.runBatch(() -> {
+                for (int i = 0; i < citizenCount; i++) {
+                    addCitizen(system, newCitizen(), newThreatLevel());
+                }
+                int facilityCount = 1 + random.nextInt(4);
+                for (int i = 0; i < facilityCount; i++) {
+                    system.addFacility(newFacility());
+                }
+            });
+            for (int step = 0; step < steps; step++) {
+                ThreatManagementSystem reference = copyOf(system);
+                Operation operation = nextOperation();
+                operation.applyTo(system);
+                operation.applyTo(reference);
+                Map<Long, String> beforeFullScan = rosters(reference);
+                settleWithFullScan(reference);
+                String where = "seed " + seed + ", step " + step + " (" + operation + ")";
+                boolean evicted = !rosters(reference).keySet().containsAll(beforeFullScan.keySet());
+                compare(system, reference, !evicted, where);
+                totals[evicted ? 1 : 0]++;
+            }
+        }
+
+        // The next random change, resolved to IDs so it can be applied to the copy as well
+        private Operation nextOperation() {
+            List<Citizen> citizens = system.getCitizens();
+            List<Facility> facilities = system.getFacilities();
+            int kind = random.nextInt(10);
+            if (kind < 4 && !citizens.isEmpty()) {
+                long id = citizens.get(random.nextInt(citizens.size())).getNumericId();
+                double threatLevel = newThreatLevel();
+                return new Operation("threat of " + id + " -> " + threatLevel, s -> {
+                    Citizen citizen = s.findCitizenById(id);
+                    s.updateCitizen(citizen, () -> citizen.setThreatLevelManually(threatLevel));
+                });
+            }
+            if (kind == 4 || citizens.size() < 5) {
+                Citizen citizen = newCitizen();
+                double threatLevel = newThreatLevel();
+                return new Operation("add " + citizen.getId(), s -> s.runBatch(() -> addCitizen(s, Checks.copyOf(citizen), threatLevel)));
+            }
+            if (kind == 5) {
+                long id = citizens.get(random.nextInt(citizens.size())).getNumericId();
+                return new Operation("remove " + id, s -> s.removeCitizen(s.findCitizenById(id)));
+            }
+            if (kind == 6 || facilities.size() < 2) {
+                Facility facility = newFacility();
+                return new Operation("add facility " + facility.getFacilityId() + " (" + facility.getCapacity() + " places)",
+                        s -> s.addFacility(new Facility(facility.getFacilityId(), facility.getName(), facility.getCapacity())));
+            }
+            if (kind == 7) {
+                String facilityId = facilities.get(random.nextInt(facilities.size())).getFacilityId();
+                return new Operation("remove facility " + facilityId, s -> s.removeFacility(s.findFacilityById(facilityId)));
+            }
+            Citizen citizen = citizens.get(random.nextInt(citizens.size()));
+            long id = citizen.getNumericId();
+            if (kind == 8 && citizen.isInDetention()) {
+                return new Operation("release " + id, s -> s.releaseCitizen(s.findCitizenById(id)));
+            }
+            return new Operation("detain " + id, s -> s.detainCitizen(s.findCitizenById(id)));
+        }
+
+        private Citizen newCitizen() {
+            return Checks.randomCitizen(random, nextCitizenId++);
+        }
+
+        private Facility newFacility() {
+            int id = nextFacilityId++;
+            return new Facility("F" + id, "Facility " + id, 1 + random.nextInt(12));
+        }
+
+        // A threat level no other citizen of the workload ever had, so no two citizens tie
+        private double newThreatLevel() {
+            double threatLevel;
+            do {
+                threatLevel = 1 + random.nextInt(999_000) / 1000.0;
+            } while (!usedThreatLevels.add(threatLevel));
+            return threatLevel;
+        }
+
+        // The same citizens, threat levels, facilities and rosters, with detention decisions left to the full scan
+        private ThreatManagementSystem copyOf(ThreatManagementSystem original) {
+            ThreatManagementSystem copy = new ThreatManagementSystem(null);
+            copy.openDetentionScheduler(TimeUnit.DAYS.toMillis(1), Integer.MAX_VALUE, idleTimer); // Never settles by itself
+            List<Citizen> citizens = new ArrayList<>();
+            for (Citizen citizen : original.getCitizens()) {
+                citizens.add(Checks.copyOf(citizen));
+            }
+            List<Facility> facilities = new ArrayList<>();
+            for (Facility facility : original.getFacilities()) {
+                Facility facilityCopy = new Facility(facility.getFacilityId(), facility.getName(), facility.getCapacity());
+                facilityCopy.setDetaineeIds(facility.getDetaineeIds());
+                facilities.add(facilityCopy);
+            }
+            copy.setCitizens(citizens);
+            copy.setFacilities(facilities);
+            if (!citizens.isEmpty()) {
+                copy.getFacilityOf(citizens.get(0)); // Builds the copy's engine from the rosters; the state is settled already
+            }
+            Checks.checkEquals(rosters(original), rosters(copy), "seed " + seed + ": rosters of the copy");
+            return copy;
+        }
+    }
+
+    private static void addCitizen(ThreatManagementSystem system, Citizen citizen, double threatLevel) {
+        system.addCitizen(citizen);
+        citizen.setThreatLevelManually(threatLevel);
+    }
+
+    private static void settleWithFullScan(ThreatManagementSystem system) {
+        for (int pass = 0; pass < MAX_FULL_SCAN_PASSES; pass++) {
+            Map<Long, String> before = rosters(system);
+            system.manageDetentionFullScan();
+            if (before.equals(rosters(system))) {
+                return;
+            }
+        }
+        throw new AssertionError("The full scan did not settle within " + MAX_FULL_SCAN_PASSES + " passes");
+    }
+
+    private static void compare(ThreatManagementSystem engine, ThreatManagementSystem fullScan, boolean samePlacements, String where) {
+        Map<Long, String> placements = rosters(engine);
+        Map<Long, String> expected = rosters(fullScan);
+        Checks.checkEquals(new TreeSet<>(expected.keySet()), new TreeSet<>(placements.keySet()), where + ": detained citizens");
+        Checks.checkEquals(occupancy(fullScan), occupancy(engine), where + ": occupancy");
+        if (samePlacements) {
+            Checks.checkEquals(expected, placements, where + ": placements");
+        }
+        for (Citizen citizen : engine.getCitizens()) {
+            String facilityId = placements.get(citizen.getNumericId());
+            Facility facility = engine.getFacilityOf(citizen);
+            Checks.checkEquals(facilityId, facility == null ? null : facility.getFacilityId(), where + ": engine placement of " + citizen.getId());
+            Checks.checkEquals(facilityId != null, citizen.isInDetention(), where + ": detention flag of " + citizen.getId());
+        }
+        Checks.checkEquals(engine.getCitizens().size(), engine.getCitizensInThreatRange(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY).size(),
+                where + ": citizens in the engine's index");
+    }
+
+    // Citizen ID -> ID of the facility holding it, read from the rosters themselves
+    private static Map<Long, String> rosters(ThreatManagementSystem system) {
+        Map<Long, String> placements = new TreeMap<>();
+        for (Facility facility : system.getFacilities()) {
+            for (long id : facility.getDetaineeIds()) {
+                String previous = placements.put(id, facility.getFacilityId());
+                Checks.check(previous == null, "Citizen " + id + " is detained in " + previous + " and " + facility.getFacilityId());
+            }
+        }
+        return placements;
+    }
+
+    private static Map<String, Integer> occupancy(ThreatManagementSystem system) {
+        Map<String, Integer> occupancy = new TreeMap<>();
+        for (Facility facility : system.getFacilities()) {
+            occupancy.put(facility.getFacilityId(), facility.getCurrentOccupancy());
+        }
+        return occupancy;
+    }
+
+    private static final class Operation {
+        private final String description;
+        private final Consumer<ThreatManagementSystem> change;
+
+        Operation(String description, Consumer<ThreatManagementSystem> change) {
+            this.description = description;
+            this.change = change;
+        }
+
+        void applyTo(ThreatManagementSystem system) {
+            change.accept(system);
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+// היסטוריית הכליאה: פתיחת יומן החודש בודקת רק את סופו, סריקת יומן ללא אינדקס נותנת את מה שהאינדקס נותן,
+// והרשימות בכל מתקן בזמן עבר (מנקודות ביקורת) שוות להרצה מחדש של כל היומן.
+public class DetentionHistoryCheck {
+    private static final ZoneId zone = ZoneId.systemDefault();
+
+    public static void main(String[] args) {
+        Checks.run("DetentionHistoryCheck", () -> {
+            tornTailIsDroppedOnOpen();
+            logScanMatchesIndex();
+            rostersMatchReplay();
+        });
+    }
+
+    // Log lines for count events starting at the month's first moment, one second apart: every citizen of 1..citizens
+    // is admitted while free and released or evicted while held, so every admission is the start of one stay
+    static String events(YearMonth month, int count, long firstCitizen, int citizens, int facilities, Random random) {
+        long time = month.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        Map<Long, String> heldIn = new HashMap<>();
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            time += 1000;
+            long citizenId = firstCitizen + random.nextInt(citizens);
+            String facilityId = heldIn.remove(citizenId);
+            char type;
+            if (facilityId == null) {
+                facilityId = "F" + random.nextInt(facilities);
+                heldIn.put(citizenId, facilityId);
+                type = DetentionHistory.ADMITTED;
+            } else {
+                type = random.nextBoolean() ? DetentionHistory.RELEASED : DetentionHistory.EVICTED;
+            }
+            log.append(type).append(',').append(time).append(',').append(citizenId).append(',').append(facilityId).append('\n');
+        }
+        return log.toString();
+    }
+
+    private static DetentionHistory open(String folder, ThreatManagementSystem system) {
+        return open(folder, system, 100);
+    }
+
+    private static DetentionHistory open(String folder, ThreatManagementSystem system, int checkpointEveryEvents) {
+        try {
+            return new DetentionHistory(folder, system, 0, 256, checkpointEveryEvents);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void close(DetentionHistory history) {
+        try {
+            history.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // A crash left half a line at the end of this month's log: opening drops it and the next event starts a fresh line
+    private static void tornTailIsDroppedOnOpen() {
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        Path log = DataHandler.getDataPath("history-torn").resolve(YearMonth.now(zone) + ".log");
+        try {
+            Files.createDirectories(log.getParent());
+            String complete = events(YearMonth.now(zone), 20, 1, 5, 2, new Random(3));
+            Files.write(log, (complete + "A,17").getBytes(StandardCharsets.UTF_8));
+            DetentionHistory history = open("history-torn", system);
+            Checks.checkEquals((long) complete.length(), Files.size(log), "log length after the torn line is dropped");
+            history.record(DetentionHistory.ADMITTED, Checks.randomCitizen(new Random(4), 99), new Facility("F0", "Zero", 1));
+            close(history);
+            List<String> lines = Files.readAllLines(log, StandardCharsets.UTF_8);
+            Checks.checkEquals(21, lines.size(), "log lines");
+            Checks.check(lines.get(20).startsWith("A,") && lines.get(20).endsWith(",99,F0"), "The new event has a line of its own");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // The same events in a past month (served from its index) and in this month (its log is scanned) give the same stays
+    private static void logScanMatchesIndex() {
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        Path folder = DataHandler.getDataPath("history-scan");
+        YearMonth past = YearMonth.now(zone).minusMonths(2);
+        YearMonth current = YearMonth.now(zone);
+        int citizens = 40;
+        String pastLog = events(past, 600, 1, citizens, 4, new Random(8));
+        try {
+            Files.createDirectories(folder);
+            Files.writeString(folder.resolve(past + ".log"), pastLog);
+            Files.writeString(folder.resolve(current + ".log"), events(current, 600, 1001, citizens, 4, new Random(8)));
+            Files.write(folder.resolve(current + ".log"), "R,1".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        close(open("history-scan", system)); // Indexes the past month
+        Checks.check(Files.exists(folder.resolve(past + ".idx")), "The past month is indexed");
+        Checks.check(!Files.exists(folder.resolve(current + ".idx")), "This month is not indexed");
+
+        DetentionHistory history = open("history-scan", system);
+        LocalDateTime pastStart = past.atDay(1).atStartOfDay();
+        LocalDateTime currentStart = current.atDay(1).atStartOfDay();
+        int stays = 0;
+        for (long citizenId = 1; citizenId <= citizens; citizenId++) {
+            List<CitizenFacilityAssignment> indexed = history.getCitizenHistory(citizenId);
+            List<CitizenFacilityAssignment> scanned = history.getCitizenHistory(citizenId + 1000);
+            Checks.checkEquals(indexed.size(), scanned.size(), "stays of citizen " + citizenId);
+            for (int i = 0; i < indexed.size(); i++) {
+                CitizenFacilityAssignment a = indexed.get(i);
+                CitizenFacilityAssignment b = scanned.get(i);
+                Checks.checkEquals(a.getFacilityId(), b.getFacilityId(), "facility of stay " + i + " of citizen " + citizenId);
+                Checks.checkEquals(Duration.between(pastStart, a.getAssignedDate()), Duration.between(currentStart, b.getAssignedDate()),
+                        "admission of stay " + i + " of citizen " + citizenId);
+                Checks.checkEquals(a.getReleaseDate() == null, b.getReleaseDate() == null, "open stay " + i + " of citizen " + citizenId);
+            }
+            stays += indexed.size();
+        }
+        Checks.checkEquals((int) pastLog.lines().filter(line -> line.startsWith("A,")).count(), stays, "stays (one per admission)");
+        for (int f = 0; f < 4; f++) {
+            int indexedCount = history.getFacilityOccupants("F" + f, past.atDay(1)).size();
+            // Stays of the past month still open on this month's first day are left out
+            int scannedCount = (int) history.getFacilityOccupants("F" + f, current.atDay(1)).stream()
+                    .filter(stay -> Long.parseLong(stay.getCitizenId()) > 1000).count();
+            Checks.checkEquals(indexedCount, scannedCount, "stays in F" + f + " on the first day");
+        }
+        close(history);
+    }
+
+    // getRostersAt (last checkpoint before the time, then the events after it) against a replay of every log line up
+    // to the time. Checkpoints every 37 events land at offsets inside months and across month ends; a torn line at the
+    // end of a past month's log must be skipped by both the checkpoint writer and the replay after a checkpoint.
+    private static void rostersMatchReplay() {
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        Path folder = DataHandler.getDataPath("history-rosters");
+        YearMonth first = YearMonth.now(zone).minusMonths(3);
+        Random random = new Random(12);
+        StringBuilder all = new StringBuilder();
+        try {
+            Files.createDirectories(folder);
+            for (int m = 0; m <= 3; m++) {
+                YearMonth month = first.plusMonths(m);
+                String log = events(month, 300 + random.nextInt(100), 1, 30, 5, random);
+                all.append(log);
+                if (m == 1) {
+                    long after = month.atDay(2).atStartOfDay(zone).toInstant().toEpochMilli();
+                    log += "A," + after + ",777,F1"; // Torn: never completed, so it never happened
+                }
+                Files.writeString(folder.resolve(month + ".log"), log);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<String> lines = all.toString().lines().collect(Collectors.toList());
+        close(open("history-rosters", system, 37)); // Writes the checkpoints
+        List<Long> times = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*.chk")) {
+            for (Path file : files) {
+                long time = Long.parseLong(file.getFileName().toString().split("-")[0]);
+                times.addAll(List.of(time - 1, time, time + 1));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Checks.check(times.size() / 3 >= lines.size() / 37, "A checkpoint every 37 events (" + times.size() / 3 + " written)");
+        for (int i = 0; i < 40; i++) {
+            times.add(Long.parseLong(lines.get(random.nextInt(lines.size())).split(",")[1]));
+        }
+        times.add(first.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli()); // Before the first event
+        times.add(first.plusMonths(1).atDay(2).atStartOfDay(zone).toInstant().toEpochMilli()); // At the torn event
+        times.add(System.currentTimeMillis());
+
+        DetentionHistory history = open("history-rosters", system, 37);
+        for (long time : times) {
+            Map<String, long[]> actual = history.getRostersAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(time), zone));
+            Map<String, long[]> expected = replay(lines, time);
+            Checks.checkEquals(expected.keySet(), actual.keySet(), "facilities with detainees at " + time);
+            for (Map.Entry<String, long[]> roster : expected.entrySet()) {
+                Checks.check(Arrays.equals(roster.getValue(), actual.get(roster.getKey())), "roster of " + roster.getKey()
+                        + " at " + time + ": expected " + Arrays.toString(roster.getValue()) + " but was "
+                        + Arrays.toString(actual.get(roster.getKey())));
+            }
+        }
+        close(history);
+    }
+
+    // Every facility's sorted roster after applying each line with a time up to until, from the very first
+    private static Map<String, long[]> replay(List<String> lines, long until) {
+        Map<String, Set<Long>> rosters = new TreeMap<>();
+        for (String line : lines) {
+            String[] fields = line.split(",");
+            if (Long.parseLong(fields[1]) > until) {
+                break;
+            }
+            Set<Long> roster = rosters.computeIfAbsent(fields[3], k -> new TreeSet<>());
+            if (fields[0].charAt(0) == DetentionHistory.ADMITTED) {
+                roster.add(Long.parseLong(fields[2]));
+            } else {
+                roster.remove(Long.parseLong(fields[2]));
+            }
+        }
+        Map<String, long[]> sorted = new TreeMap<>();
+        rosters.forEach((facilityId, roster) -> {
+            if (!roster.isEmpty()) {
+                sorted.put(facilityId, roster.stream().mapToLong(Long::longValue).toArray());
+            }
+        });
+        return sorted;
+    }
+}
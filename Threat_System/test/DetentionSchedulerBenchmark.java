@@ -0,0 +1,104 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// הערכה אחרי כל שינוי מול מתזמן הכליאה: אנליסט מעדכן פעמיים 500 אזרחים סביב גבול הכליאה.
+// Usage: DetentionSchedulerBenchmark [citizens=50000] [windowMillis=250] [maxTriggers=1000]
+// Prints the time of the updates and of the final flush, the roster messages (churn) and whether the rosters end at a
+// fixpoint. With every place taken the detainees' threat levels are the same in both modes; which of two citizens
+// with the same level holds a place depends on when each change was settled.
+public class DetentionSchedulerBenchmark {
+    private static final int FACILITIES = 50;
+
+    // Counts the lines written to System.out: one per roster message
+    private static class LineCounter extends OutputStream {
+        long lines;
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                lines++;
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        long windowMillis = args.length > 1 ? Long.parseLong(args[1]) : 250;
+        int maxTriggers = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        PrintStream console = System.out;
+        LineCounter counter = new LineCounter();
+        Logger.getLogger("").setLevel(Level.WARNING);
+        System.setOut(new PrintStream(counter));
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "detention-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int round = 0; round < 3; round++) {
+            for (boolean scheduled : new boolean[]{false, true}) {
+                ThreatManagementSystem system = DetentionSchedulerCheck.newSystem(new ThreatManagementSystem(null), n, FACILITIES);
+                if (scheduled) {
+                    system.openDetentionScheduler(windowMillis, maxTriggers, timer);
+                }
+                List<Citizen> byThreat = new ArrayList<>(system.getCitizensInThreatRange(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY));
+                int boundary = 0; // The weakest detainees and the strongest free citizens meet here (ascending threat)
+                while (boundary < byThreat.size() && !byThreat.get(boundary).isInDetention()) {
+                    boundary++;
+                }
+                List<Citizen> picked = byThreat.subList(Math.max(0, boundary - 250), Math.min(byThreat.size(), boundary + 250));
+                Random random = new Random(round);
+                long lines = counter.lines;
+                long start = System.nanoTime();
+                for (Citizen citizen : picked) {
+                    int score = 1 + random.nextInt(10);
+                    int support = -1 + random.nextInt(12);
+                    system.updateCitizen(citizen, () -> citizen.reportPublicImpactScore(score));
+                    system.updateCitizen(citizen, () -> citizen.reportGovernmentSupportLevel(support));
+                }
+                long updates = System.nanoTime();
+                int absorbed = system.flushDetention();
+                long end = System.nanoTime();
+                String stats = system.getDetentionSchedulerStats();
+                system.closeDetentionScheduler();
+                console.printf("round %d %-9s: updates %5d ms, with the flush %5d ms, roster messages %,7d, flush absorbed %4d, %s%n",
+                        round, scheduled ? "scheduled" : "direct", (updates - start) / 1_000_000, (end - start) / 1_000_000,
+                        counter.lines - lines, absorbed, fixpoint(system));
+                if (stats != null) {
+                    console.println("    " + stats);
+                }
+            }
+        }
+        timer.shutdownNow();
+    }
+
+    // No free citizen could be admitted: below the static threshold while places are free, else not above the weakest
+    private static String fixpoint(ThreatManagementSystem system) {
+        int freePlaces = 0;
+        for (Facility facility : system.getFacilities()) {
+            freePlaces += facility.getCapacity() - facility.getCurrentOccupancy();
+        }
+        double strongestFree = Double.NEGATIVE_INFINITY;
+        double weakestDetained = Double.POSITIVE_INFINITY;
+        int detained = 0;
+        double detainedLevels = 0;
+        for (Citizen citizen : system.getCitizens()) {
+            if (citizen.isInDetention()) {
+                detained++;
+                detainedLevels += citizen.getThreatLevel();
+                weakestDetained = Math.min(weakestDetained, citizen.getThreatLevel());
+            } else {
+                strongestFree = Math.max(strongestFree, citizen.getThreatLevel());
+            }
+        }
+        boolean settled = freePlaces > 0 ? strongestFree < system.getStaticThreshold() : strongestFree <= weakestDetained;
+        return String.format("%,d detained (threat sum %.2f), %,d places free, fixpoint %s", detained, detainedLevels, freePlaces,
+                settled ? "yes" : "NO");
+    }
+}
@@ -0,0 +1,136 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// מתזמן הכליאה: שינויים שמאוחדים בחלון מגיעים לאותן רמות איום של הכלואים כמו הערכה אחרי כל שינוי, ומעבר חלון שנכשל לא עוצר
+// את החלונות שאחריו.
+public class DetentionSchedulerCheck {
+    private static final String TIMER = "detention-timer";
+
+    public static void main(String[] args) {
+        Checks.run("DetentionSchedulerCheck", () -> {
+            ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, TIMER);
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                scheduledMatchesDirect(timer);
+                failedWindowPassDoesNotStopWindows(timer);
+            } finally {
+                timer.shutdownNow();
+            }
+        });
+    }
+
+    // A system whose static threshold fails once, on the timer's thread, after failWindowPass is set
+    private static class FlakySystem extends ThreatManagementSystem {
+        final AtomicBoolean failWindowPass = new AtomicBoolean();
+
+        FlakySystem() {
+            super(null);
+        }
+
+        @Override
+        public double getStaticThreshold() {
+            if (Thread.currentThread().getName().equals(TIMER) && failWindowPass.compareAndSet(true, false)) {
+                throw new IllegalStateException("broken window pass");
+            }
+            return super.getStaticThreshold();
+        }
+    }
+
+    static ThreatManagementSystem newSystem(ThreatManagementSystem system, int citizens, int facilities) {
+        Random random = new Random(41);
+        List<Citizen> population = new ArrayList<>();
+        for (int i = 0; i < citizens; i++) {
+            population.add(Checks.randomCitizen(random, 1000 + i));
+        }
+        List<Facility> places = new ArrayList<>();
+        for (int f = 0; f < facilities; f++) {
+            places.add(new Facility("F" + f, "Facility " + f, 30));
+        }
+        system.setCitizens(population);
+        system.setFacilities(places);
+        system.manageDetention();
+        return system;
+    }
+
+    // The threat levels of the detainees, sorted. With every place taken these are the top levels whatever the order of
+    // the changes; which of two citizens with the same level got the place, and in which facility, may differ.
+    private static List<Double> detainedLevels(ThreatManagementSystem system) {
+        List<Double> levels = new ArrayList<>();
+        for (Citizen citizen : system.getCitizens()) {
+            if (citizen.isInDetention()) {
+                levels.add(citizen.getThreatLevel());
+            }
+        }
+        levels.sort(null);
+        return levels;
+    }
+
+    // The same updates, settled after each one and in windows (some closed by the timer, some by a full batch)
+    private static void scheduledMatchesDirect(ScheduledExecutorService timer) {
+        ThreatManagementSystem direct = newSystem(new ThreatManagementSystem(null), 3000, 10);
+        ThreatManagementSystem scheduled = newSystem(new ThreatManagementSystem(null), 3000, 10);
+        scheduled.openDetentionScheduler(5, 40, timer);
+        Random random = new Random(42);
+        for (int i = 0; i < 1500; i++) {
+            int ordinal = random.nextInt(3000);
+            int score = 1 + random.nextInt(10);
+            for (ThreatManagementSystem system : List.of(direct, scheduled)) {
+                Citizen citizen = system.getCitizens().get(ordinal);
+                system.updateCitizen(citizen, () -> citizen.reportPublicImpactScore(score));
+            }
+            if (i % 100 == 99) {
+                sleep(20); // Let the window end
+            }
+        }
+        scheduled.flushDetention();
+        Checks.checkEquals(300, detainedLevels(direct).size(), "detainees (every place taken)");
+        Checks.checkEquals(detainedLevels(direct), detainedLevels(scheduled), "threat levels of the detainees");
+        scheduled.closeDetentionScheduler();
+        Checks.checkEquals(detainedLevels(direct), detainedLevels(scheduled), "threat levels of the detainees after the scheduler is closed");
+    }
+
+    // The pass at the end of a window throws; a change made afterwards is still settled by the next window's pass
+    private static void failedWindowPassDoesNotStopWindows(ScheduledExecutorService timer) {
+        FlakySystem system = (FlakySystem) newSystem(new FlakySystem(), 2000, 5);
+        system.openDetentionScheduler(5, 1000, timer);
+        List<Citizen> free = new ArrayList<>();
+        for (Citizen citizen : system.getCitizens()) {
+            if (!citizen.isInDetention()) {
+                free.add(citizen);
+            }
+        }
+        system.failWindowPass.set(true);
+        Citizen first = free.get(0);
+        system.updateCitizen(first, first::setThreatLevelToMax);
+        for (int i = 0; i < 200 && system.failWindowPass.get(); i++) {
+            sleep(10);
+        }
+        Checks.check(!system.failWindowPass.get(), "The window's pass ran (and failed)");
+        Checks.check(!first.isInDetention(), "The failed pass placed nobody");
+
+        Citizen second = free.get(1);
+        system.updateCitizen(second, second::setThreatLevelToMax);
+        for (int i = 0; i < 200 && !second.isInDetention(); i++) {
+            sleep(10);
+        }
+        Checks.check(second.isInDetention(), "The next window's pass detained the citizen changed after the failure");
+        Checks.check(first.isInDetention(), "The next window's pass detained the citizen the failed pass left out");
+        system.closeDetentionScheduler();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// פותר הכליאה במנה אחת: בנייה ויישוב של 200 אלף אזרחים, ויישוב אחרי שינוי ציון של חמישית מהם, עם 100 עד 5000 מתקנים.
+// Usage: DetentionSolverBenchmark [citizens=200000] [rounds=5]
+// The bulk settle is also run by DetentionSolverCheck.settleOneAtATime, the one-at-a-time loop the engine used before,
+// on the same state (its time is for plain data, without the engine's bookkeeping); the placements must be the same.
+public class DetentionSolverBenchmark {
+    // Facilities and their base capacity: the same places, spread over more and smaller facilities
+    private static final int[][] SHAPES = {{100, 500}, {1_000, 50}, {5_000, 10}};
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        PrintStream console = System.out;
+        Logger.getLogger("").setLevel(Level.WARNING);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "detention-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int round = 0; round < rounds; round++) {
+            for (int[] shape : SHAPES) {
+                ThreatManagementSystem system = newSystem(n, shape[0], shape[1]);
+                long start = System.nanoTime();
+                system.manageDetention();
+                long built = System.nanoTime();
+                int detained = DetentionSolverCheck.rosters(system).size();
+
+                // A fifth of the citizens rescored while the scheduler holds the settle back, then one flush
+                system.openDetentionScheduler(60_000, Integer.MAX_VALUE, timer);
+                List<Citizen> citizens = new ArrayList<>(system.getCitizens());
+                Random random = new Random(5);
+                for (int i = 0; i < citizens.size() / 5; i++) {
+                    Citizen citizen = citizens.get(random.nextInt(citizens.size()));
+                    int score = 1 + random.nextInt(10);
+                    system.updateCitizen(citizen, () -> citizen.setPublicImpactScore(score));
+                }
+                Map<Long, String> before = DetentionSolverCheck.rosters(system);
+                long reference = System.nanoTime();
+                Map<Long, String> expected = DetentionSolverCheck.settleOneAtATime(system.getCitizens(), system.getFacilities(),
+                        before, system.getStaticThreshold());
+                long flush = System.nanoTime();
+                int absorbed = system.flushDetention();
+                long end = System.nanoTime();
+                system.closeDetentionScheduler();
+                boolean same = expected.equals(DetentionSolverCheck.rosters(system));
+
+                console.printf("round %d, %,d citizens, %,5d facilities: build + settle %5d ms (%,d detained) | %,d changes: batch %4d ms, one at a time %5d ms, same placements %s%n",
+                        round, n, shape[0], (built - start) / 1_000_000, detained, absorbed, (end - flush) / 1_000_000,
+                        (flush - reference) / 1_000_000, same ? "yes" : "NO");
+            }
+        }
+        timer.shutdownNow();
+    }
+
+    private static ThreatManagementSystem newSystem(int citizens, int facilities, int capacity) {
+        Random random = new Random(1);
+        List<Citizen> population = new ArrayList<>();
+        for (int i = 0; i < citizens; i++) {
+            population.add(Checks.randomCitizen(random, 100_000 + i));
+        }
+        List<Facility> places = new ArrayList<>();
+        for (int f = 0; f < facilities; f++) {
+            places.add(new Facility("F" + f, "Facility " + f, capacity + (f % 7) * 3));
+        }
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        system.setCitizens(population);
+        system.setFacilities(places);
+        return system;
+    }
+}
@@ -0,0 +1,179 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// פותר הכליאה במנה אחת מול הלולאה הקודמת שהכניסה מועמד אחד בכל פעם: אותו אזרח באותו מתקן, כולל החלפות.
+// Every round holds back a batch of random changes (an open DetentionScheduler whose window never ends), then the
+// engine settles them in one plan. The same state is settled by settleOneAtATime, the loop the engine used before: the
+// strongest free candidate goes to the facility with the lowest occupancy rate while places are free, or takes the
+// place of the weakest detainee while it is strictly more threatening. Threat levels come from a short list, so ties
+// (broken by citizen ID) are common.
+// Arguments: [workloads] [rounds per workload] [first seed]
+public class DetentionSolverCheck {
+    public static void main(String[] args) {
+        int workloads = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long firstSeed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        Checks.run("DetentionSolverCheck", () -> {
+            ScheduledExecutorService idleTimer = new ScheduledThreadPoolExecutor(1);
+            try {
+                int[] totals = new int[2];
+                for (long seed = firstSeed; seed < firstSeed + workloads; seed++) {
+                    run(seed, rounds, idleTimer, totals);
+                }
+                Checks.log(workloads * rounds + " batches compared placement by placement: " + totals[0] + " admissions, "
+                        + totals[1] + " evictions");
+            } finally {
+                idleTimer.shutdownNow();
+            }
+        });
+    }
+
+    private static void run(long seed, int rounds, ScheduledExecutorService idleTimer, int[] totals) {
+        Random random = new Random(seed);
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        List<Citizen> citizens = new ArrayList<>();
+        int citizenCount = 20 + random.nextInt(80);
+        for (int i = 0; i < citizenCount; i++) {
+            Citizen citizen = Checks.randomCitizen(random, 1000 + i);
+            citizen.setThreatLevelManually(threatLevel(random));
+            citizens.add(citizen);
+        }
+        List<Facility> facilities = new ArrayList<>();
+        int facilityCount = 1 + random.nextInt(6);
+        for (int f = 0; f < facilityCount; f++) {
+            facilities.add(new Facility("F" + f, "Facility " + f, 1 + random.nextInt(12)));
+        }
+        system.setCitizens(citizens);
+        system.setFacilities(facilities);
+        system.manageDetention();
+        system.openDetentionScheduler(TimeUnit.DAYS.toMillis(1), Integer.MAX_VALUE, idleTimer); // Never settles by itself
+        long nextCitizenId = 1000 + citizenCount;
+        int nextFacilityId = facilityCount;
+
+        for (int round = 0; round < rounds; round++) {
+            int changes = 1 + random.nextInt(30);
+            for (int i = 0; i < changes; i++) {
+                int kind = random.nextInt(20);
+                List<Citizen> current = system.getCitizens();
+                if (kind < 14 && !current.isEmpty()) {
+                    Citizen citizen = current.get(random.nextInt(current.size()));
+                    double level = threatLevel(random);
+                    system.updateCitizen(citizen, () -> citizen.setThreatLevelManually(level));
+                } else if (kind < 17) {
+                    Citizen citizen = Checks.randomCitizen(random, nextCitizenId++);
+                    double level = threatLevel(random);
+                    system.runBatch(() -> {
+                        system.addCitizen(citizen);
+                        citizen.setThreatLevelManually(level);
+                    });
+                } else if (kind < 19 && current.size() > 5) {
+                    system.removeCitizen(current.get(random.nextInt(current.size())));
+                } else {
+                    int id = nextFacilityId++;
+                    system.addFacility(new Facility("F" + id, "Facility " + id, 1 + random.nextInt(6)));
+                }
+            }
+            Map<Long, String> before = rosters(system);
+            Map<Long, String> expected = settleOneAtATime(system.getCitizens(), system.getFacilities(), before,
+                    system.getStaticThreshold());
+            system.flushDetention();
+            Map<Long, String> placements = rosters(system);
+            String where = "seed " + seed + ", round " + round;
+            Checks.checkEquals(expected, placements, where + ": placements");
+            for (Citizen citizen : system.getCitizens()) {
+                Checks.checkEquals(placements.containsKey(citizen.getNumericId()), citizen.isInDetention(),
+                        where + ": detention flag of " + citizen.getId());
+            }
+            for (Map.Entry<Long, String> placement : placements.entrySet()) {
+                if (!placement.getValue().equals(before.get(placement.getKey()))) {
+                    totals[0]++;
+                }
+            }
+            for (Long id : before.keySet()) {
+                if (!placements.containsKey(id) && system.findCitizenById(id) != null) {
+                    totals[1]++;
+                }
+            }
+        }
+        system.closeDetentionScheduler();
+    }
+
+    // Levels from a short list around the static threshold (500), so that citizens often tie
+    private static double threatLevel(Random random) {
+        return 50 + random.nextInt(40) * 25;
+    }
+
+    // The settle before the batch solver, on plain data: rosters maps citizen ID -> facility ID. Returns the rosters
+    // after admitting the strongest free candidate, one at a time, until none can be placed.
+    static Map<Long, String> settleOneAtATime(List<Citizen> citizens, List<Facility> facilities, Map<Long, String> rosters,
+                                              double staticThreshold) {
+        Map<Long, String> placed = new TreeMap<>(rosters);
+        TreeSet<Citizen> free = new TreeSet<>(ThreatKey::compare);
+        TreeSet<Citizen> detained = new TreeSet<>(ThreatKey::compare);
+        for (Citizen citizen : citizens) {
+            (placed.containsKey(citizen.getNumericId()) ? detained : free).add(citizen);
+        }
+        int[] occupancy = new int[facilities.size()];
+        for (int f = 0; f < facilities.size(); f++) {
+            occupancy[f] = facilities.get(f).getCurrentOccupancy();
+        }
+        while (!free.isEmpty()) {
+            Citizen candidate = free.last();
+            int facility = withMostSpace(facilities, occupancy);
+            if (facility >= 0) {
+                if (candidate.getThreatLevel() < staticThreshold) {
+                    break;
+                }
+                occupancy[facility]++;
+                placed.put(candidate.getNumericId(), facilities.get(facility).getFacilityId());
+            } else {
+                Citizen weakest = detained.isEmpty() ? null : detained.first();
+                if (weakest == null || candidate.getThreatLevel() <= weakest.getThreatLevel()) {
+                    break;
+                }
+                detained.pollFirst();
+                free.add(weakest);
+                placed.put(candidate.getNumericId(), placed.remove(weakest.getNumericId()));
+            }
+            free.remove(candidate);
+            detained.add(candidate);
+        }
+        return placed;
+    }
+
+    // The facility with space and the lowest occupancy rate, the first listed on a tie; -1 if all are full
+    private static int withMostSpace(List<Facility> facilities, int[] occupancy) {
+        int best = -1;
+        double bestRate = Double.MAX_VALUE;
+        for (int f = 0; f < facilities.size(); f++) {
+            int capacity = facilities.get(f).getCapacity();
+            if (occupancy[f] < capacity) {
+                double rate = (double) occupancy[f] / capacity;
+                if (rate < bestRate) {
+                    best = f;
+                    bestRate = rate;
+                }
+            }
+        }
+        return best;
+    }
+
+    // Citizen ID -> ID of the facility holding it, read from the rosters themselves
+    static Map<Long, String> rosters(ThreatManagementSystem system) {
+        Map<Long, String> placements = new TreeMap<>();
+        for (Facility facility : system.getFacilities()) {
+            for (long id : facility.getDetaineeIds()) {
+                String previous = placements.put(id, facility.getFacilityId());
+                Checks.check(previous == null, "Citizen " + id + " is detained in " + previous + " and " + facility.getFacilityId());
+            }
+        }
+        return placements;
+    }
+}
@@ -0,0 +1,44 @@
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import javax.swing.SwingUtilities;
+
+// זמני ייצוא ההיסטוריה לפי פורמט, כשהשורות נאספות ב-EDT כמו בממשק.
+// Usage: HistoryExportBenchmark [citizens=1000000] [files=history.txt,history.csv,history.jsonl,history.csv.gz]
+// The files are written to the current folder and deleted before each run.
+public class HistoryExportBenchmark {
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        String[] files = (args.length > 1 ? args[1] : "history.txt,history.csv,history.jsonl,history.csv.gz").split(",");
+        List<Citizen> citizens = HistoryExportCheck.citizens(n);
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        system.setCitizens(citizens);
+        System.setOut(console);
+        System.out.printf("%,d citizens%n", n);
+        for (int round = 0; round < 2; round++) {
+            for (String name : files) {
+                File file = new File(name);
+                file.delete();
+                long start = System.nanoTime();
+                try {
+                    system.newHistoryExport(name).run(HistoryExportBenchmark::onEdt, null, () -> false);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                System.out.printf("%-16s %5d ms, %,8d KB%n", name, (System.nanoTime() - start) / 1_000_000, file.length() / 1024);
+            }
+        }
+    }
+
+    private static void onEdt(Runnable task) {
+        try {
+            SwingUtilities.invokeAndWait(task);
+        } catch (InterruptedException | InvocationTargetException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
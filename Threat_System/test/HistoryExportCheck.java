@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+// ייצוא היסטוריית האזרחים: ייצוא שבוטל או נכשל משאיר את הקובץ כפי שהיה, בלי קובץ זמני.
+public class HistoryExportCheck {
+    private static final String EXISTING = "Earlier export\n";
+
+    public static void main(String[] args) {
+        Checks.run("HistoryExportCheck", () -> {
+            Path folder = DataHandler.getDataPath("exports");
+            List<Citizen> citizens = citizens(20_000); // A few batches
+            try {
+                Files.createDirectories(folder);
+                for (String name : new String[]{"history.txt", "history.csv", "history.jsonl", "history.csv.gz"}) {
+                    Path file = folder.resolve(name);
+                    completeExportIsWritten(citizens, file);
+                    cancelledExportLeavesFileAsItWas(citizens, file);
+                    failedExportLeavesFileAsItWas(citizens, file);
+                }
+                try (Stream<Path> files = Files.list(folder)) {
+                    Checks.checkEquals(0L, files.filter(file -> file.toString().endsWith(".tmp")).count(),
+                            "temp files left in the export folder");
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    static List<Citizen> citizens(int count) {
+        Random random = new Random(16);
+        List<Citizen> citizens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Citizen citizen = Checks.randomCitizen(random, 100_000 + i);
+            if (i == 3) {
+                citizen.setName("Quote \"q\", comma");
+            }
+            citizens.add(citizen);
+        }
+        return citizens;
+    }
+
+    private static String read(Path file) throws IOException {
+        try (InputStream in = file.toString().endsWith(".gz") ? new GZIPInputStream(Files.newInputStream(file))
+                : Files.newInputStream(file)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void reset(Path file) throws IOException {
+        if (file.toString().endsWith(".gz")) {
+            Files.deleteIfExists(file);
+        } else {
+            Files.writeString(file, EXISTING);
+        }
+    }
+
+    private static void completeExportIsWritten(List<Citizen> citizens, Path file) throws IOException {
+        reset(file);
+        CitizenHistoryExport export = new CitizenHistoryExport(citizens, file.toString());
+        Checks.checkEquals(citizens.size(), export.run(Runnable::run, null, () -> false), "rows exported to " + file);
+        String content = read(file);
+        boolean text = export.getFormat() == CitizenHistoryExport.Format.TEXT;
+        Checks.checkEquals(text, content.startsWith(EXISTING), "text appends, the other formats replace: " + file);
+        long lines = content.lines().count();
+        int header = export.getFormat() == CitizenHistoryExport.Format.JSONL ? 0 : 1;
+        Checks.checkEquals(citizens.size() + header + (text ? 1L : 0L), lines, "lines in " + file);
+        Checks.check(content.contains("Citizen100003") || content.contains("Quote"), "The rows are in " + file);
+    }
+
+    // Cancelled after two batches: a CancellationException, and the file as it was before the export
+    private static void cancelledExportLeavesFileAsItWas(List<Citizen> citizens, Path file) throws IOException {
+        reset(file);
+        String before = Files.exists(file) ? read(file) : null;
+        int[] batches = {0};
+        try {
+            new CitizenHistoryExport(citizens, file.toString()).run(Runnable::run, (written, total) -> batches[0]++,
+                    () -> batches[0] >= 2);
+            throw new AssertionError("A cancelled export returned normally: " + file);
+        } catch (CancellationException expected) {
+            // Cancelled
+        }
+        Checks.checkEquals(before, Files.exists(file) ? read(file) : null, "content of " + file + " after a cancelled export");
+    }
+
+    // The owner thread fails in the middle of the export
+    private static void failedExportLeavesFileAsItWas(List<Citizen> citizens, Path file) throws IOException {
+        reset(file);
+        String before = Files.exists(file) ? read(file) : null;
+        int[] fetches = {0};
+        try {
+            new CitizenHistoryExport(citizens, file.toString()).run(task -> {
+                if (++fetches[0] == 2) {
+                    throw new IllegalStateException("Error reading citizens");
+                }
+                task.run();
+            }, null, () -> false);
+            throw new AssertionError("A failed export returned normally: " + file);
+        } catch (IllegalStateException expected) {
+            // Failed
+        }
+        Checks.checkEquals(before, Files.exists(file) ? read(file) : null, "content of " + file + " after a failed export");
+    }
+}
@@ -0,0 +1,61 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// עלות שינוי בודד לפי גודל האוכלוסייה: שכתוב הקובץ המלא מול יומן השינויים.
+// Usage: JournalBenchmark [populations=10000,100000,1000000]
+// Times addCitizen in microseconds: full-file rewrite (no journal), journal with a sync per record, and journal with
+// 50 ms group commit. Run with a scratch -Ddata.folder; every population writes its own files there.
+public class JournalBenchmark {
+    public static void main(String[] args) {
+        String[] populations = (args.length > 0 ? args[0] : "10000,100000,1000000").split(",");
+        PrintStream console = System.out;
+        System.out.printf("%-16s", "");
+        for (String population : populations) {
+            System.out.printf("%12s", population);
+        }
+        System.out.println();
+        for (String mode : new String[]{"full rewrite", "journal, sync", "journal, 50ms"}) {
+            System.out.printf("%-16s", mode);
+            for (String population : populations) {
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                double micros = microsPerAdd(mode, Integer.parseInt(population));
+                System.setOut(console);
+                System.out.printf("%12.0f", micros);
+            }
+            System.out.println();
+        }
+    }
+
+    private static Citizen citizen(Random random, int i) {
+        return new Citizen("Citizen" + i, LocalDate.of(1950, 1, 1).plusDays(random.nextInt(20_000)),
+                new String[]{"A", "B", "C"}[random.nextInt(3)], 1 + random.nextInt(10), -1 + random.nextInt(12),
+                1 + random.nextInt(10), false, Long.toString(100_000 + i));
+    }
+
+    private static double microsPerAdd(String mode, int population) {
+        Random random = new Random(1);
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        List<Citizen> citizens = new ArrayList<>(population);
+        for (int i = 0; i < population; i++) {
+            citizens.add(citizen(random, i));
+        }
+        system.setCitizens(citizens);
+        system.setFacilities(new ArrayList<>(List.of(new Facility("F1", "One", population / 20 + 1))));
+        system.manageDetention();
+        if (mode.startsWith("journal")) {
+            system.openJournal(mode.endsWith("50ms") ? 50 : 0, 256, 0);
+        }
+        int adds = mode.startsWith("full") ? (population >= 100_000 ? 5 : 50) : 2000;
+        long start = System.nanoTime();
+        for (int i = 0; i < adds; i++) {
+            system.addCitizen(citizen(random, population + i));
+        }
+        long elapsed = System.nanoTime() - start;
+        system.closeJournal();
+        return elapsed / 1e3 / adds;
+    }
+}
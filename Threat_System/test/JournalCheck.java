@@ -0,0 +1,68 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+// יומן השינויים: שחזור אחרי קריסה עם רשומה קטועה, והשמירה המלאה לקובץ האזרחים כשאין יומן פתוח.
+public class JournalCheck {
+    public static void main(String[] args) {
+        Checks.run("JournalCheck", () -> {
+            withoutJournalSavesTheCitizensFile();
+            recoversAfterCrashWithTornRecord();
+        });
+    }
+
+    private static Citizen citizen(String name, String id) {
+        return new Citizen(name, LocalDate.of(1980, 1, 1), "C", 9, -1, 9, false, id);
+    }
+
+    // The fallback full-file saves go to the file MainGUI loads
+    private static void withoutJournalSavesTheCitizensFile() {
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        system.setCitizens(new ArrayList<>());
+        system.setFacilities(new ArrayList<>());
+        system.addCitizen(citizen("Saved", "55"));
+        system.addFacility(new Facility("F1", "One", 1));
+        Checks.check(Files.exists(DataHandler.getDataPath(ThreatManagementSystem.CITIZENS_FILE)), "citizens.txt is written");
+        Checks.check(!Files.exists(DataHandler.getDataPath("citizen.txt")), "Nothing is written to citizen.txt");
+        ThreatManagementSystem loaded = new ThreatManagementSystem(null);
+        loaded.setCitizens(DataHandler.loadCitizensFromFile(loaded, ThreatManagementSystem.CITIZENS_FILE));
+        loaded.setFacilities(DataHandler.loadFacilitiesFromFile(loaded, ThreatManagementSystem.FACILITIES_FILE));
+        Checks.check(loaded.findCitizenById(55) != null, "The added citizen is loaded back");
+        Checks.check(loaded.findFacilityById("F1") != null, "The added facility is loaded back");
+    }
+
+    private static void recoversAfterCrashWithTornRecord() {
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        system.setCitizens(new ArrayList<>());
+        system.setFacilities(new ArrayList<>());
+        system.manageDetention();
+        system.openJournal(0, 256, 0);
+        for (int i = 0; i < 5; i++) {
+            system.addCitizen(citizen("Citizen" + i, Integer.toString(100 + i)));
+        }
+        Checks.check(system.saveSnapshot(), "Snapshot saved");
+        system.removeCitizen(system.findCitizenById(101));
+        system.addCitizen(citizen("Late", "777"));
+        system.addFacility(new Facility("F9", "Nine", 2));
+        ThreatManagementSystem recovered = new ThreatManagementSystem(null);
+        try { // Crash: the journal is never closed and the last record is half written
+            Files.write(DataHandler.getDataPath("journal.log"), "+C,torn,19".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+            Checks.check(DataHandler.loadSnapshotFromFile(recovered, "snapshot.bin"), "Snapshot loaded");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int replayed = Checks.withErrorsExpected(recovered::recoverFromJournal);
+        recovered.manageDetention();
+        Checks.checkEquals(3, replayed, "records replayed");
+        Checks.checkEquals(5, recovered.getCitizens().size(), "citizens after recovery");
+        Checks.check(recovered.findCitizenById(101) == null, "The removal after the snapshot is replayed");
+        Checks.check(recovered.findCitizenById(777) != null, "The addition after the snapshot is replayed");
+        Checks.check(recovered.findFacilityById("F9") != null, "The facility added after the snapshot is replayed");
+        Checks.checkEquals(2, recovered.findFacilityById("F9").getCurrentOccupancy(), "detainees of the recovered facility");
+    }
+}
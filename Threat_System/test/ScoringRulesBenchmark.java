@@ -0,0 +1,47 @@
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.List;
+
+// זמני הניקוד: הנוסחה הכתובה בקוד מול החוקים המקומפלים מול הניקוד העמודתי.
+// Usage: ScoringRulesBenchmark [citizens=5000000] [rounds=6]
+// Ages are computed once up front, so the first two columns time the scoring only.
+public class ScoringRulesBenchmark {
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        LocalDate today = LocalDate.now();
+        List<Citizen> citizens = CitizenTableCheck.population(n, today, 10);
+        int[] ages = new int[n];
+        for (int i = 0; i < n; i++) {
+            ages[i] = Period.between(citizens.get(i).getBirthDate(), today).getYears();
+        }
+        ThreatScoringRules rules = ThreatScoringRules.getCurrent();
+        CitizenTable table = CitizenTable.of(citizens);
+
+        System.out.printf("%,d citizens%n", n);
+        long[] best = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+        double sum = 0;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                Citizen c = citizens.get(i);
+                sum += ScoringRulesCheck.hardCodedThreatLevel(ages[i], c.getOrigin(), c.getEconomicPercentile(),
+                        c.getGovernmentSupportLevel(), c.getPublicImpactScore(), c.isParliamentMember());
+            }
+            long hardCoded = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                Citizen c = citizens.get(i);
+                sum += rules.score(ages[i], c.getOrigin(), c.getEconomicPercentile(), c.getGovernmentSupportLevel(),
+                        c.getPublicImpactScore(), c.isParliamentMember());
+            }
+            long compiled = System.nanoTime();
+            table.scoreAll(today);
+            long kernel = System.nanoTime();
+            best[0] = Math.min(best[0], hardCoded - start);
+            best[1] = Math.min(best[1], compiled - hardCoded);
+            best[2] = Math.min(best[2], kernel - compiled);
+        }
+        System.out.printf("best of %d: hand-written formula %d ms | compiled rules %d ms | CitizenTable kernel %d ms%s%n",
+                rounds, best[0] / 1_000_000, best[1] / 1_000_000, best[2] / 1_000_000, sum > 0 ? "" : " (empty)");
+    }
+}
@@ -0,0 +1,135 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.List;
+import java.util.Map;
+
+// חוקי הניקוד המקומפלים: ברירת המחדל וקובץ Data/threat_rules.txt נותנים בדיוק את הנוסחה הקודמת.
+public class ScoringRulesCheck {
+    public static void main(String[] args) {
+        Checks.requireScratchDataFolder();
+        Checks.run("ScoringRulesCheck", () -> {
+            ThreatScoringRules shipped = loadShippedRules();
+            matchesHardCodedFormula(ThreatScoringRules.defaults(), "the built-in defaults");
+            matchesHardCodedFormula(shipped, "Data/threat_rules.txt");
+            invalidRulesAreRejected();
+            swappingRulesMakesScoresStale();
+            memoizedAgeFollowsBirthdays();
+            ThreatScoringRules.setCurrent(ThreatScoringRules.defaults());
+        });
+    }
+
+    // The formula the rules replaced
+    static double hardCodedThreatLevel(int age, String origin, int economicPercentile, int governmentSupportLevel,
+                                       int publicImpactScore, boolean isParliamentMember) {
+        double threat = (10 - governmentSupportLevel) * 20 + publicImpactScore * 20;
+        if (age >= 20 && age <= 50) {
+            threat += 100;
+        }
+        if ((age > 50 && age <= 75) || (age >= 15 && age < 20)) {
+            threat += 50;
+        }
+        if ("B".equalsIgnoreCase(origin)) {
+            threat += 40;
+        } else if ("C".equalsIgnoreCase(origin)) {
+            threat += 80;
+        }
+        threat += economicPercentile * 20;
+        if (isParliamentMember) {
+            threat *= 1.25;
+        }
+        return Math.min(1000, Math.max(1, threat));
+    }
+
+    // The rules file of the repository, loaded through the scratch data folder like MainGUI loads it from Data
+    private static ThreatScoringRules loadShippedRules() {
+        try {
+            Files.copy(Paths.get("..", "Data", "threat_rules.txt"), DataHandler.getDataPath("threat_rules.txt"),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ThreatScoringRules rules = DataHandler.loadScoringRulesFromFile("threat_rules.txt");
+        Checks.check(rules != null, "Data/threat_rules.txt compiles");
+        return rules;
+    }
+
+    // Every combination of the inputs, at every age the rules know
+    private static void matchesHardCodedFormula(ThreatScoringRules rules, String what) {
+        for (int age = 0; age <= ThreatScoringRules.MAX_AGE; age++) {
+            for (String origin : new String[]{"A", "B", "C"}) {
+                for (int economic = 1; economic <= 10; economic++) {
+                    for (int support = -1; support <= 10; support++) {
+                        for (int impact = 1; impact <= 10; impact++) {
+                            for (boolean parliament : new boolean[]{false, true}) {
+                                double expected = hardCodedThreatLevel(age, origin, economic, support, impact, parliament);
+                                double actual = rules.score(age, origin, economic, support, impact, parliament);
+                                if (expected != actual) {
+                                    throw new AssertionError(what + " scores " + actual + " instead of " + expected
+                                            + " for age " + age + ", origin " + origin + ", economic " + economic
+                                            + ", support " + support + ", impact " + impact + ", parliament " + parliament);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void invalidRulesAreRejected() {
+        for (Map<String, String> definitions : List.of(Map.of("unknown.key", "1"), Map.of("impact.perPoint", "x"),
+                Map.of("age.20", "100"))) {
+            try {
+                ThreatScoringRules.compile(definitions);
+                throw new AssertionError("Invalid rules compiled: " + definitions);
+            } catch (IllegalArgumentException expected) {
+                // Rejected
+            }
+        }
+        try {
+            Files.writeString(DataHandler.getDataPath("broken_rules.txt"), "impact.perPoint\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Checks.check(Checks.withErrorsExpected(() -> DataHandler.loadScoringRulesFromFile("broken_rules.txt")) == null,
+                "A malformed rules file is rejected");
+        Checks.check(Checks.withErrorsExpected(() -> DataHandler.loadScoringRulesFromFile("missing_rules.txt")) == null,
+                "A missing rules file is rejected");
+    }
+
+    // A memoized score was calculated with the rules current then: new rules make it stale
+    private static void swappingRulesMakesScoresStale() {
+        ThreatScoringRules.setCurrent(ThreatScoringRules.defaults());
+        Citizen citizen = new Citizen("Citizen", LocalDate.now().minusYears(30), "B", 5, 5, 5, false, "1");
+        double before = citizen.calculateThreatLevel();
+        ThreatScoringRules.setCurrent(ThreatScoringRules.compile(Map.of("origin.B", "140")));
+        Checks.check(citizen.isThreatLevelStale(LocalDate.now()), "New rules make the memoized score stale");
+        Checks.checkEquals(before + 100, citizen.calculateThreatLevel(), "score under the new rules");
+    }
+
+    // The memoized age (scoring, toString) is the calendar age every day, through birthdays, Feb 29 and days going back
+    private static void memoizedAgeFollowsBirthdays() {
+        for (LocalDate birthDate : List.of(LocalDate.of(2000, 2, 29), LocalDate.of(1990, 12, 31), LocalDate.of(1985, 1, 1),
+                LocalDate.of(2019, 6, 15))) {
+            Citizen citizen = new Citizen("Citizen", birthDate, "A", 5, 5, 5, false, "1");
+            for (LocalDate day = LocalDate.of(2019, 6, 15); day.isBefore(LocalDate.of(2025, 1, 1)); day = day.plusDays(1)) {
+                Checks.checkEquals(Period.between(birthDate, day).getYears(), citizen.ageOn(day),
+                        "age on " + day + " of " + birthDate);
+            }
+            LocalDate back = LocalDate.of(2020, 3, 1);
+            Checks.checkEquals(Period.between(birthDate, back).getYears(), citizen.ageOn(back),
+                    "age on " + back + " of " + birthDate + " afterwards");
+        }
+        LocalDate today = LocalDate.now();
+        Citizen citizen = new Citizen("Citizen", today.minusYears(40), "A", 5, 5, 5, false, "1");
+        Checks.checkEquals(40, citizen.calculateAge(), "age");
+        citizen.setBirthDate(today.minusYears(30).minusDays(1));
+        Checks.checkEquals(30, citizen.calculateAge(), "age after the birth date changed");
+    }
+}
@@ -0,0 +1,93 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// תמונת המצב הבינארית מול קובצי הטקסט: שמירה וטעינה של מיליון אזרחים.
+// Usage: SnapshotBenchmark [citizens=1000000] [rounds=3]
+// Times the save (capture, then writeBinary or the two text files), the read alone (BinarySnapshot.read, or parsing
+// the two text files) and the load with the install in a new system (loadSnapshotFromFile, or the parse and then
+// setCitizens/setFacilities, as MainGUI does at start), and prints the file sizes. Both loads must give the same
+// citizens and rosters. Run with a scratch -Ddata.folder and a heap of 2 GB or more (-Xmx2g).
+public class SnapshotBenchmark {
+    private static final String BINARY = "bench-snapshot.bin";
+    private static final String CITIZENS = "bench-citizens.txt";
+    private static final String FACILITIES = "bench-facilities.txt";
+
+    public static void main(String[] args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        PrintStream console = System.out;
+        Logger.getLogger("").setLevel(Level.WARNING);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        ThreatManagementSystem system = newSystem(n);
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            DataSnapshot snapshot = DataSnapshot.capture(system.getCitizens(), system.getFacilities());
+            long captured = System.nanoTime();
+            check(snapshot.writeBinary(BINARY), "binary snapshot written");
+            long binarySaved = System.nanoTime();
+            check(snapshot.write(CITIZENS, FACILITIES), "text files written");
+            long textSaved = System.nanoTime();
+
+            int read = BinarySnapshot.read(DataHandler.getDataPath(BINARY)).citizens.size();
+            long binaryRead = System.nanoTime();
+            ThreatManagementSystem fromBinary = new ThreatManagementSystem(null);
+            check(DataHandler.loadSnapshotFromFile(fromBinary, BINARY), "binary snapshot loaded");
+            long binaryLoaded = System.nanoTime();
+            ThreatManagementSystem fromText = new ThreatManagementSystem(null);
+            List<Citizen> parsed = DataHandler.loadCitizensFromFile(fromText, CITIZENS);
+            List<Facility> facilities = DataHandler.loadFacilitiesFromFile(fromText, FACILITIES);
+            long textRead = System.nanoTime();
+            fromText.setCitizens(parsed);
+            fromText.setFacilities(facilities);
+            long textLoaded = System.nanoTime();
+            boolean same = read == n && DetentionSolverCheck.rosters(fromBinary).equals(DetentionSolverCheck.rosters(fromText))
+                    && fromBinary.getCitizens().size() == n && fromText.getCitizens().size() == n;
+
+            console.printf("round %d, %,d citizens (capture %4d ms) | save: binary %5d ms, text %5d ms | read: binary %5d ms, text %5d ms | load and install: binary %5d ms, text %5d ms | same state %s%n",
+                    round, n, (captured - start) / 1_000_000, (binarySaved - captured) / 1_000_000,
+                    (textSaved - binarySaved) / 1_000_000, (binaryRead - textSaved) / 1_000_000,
+                    (textRead - binaryLoaded) / 1_000_000, (binaryLoaded - binaryRead) / 1_000_000,
+                    (textLoaded - binaryLoaded) / 1_000_000, same ? "yes" : "NO");
+        }
+        console.printf("files: binary %,d bytes, text %,d bytes%n", size(BINARY), size(CITIZENS) + size(FACILITIES));
+    }
+
+    private static ThreatManagementSystem newSystem(int citizens) {
+        Random random = new Random(13);
+        List<Citizen> population = new ArrayList<>(citizens);
+        for (int i = 0; i < citizens; i++) {
+            population.add(Checks.randomCitizen(random, 100_000_000L + i));
+        }
+        List<Facility> places = new ArrayList<>();
+        for (int f = 0; f < 200; f++) {
+            places.add(new Facility("F" + f, "Facility " + f, citizens / 2000 + f % 7));
+        }
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        system.setCitizens(population);
+        system.setFacilities(places);
+        system.manageDetention();
+        return system;
+    }
+
+    private static long size(String filename) {
+        try {
+            return Files.size(DataHandler.getDataPath(filename));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new IllegalStateException("Failed: " + what);
+        }
+    }
+}
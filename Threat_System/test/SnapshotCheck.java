@@ -0,0 +1,201 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// תמונת המצב הבינארית: קובץ פגום או קטוע לא נטען בשקט - הוא מועבר הצידה ונזרקת שגיאה; ותמונה שנשמרת בזמן שחוטים אחרים
+// משנים את המתקנים עקבית.
+public class SnapshotCheck {
+    private static final String SNAPSHOT = "snapshot-check.bin";
+
+    public static void main(String[] args) {
+        Checks.run("SnapshotCheck", () -> {
+            detentionFlagIsReadBack();
+            damagedSnapshotIsQuarantined("a flipped byte", bytes -> bytes[bytes.length / 2] ^= 1);
+            damagedSnapshotIsQuarantined("a truncated file", bytes -> Arrays.fill(bytes, bytes.length - 40, bytes.length, (byte) 0));
+            damagedSnapshotIsQuarantined("a file cut short", null);
+            snapshotsUnderConcurrentWritersAreConsistent();
+        });
+    }
+
+    private interface Damage {
+        void apply(byte[] bytes);
+    }
+
+    private static ThreatManagementSystem populated() {
+        Random random = new Random(13);
+        List<Citizen> citizens = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            citizens.add(Checks.randomCitizen(random, 1000 + i));
+        }
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        system.setCitizens(citizens);
+        system.setFacilities(new ArrayList<>(List.of(new Facility("F1", "One", 10), new Facility("F2", "Two", 5))));
+        system.manageDetention();
+        return system;
+    }
+
+    private static void write(ThreatManagementSystem system) {
+        Checks.check(DataSnapshot.capture(system.getCitizens(), system.getFacilities()).writeBinary(SNAPSHOT), "Snapshot written");
+    }
+
+    // The saved detention state comes back on the loaded citizens, and agrees with the rosters
+    private static void detentionFlagIsReadBack() {
+        ThreatManagementSystem system = populated();
+        write(system);
+        try {
+            List<Citizen> loaded = BinarySnapshot.read(DataHandler.getDataPath(SNAPSHOT)).citizens;
+            int detained = 0;
+            for (Citizen citizen : loaded) {
+                Checks.checkEquals(system.findCitizenById(citizen.getNumericId()).isInDetention(), citizen.isInDetention(),
+                        "detention flag of citizen " + citizen.getId());
+                detained += citizen.isInDetention() ? 1 : 0;
+            }
+            Checks.checkEquals(15, detained, "detained citizens in the snapshot");
+            try (MappedCitizenView view = MappedCitizenView.open(DataHandler.getDataPath(SNAPSHOT))) {
+                view.forEach(record -> Checks.checkEquals(record.isInDetention(), record.toCitizen().isInDetention(),
+                        "detention flag of a citizen decoded from the mapped file"));
+            }
+
+            ThreatManagementSystem reloaded = new ThreatManagementSystem(null);
+            Checks.check(DataHandler.loadSnapshotFromFile(reloaded, SNAPSHOT), "Snapshot loaded");
+            reloaded.manageDetention();
+            for (Citizen citizen : reloaded.getCitizens()) {
+                Checks.checkEquals(system.findCitizenById(citizen.getNumericId()).isInDetention(), citizen.isInDetention(),
+                        "detention of citizen " + citizen.getId() + " after the rosters are settled");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Both load paths refuse a damaged file, move it aside as .corrupt, and then report no snapshot at all
+    private static void damagedSnapshotIsQuarantined(String what, Damage damage) {
+        Path path = DataHandler.getDataPath(SNAPSHOT);
+        Path quarantined = DataHandler.getDataPath(SNAPSHOT + ".corrupt");
+        for (boolean tiered : new boolean[]{false, true}) {
+            write(populated());
+            try {
+                byte[] bytes = Files.readAllBytes(path);
+                if (damage != null) {
+                    damage.apply(bytes);
+                } else {
+                    bytes = Arrays.copyOf(bytes, bytes.length / 2);
+                }
+                Files.write(path, bytes);
+                Files.deleteIfExists(quarantined);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            ThreatManagementSystem system = new ThreatManagementSystem(null);
+            IOException error = Checks.withErrorsExpected(() -> {
+                try {
+                    if (tiered) {
+                        DataHandler.loadSnapshotTiered(system, SNAPSHOT, 16, 10);
+                    } else {
+                        DataHandler.loadSnapshotFromFile(system, SNAPSHOT);
+                    }
+                    return null;
+                } catch (IOException e) {
+                    return e;
+                }
+            });
+            String load = (tiered ? "tiered load" : "load") + " of " + what;
+            Checks.check(error != null, "The " + load + " fails");
+            Checks.check(!Files.exists(path), "The " + load + " moves the snapshot away");
+            Checks.check(DataHandler.hasQuarantinedSnapshot(SNAPSHOT), "The " + load + " keeps it as .corrupt");
+            Checks.checkEquals(0, system.getCitizens().size(), "citizens after the failed " + load);
+            try {
+                Checks.check(!DataHandler.loadSnapshotFromFile(system, SNAPSHOT), "After the " + load + " there is no snapshot");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Snapshots saved while other threads admit, transfer and rescore citizens: every one of them holds all the citizens,
+    // rosters within capacity, each detainee in one roster, and a detention flag set exactly for the detainees
+    private static void snapshotsUnderConcurrentWritersAreConsistent() {
+        ThreatManagementSystem system = populated();
+        List<Citizen> citizens = new ArrayList<>(system.getCitizens());
+        List<Facility> facilities = system.getFacilities();
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            int thread = t;
+            writers.add(pool.submit(() -> {
+                Random random = new Random(thread);
+                while (!stop.get()) {
+                    Citizen citizen = citizens.get(random.nextInt(citizens.size()));
+                    Facility from = facilities.get(thread % 2);
+                    Facility to = facilities.get(1 - thread % 2);
+                    int operation = random.nextInt(3);
+                    if (operation == 0) {
+                        system.admitToFacility(citizen, to);
+                    } else if (operation == 1) {
+                        system.transferCitizen(citizen, from, to);
+                    } else {
+                        int score = 1 + random.nextInt(10);
+                        system.updateCitizen(citizen, () -> citizen.reportPublicImpactScore(score));
+                    }
+                }
+            }));
+        }
+        try {
+            for (int i = 0; i < 40; i++) {
+                Checks.check(system.saveSnapshot(), "Snapshot " + i + " saved");
+                checkConsistent(BinarySnapshot.read(DataHandler.getDataPath(ThreatManagementSystem.SNAPSHOT_FILE)),
+                        citizens.size(), "snapshot " + i);
+            }
+            stop.set(true);
+            for (Future<?> writer : writers) {
+                writer.get(1, TimeUnit.MINUTES);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (TimeoutException e) {
+            throw new AssertionError("The writers did not finish (deadlock?)", e);
+        } catch (ExecutionException e) {
+            throw new AssertionError("A writer failed: " + e.getCause(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        } finally {
+            stop.set(true);
+            pool.shutdownNow();
+        }
+    }
+
+    private static void checkConsistent(BinarySnapshot.Contents contents, int citizenCount, String where) {
+        Checks.checkEquals(citizenCount, contents.citizens.size(), "citizens in " + where);
+        Map<Long, String> placedIn = new HashMap<>();
+        for (Facility facility : contents.facilities) {
+            long[] ids = facility.getDetaineeIds();
+            Checks.check(ids.length <= facility.getCapacity(), facility.getFacilityId() + " over capacity in " + where);
+            for (long id : ids) {
+                String other = placedIn.put(id, facility.getFacilityId());
+                Checks.check(other == null, "Citizen " + id + " in " + other + " and " + facility.getFacilityId() + " in " + where);
+            }
+        }
+        for (Citizen citizen : contents.citizens) {
+            Checks.checkEquals(placedIn.remove(citizen.getNumericId()) != null, citizen.isInDetention(),
+                    "detention flag of citizen " + citizen.getId() + " in " + where);
+        }
+        Checks.check(placedIn.isEmpty(), "Rosters of " + where + " name unknown citizens " + placedIn.keySet());
+    }
+}
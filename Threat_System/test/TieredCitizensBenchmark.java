@@ -0,0 +1,87 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// טעינה מדורגת מול טעינה מלאה של אוכלוסייה גדולה: זיכרון, חיפושים, דירוג, טווח, ייצוא ומנות מועמדים.
+// Usage: TieredCitizensBenchmark [citizens=2000000] [mode=tiered|full]
+// Run each mode in its own JVM with a fixed heap (e.g. -Xms3g -Xmx3g) so the heap readings are comparable. The first
+// run writes the snapshot into data.folder and later runs reuse it (start from an empty folder to change the size).
+public class TieredCitizensBenchmark {
+    private static final String SNAPSHOT = "tiered.bin";
+
+    public static void main(String[] args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        boolean tiered = args.length < 2 || args[1].equals("tiered");
+        PrintStream console = System.out;
+        Logger.getLogger("").setLevel(Level.WARNING);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        if (!Files.exists(DataHandler.getDataPath(SNAPSHOT))) {
+            TieredCitizensCheck.write(TieredCitizensCheck.population(n, new Random(21)));
+        }
+
+        long heapBefore = used();
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        long start = System.nanoTime();
+        if (tiered) {
+            DataHandler.loadSnapshotTiered(system, SNAPSHOT, 100_000, 50_000);
+        } else {
+            DataHandler.loadSnapshotFromFile(system, SNAPSHOT);
+        }
+        system.manageDetention();
+        long loaded = System.nanoTime();
+        long heap = used() - heapBefore;
+
+        Random random = new Random(9);
+        Citizen[] sample = new Citizen[10_000];
+        for (int i = 0; i < sample.length; i++) {
+            sample[i] = system.findCitizenById(1000 + random.nextInt(n));
+        }
+        long names = System.nanoTime();
+        int found = 0;
+        for (Citizen citizen : sample) {
+            found += system.getCitizensByName(citizen.getName()).size();
+        }
+        long ranks = System.nanoTime();
+        long rankSum = 0;
+        for (Citizen citizen : sample) {
+            rankSum += system.getThreatRank(citizen);
+        }
+        long range = System.nanoTime();
+        double level = sample[0].getThreatLevel();
+        List<Citizen> inRange = system.getCitizensInThreatRange(level, level);
+        long export = System.nanoTime();
+        String exportFile = DataHandler.getDataPath("tiered-export.csv").toString();
+        Files.deleteIfExists(DataHandler.getDataPath("tiered-export.csv"));
+        int exported = system.newHistoryExport(exportFile).run(Runnable::run, null, () -> false);
+        long paging = System.nanoTime();
+        system.addFacility(new Facility("FX", "Big", 60_000)); // In tiered mode the engine pages candidates in by batches
+        long end = System.nanoTime();
+        String stats = system.getCitizenCacheStats();
+
+        System.setOut(console);
+        System.out.printf("%s, %,d citizens (%,d in memory), heap %d MB%n", tiered ? "tiered" : "full", system.getCitizenCount(),
+                system.getCitizens().size(), heap >> 20);
+        System.out.printf("  load + detention     %6d ms%n", (loaded - start) / 1_000_000);
+        System.out.printf("  10k name lookups     %6d ms (%,d citizens)%n", (ranks - names) / 1_000_000, found);
+        System.out.printf("  10k threat ranks     %6d ms (sum %d)%n", (range - ranks) / 1_000_000, rankSum);
+        System.out.printf("  range [%.1f, %.1f]   %6d ms (%,d citizens)%n", level, level, (export - range) / 1_000_000, inRange.size());
+        System.out.printf("  history export      %7d ms (%,d rows)%n", (paging - export) / 1_000_000, exported);
+        System.out.printf("  60k-place facility   %6d ms%n", (end - paging) / 1_000_000);
+        if (stats != null) {
+            System.out.println("  " + stats);
+        }
+    }
+
+    private static long used() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
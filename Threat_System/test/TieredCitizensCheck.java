@@ -0,0 +1,200 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// מצב מדורג (רק חלק מהאזרחים בזיכרון): חיפוש לפי שם, דירוג, אחוזון, טווח וייצוא רואים גם את האזרחים שבדיסק,
+// ומנות המועמדים יוצאות מהמאגר בסדר האיום. קריאה מהקובץ הממופה נותנת את מה שנותן העותק שנטען לזיכרון.
+public class TieredCitizensCheck {
+    private static final String SNAPSHOT = "tiered.bin";
+
+    public static void main(String[] args) {
+        Checks.run("TieredCitizensCheck", () -> {
+            write(population(3000, new Random(21)));
+            pageInFollowsThreatOrder();
+            queriesSeePagedOutCitizens();
+            mappedReadsMatchHeapCopy();
+        });
+    }
+
+    // Citizens with shared names, in a system whose facilities hold some of them
+    static ThreatManagementSystem population(int count, Random random) {
+        List<Citizen> citizens = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Citizen citizen = Checks.randomCitizen(random, 1000 + i);
+            citizen.setName("Name" + random.nextInt(count / 4));
+            citizens.add(citizen);
+        }
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        system.setCitizens(citizens);
+        system.setFacilities(new ArrayList<>(List.of(new Facility("F1", "One", 20), new Facility("F2", "Two", 15))));
+        system.manageDetention();
+        return system;
+    }
+
+    static void write(ThreatManagementSystem system) {
+        Checks.check(DataSnapshot.capture(system.getCitizens(), system.getFacilities()).writeBinary(SNAPSHOT), "Snapshot written");
+    }
+
+    private static ThreatManagementSystem load(boolean tiered) {
+        ThreatManagementSystem system = new ThreatManagementSystem(null);
+        try {
+            Checks.check(tiered ? DataHandler.loadSnapshotTiered(system, SNAPSHOT, 64, 50)
+                    : DataHandler.loadSnapshotFromFile(system, SNAPSHOT), "Snapshot loaded");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        system.manageDetention();
+        return system;
+    }
+
+    // Batches come out most threatening first, whatever was taken into memory in between; the ceiling is the next one
+    private static void pageInFollowsThreatOrder() {
+        Path path = DataHandler.getDataPath(SNAPSHOT);
+        try (CitizenRepository repository = CitizenRepository.open(path, 16)) {
+            List<Citizen> expected = new ArrayList<>();
+            try (MappedCitizenView view = MappedCitizenView.open(path)) {
+                view.forEach(record -> expected.add(record.toCitizen()));
+            }
+            expected.sort((a, b) -> ThreatKey.compare(b, a));
+            Checks.checkEquals(0, repository.selectInMemory(id -> false, 0).size(), "citizens kept in memory");
+            Random random = new Random(22);
+            for (int i = 0; i < 300; i++) { // Some citizens leave the repository out of order (changed, deleted)
+                Citizen removed = expected.remove(random.nextInt(expected.size()));
+                Checks.check(repository.remove(removed.getNumericId()), "Citizen " + removed.getId() + " removed");
+            }
+            double threshold = expected.get(expected.size() / 2).getThreatLevel();
+            Checks.checkEquals((int) expected.stream().filter(citizen -> citizen.getThreatLevel() >= threshold).count(),
+                    repository.countPagedOutAtOrAbove(threshold), "paged-out citizens at or above " + threshold);
+            int at = 0;
+            while (at < expected.size()) {
+                List<Citizen> batch = repository.pageIn(1 + random.nextInt(200));
+                for (Citizen citizen : batch) {
+                    Checks.checkEquals(expected.get(at++).getId(), citizen.getId(), "citizen " + at + " in threat order");
+                }
+                ThreatKey ceiling = at < expected.size() ? new ThreatKey(expected.get(at)) : null;
+                Checks.checkEquals(ceiling, repository.ceiling(), "ceiling after " + at + " citizens");
+                if (at < expected.size() && random.nextBoolean()) {
+                    Citizen removed = expected.remove(at); // The ceiling itself goes: the next batch starts after it
+                    repository.remove(removed.getNumericId());
+                }
+            }
+            Checks.checkEquals(0, repository.getPagedOutCount(), "citizens left paged out");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Every query gives in tiered mode what it gives with the whole population in memory
+    private static void queriesSeePagedOutCitizens() {
+        ThreatManagementSystem full = load(false);
+        ThreatManagementSystem tiered = load(true);
+        Checks.check(tiered.getCitizens().size() < full.getCitizens().size() / 10, "Most citizens are paged out");
+        Random random = new Random(23);
+        List<String> renamed = new ArrayList<>();
+        for (int i = 0; i < 3; i++) { // Deleted, and moved into memory by a change, while others stay paged out
+            Citizen citizen = full.getCitizens().get(random.nextInt(full.getCitizens().size()));
+            full.removeCitizen(citizen);
+            tiered.removeCitizen(tiered.findCitizenById(citizen.getNumericId()));
+            Citizen changed = full.getCitizens().get(random.nextInt(full.getCitizens().size()));
+            full.updateCitizen(changed, () -> changed.setName("Renamed" + changed.getId()));
+            Citizen same = tiered.findCitizenById(changed.getNumericId());
+            tiered.updateCitizen(same, () -> same.setName("Renamed" + same.getId()));
+            renamed.add(changed.getId());
+        }
+
+        for (Citizen citizen : full.getCitizens()) {
+            Citizen other = tiered.findCitizenById(citizen.getNumericId());
+            String what = "citizen " + citizen.getId();
+            Checks.checkEquals(full.getThreatRank(citizen), tiered.getThreatRank(other), "threat rank of " + what);
+            Checks.checkEquals(full.getThreatPercentile(citizen), tiered.getThreatPercentile(other), "percentile of " + what);
+            Checks.checkEquals(ids(full.getCitizensByName(citizen.getName())), ids(tiered.getCitizensByName(citizen.getName())),
+                    "citizens named " + citizen.getName());
+        }
+        for (String id : renamed) {
+            Checks.checkEquals(id, tiered.getCitizenByName("Renamed" + id).getId(), "citizen found under its new name");
+        }
+        Checks.check(tiered.getCitizenByName("Nobody") == null, "An unknown name finds nobody");
+        double[][] ranges = {{Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY}, {20, 40}, {35.5, 35.5}, {-5, 10}};
+        for (double[] range : ranges) {
+            Checks.checkEquals(full.getCitizensInThreatRange(range[0], range[1]).stream().map(Citizen::getId).collect(Collectors.toList()),
+                    tiered.getCitizensInThreatRange(range[0], range[1]).stream().map(Citizen::getId).collect(Collectors.toList()),
+                    "citizens between " + range[0] + " and " + range[1]);
+        }
+
+        try {
+            for (ThreatManagementSystem system : List.of(full, tiered)) {
+                system.newHistoryExport(DataHandler.getDataPath(system == full ? "full.csv" : "tiered.csv").toString())
+                        .run(Runnable::run, null, () -> false);
+            }
+            Checks.checkEquals(exportedIds("full.csv"), exportedIds("tiered.csv"), "citizens in the history export");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Set<String> ids(List<Citizen> citizens) {
+        return citizens.stream().map(Citizen::getId).collect(Collectors.toSet());
+    }
+
+    private static List<String> exportedIds(String fileName) throws IOException {
+        List<String> lines = Files.readAllLines(DataHandler.getDataPath(fileName));
+        Checks.checkEquals(new HashSet<>(lines).size(), lines.size(), "distinct rows in " + fileName);
+        return lines.stream().skip(1).map(line -> line.split(",")[1]).sorted(Comparator.naturalOrder()).collect(Collectors.toList());
+    }
+
+    // Every field read from the mapped file, in file order and by random seeks, is the one of the heap copy that
+    // BinarySnapshot.read loads; the threat level too. Names over 127 bytes and IDs with leading zeros included.
+    private static void mappedReadsMatchHeapCopy() {
+        Random random = new Random(24);
+        ThreatManagementSystem system = population(500, random);
+        String[] ids = {"007", "7", "0000042", "999999999999999999"};
+        for (int i = 0; i < ids.length; i++) {
+            Citizen citizen = Checks.randomCitizen(random, 1);
+            citizen.setId(ids[i]);
+            citizen.setName(i % 2 == 0 ? "שם ארוך ".repeat(20 + i) : "Name" + i);
+            citizen.setBirthDate(LocalDate.of(2000, 2, 29));
+            system.addCitizen(citizen);
+        }
+        system.manageDetention();
+        Checks.check(DataSnapshot.capture(system.getCitizens(), system.getFacilities()).writeBinary("mapped.bin"), "Snapshot written");
+        Path path = DataHandler.getDataPath("mapped.bin");
+        try (MappedCitizenView view = MappedCitizenView.open(path)) {
+            List<Citizen> heap = BinarySnapshot.read(path).citizens;
+            Checks.checkEquals(heap.size(), view.size(), "citizens in the mapped file");
+            List<Integer> order = new ArrayList<>();
+            view.forEach(record -> order.add(record.getOrdinal()));
+            for (int i = 0; i < heap.size() * 2; i++) {
+                order.add(random.nextInt(heap.size()));
+            }
+            MappedCitizenView.Record record = view.newRecord();
+            for (int ordinal : order) {
+                record.moveTo(ordinal);
+                Citizen citizen = heap.get(ordinal);
+                String what = "record " + ordinal + " (" + citizen.getId() + ")";
+                Checks.checkEquals(citizen.getId(), record.getId(), "ID of " + what);
+                Checks.checkEquals(citizen.getNumericId(), record.getNumericId(), "key of " + what);
+                Checks.checkEquals(citizen.getName(), record.getName(), "name of " + what);
+                Checks.checkEquals(citizen.getBirthDate(), record.getBirthDate(), "birth date of " + what);
+                Checks.checkEquals(citizen.getOrigin(), record.getOrigin(), "origin of " + what);
+                Checks.checkEquals(citizen.getEconomicPercentile(), record.getEconomicPercentile(), "economic percentile of " + what);
+                Checks.checkEquals(citizen.getGovernmentSupportLevel(), record.getGovernmentSupportLevel(), "support level of " + what);
+                Checks.checkEquals(citizen.getPublicImpactScore(), record.getPublicImpactScore(), "public impact of " + what);
+                Checks.checkEquals(citizen.isParliamentMember(), record.isParliamentMember(), "parliament membership of " + what);
+                Checks.checkEquals(citizen.isInDetention(), record.isInDetention(), "detention of " + what);
+                Checks.checkEquals(citizen.getThreatLevel(), record.getThreatLevel(), "threat level of " + what);
+            }
+            Checks.check(view.verify(), "The mapped file's checksum");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+#!/bin/sh
+# Compile the sources together with the checks and run every *Check class, each with its own scratch data folder.
+# Usage: run-checks.sh [CheckName...]   (all checks when none are given)
+# Checks run with -ea, so the assertions in the sources (see ThreatManagementSystem.lockReadForEngine) are on.
+# Benchmarks are run by hand from the same output folder, e.g.:
+#   java -cp "$out" -Ddata.folder=$(mktemp -d) DetentionSolverBenchmark
+set -e
+cd "$(dirname "$0")"
+out=$(mktemp -d)
+javac -encoding UTF-8 -d "$out" ../Threat_System/*.java *.java
+if [ $# -eq 0 ]; then
+    set -- $(ls *Check.java | sed 's/\.java$//')
+fi
+status=0
+for check in "$@"; do
+    data=$(mktemp -d)
+    java -ea -cp "$out" -Ddata.folder="$data" "$check" || status=1
+    rm -rf "$data"
+done
+rm -rf "$out"
+exit $status